@@ -261,17 +261,12 @@ public final class Application {
                 writeTimeoutSecond = transportConf.getIntValue("writeTimeoutSecond", writeTimeoutSecond);
                 final int threads = parseLenth(transportConf.getValue("threads"), groupsize * Runtime.getRuntime().availableProcessors() * 8);
                 final int capacity = bufferCapacity;
-                transportPool = new ObjectPool<>(createBufferCounter, cycleBufferCounter, bufferPoolSize,
-                    (Object... params) -> ByteBuffer.allocateDirect(capacity), null, (e) -> {
-                        if (e == null || e.isReadOnly() || e.capacity() != capacity) return false;
-                        e.clear();
-                        return true;
-                    });
+                transportPool = ByteBufferAllocator.root().createPool("Transport", createBufferCounter, cycleBufferCounter, bufferPoolSize, capacity);
                 //-----------transportChannelGroup--------------
                 try {
                     final String strategyClass = transportConf.getValue("strategy");
                     if (strategyClass != null && !strategyClass.isEmpty()) {
-                        strategy = (TransportStrategy) classLoader.loadClass(strategyClass).newInstance();
+                        strategy = TransportStrategy.create(strategyClass, classLoader);
                     }
                     final AtomicInteger counter = new AtomicInteger();
                     transportExec = Executors.newFixedThreadPool(threads, (Runnable r) -> {
@@ -303,12 +298,7 @@ public final class Application {
         }
         if (transportPool == null) {
             final int capacity = bufferCapacity;
-            transportPool = new ObjectPool<>(createBufferCounter, cycleBufferCounter, bufferPoolSize,
-                (Object... params) -> ByteBuffer.allocateDirect(capacity), null, (e) -> {
-                    if (e == null || e.isReadOnly() || e.capacity() != capacity) return false;
-                    e.clear();
-                    return true;
-                });
+            transportPool = ByteBufferAllocator.root().createPool("Transport", createBufferCounter, cycleBufferCounter, bufferPoolSize, capacity);
         }
         this.sncpTransportFactory = TransportFactory.create(transportExec, transportPool, transportGroup, readTimeoutSecond, writeTimeoutSecond, strategy);
         DefaultAnyValue tarnsportConf = DefaultAnyValue.create(TransportFactory.NAME_PINGINTERVAL, System.getProperty("net.transport.pinginterval", "30"));
@@ -337,6 +327,10 @@ public final class Application {
         return new ArrayList<>(servers);
     }
 
+    public List<DataSource> getDataSources() {
+        return new ArrayList<>(dataSources);
+    }
+
     public File getHome() {
         return home;
     }
@@ -491,6 +485,7 @@ public final class Application {
                 for (AnyValue node : conf.getAnyValues("node")) {
                     final InetSocketAddress addr = new InetSocketAddress(node.getValue("addr"), node.getIntValue("port"));
                     ginfo.putAddress(addr);
+                    if (node.getValue("weight") != null) sncpTransportFactory.setWeight(addr, node.getIntValue("weight"));
                 }
                 sncpTransportFactory.addGroupInfo(ginfo);
             }
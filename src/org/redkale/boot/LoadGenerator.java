@@ -0,0 +1,840 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.boot;
+
+import java.io.IOException;
+import java.lang.reflect.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.*;
+import org.redkale.convert.bson.*;
+import org.redkale.convert.json.JsonConvert;
+import org.redkale.net.*;
+import org.redkale.net.sncp.Sncp;
+import org.redkale.service.Service;
+import org.redkale.util.*;
+
+/**
+ * 压测工具, 对HTTP/1.1(keep-alive)、WebSocket、SNCP服务发起请求并统计吞吐量和耗时分布   <br>
+ * load.rate大于0时按固定速率发送(开环), 请求的耗时从计划发送时间算起, 连接都忙时排队等待的时间也计入, 避免协调遗漏(coordinated omission);
+ * 否则每个连接收到响应后立即发送下一个请求(闭环), 按预热阶段的平均耗时作为期望间隔补齐被遗漏的样本。
+ * 同时输出未修正的服务耗时以便对比。 <br>
+ * 每个连接同一时刻只有一个未完成的请求, WebSocket的目标每收到一条消息须回复一条消息。
+ * <blockquote><pre>
+ * java -Dload.target=http://127.0.0.1:6060/pipes/hello -Dload.connections=64 -Dload.rate=20000 org.redkale.boot.LoadGenerator
+ * java -Dload.target=ws://127.0.0.1:6060/pipes/ws/echo -Dload.message=hello org.redkale.boot.LoadGenerator
+ * java -Dload.target=sncp://10.0.0.1:7070,10.0.0.2:7070 -Dload.service=com.xxx.UserService -Dload.method=findUser -Dload.param.0=100 org.redkale.boot.LoadGenerator
+ * </pre></blockquote>
+ * 配置项:
+ * <blockquote><pre>
+ * load.target         目标, http://、ws://或sncp://开头, sncp可以是逗号分隔的多个节点
+ * load.connections    连接数(SNCP为并发调用数), 默认16
+ * load.rate           每秒请求数, 小于1表示不限速, 默认0
+ * load.duration       压测秒数(不含预热), 默认30
+ * load.warmup         预热秒数, 不计入结果, 默认5
+ * load.report         输出中间结果的间隔秒数, 默认5
+ * load.timeout        读写超时秒数, 默认10
+ * load.method         HTTP方法(默认GET)或SNCP服务的方法名
+ * load.headers        HTTP请求头, 多个用;分隔, 如: Accept:application/json;X-Token:abc
+ * load.body           HTTP请求体
+ * load.message        WebSocket发送的文本消息
+ * load.service        SNCP服务的接口或实现类, 须在classpath中
+ * load.resourcename   SNCP服务的资源名, 默认""
+ * load.param.N        SNCP方法第N个参数的JSON值, N从0开始
+ * </pre></blockquote>
+ *
+ * <p>
+ * 详情见: https://redkale.org
+ *
+ * @author zhangjx
+ */
+public final class LoadGenerator {
+
+    private static final Logger logger = Logger.getLogger(LoadGenerator.class.getSimpleName());
+
+    private final Properties props;
+
+    private final String target;
+
+    private final int connections;
+
+    private final int rate;
+
+    private final int durationSeconds;
+
+    private final int warmupSeconds;
+
+    private final int reportSeconds;
+
+    private final int timeoutSeconds;
+
+    //修正协调遗漏后的耗时
+    private final Histogram histogram = new Histogram();
+
+    //从实际发送到收到响应的耗时
+    private final Histogram serviceHistogram = new Histogram();
+
+    private final AtomicLong requestCounter = new AtomicLong();
+
+    private final AtomicLong errorCounter = new AtomicLong();
+
+    private final AtomicLong serviceNanos = new AtomicLong();
+
+    //开环模式下等待空闲连接的请求的计划发送时间
+    private final ConcurrentLinkedQueue<Long> pendings = new ConcurrentLinkedQueue<>();
+
+    private final ConcurrentLinkedQueue<Worker> idles = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, (Runnable r) -> {
+        final Thread t = new Thread(r, "Redkale-LoadGenerator-Timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private AsynchronousChannelGroup group;
+
+    private ExecutorService executor;
+
+    private TransportFactory transportFactory;
+
+    private volatile boolean running = true;
+
+    private volatile boolean recording;
+
+    //闭环模式下补齐样本的期望间隔
+    private volatile long expectedIntervalNanos;
+
+    public LoadGenerator(Properties props) {
+        this.props = props;
+        this.target = props.getProperty("load.target", "");
+        this.connections = Math.max(1, Integer.parseInt(props.getProperty("load.connections", "16")));
+        this.rate = Integer.parseInt(props.getProperty("load.rate", "0"));
+        this.durationSeconds = Math.max(1, Integer.parseInt(props.getProperty("load.duration", "30")));
+        this.warmupSeconds = Math.max(0, Integer.parseInt(props.getProperty("load.warmup", "5")));
+        this.reportSeconds = Math.max(1, Integer.parseInt(props.getProperty("load.report", "5")));
+        this.timeoutSeconds = Math.max(1, Integer.parseInt(props.getProperty("load.timeout", "10")));
+    }
+
+    public static void main(String[] args) throws Exception {
+        final LoadGenerator generator = new LoadGenerator(System.getProperties());
+        generator.run();
+        System.exit(0);
+    }
+
+    public void run() throws Exception {
+        final List<Worker> workers = createWorkers();
+        final CompletableFuture[] opens = new CompletableFuture[workers.size()];
+        for (int i = 0; i < opens.length; i++) {
+            opens[i] = workers.get(i).open();
+        }
+        CompletableFuture.allOf(opens).get(timeoutSeconds, TimeUnit.SECONDS);
+        System.out.println("load " + target + " with " + connections + " connections, " + (rate > 0 ? ("rate " + rate + "/s") : "no rate limit")
+            + ", warmup " + warmupSeconds + "s, duration " + durationSeconds + "s");
+        final long start = System.nanoTime();
+        final long recordStart = start + warmupSeconds * 1000_000_000L;
+        final long end = recordStart + durationSeconds * 1000_000_000L;
+        if (warmupSeconds < 1) startRecording();
+        final long intervalNanos = rate > 0 ? Math.max(1, 1000_000_000L / rate) : 0;
+        long nextSend = start;
+        long nextReport = recordStart + reportSeconds * 1000_000_000L;
+        long lastCount = 0;
+        long lastErrors = 0;
+        if (rate > 0) {
+            idles.addAll(workers);
+        } else {
+            for (Worker worker : workers) {
+                worker.send(System.nanoTime());
+            }
+        }
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            if (!recording && now >= recordStart) startRecording();
+            if (rate > 0) {
+                for (; nextSend <= now; nextSend += intervalNanos) {
+                    final Worker worker = idles.poll();
+                    if (worker == null) {
+                        pendings.offer(nextSend);
+                    } else {
+                        worker.send(nextSend);
+                    }
+                }
+                Worker worker; //连接变为空闲与请求入队同时发生时, 请求可能留在队列中
+                while (!pendings.isEmpty() && (worker = idles.poll()) != null) {
+                    final Long intended = pendings.poll();
+                    if (intended == null) {
+                        idles.offer(worker);
+                        break;
+                    }
+                    worker.send(intended);
+                }
+            }
+            if (now >= nextReport) {
+                final long count = requestCounter.get();
+                final long errors = errorCounter.get();
+                System.out.println(String.format("%4ds  requests/s: %10.1f  errors: %6d  p99: %10.3fms  inflight: %d  queued: %d",
+                    (now - recordStart) / 1000_000_000L, (count - lastCount) * 1.0 / reportSeconds, errors - lastErrors,
+                    histogram.percentile(99) / 1000.0, inflight.get(), pendings.size()));
+                lastCount = count;
+                lastErrors = errors;
+                nextReport += reportSeconds * 1000_000_000L;
+            }
+            long sleep = Math.min(end, Math.min(nextReport, rate > 0 ? nextSend : now + 10_000_000L)) - System.nanoTime();
+            if (rate > 0) sleep = Math.min(sleep, 1000_000L); //兼顾排队请求的分派
+            if (sleep > 0) LockSupport.parkNanos(sleep);
+        }
+        running = false;
+        final long stopNanos = System.nanoTime();
+        long unsent = 0; //开环时停止前仍在排队的请求, 按计划发送时间到停止时刻计入耗时
+        Long intended;
+        while ((intended = pendings.poll()) != null) {
+            histogram.record(stopNanos - intended);
+            unsent++;
+        }
+        final long deadline = stopNanos + timeoutSeconds * 1000_000_000L;
+        while (inflight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        report(Math.max(1, stopNanos - Math.max(start, recordStart)), unsent);
+        for (Worker worker : workers) {
+            worker.close();
+        }
+        timer.shutdownNow();
+        if (executor != null) executor.shutdownNow();
+        if (group != null) group.shutdownNow();
+    }
+
+    private void startRecording() {
+        final long count = serviceHistogram.getCount();
+        if (rate <= 0 && count > 0) expectedIntervalNanos = serviceNanos.get() / count;
+        histogram.reset();
+        serviceHistogram.reset();
+        requestCounter.set(0);
+        errorCounter.set(0);
+        recording = true;
+    }
+
+    private void report(long nanos, long unsent) {
+        final long count = requestCounter.get();
+        final StringBuilder sb = new StringBuilder();
+        sb.append("requests: ").append(count).append(", errors: ").append(errorCounter.get());
+        if (unsent > 0) sb.append(", unsent: ").append(unsent);
+        sb            .append(", throughput: ").append(String.format("%.1f", count * 1000_000_000.0 / nanos)).append(" requests/s\r\n");
+        sb.append(String.format("%-36s %10s %10s %10s %10s %10s %10s %10s\r\n", "latency(ms)", "mean", "p50", "p90", "p99", "p99.9", "p99.99", "max"));
+        sb.append(histogram.format(rate > 0 ? "corrected (from intended send time)" : "corrected (expected interval " + String.format("%.3f", expectedIntervalNanos / 1000_000.0) + "ms)")).append("\r\n");
+        sb.append(serviceHistogram.format("service time (uncorrected)"));
+        System.out.println(sb);
+    }
+
+    //一个请求完成, 在IO线程内调用
+    private void complete(Worker worker, Throwable exc) {
+        complete(worker, exc, true);
+    }
+
+    //reconnect为false表示响应已完整读取, 出错时连接仍可继续使用
+    private void complete(Worker worker, Throwable exc, boolean reconnect) {
+        final long now = System.nanoTime();
+        inflight.decrementAndGet();
+        if (exc == null) {
+            final long service = now - worker.sendNanos;
+            serviceHistogram.record(service);
+            serviceNanos.addAndGet(service);
+            if (rate > 0) {
+                histogram.record(now - worker.intendedNanos);
+            } else {
+                histogram.record(service, expectedIntervalNanos);
+            }
+        }
+        if (recording) {
+            requestCounter.incrementAndGet();
+            if (exc != null) errorCounter.incrementAndGet();
+        }
+        if (exc != null && logger.isLoggable(Level.FINE)) logger.log(Level.FINE, "load request error", exc);
+        if (exc != null && reconnect && running) {
+            worker.close();
+            reopen(worker);
+            return;
+        }
+        next(worker);
+    }
+
+    private void next(Worker worker) {
+        if (!running) return;
+        if (rate <= 0) {
+            worker.send(System.nanoTime());
+            return;
+        }
+        final Long intended = pendings.poll();
+        if (intended == null) {
+            idles.offer(worker);
+        } else {
+            worker.send(intended);
+        }
+    }
+
+    private void reopen(Worker worker) {
+        worker.open().whenComplete((v, e) -> {
+            if (e == null) {
+                next(worker);
+            } else if (running) {
+                if (recording) errorCounter.incrementAndGet();
+                timer.schedule(() -> reopen(worker), 1, TimeUnit.SECONDS);
+            }
+        });
+    }
+
+    private List<Worker> createWorkers() throws Exception {
+        final List<Worker> workers = new ArrayList<>();
+        if (target.startsWith("sncp://")) {
+            final Class<Service> serviceClass = (Class<Service>) Thread.currentThread().getContextClassLoader().loadClass(props.getProperty("load.service"));
+            final String methodName = props.getProperty("load.method");
+            final List<String> params = new ArrayList<>();
+            for (int i = 0; props.getProperty("load.param." + i) != null; i++) {
+                params.add(props.getProperty("load.param." + i));
+            }
+            Method method = null;
+            for (Method m : serviceClass.getMethods()) {
+                if (m.getName().equals(methodName) && m.getParameterCount() == params.size()) {
+                    method = m;
+                    break;
+                }
+            }
+            if (method == null) throw new RuntimeException(serviceClass.getName() + " not found method " + methodName + " with " + params.size() + " parameters");
+            final Object[] args = new Object[params.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = JsonConvert.root().convertFrom(method.getGenericParameterTypes()[i], params.get(i));
+            }
+            final Set<InetSocketAddress> addrs = new LinkedHashSet<>();
+            for (String node : target.substring("sncp://".length()).split(",")) {
+                final int pos = node.lastIndexOf(':');
+                addrs.add(new InetSocketAddress(node.substring(0, pos).trim(), Integer.parseInt(node.substring(pos + 1).trim())));
+            }
+            ResourceFactory.root().register("", BsonConvert.class, BsonFactory.root().getConvert());
+            ResourceFactory.root().register("", JsonConvert.class, JsonConvert.root());
+            this.transportFactory = TransportFactory.create(Math.max(2, Runtime.getRuntime().availableProcessors()), connections * 2, 8 * 1024, timeoutSeconds, timeoutSeconds);
+            this.transportFactory.addGroupInfo("load", addrs);
+            final Service service = Sncp.createRemoteService(null, props.getProperty("load.resourcename", ""), serviceClass, transportFactory,
+                new InetSocketAddress("127.0.0.1", 0), Utility.ofSet("load"), null);
+            ResourceFactory.root().inject(service);
+            final AtomicInteger counter = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(connections, (Runnable r) -> {
+                final Thread t = new Thread(r, "Redkale-LoadGenerator-Sncp-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            for (int i = 0; i < connections; i++) {
+                workers.add(new SncpWorker(service, method, args));
+            }
+            return workers;
+        }
+        final URI uri = new URI(target);
+        final boolean ws = "ws".equalsIgnoreCase(uri.getScheme());
+        if (!ws && !"http".equalsIgnoreCase(uri.getScheme())) throw new RuntimeException("load.target (" + target + ") must be http://, ws:// or sncp://");
+        final InetSocketAddress addr = new InetSocketAddress(uri.getHost(), uri.getPort() > 0 ? uri.getPort() : 80);
+        final String path = (uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath()) + (uri.getRawQuery() == null ? "" : ("?" + uri.getRawQuery()));
+        final String host = uri.getHost() + (uri.getPort() > 0 ? (":" + uri.getPort()) : "");
+        final AtomicInteger counter = new AtomicInteger();
+        this.group = AsynchronousChannelGroup.withFixedThreadPool(Runtime.getRuntime().availableProcessors(), (Runnable r) -> {
+            final Thread t = new Thread(r, "Redkale-LoadGenerator-IOThread-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < connections; i++) {
+            workers.add(ws ? new WebSocketWorker(addr, host, path) : new HttpWorker(addr, host, path));
+        }
+        return workers;
+    }
+
+    /**
+     * 一个连接(SNCP为一个并发调用)
+     */
+    private abstract class Worker {
+
+        protected long intendedNanos;
+
+        protected long sendNanos;
+
+        public abstract CompletableFuture<Void> open();
+
+        //发送一个请求, 完成时调用complete
+        protected abstract void call();
+
+        public void close() {
+        }
+
+        public final void send(long intended) {
+            this.intendedNanos = intended;
+            this.sendNanos = System.nanoTime();
+            inflight.incrementAndGet();
+            try {
+                call();
+            } catch (Throwable t) {
+                complete(this, t);
+            }
+        }
+    }
+
+    /**
+     * 基于AsyncConnection的连接, 请求写完后读取响应直到consume返回true
+     */
+    private abstract class StreamWorker extends Worker implements CompletionHandler<Integer, ByteBuffer> {
+
+        protected final InetSocketAddress address;
+
+        protected final ByteBuffer readBuffer = ByteBuffer.allocateDirect(32 * 1024);
+
+        protected AsyncConnection conn;
+
+        private final CompletionHandler<Integer, ByteBuffer> writeHandler = new CompletionHandler<Integer, ByteBuffer>() {
+
+            @Override
+            public void completed(Integer result, ByteBuffer buffer) {
+                if (buffer.hasRemaining()) {
+                    conn.write(buffer, buffer, this);
+                } else {
+                    read();
+                }
+            }
+
+            @Override
+            public void failed(Throwable exc, ByteBuffer buffer) {
+                complete(StreamWorker.this, exc);
+            }
+        };
+
+        public StreamWorker(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        @Override
+        public CompletableFuture<Void> open() {
+            return AsyncConnection.createTCP(group, address, true, timeoutSeconds, timeoutSeconds).thenAccept(c -> this.conn = c);
+        }
+
+        @Override
+        public void close() {
+            if (conn == null) return;
+            try {
+                conn.close();
+            } catch (IOException e) {
+            }
+        }
+
+        protected void write(ByteBuffer buffer) {
+            conn.write(buffer, buffer, writeHandler);
+        }
+
+        protected void read() {
+            readBuffer.clear();
+            conn.read(readBuffer, readBuffer, this);
+        }
+
+        @Override
+        public void completed(Integer result, ByteBuffer buffer) {
+            if (result < 0) {
+                failed(new IOException("connection closed by " + address), buffer);
+                return;
+            }
+            buffer.flip();
+            final boolean finished;
+            try {
+                finished = consume(buffer);
+            } catch (Throwable t) {
+                failed(t, buffer);
+                return;
+            }
+            if (finished) {
+                responded();
+            } else {
+                read();
+            }
+        }
+
+        @Override
+        public void failed(Throwable exc, ByteBuffer buffer) {
+            complete(this, exc);
+        }
+
+        protected void responded() {
+            complete(this, null);
+        }
+
+        //读取到的数据, 响应完整时返回true
+        protected abstract boolean consume(ByteBuffer buffer) throws IOException;
+    }
+
+    /**
+     * HTTP/1.1 keep-alive连接, 响应体按Content-Length或chunked结束
+     */
+    private class HttpWorker extends StreamWorker {
+
+        private final ByteBuffer request;
+
+        protected final ByteArray header = new ByteArray();
+
+        protected boolean headerRead;
+
+        protected int status;
+
+        private long bodyRemaining;
+
+        private boolean chunked;
+
+        private long tail; //最近读到的几个字节, 用于判断头部和chunked的结尾
+
+        public HttpWorker(InetSocketAddress address, String host, String path) {
+            super(address);
+            final StringBuilder sb = new StringBuilder();
+            final byte[] body = props.getProperty("load.body", "").getBytes(StandardCharsets.UTF_8);
+            sb.append(props.getProperty("load.method", body.length > 0 ? "POST" : "GET").toUpperCase()).append(' ').append(path).append(" HTTP/1.1\r\n");
+            sb.append("Host: ").append(host).append("\r\n");
+            sb.append("Connection: keep-alive\r\n");
+            for (String item : props.getProperty("load.headers", "").split(";")) {
+                if (item.indexOf(':') > 0) sb.append(item.trim()).append("\r\n");
+            }
+            if (body.length > 0) sb.append("Content-Length: ").append(body.length).append("\r\n");
+            sb.append("\r\n");
+            final byte[] head = sb.toString().getBytes(StandardCharsets.UTF_8);
+            final ByteBuffer buffer = ByteBuffer.allocate(head.length + body.length);
+            buffer.put(head).put(body).flip();
+            this.request = buffer.asReadOnlyBuffer();
+        }
+
+        @Override
+        protected void call() {
+            header.clear();
+            headerRead = false;
+            chunked = false;
+            bodyRemaining = 0;
+            tail = 0;
+            write(request.duplicate());
+        }
+
+        @Override
+        protected boolean consume(ByteBuffer buffer) throws IOException {
+            if (!headerRead && !consumeHeader(buffer)) return false;
+            if (chunked) {
+                while (buffer.hasRemaining()) {
+                    tail = (tail << 8) | (buffer.get() & 0xff);
+                    if ((tail & 0xffffffffffL) == 0x300d0a0d0aL) return true; //0\r\n\r\n
+                }
+                return false;
+            }
+            bodyRemaining -= buffer.remaining();
+            buffer.position(buffer.limit());
+            return bodyRemaining <= 0;
+        }
+
+        //读取头部直到\r\n\r\n, 之后的数据留在buffer中, 头部完整时返回true
+        protected boolean consumeHeader(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                final byte b = buffer.get();
+                header.write(b);
+                tail = (tail << 8) | (b & 0xff);
+                if ((tail & 0xffffffffL) == 0x0d0a0d0aL) { //\r\n\r\n
+                    parseHeader();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        protected void parseHeader() throws IOException {
+            headerRead = true;
+            tail = 0;
+            final String text = header.toString(StandardCharsets.ISO_8859_1);
+            final int pos = text.indexOf(' ');
+            if (pos < 0 || text.length() < pos + 4) throw new IOException("illegal http response: " + text);
+            this.status = Integer.parseInt(text.substring(pos + 1, pos + 4));
+            for (String line : text.split("\r\n")) {
+                final int colon = line.indexOf(':');
+                if (colon <= 0) continue;
+                final String name = line.substring(0, colon).trim();
+                if ("Content-Length".equalsIgnoreCase(name)) {
+                    this.bodyRemaining = Long.parseLong(line.substring(colon + 1).trim());
+                } else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+                    this.chunked = line.substring(colon + 1).trim().equalsIgnoreCase("chunked");
+                }
+            }
+        }
+
+        @Override
+        protected void responded() {
+            complete(this, status >= 400 ? new IOException("http status " + status) : null, false);
+        }
+    }
+
+    /**
+     * WebSocket连接, 每发送一条文本消息等待一条消息
+     */
+    private class WebSocketWorker extends HttpWorker {
+
+        private final String host;
+
+        private final String path;
+
+        private final ByteBuffer frame;
+
+        private final byte[] frameHeader = new byte[14];
+
+        private int frameHeaderSize;
+
+        private long payloadRemaining = -1;
+
+        private CompletableFuture<Void> handshake;
+
+        public WebSocketWorker(InetSocketAddress address, String host, String path) {
+            super(address, host, path);
+            this.host = host;
+            this.path = path;
+            final byte[] payload = props.getProperty("load.message", "hello").getBytes(StandardCharsets.UTF_8);
+            final byte[] mask = new byte[4];
+            ThreadLocalRandom.current().nextBytes(mask);
+            final ByteBuffer buffer = ByteBuffer.allocate(14 + payload.length);
+            buffer.put((byte) 0x81); //FIN + 文本
+            if (payload.length < 126) {
+                buffer.put((byte) (0x80 | payload.length));
+            } else if (payload.length <= 0xffff) {
+                buffer.put((byte) (0x80 | 126)).putShort((short) payload.length);
+            } else {
+                buffer.put((byte) (0x80 | 127)).putLong(payload.length);
+            }
+            buffer.put(mask);
+            for (int i = 0; i < payload.length; i++) {
+                buffer.put((byte) (payload[i] ^ mask[i & 3]));
+            }
+            buffer.flip();
+            this.frame = buffer.asReadOnlyBuffer();
+        }
+
+        @Override
+        public CompletableFuture<Void> open() {
+            return super.open().thenCompose(v -> {
+                final byte[] key = new byte[16];
+                ThreadLocalRandom.current().nextBytes(key);
+                final String req = "GET " + path + " HTTP/1.1\r\nHost: " + host + "\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Key: " + Base64.getEncoder().encodeToString(key) + "\r\nSec-WebSocket-Version: 13\r\n\r\n";
+                header.clear();
+                headerRead = false;
+                payloadRemaining = -1;
+                frameHeaderSize = 0;
+                handshake = new CompletableFuture<>();
+                conn.write(ByteBuffer.wrap(req.getBytes(StandardCharsets.UTF_8)), null, new CompletionHandler<Integer, Void>() {
+
+                    @Override
+                    public void completed(Integer result, Void attachment) {
+                        read();
+                    }
+
+                    @Override
+                    public void failed(Throwable exc, Void attachment) {
+                        handshake.completeExceptionally(exc);
+                    }
+                });
+                return handshake;
+            });
+        }
+
+        @Override
+        protected void call() {
+            write(frame.duplicate());
+        }
+
+        @Override
+        protected boolean consume(ByteBuffer buffer) throws IOException {
+            if (!headerRead) { //握手响应没有响应体, 头部之后的数据已是服务端的帧
+                if (!consumeHeader(buffer)) return false;
+                if (status != 101) throw new IOException("websocket handshake failed: " + header.toString(StandardCharsets.ISO_8859_1));
+                if (buffer.hasRemaining()) consumeFrames(buffer);
+                return true;
+            }
+            return consumeFrames(buffer);
+        }
+
+        //读取服务端的帧, 收到一条完整的数据消息时返回true
+        private boolean consumeFrames(ByteBuffer buffer) {
+            while (buffer.hasRemaining()) {
+                if (payloadRemaining < 0) {
+                    frameHeader[frameHeaderSize++] = buffer.get();
+                    if (frameHeaderSize < 2) continue;
+                    final int len7 = frameHeader[1] & 0x7f;
+                    final int need = 2 + (len7 == 126 ? 2 : (len7 == 127 ? 8 : 0)) + ((frameHeader[1] & 0x80) != 0 ? 4 : 0);
+                    if (frameHeaderSize < need) continue;
+                    final ByteBuffer hb = ByteBuffer.wrap(frameHeader, 2, need - 2);
+                    payloadRemaining = len7 == 126 ? (hb.getShort() & 0xffff) : (len7 == 127 ? hb.getLong() : len7);
+                }
+                final int n = (int) Math.min(payloadRemaining, buffer.remaining());
+                buffer.position(buffer.position() + n);
+                payloadRemaining -= n;
+                if (payloadRemaining > 0) return false;
+                final boolean fin = (frameHeader[0] & 0x80) != 0;
+                final int opcode = frameHeader[0] & 0x0f;
+                payloadRemaining = -1;
+                frameHeaderSize = 0;
+                if (fin && opcode < 8) return true; //忽略ping、pong等控制帧
+            }
+            return false;
+        }
+
+        @Override
+        protected void responded() {
+            if (handshake != null && !handshake.isDone()) {
+                handshake.complete(null);
+            } else {
+                complete(this, null);
+            }
+        }
+
+        @Override
+        public void failed(Throwable exc, ByteBuffer buffer) {
+            if (handshake != null && !handshake.isDone()) {
+                handshake.completeExceptionally(exc);
+            } else {
+                complete(this, exc);
+            }
+        }
+    }
+
+    /**
+     * 通过SncpClient调用远程服务, 连接由Transport管理
+     */
+    private class SncpWorker extends Worker {
+
+        private final Service service;
+
+        private final Method method;
+
+        private final Object[] args;
+
+        public SncpWorker(Service service, Method method, Object[] args) {
+            this.service = service;
+            this.method = method;
+            this.args = args;
+        }
+
+        @Override
+        public CompletableFuture<Void> open() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        protected void call() {
+            executor.execute(() -> {
+                try {
+                    final Object rs = method.invoke(service, args.clone());
+                    if (rs instanceof CompletableFuture) {
+                        ((CompletableFuture<?>) rs).whenComplete((v, e) -> complete(this, e));
+                    } else {
+                        complete(this, null);
+                    }
+                } catch (InvocationTargetException e) {
+                    complete(this, e.getCause());
+                } catch (Throwable t) {
+                    complete(this, t);
+                }
+            });
+        }
+    }
+
+    /**
+     * 耗时分布, 单位为微秒, 每个2的幂区间分为32段, 误差约3%
+     */
+    static final class Histogram {
+
+        private static final int SUB_BITS = 5;
+
+        private static final int LINEAR = 1 << (SUB_BITS + 1);
+
+        private final AtomicLongArray counts = new AtomicLongArray(LINEAR + (64 - SUB_BITS - 1) * (1 << SUB_BITS));
+
+        private final AtomicLong counter = new AtomicLong();
+
+        private final AtomicLong sum = new AtomicLong();
+
+        private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+        public void record(long nanos) {
+            final long micros = Math.max(0, nanos / 1000);
+            counts.incrementAndGet(index(micros));
+            counter.incrementAndGet();
+            sum.addAndGet(micros);
+            max.accumulate(micros);
+        }
+
+        /**
+         * 记录耗时, 超过期望间隔时补齐这段时间内本应发出的请求的耗时
+         *
+         * @param nanos         耗时
+         * @param intervalNanos 期望间隔, 小于1表示不补齐
+         */
+        public void record(long nanos, long intervalNanos) {
+            record(nanos);
+            if (intervalNanos <= 0) return;
+            for (long missing = nanos - intervalNanos; missing >= intervalNanos; missing -= intervalNanos) {
+                record(missing);
+            }
+        }
+
+        public long getCount() {
+            return counter.get();
+        }
+
+        public void reset() {
+            for (int i = 0; i < counts.length(); i++) {
+                counts.set(i, 0);
+            }
+            counter.set(0);
+            sum.set(0);
+            max.reset();
+        }
+
+        static int index(long micros) {
+            if (micros < LINEAR) return (int) micros;
+            final int exp = 63 - Long.numberOfLeadingZeros(micros);
+            return LINEAR + (exp - SUB_BITS - 1) * (1 << SUB_BITS) + (int) ((micros >>> (exp - SUB_BITS)) & ((1 << SUB_BITS) - 1));
+        }
+
+        //区间的上限
+        static long value(int index) {
+            if (index < LINEAR) return index;
+            final int exp = (index - LINEAR) / (1 << SUB_BITS) + SUB_BITS + 1;
+            final long sub = (index - LINEAR) % (1 << SUB_BITS);
+            return (((1L << SUB_BITS) + sub + 1) << (exp - SUB_BITS)) - 1;
+        }
+
+        /**
+         * 百分位耗时
+         *
+         * @param percent 百分数, 如99.9
+         *
+         * @return 微秒数
+         */
+        public long percentile(double percent) {
+            final long total = counter.get();
+            if (total == 0) return 0;
+            final long rank = Math.max(1, (long) Math.ceil(total * percent / 100));
+            long count = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                count += counts.get(i);
+                if (count >= rank) return Math.min(value(i), max.get());
+            }
+            return max.get();
+        }
+
+        public String format(String title) {
+            final long total = counter.get();
+            return String.format("%-36s %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f", title, total == 0 ? 0 : sum.get() / 1000.0 / total,
+                percentile(50) / 1000.0, percentile(90) / 1000.0, percentile(99) / 1000.0, percentile(99.9) / 1000.0, percentile(99.99) / 1000.0, max.get() / 1000.0);
+        }
+    }
+}
@@ -302,7 +302,9 @@ public abstract class NodeServer {
                     rf.inject(source, self); //
                     if (source instanceof Service) ((Service) source).init(sourceConf);
 
-                    if ((src instanceof WebSocketNodeService) && sncpAddr != null) { //只有WebSocketNodeService的服务才需要给SNCP服务注入CacheMemorySource
+                    final AnyValue sourceProp = sourceConf == null ? null : sourceConf.getAnyValue("properties");
+                    final boolean nearEnabled = (source instanceof CacheNearSource) || (sourceProp != null && sourceProp.getBoolValue("near-enabled", false));
+                    if (((src instanceof WebSocketNodeService) || nearEnabled) && sncpAddr != null) { //WebSocketNodeService与近端缓存的服务才需要给SNCP服务注入CacheSource
                         NodeSncpServer sncpServer = application.findNodeSncpServer(sncpAddr);
                         sncpServer.getSncpServer().addSncpServlet((Service) source);
                         //logger.info("[" + Thread.currentThread().getName() + "] Load Service " + source);
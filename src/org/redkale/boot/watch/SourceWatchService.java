@@ -5,10 +5,12 @@
  */
 package org.redkale.boot.watch;
 
+import java.util.*;
 import javax.annotation.Resource;
 import org.redkale.boot.Application;
 import org.redkale.net.TransportFactory;
-import org.redkale.net.http.RestService;
+import org.redkale.net.http.*;
+import org.redkale.source.*;
 
 /**
  *
@@ -23,4 +25,47 @@ public class SourceWatchService extends AbstractWatchService {
     @Resource
     private TransportFactory transportFactory;
 
+    @RestMapping(name = "sqlmetrics", auth = false, comment = "获取DataSource按Entity、操作类型统计的SQL执行情况")
+    public Map<String, List<DataJdbcMetrics.Item>> sqlMetrics() {
+        final Map<String, List<DataJdbcMetrics.Item>> rs = new LinkedHashMap<>();
+        for (DataSource source : application.getDataSources()) {
+            if (!(source instanceof DataJdbcSource)) continue;
+            DataJdbcMetrics metrics = ((DataJdbcSource) source).getMetrics();
+            if (metrics != null) rs.put(((DataJdbcSource) source).resourceName(), metrics.getItems());
+        }
+        return rs;
+    }
+
+    @RestMapping(name = "poolmetrics", auth = false, comment = "获取DataSource连接池的连接数与获取连接的等待耗时")
+    public Map<String, Map<String, Number>> poolMetrics() {
+        final Map<String, Map<String, Number>> rs = new LinkedHashMap<>();
+        for (DataSource source : application.getDataSources()) {
+            if (!(source instanceof DataJdbcSource)) continue;
+            final DataJdbcSource jdbc = (DataJdbcSource) source;
+            final List<PoolJdbcSource> pools = new ArrayList<>(Arrays.asList(jdbc.getReadPoolJdbcSources()));
+            pools.add(jdbc.getWritePoolJdbcSource());
+            for (int i = 0; i < pools.size(); i++) {
+                final PoolJdbcSource pool = pools.get(i);
+                final Map<String, Number> map = new LinkedHashMap<>();
+                map.put("max", pool.getMaxConns());
+                map.put("using", pool.getUsingCount());
+                map.put("idle", pool.getIdleCount());
+                map.put("waiting", pool.getWaitingCount());
+                map.put("polls", pool.getWaitCount());
+                map.put("avgwait", pool.getAvgWaitMillis());
+                map.put("maxwait", pool.getMaxWaitMillis());
+                rs.put(jdbc.resourceName() + (i == pools.size() - 1 ? ".write" : (".read" + (i == 0 ? "" : i))), map);
+            }
+        }
+        return rs;
+    }
+
+    @RestMapping(name = "resetsqlmetrics", auth = false, comment = "清空DataSource的SQL执行统计")
+    public void resetSqlMetrics() {
+        for (DataSource source : application.getDataSources()) {
+            if (!(source instanceof DataJdbcSource)) continue;
+            DataJdbcMetrics metrics = ((DataJdbcSource) source).getMetrics();
+            if (metrics != null) metrics.reset();
+        }
+    }
 }
@@ -12,6 +12,7 @@ import java.nio.channels.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
+import org.redkale.util.TimingWheel;
 
 /**
  *
@@ -36,6 +37,50 @@ public abstract class AsyncConnection implements AsynchronousByteChannel, AutoCl
     //在线数
     protected AtomicLong livingCounter;
 
+    //Transport借出连接时所属的节点, 归还时统计在途请求数、耗时和熔断
+    Transport.TransportAddress transportAddress;
+
+    //Transport借出连接的时间
+    long polltime;
+
+    //进行中的读写操作的开始时间, 0表示没有进行中的读写, 由TimingWheel检查超时
+    protected volatile long readingtime;
+
+    protected volatile long writingtime;
+
+    protected final long createtime = System.currentTimeMillis();
+
+    //连接最长存活秒数, 小于1表示不限制
+    protected int aliveTimeoutSecond;
+
+    //不为null时读写超时由TimingWheel检查, 不再使用每次读写的超时
+    protected TimingWheel timingWheel;
+
+    private TimingWheel.Timeout idleTimeout;
+
+    //每次聚集写的最大缓冲数和字节数
+    private static final int WRITE_GATHERS = Math.max(1, Integer.getInteger("net.write.gathers", 64));
+
+    private static final long WRITE_GATHER_BYTES = Math.max(1, Integer.getInteger("net.write.gatherbytes", 256 * 1024));
+
+    //offerWrite的出站队列, writeFlushing表示有进行中的写
+    private final ArrayDeque<WriteEntry> writeQueue = new ArrayDeque<>();
+
+    private boolean writeFlushing;
+
+    private final CompletionHandler<Integer, Void> writeHandler = new CompletionHandler<Integer, Void>() {
+
+        @Override
+        public void completed(Integer result, Void attachment) {
+            flushWrite();
+        }
+
+        @Override
+        public void failed(Throwable exc, Void attachment) {
+            failWrite(exc);
+        }
+    };
+
     public final long getLastReadTime() {
         return readtime;
     }
@@ -64,6 +109,147 @@ public abstract class AsyncConnection implements AsynchronousByteChannel, AutoCl
 
     public abstract <A> void write(ByteBuffer[] srcs, int offset, int length, A attachment, CompletionHandler<Integer, ? super A> handler);
 
+    /**
+     * 加入出站队列写入, 上一次写完成后把队列中所有未写完的缓冲合并为一次聚集写  <br>
+     * 每次聚集写最多net.write.gathers个缓冲(默认: 64)、net.write.gatherbytes个字节(默认: 256K, 至少包含一个缓冲) <br>
+     * 缓冲全部写完后才回调handler, result为该次提交的字节数, handler负责回收缓冲; 写失败时队列中所有未完成的都回调failed  <br>
+     * 同一连接上有未完成的offerWrite时不可再直接调用write
+     *
+     * @param <A>        附件类型
+     * @param srcs       缓冲
+     * @param attachment 附件
+     * @param handler    回调
+     */
+    public final <A> void offerWrite(ByteBuffer[] srcs, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        final WriteEntry entry = new WriteEntry(srcs, attachment, handler);
+        synchronized (writeQueue) {
+            writeQueue.add(entry);
+            if (writeFlushing) return; //进行中的写完成后一起写出
+            writeFlushing = true;
+        }
+        flushWrite();
+    }
+
+    public final <A> void offerWrite(ByteBuffer src, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        offerWrite(new ByteBuffer[]{src}, attachment, handler);
+    }
+
+    private void flushWrite() {
+        List<WriteEntry> dones = null;
+        synchronized (writeQueue) {
+            WriteEntry entry;
+            while ((entry = writeQueue.peek()) != null && !entry.hasRemaining()) {
+                if (dones == null) dones = new ArrayList<>();
+                dones.add(writeQueue.poll());
+            }
+        }
+        if (dones != null) { //回调中新提交的写在下面一起写出
+            for (WriteEntry entry : dones) {
+                if (entry.handler != null) entry.handler.completed(entry.count, entry.attachment);
+            }
+        }
+        ByteBuffer[] gathers = null;
+        int length = 0;
+        synchronized (writeQueue) {
+            long bytes = 0;
+            gather:
+            for (WriteEntry entry : writeQueue) {
+                for (ByteBuffer buffer : entry.buffers) {
+                    if (!buffer.hasRemaining()) continue;
+                    if (length > 0 && (length >= WRITE_GATHERS || bytes + buffer.remaining() > WRITE_GATHER_BYTES)) break gather;
+                    if (gathers == null) gathers = new ByteBuffer[Math.min(WRITE_GATHERS, 8)];
+                    if (length == gathers.length) gathers = Arrays.copyOf(gathers, Math.min(WRITE_GATHERS, length * 2));
+                    gathers[length++] = buffer;
+                    bytes += buffer.remaining();
+                }
+            }
+            if (length == 0 && writeQueue.isEmpty()) {
+                writeFlushing = false;
+                return;
+            }
+        }
+        if (length == 0) { //回调期间又加入了空缓冲
+            flushWrite();
+            return;
+        }
+        write(gathers, 0, length, null, writeHandler);
+    }
+
+    private void failWrite(Throwable exc) {
+        final List<WriteEntry> entrys;
+        synchronized (writeQueue) {
+            entrys = new ArrayList<>(writeQueue);
+            writeQueue.clear();
+            writeFlushing = false;
+        }
+        for (WriteEntry entry : entrys) {
+            if (entry.handler != null) entry.handler.failed(exc, entry.attachment);
+        }
+    }
+
+    /**
+     * 由时间轮检查读超时、写超时和存活时间, 超时则关闭连接  <br>
+     * 每个连接在时间轮中只有一个定时任务, 到期时根据readingtime、writingtime计算下一次检查的时间, 读写操作本身不需要添加或取消定时任务
+     *
+     * @param wheel              TimingWheel
+     * @param aliveTimeoutSecond 连接最长存活秒数, 小于1表示不限制
+     */
+    public final void startIdleCheck(TimingWheel wheel, int aliveTimeoutSecond) {
+        this.aliveTimeoutSecond = aliveTimeoutSecond;
+        this.timingWheel = wheel;
+        if (wheel != null) checkIdle();
+    }
+
+    //读写超时秒数变化时调用, 之前没有需要检查的超时则重新开始检查
+    protected final void idleChanged() {
+        if (timingWheel == null) return;
+        synchronized (this) {
+            if (idleTimeout != null) return;
+        }
+        checkIdle();
+    }
+
+    private synchronized void checkIdle() {
+        this.idleTimeout = null;
+        if (!isOpen()) return;
+        final long now = System.currentTimeMillis();
+        long next = Long.MAX_VALUE;
+        final int readTimeout = getReadTimeoutSecond();
+        if (readTimeout > 0) {
+            final long start = readingtime;
+            final long deadline = (start > 0 ? start : now) + readTimeout * 1000L;
+            if (deadline <= now) {
+                dispose();
+                return;
+            }
+            next = Math.min(next, deadline);
+        }
+        final int writeTimeout = getWriteTimeoutSecond();
+        if (writeTimeout > 0) {
+            final long start = writingtime;
+            final long deadline = (start > 0 ? start : now) + writeTimeout * 1000L;
+            if (deadline <= now) {
+                dispose();
+                return;
+            }
+            next = Math.min(next, deadline);
+        }
+        if (aliveTimeoutSecond > 0) {
+            final long deadline = createtime + aliveTimeoutSecond * 1000L;
+            if (deadline <= now) {
+                if (writingtime == 0) { //不中断正在写的响应
+                    dispose();
+                    return;
+                }
+                next = Math.min(next, now + 1000);
+            } else {
+                next = Math.min(next, deadline);
+            }
+        }
+        if (next == Long.MAX_VALUE) return;
+        this.idleTimeout = timingWheel.schedule(this::checkIdle, next - now);
+    }
+
     public void dispose() {//同close， 只是去掉throws IOException
         try {
             this.close();
@@ -73,6 +259,8 @@ public abstract class AsyncConnection implements AsynchronousByteChannel, AutoCl
 
     @Override
     public void close() throws IOException {
+        final TimingWheel.Timeout timeout = this.idleTimeout;
+        if (timeout != null) timeout.cancel();
         if (closedCounter != null) {
             closedCounter.incrementAndGet();
             closedCounter = null;
@@ -500,7 +688,23 @@ public abstract class AsyncConnection implements AsynchronousByteChannel, AutoCl
         @Override
         public <A> void read(ByteBuffer dst, A attachment, CompletionHandler<Integer, ? super A> handler) {
             this.readtime = System.currentTimeMillis();
-            if (readTimeoutSecond > 0) {
+            if (timingWheel != null) {
+                this.readingtime = this.readtime;
+                channel.read(dst, attachment, new CompletionHandler<Integer, A>() {
+
+                    @Override
+                    public void completed(Integer result, A attachment) {
+                        readingtime = 0;
+                        handler.completed(result, attachment);
+                    }
+
+                    @Override
+                    public void failed(Throwable exc, A attachment) {
+                        readingtime = 0;
+                        handler.failed(exc, attachment);
+                    }
+                });
+            } else if (readTimeoutSecond > 0) {
                 channel.read(dst, readTimeoutSecond, TimeUnit.SECONDS, attachment, handler);
             } else {
                 channel.read(dst, attachment, handler);
@@ -510,7 +714,23 @@ public abstract class AsyncConnection implements AsynchronousByteChannel, AutoCl
         @Override
         public <A> void write(ByteBuffer src, A attachment, CompletionHandler<Integer, ? super A> handler) {
             this.writetime = System.currentTimeMillis();
-            if (writeTimeoutSecond > 0) {
+            if (timingWheel != null) {
+                this.writingtime = this.writetime;
+                channel.write(src, attachment, new CompletionHandler<Integer, A>() {
+
+                    @Override
+                    public void completed(Integer result, A attachment) {
+                        writingtime = 0;
+                        handler.completed(result, attachment);
+                    }
+
+                    @Override
+                    public void failed(Throwable exc, A attachment) {
+                        writingtime = 0;
+                        handler.failed(exc, attachment);
+                    }
+                });
+            } else if (writeTimeoutSecond > 0) {
                 channel.write(src, writeTimeoutSecond, TimeUnit.SECONDS, attachment, handler);
             } else {
                 channel.write(src, attachment, handler);
@@ -520,30 +740,39 @@ public abstract class AsyncConnection implements AsynchronousByteChannel, AutoCl
         @Override
         public <A> void write(ByteBuffer[] srcs, int offset, int length, A attachment, final CompletionHandler<Integer, ? super A> handler) {
             this.writetime = System.currentTimeMillis();
-            channel.write(srcs, offset, length, writeTimeoutSecond > 0 ? writeTimeoutSecond : 60, TimeUnit.SECONDS,
-                attachment, new CompletionHandler<Long, A>() {
+            if (timingWheel != null) this.writingtime = this.writetime;
+            final CompletionHandler<Long, A> longHandler = new CompletionHandler<Long, A>() {
 
                 @Override
                 public void completed(Long result, A attachment) {
+                    writingtime = 0;
                     handler.completed(result.intValue(), attachment);
                 }
 
                 @Override
                 public void failed(Throwable exc, A attachment) {
+                    writingtime = 0;
                     handler.failed(exc, attachment);
                 }
 
-            });
+            };
+            if (timingWheel != null) {
+                channel.write(srcs, offset, length, 0, TimeUnit.SECONDS, attachment, longHandler);
+            } else {
+                channel.write(srcs, offset, length, writeTimeoutSecond > 0 ? writeTimeoutSecond : 60, TimeUnit.SECONDS, attachment, longHandler);
+            }
         }
 
         @Override
         public void setReadTimeoutSecond(int readTimeoutSecond) {
             this.readTimeoutSecond = readTimeoutSecond;
+            idleChanged();
         }
 
         @Override
         public void setWriteTimeoutSecond(int writeTimeoutSecond) {
             this.writeTimeoutSecond = writeTimeoutSecond;
+            idleChanged();
         }
 
         @Override
@@ -606,4 +835,317 @@ public abstract class AsyncConnection implements AsynchronousByteChannel, AutoCl
         return new AIOTCPAsyncConnection(ch, addr0, readTimeoutSecond, writeTimeoutSecond);
     }
 
+    /**
+     * 基于Selector事件循环的TCP连接, 读写都在所属的NIOEventLoop线程内完成  <br>
+     * executor为null时CompletionHandler在事件循环线程内回调, 否则提交到executor回调; 读写超时由TimingWheel检查
+     */
+    private static class NIOTCPAsyncConnection extends AsyncConnection implements NIOEventLoop.Selectable {
+
+        private static final CompletionHandler<Integer, CompletableFuture<Integer>> FUTURE_HANDLER = new CompletionHandler<Integer, CompletableFuture<Integer>>() {
+
+            @Override
+            public void completed(Integer result, CompletableFuture<Integer> future) {
+                future.complete(result);
+            }
+
+            @Override
+            public void failed(Throwable exc, CompletableFuture<Integer> future) {
+                future.completeExceptionally(exc);
+            }
+        };
+
+        private int readTimeoutSecond;
+
+        private int writeTimeoutSecond;
+
+        private final SocketChannel channel;
+
+        private final SocketAddress remoteAddress;
+
+        private final NIOEventLoop loop;
+
+        private final Executor executor;
+
+        //以下字段只在事件循环线程内读写
+        private SelectionKey key;
+
+        private ByteBuffer readBuffer;
+
+        private Object readAttachment;
+
+        private CompletionHandler<Integer, Object> readHandler;
+
+        private ByteBuffer[] writeBuffers;
+
+        private int writeOffset;
+
+        private int writeLength;
+
+        private long writeCount;
+
+        private Object writeAttachment;
+
+        private CompletionHandler<Integer, Object> writeHandler;
+
+        public NIOTCPAsyncConnection(final SocketChannel ch, final NIOEventLoop loop, final Executor executor, final int readTimeoutSecond0, final int writeTimeoutSecond0) {
+            this.channel = ch;
+            this.loop = loop;
+            this.executor = executor;
+            this.readTimeoutSecond = readTimeoutSecond0;
+            this.writeTimeoutSecond = writeTimeoutSecond0;
+            SocketAddress addr = null;
+            try {
+                addr = ch.getRemoteAddress();
+            } catch (Exception e) {
+                //do nothing
+            }
+            this.remoteAddress = addr;
+        }
+
+        @Override
+        public <A> void read(ByteBuffer dst, A attachment, CompletionHandler<Integer, ? super A> handler) {
+            this.readtime = System.currentTimeMillis();
+            this.readingtime = this.readtime;
+            runInLoop(() -> {
+                if (readHandler != null) {
+                    callback((CompletionHandler) handler, attachment, null, new ReadPendingException());
+                    return;
+                }
+                this.readBuffer = dst;
+                this.readAttachment = attachment;
+                this.readHandler = (CompletionHandler) handler;
+                doRead();
+            });
+        }
+
+        @Override
+        public <A> void write(ByteBuffer src, A attachment, CompletionHandler<Integer, ? super A> handler) {
+            write(new ByteBuffer[]{src}, 0, 1, attachment, handler);
+        }
+
+        @Override
+        public <A> void write(ByteBuffer[] srcs, int offset, int length, A attachment, CompletionHandler<Integer, ? super A> handler) {
+            this.writetime = System.currentTimeMillis();
+            this.writingtime = this.writetime;
+            runInLoop(() -> {
+                if (writeHandler != null) {
+                    callback((CompletionHandler) handler, attachment, null, new WritePendingException());
+                    return;
+                }
+                this.writeBuffers = srcs;
+                this.writeOffset = offset;
+                this.writeLength = length;
+                this.writeCount = 0;
+                this.writeAttachment = attachment;
+                this.writeHandler = (CompletionHandler) handler;
+                doWrite();
+            });
+        }
+
+        private void runInLoop(Runnable task) {
+            if (loop.inLoop()) {
+                task.run();
+            } else {
+                loop.execute(task);
+            }
+        }
+
+        private void doRead() {
+            try {
+                final int count = channel.read(readBuffer);
+                if (count == 0) {
+                    interest(SelectionKey.OP_READ, true);
+                    return;
+                }
+                interest(SelectionKey.OP_READ, false);
+                finishRead(count, null);
+            } catch (IOException e) {
+                finishRead(null, e);
+            }
+        }
+
+        private void doWrite() {
+            try {
+                while (true) {
+                    final long count = channel.write(writeBuffers, writeOffset, writeLength);
+                    if (count > 0) writeCount += count;
+                    while (writeLength > 0 && !writeBuffers[writeOffset].hasRemaining()) {
+                        writeOffset++;
+                        writeLength--;
+                    }
+                    if (writeLength == 0) break;
+                    if (count == 0) { //Socket发送缓冲区已满, 等待可写
+                        interest(SelectionKey.OP_WRITE, true);
+                        return;
+                    }
+                }
+                interest(SelectionKey.OP_WRITE, false);
+                finishWrite((int) writeCount, null);
+            } catch (IOException e) {
+                finishWrite(null, e);
+            }
+        }
+
+        private void interest(int op, boolean on) throws IOException {
+            if (key == null) {
+                if (!on) return;
+                key = loop.register(channel, op, this);
+                return;
+            }
+            if (!key.isValid()) return;
+            final int ops = key.interestOps();
+            final int newops = on ? (ops | op) : (ops & ~op);
+            if (newops != ops) key.interestOps(newops);
+        }
+
+        private void finishRead(Integer result, Throwable exc) {
+            final CompletionHandler<Integer, Object> handler = this.readHandler;
+            final Object attachment = this.readAttachment;
+            this.readHandler = null;
+            this.readAttachment = null;
+            this.readBuffer = null;
+            this.readingtime = 0;
+            if (handler != null) callback(handler, attachment, result, exc);
+        }
+
+        private void finishWrite(Integer result, Throwable exc) {
+            final CompletionHandler<Integer, Object> handler = this.writeHandler;
+            final Object attachment = this.writeAttachment;
+            this.writeHandler = null;
+            this.writeAttachment = null;
+            this.writeBuffers = null;
+            this.writingtime = 0;
+            if (handler != null) callback(handler, attachment, result, exc);
+        }
+
+        private void callback(CompletionHandler<Integer, Object> handler, Object attachment, Integer result, Throwable exc) {
+            if (executor == null) {
+                if (exc == null) {
+                    handler.completed(result, attachment);
+                } else {
+                    handler.failed(exc, attachment);
+                }
+            } else {
+                executor.execute(() -> {
+                    if (exc == null) {
+                        handler.completed(result, attachment);
+                    } else {
+                        handler.failed(exc, attachment);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void selected(int readyOps) {
+            if ((readyOps & SelectionKey.OP_READ) != 0 && readHandler != null) doRead();
+            if ((readyOps & SelectionKey.OP_WRITE) != 0 && writeHandler != null) doWrite();
+        }
+
+        @Override
+        public void setReadTimeoutSecond(int readTimeoutSecond) {
+            this.readTimeoutSecond = readTimeoutSecond;
+            idleChanged();
+        }
+
+        @Override
+        public void setWriteTimeoutSecond(int writeTimeoutSecond) {
+            this.writeTimeoutSecond = writeTimeoutSecond;
+            idleChanged();
+        }
+
+        @Override
+        public int getReadTimeoutSecond() {
+            return this.readTimeoutSecond;
+        }
+
+        @Override
+        public int getWriteTimeoutSecond() {
+            return this.writeTimeoutSecond;
+        }
+
+        @Override
+        public final SocketAddress getRemoteAddress() {
+            return remoteAddress;
+        }
+
+        @Override
+        public SocketAddress getLocalAddress() {
+            try {
+                return channel.getLocalAddress();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public final Future<Integer> read(ByteBuffer dst) {
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            read(dst, future, FUTURE_HANDLER);
+            return future;
+        }
+
+        @Override
+        public final Future<Integer> write(ByteBuffer src) {
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            write(src, future, FUTURE_HANDLER);
+            return future;
+        }
+
+        @Override
+        public final void close() throws IOException {
+            super.close();
+            channel.close();
+            runInLoop(() -> { //未完成的读写以AsynchronousCloseException失败, 同AIO
+                if (key != null) key.cancel();
+                finishRead(null, new AsynchronousCloseException());
+                finishWrite(null, new AsynchronousCloseException());
+            });
+        }
+
+        @Override
+        public final boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public final boolean isTCP() {
+            return true;
+        }
+
+    }
+
+    static AsyncConnection create(final SocketChannel ch, final NIOEventLoop loop, final Executor executor, final int readTimeoutSecond, final int writeTimeoutSecond) {
+        return new NIOTCPAsyncConnection(ch, loop, executor, readTimeoutSecond, writeTimeoutSecond);
+    }
+
+    private static final class WriteEntry {
+
+        final ByteBuffer[] buffers;
+
+        final Object attachment;
+
+        final CompletionHandler handler;
+
+        final int count;
+
+        public WriteEntry(ByteBuffer[] buffers, Object attachment, CompletionHandler handler) {
+            this.buffers = buffers;
+            this.attachment = attachment;
+            this.handler = handler;
+            int rs = 0;
+            for (ByteBuffer buffer : buffers) {
+                rs += buffer.remaining();
+            }
+            this.count = rs;
+        }
+
+        public boolean hasRemaining() {
+            for (ByteBuffer buffer : buffers) {
+                if (buffer.hasRemaining()) return true;
+            }
+            return false;
+        }
+    }
+
 }
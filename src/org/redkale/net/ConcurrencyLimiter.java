@@ -0,0 +1,188 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.net;
+
+import java.util.concurrent.atomic.*;
+import org.redkale.util.AnyValue;
+
+/**
+ * 自适应并发限制  <br>
+ * 限制Server正在处理的请求数, 超过限制的请求立即拒绝, 限制值根据请求耗时自动调整:
+ * <blockquote><pre>
+ * gradient: 耗时的长期均值与窗口均值之比作为梯度, 耗时升高时按梯度降低限制, 耗时平稳时按sqrt(limit)增加 (默认)
+ * aimd:     窗口内有耗时超过timeout毫秒的请求时限制乘以0.9, 否则加1
+ * </pre></blockquote>
+ * 每个采样窗口(至少100毫秒且至少10个请求)调整一次限制。
+ * 低优先级请求只能使用70%的限制, 普通优先级90%, 高优先级100%, 过载时先拒绝低优先级的请求。
+ * 窗口内正在处理的请求数最大值不足限制的一半时不增加限制, 避免空闲时限制无限增长。
+ *
+ * <p>
+ * 详情见: https://redkale.org
+ *
+ * @author zhangjx
+ */
+public class ConcurrencyLimiter {
+
+    public static final int PRIORITY_LOW = 1;
+
+    public static final int PRIORITY_NORMAL = 2;
+
+    public static final int PRIORITY_HIGH = 3;
+
+    private final boolean aimd;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long timeoutNanos;
+
+    private volatile double limit;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    private final AtomicLong acceptedCounter = new AtomicLong();
+
+    private final AtomicLong rejectedCounter = new AtomicLong();
+
+    private static final long WINDOW_NANOS = 100_000_000L;
+
+    private static final int WINDOW_SAMPLES = 10;
+
+    //当前采样窗口, 只在synchronized内访问
+    private long windowStart = System.nanoTime();
+
+    private int windowCount;
+
+    private long windowSum;
+
+    private int windowMaxInflight;
+
+    private boolean windowTimeout;
+
+    //gradient: 耗时的长期指数移动平均, 纳秒
+    private double longRtt;
+
+    public ConcurrencyLimiter(boolean aimd, int minLimit, int maxLimit, int initLimit, long timeoutMillis) {
+        this.aimd = aimd;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initLimit));
+        this.timeoutNanos = timeoutMillis * 1000_000L;
+    }
+
+    /**
+     * 根据&lt;limiter&gt;节点创建
+     * <blockquote><pre>
+     * &lt;limiter type="gradient" min="8" max="1000" initial="100" timeout="500"/&gt;
+     * </pre></blockquote>
+     *
+     * @param conf 配置, 为null或type="none"时返回null
+     *
+     * @return ConcurrencyLimiter
+     */
+    public static ConcurrencyLimiter create(AnyValue conf) {
+        if (conf == null) return null;
+        final String type = conf.getValue("type", "gradient");
+        if ("none".equalsIgnoreCase(type)) return null;
+        if (!"gradient".equalsIgnoreCase(type) && !"aimd".equalsIgnoreCase(type)) throw new RuntimeException("limiter.type (" + type + ") is illegal");
+        final int max = conf.getIntValue("max", 1000);
+        return new ConcurrencyLimiter("aimd".equalsIgnoreCase(type), conf.getIntValue("min", 8), max,
+            conf.getIntValue("initial", Math.min(max, 100)), conf.getIntValue("timeout", 500));
+    }
+
+    public static int parsePriority(String value) {
+        if ("high".equalsIgnoreCase(value)) return PRIORITY_HIGH;
+        if ("low".equalsIgnoreCase(value)) return PRIORITY_LOW;
+        return PRIORITY_NORMAL;
+    }
+
+    /**
+     * 尝试开始处理一个请求, 成功后必须调用release
+     *
+     * @param priority 优先级
+     *
+     * @return 是否允许处理
+     */
+    public boolean tryAcquire(int priority) {
+        final double rate = priority >= PRIORITY_HIGH ? 1.0 : (priority == PRIORITY_NORMAL ? 0.9 : 0.7);
+        final int max = Math.max(1, (int) (limit * rate));
+        if (inflight.incrementAndGet() > max) {
+            inflight.decrementAndGet();
+            rejectedCounter.incrementAndGet();
+            return false;
+        }
+        acceptedCounter.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 请求处理完成
+     *
+     * @param startNanos tryAcquire成功时的System.nanoTime()
+     */
+    public void release(long startNanos) {
+        final int current = inflight.getAndDecrement();
+        final long now = System.nanoTime();
+        sample(now, now - startNanos, current);
+    }
+
+    //记录一个请求的耗时, 窗口结束时调整限制; 包内可见以便用合成的时间驱动
+    synchronized void sample(long now, long rtt, int current) {
+        windowCount++;
+        windowSum += rtt;
+        if (current > windowMaxInflight) windowMaxInflight = current;
+        if (rtt > timeoutNanos) windowTimeout = true;
+        if (windowCount < WINDOW_SAMPLES || now - windowStart < WINDOW_NANOS) return;
+        final double shortRtt = (double) windowSum / windowCount;
+        final boolean appLimited = windowMaxInflight * 2 < limit;
+        final boolean timeout = windowTimeout;
+        windowStart = now;
+        windowCount = 0;
+        windowSum = 0;
+        windowMaxInflight = 0;
+        windowTimeout = false;
+
+        double newLimit = limit;
+        if (aimd) {
+            if (timeout) {
+                newLimit = limit * 0.9;
+            } else if (!appLimited) {
+                newLimit = limit + 1;
+            }
+        } else {
+            longRtt = longRtt == 0 ? shortRtt : (longRtt * 0.98 + shortRtt * 0.02);
+            if (longRtt > shortRtt * 2) longRtt = longRtt * 0.8 + shortRtt * 0.2; //耗时明显下降后让长期均值尽快跟上
+            if (appLimited) return;
+            //耗时不超过长期均值的1.5倍时梯度为1
+            final double gradient = Math.max(0.5, Math.min(1.0, 1.5 * longRtt / shortRtt));
+            newLimit = limit * 0.8 + (limit * gradient + Math.sqrt(limit)) * 0.2;
+        }
+        this.limit = Math.min(maxLimit, Math.max(minLimit, newLimit));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCounter.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCounter.get();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{type = " + (aimd ? "aimd" : "gradient") + ", limit = " + getLimit() + ", inflight = " + getInflight()
+            + ", accepted = " + getAcceptedCount() + ", rejected = " + getRejectedCount() + "}";
+    }
+}
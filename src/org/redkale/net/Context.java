@@ -41,6 +41,9 @@ public class Context {
     //ByteBuffer对象池
     protected final ObjectPool<ByteBuffer> bufferPool;
 
+    //从ByteBufferAllocator借出ByteBuffer的统计, 由Server设置
+    ByteBufferAllocator.Usage bufferUsage;
+
     //Response对象池
     protected final ObjectPool<Response> responsePool;
 
@@ -117,6 +120,24 @@ public class Context {
         executor.execute(r);
     }
 
+    /**
+     * 是否使用虚拟线程执行Servlet
+     *
+     * @return boolean
+     */
+    public boolean isVirtualThreads() {
+        return executor instanceof VirtualThreadExecutor;
+    }
+
+    //虚拟线程模式下IO回调线程不是虚拟线程时转到虚拟线程内执行, 否则直接执行
+    void runInWorker(Runnable r) {
+        if (executor instanceof VirtualThreadExecutor && WorkThread.currentExecutor() != executor) {
+            executor.execute(r);
+        } else {
+            r.run();
+        }
+    }
+
     public int getBufferCapacity() {
         return bufferCapacity;
     }
@@ -129,14 +150,30 @@ public class Context {
         return bufferPool.get();
     }
 
+    /**
+     * 借出容量不小于minCapacity的ByteBuffer, 大于bufferCapacity的从ByteBufferAllocator的尺寸类中借出
+     *
+     * @param minCapacity 最小容量
+     *
+     * @return ByteBuffer
+     */
+    public ByteBuffer pollBuffer(int minCapacity) {
+        if (minCapacity <= bufferCapacity) return bufferPool.get();
+        return ByteBufferAllocator.root().allocate(ByteBufferAllocator.sizeClass(minCapacity), bufferUsage);
+    }
+
     public void offerBuffer(ByteBuffer buffer) {
-        bufferPool.accept(buffer);
+        if (buffer != null && buffer.capacity() != bufferCapacity) {
+            ByteBufferAllocator.root().free(buffer);
+        } else {
+            bufferPool.accept(buffer);
+        }
     }
 
     public void offerBuffer(ByteBuffer... buffers) {
         if (buffers == null) return;
         for (ByteBuffer buffer : buffers) {
-            bufferPool.accept(buffer);
+            offerBuffer(buffer);
         }
     }
 
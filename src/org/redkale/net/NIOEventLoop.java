@@ -0,0 +1,136 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.net;
+
+import java.io.IOException;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.*;
+
+/**
+ * 基于Selector的事件循环线程  <br>
+ * 每个线程独占一个Selector, 注册在其上的连接的读写都在该线程内完成; 其他线程通过execute提交任务到该线程执行。
+ *
+ * <p>
+ * 详情见: https://redkale.org
+ *
+ * @author zhangjx
+ */
+final class NIOEventLoop extends Thread {
+
+    private static final Logger logger = Logger.getLogger(NIOEventLoop.class.getSimpleName());
+
+    private final Selector selector;
+
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean wakenup = new AtomicBoolean();
+
+    private volatile boolean running = true;
+
+    public NIOEventLoop(String name) throws IOException {
+        super(name);
+        this.setDaemon(true);
+        this.selector = Selector.open();
+    }
+
+    public boolean inLoop() {
+        return Thread.currentThread() == this;
+    }
+
+    public Selector getSelector() {
+        return selector;
+    }
+
+    /**
+     * 提交任务到事件循环线程执行, 任务内不可有阻塞操作
+     *
+     * @param task 任务
+     */
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        if (!inLoop() && wakenup.compareAndSet(false, true)) selector.wakeup();
+    }
+
+    /**
+     * 注册通道, 必须在事件循环线程内调用
+     *
+     * @param channel    通道
+     * @param ops        关注的事件
+     * @param selectable 事件处理
+     *
+     * @return SelectionKey
+     *
+     * @throws ClosedChannelException 通道已关闭
+     */
+    public SelectionKey register(SelectableChannel channel, int ops, Selectable selectable) throws ClosedChannelException {
+        return channel.register(selector, ops, selectable);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                wakenup.set(false);
+                if (tasks.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                final Set<SelectionKey> keys = selector.selectedKeys();
+                for (SelectionKey key : keys) {
+                    if (!key.isValid()) continue;
+                    try {
+                        ((Selectable) key.attachment()).selected(key.readyOps());
+                    } catch (Throwable t) {
+                        logger.log(Level.WARNING, getName() + " handle selected key erroneous", t);
+                    }
+                }
+                keys.clear();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        logger.log(Level.WARNING, getName() + " run task erroneous", t);
+                    }
+                }
+            } catch (Throwable t) {
+                if (running) logger.log(Level.WARNING, getName() + " select erroneous", t);
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (Exception e) {
+            }
+        }
+        try {
+            selector.close();
+        } catch (Exception e) {
+        }
+    }
+
+    public void shutdown() {
+        this.running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * 注册到NIOEventLoop上的事件处理
+     */
+    static interface Selectable {
+
+        /**
+         * 通道有就绪事件, 在事件循环线程内调用
+         *
+         * @param readyOps 就绪的事件
+         */
+        public void selected(int readyOps);
+    }
+}
@@ -72,12 +72,14 @@ public final class PrepareRunner implements Runnable {
 //                    }
                     buffer.flip();
                     response.init(channel);
-                    try {
-                        prepare.prepare(buffer, response.request, response);
-                    } catch (Throwable t) {  //此处不可  context.offerBuffer(buffer); 以免prepare.prepare内部异常导致重复 offerBuffer
-                        context.logger.log(Level.WARNING, "prepare servlet abort, forece to close channel ", t);
-                        response.finish(true);
-                    }
+                    context.runInWorker(() -> {
+                        try {
+                            prepare.prepare(buffer, response.request, response);
+                        } catch (Throwable t) {  //此处不可  context.offerBuffer(buffer); 以免prepare.prepare内部异常导致重复 offerBuffer
+                            context.logger.log(Level.WARNING, "prepare servlet abort, forece to close channel ", t);
+                            response.finish(true);
+                        }
+                    });
                 }
 
                 @Override
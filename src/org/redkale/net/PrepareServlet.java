@@ -47,6 +47,9 @@ public abstract class PrepareServlet<K extends Serializable, C extends Context,
 
     protected Filter<C, R, P> headFilter;
 
+    //并发限制, 为null表示不限制
+    protected ConcurrencyLimiter limiter;
+
     protected void putServlet(S servlet) {
         synchronized (lock1) {
             Set<S> newservlets = new HashSet<>(servlets);
@@ -120,6 +123,7 @@ public abstract class PrepareServlet<K extends Serializable, C extends Context,
     @Override
     @SuppressWarnings("unchecked")
     public void init(C context, AnyValue config) {
+        this.limiter = config == null ? null : ConcurrencyLimiter.create(config.getAnyValue("limiter"));
         synchronized (filters) {
             if (!filters.isEmpty()) {
                 Collections.sort(filters);
@@ -220,9 +224,7 @@ public abstract class PrepareServlet<K extends Serializable, C extends Context,
         } else if (rs == 0) {
             request.offerReadBuffer(buffer);
             request.prepare();
-            response.filter = this.headFilter;
-            response.servlet = this;
-            response.nextEvent();
+            dispatch(request, response);
         } else {
             buffer.clear();
             final AtomicInteger ai = new AtomicInteger(rs);
@@ -238,15 +240,15 @@ public abstract class PrepareServlet<K extends Serializable, C extends Context,
                     } else {
                         request.offerReadBuffer(buffer);
                         request.prepare();
-                        try {
-                            response.filter = PrepareServlet.this.headFilter;
-                            response.servlet = PrepareServlet.this;
-                            response.nextEvent();
-                        } catch (Exception e) {
-                            illRequestCounter.incrementAndGet();
-                            response.finish(true);
-                            request.context.logger.log(Level.WARNING, "prepare servlet abort, forece to close channel ", e);
-                        }
+                        request.context.runInWorker(() -> {
+                            try {
+                                dispatch(request, response);
+                            } catch (Exception e) {
+                                illRequestCounter.incrementAndGet();
+                                response.finish(true);
+                                request.context.logger.log(Level.WARNING, "prepare servlet abort, forece to close channel ", e);
+                            }
+                        });
                     }
                 }
 
@@ -261,6 +263,46 @@ public abstract class PrepareServlet<K extends Serializable, C extends Context,
         }
     }
 
+    private void dispatch(final R request, final P response) throws IOException {
+        final ConcurrencyLimiter lt = this.limiter;
+        if (lt != null) {
+            if (!lt.tryAcquire(limitPriority(request))) {
+                reject(request, response);
+                return;
+            }
+            response.limiter = lt;
+            response.limitStart = System.nanoTime();
+        }
+        response.filter = this.headFilter;
+        response.servlet = this;
+        response.nextEvent();
+    }
+
+    /**
+     * 请求在并发限制中的优先级
+     *
+     * @param request 请求
+     *
+     * @return ConcurrencyLimiter.PRIORITY_XXX
+     */
+    protected int limitPriority(R request) {
+        return ConcurrencyLimiter.PRIORITY_NORMAL;
+    }
+
+    /**
+     * 超过并发限制时拒绝请求, 需尽快结束不可有阻塞操作
+     *
+     * @param request  请求
+     * @param response 响应
+     */
+    protected void reject(R request, P response) {
+        response.finish(true);
+    }
+
+    public ConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
     protected AnyValue getServletConf(Servlet servlet) {
         return servlet._conf;
     }
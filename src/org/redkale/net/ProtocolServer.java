@@ -12,6 +12,8 @@ import java.nio.channels.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import org.redkale.util.*;
 
 /**
  * 协议底层Server
@@ -35,6 +37,12 @@ public abstract class ProtocolServer {
     //最大连接数，小于1表示无限制
     protected int maxconns;
 
+    //连接最长存活秒数，小于1表示无限制
+    protected int aliveTimeoutSecond;
+
+    //TCP连接的读写超时和存活时间由时间轮统一检查
+    protected TimingWheel timingWheel;
+
     public abstract void open() throws IOException;
 
     public abstract void bind(SocketAddress local, int backlog) throws IOException;
@@ -49,6 +57,15 @@ public abstract class ProtocolServer {
         this.maxconns = maxconns;
     }
 
+    public void setAliveTimeoutSecond(int aliveTimeoutSecond) {
+        this.aliveTimeoutSecond = aliveTimeoutSecond;
+    }
+
+    protected static TimingWheel createTimingWheel(Context context) {
+        final int port = context.getServerAddress() == null ? 0 : context.getServerAddress().getPort();
+        return new TimingWheel("Redkale-TimingWheel-" + port + "-Thread", 100, 512);
+    }
+
     public abstract void close() throws IOException;
 
     public abstract AsynchronousChannelGroup getChannelGroup();
@@ -72,6 +89,33 @@ public abstract class ProtocolServer {
         throw new RuntimeException("ProtocolServer not support protocol " + protocol);
     }
 
+    /**
+     * 根据Server的配置创建ProtocolServer, netmode="nio"时使用基于Selector的事件循环
+     * <blockquote><pre>
+     * netmode:    IO模式, TCP: aio(AsynchronousChannelGroup, 默认)、nio(Selector事件循环); UDP: bio(单线程阻塞接收, 默认)、nio(多个非阻塞接收线程)
+     * eventloops: nio模式下事件循环线程数, 默认: CPU核数; UDP需要JDK支持SO_REUSEPORT才能多个线程接收
+     * inline:     TCP的nio模式下是否在事件循环线程内直接执行Servlet, 只适用于无阻塞操作的轻量Servlet, 默认: false
+     * udppeers:   UDP的nio模式下每个接收线程按对端地址复用的连接数, 默认: 4096
+     * </pre></blockquote>
+     *
+     * @param protocol 协议
+     * @param context  Context
+     * @param config   Server的配置
+     *
+     * @return ProtocolServer
+     */
+    public static ProtocolServer create(String protocol, Context context, AnyValue config) {
+        if ("TCP".equalsIgnoreCase(protocol) && config != null && "nio".equalsIgnoreCase(config.getValue("netmode"))) {
+            final int loops = config.getIntValue("eventloops", Runtime.getRuntime().availableProcessors());
+            return new ProtocolNIOTCPServer(context, Math.max(1, loops), config.getBoolValue("inline", false));
+        }
+        if ("UDP".equalsIgnoreCase(protocol) && config != null && "nio".equalsIgnoreCase(config.getValue("netmode"))) {
+            final int loops = config.getIntValue("eventloops", Runtime.getRuntime().availableProcessors());
+            return new ProtocolNIOUDPServer(context, Math.max(1, loops), Math.max(1, config.getIntValue("udppeers", 4096)));
+        }
+        return create(protocol, context);
+    }
+
     private static final class ProtocolUDPServer extends ProtocolServer {
 
         private boolean running;
@@ -164,6 +208,401 @@ public abstract class ProtocolServer {
         }
     }
 
+    private static final class ProtocolNIOUDPServer extends ProtocolServer {
+
+        private static final SocketOption<Boolean> SO_REUSEPORT = reusePortOption();
+
+        //每次可读事件最多接收的数据包数, 同一批次的数据包在一个工作线程内依次处理
+        private static final int RECEIVE_BATCH = 64;
+
+        private final Context context;
+
+        private final int loopCount;
+
+        private final int maxPeers;
+
+        private final Map<SocketOption, Object> options = new LinkedHashMap<>();
+
+        private DatagramChannel serverChannel;
+
+        private NIOEventLoop[] loops;
+
+        private UDPReceiver[] receivers;
+
+        public ProtocolNIOUDPServer(Context context, int loopCount, int maxPeers) {
+            this.context = context;
+            this.loopCount = loopCount;
+            this.maxPeers = maxPeers;
+        }
+
+        private static SocketOption<Boolean> reusePortOption() {
+            try { //JDK9+才有StandardSocketOptions.SO_REUSEPORT
+                return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+            } catch (Throwable t) {
+                return null;
+            }
+        }
+
+        @Override
+        public void open() throws IOException {
+            this.serverChannel = DatagramChannel.open();
+            this.serverChannel.configureBlocking(false);
+        }
+
+        @Override
+        public void bind(SocketAddress local, int backlog) throws IOException {
+            final boolean reusePort = loopCount > 1 && SO_REUSEPORT != null && serverChannel.supportedOptions().contains(SO_REUSEPORT);
+            if (loopCount > 1 && !reusePort) {
+                context.logger.log(Level.INFO, "UDP SO_REUSEPORT not supported, use one receiver loop instead of " + loopCount);
+            }
+            final DatagramChannel[] channels = new DatagramChannel[reusePort ? loopCount : 1];
+            channels[0] = serverChannel;
+            for (int i = 1; i < channels.length; i++) {
+                channels[i] = DatagramChannel.open();
+                channels[i].configureBlocking(false);
+                for (Map.Entry<SocketOption, Object> en : options.entrySet()) {
+                    channels[i].setOption(en.getKey(), en.getValue());
+                }
+            }
+            final int port = context.getServerAddress() == null ? 0 : context.getServerAddress().getPort();
+            this.loops = new NIOEventLoop[channels.length];
+            this.receivers = new UDPReceiver[channels.length];
+            for (int i = 0; i < channels.length; i++) {
+                if (reusePort) channels[i].setOption(SO_REUSEPORT, true);
+                channels[i].bind(local);
+                loops[i] = new NIOEventLoop("Redkale-UDPEventLoop-" + port + "-" + (i + 1));
+                receivers[i] = new UDPReceiver(loops[i], channels[i]);
+                loops[i].start();
+            }
+        }
+
+        @Override
+        public <T> void setOption(SocketOption<T> name, T value) throws IOException {
+            this.serverChannel.setOption(name, value);
+            this.options.put(name, value);
+        }
+
+        @Override
+        public <T> Set<SocketOption<?>> supportedOptions() {
+            return this.serverChannel.supportedOptions();
+        }
+
+        @Override
+        public void accept() {
+            final CountDownLatch cdl = new CountDownLatch(receivers.length);
+            for (UDPReceiver receiver : receivers) {
+                receiver.loop.execute(() -> {
+                    try {
+                        receiver.key = receiver.loop.register(receiver.channel, SelectionKey.OP_READ, receiver);
+                    } catch (IOException e) {
+                        context.logger.log(Level.SEVERE, DatagramChannel.class.getSimpleName() + " register erroneous", e);
+                    }
+                    cdl.countDown();
+                });
+            }
+            try {
+                cdl.await();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (int i = 0; i < receivers.length; i++) {
+                receivers[i].channel.close();
+                loops[i].shutdown();
+            }
+        }
+
+        @Override
+        public AsynchronousChannelGroup getChannelGroup() {
+            return null;
+        }
+
+        @Override
+        public long getCreateCount() {
+            return -1;
+        }
+
+        @Override
+        public long getClosedCount() {
+            return -1;
+        }
+
+        @Override
+        public long getLivingCount() {
+            return -1;
+        }
+
+        //一个接收通道, 接收和发送都在所属的NIOEventLoop线程内完成
+        private final class UDPReceiver implements NIOEventLoop.Selectable {
+
+            private final NIOEventLoop loop;
+
+            private final DatagramChannel channel;
+
+            //按对端地址复用连接对象, 超过maxPeers时淘汰最久未收到数据的对端
+            private final LinkedHashMap<SocketAddress, NIOUDPAsyncConnection> peers;
+
+            //等待发送的响应, Socket发送缓冲区满时等待可写
+            private final ArrayDeque<SendItem> sendings = new ArrayDeque<>();
+
+            private SelectionKey key;
+
+            private ByteBuffer spare;
+
+            public UDPReceiver(NIOEventLoop loop, DatagramChannel channel) {
+                this.loop = loop;
+                this.channel = channel;
+                this.peers = new LinkedHashMap<SocketAddress, NIOUDPAsyncConnection>(Math.min(maxPeers, 1024), 0.75f, true) {
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<SocketAddress, NIOUDPAsyncConnection> eldest) {
+                        return size() > maxPeers;
+                    }
+                };
+            }
+
+            @Override
+            public void selected(int readyOps) {
+                if ((readyOps & SelectionKey.OP_READ) != 0) receive();
+                if ((readyOps & SelectionKey.OP_WRITE) != 0) flush();
+            }
+
+            private void receive() {
+                PrepareRunner first = null;
+                List<PrepareRunner> batch = null;
+                for (int i = 0; i < RECEIVE_BATCH; i++) {
+                    final ByteBuffer buffer = spare == null ? context.pollBuffer() : spare;
+                    spare = null;
+                    final SocketAddress address;
+                    try {
+                        address = channel.receive(buffer);
+                    } catch (IOException e) {
+                        context.offerBuffer(buffer);
+                        break;
+                    }
+                    if (address == null) {
+                        spare = buffer;
+                        break;
+                    }
+                    buffer.flip();
+                    NIOUDPAsyncConnection conn = peers.get(address);
+                    if (conn == null) {
+                        conn = new NIOUDPAsyncConnection(this, address, context.readTimeoutSecond, context.writeTimeoutSecond);
+                        peers.put(address, conn);
+                    }
+                    conn.readtime = System.currentTimeMillis();
+                    final PrepareRunner runner = new PrepareRunner(context, conn, buffer);
+                    if (first == null) {
+                        first = runner;
+                    } else {
+                        if (batch == null) {
+                            batch = new ArrayList<>();
+                            batch.add(first);
+                        }
+                        batch.add(runner);
+                    }
+                }
+                if (batch != null) {
+                    final List<PrepareRunner> runners = batch;
+                    context.runAsync(() -> {
+                        for (PrepareRunner runner : runners) {
+                            try {
+                                runner.run();
+                            } catch (Throwable t) {
+                                context.logger.log(Level.WARNING, "prepare udp datagram erroneous", t);
+                            }
+                        }
+                    });
+                } else if (first != null) {
+                    context.runAsync(first);
+                }
+            }
+
+            //可在任意线程调用, 同一次唤醒内提交的响应在事件循环线程内依次发送
+            void send(SendItem item) {
+                loop.execute(() -> {
+                    sendings.add(item);
+                    if (sendings.size() == 1) flush();
+                });
+            }
+
+            private void flush() {
+                SendItem item;
+                while ((item = sendings.peek()) != null) {
+                    try {
+                        while (item.index < item.offset + item.length) {
+                            final ByteBuffer buffer = item.buffers[item.index];
+                            if (buffer.hasRemaining()) {
+                                final int count = channel.send(buffer, item.conn.remoteAddress);
+                                if (count == 0) { //Socket发送缓冲区已满, 等待可写
+                                    interestWrite(true);
+                                    return;
+                                }
+                                item.count += count;
+                            }
+                            item.index++;
+                        }
+                    } catch (IOException e) {
+                        sendings.poll();
+                        if (item.handler != null) item.handler.failed(e, item.attachment);
+                        continue;
+                    }
+                    sendings.poll();
+                    item.conn.writetime = System.currentTimeMillis();
+                    if (item.handler != null) item.handler.completed(item.count, item.attachment);
+                }
+                interestWrite(false);
+            }
+
+            private void interestWrite(boolean on) {
+                if (key == null || !key.isValid()) return;
+                final int ops = key.interestOps();
+                final int newops = on ? (ops | SelectionKey.OP_WRITE) : (ops & ~SelectionKey.OP_WRITE);
+                if (newops != ops) key.interestOps(newops);
+            }
+        }
+
+        private static final class SendItem {
+
+            final NIOUDPAsyncConnection conn;
+
+            final ByteBuffer[] buffers;
+
+            final int offset;
+
+            final int length;
+
+            final Object attachment;
+
+            final CompletionHandler<Integer, Object> handler;
+
+            int index;
+
+            int count;
+
+            public SendItem(NIOUDPAsyncConnection conn, ByteBuffer[] buffers, int offset, int length, Object attachment, CompletionHandler<Integer, Object> handler) {
+                this.conn = conn;
+                this.buffers = buffers;
+                this.offset = offset;
+                this.length = length;
+                this.attachment = attachment;
+                this.handler = handler;
+                this.index = offset;
+            }
+        }
+
+        /**
+         * 同一对端复用的UDP连接, 数据由接收线程读取, 每个ByteBuffer作为一个数据包发送;
+         * close不关闭共享的DatagramChannel, 也不清除绑定的属性
+         */
+        private static final class NIOUDPAsyncConnection extends AsyncConnection {
+
+            private final UDPReceiver receiver;
+
+            private final SocketAddress remoteAddress;
+
+            private int readTimeoutSecond;
+
+            private int writeTimeoutSecond;
+
+            public NIOUDPAsyncConnection(UDPReceiver receiver, SocketAddress remoteAddress, int readTimeoutSecond, int writeTimeoutSecond) {
+                this.receiver = receiver;
+                this.remoteAddress = remoteAddress;
+                this.readTimeoutSecond = readTimeoutSecond;
+                this.writeTimeoutSecond = writeTimeoutSecond;
+            }
+
+            @Override
+            public <A> void write(ByteBuffer[] srcs, int offset, int length, A attachment, CompletionHandler<Integer, ? super A> handler) {
+                receiver.send(new SendItem(this, srcs, offset, length, attachment, (CompletionHandler) handler));
+            }
+
+            @Override
+            public <A> void write(ByteBuffer src, A attachment, CompletionHandler<Integer, ? super A> handler) {
+                write(new ByteBuffer[]{src}, 0, 1, attachment, handler);
+            }
+
+            @Override
+            public Future<Integer> write(ByteBuffer src) {
+                final CompletableFuture<Integer> future = new CompletableFuture<>();
+                write(new ByteBuffer[]{src}, 0, 1, future, new CompletionHandler<Integer, CompletableFuture<Integer>>() {
+
+                    @Override
+                    public void completed(Integer result, CompletableFuture<Integer> attachment) {
+                        attachment.complete(result);
+                    }
+
+                    @Override
+                    public void failed(Throwable exc, CompletableFuture<Integer> attachment) {
+                        attachment.completeExceptionally(exc);
+                    }
+                });
+                return future;
+            }
+
+            @Override
+            public <A> void read(ByteBuffer dst, A attachment, CompletionHandler<Integer, ? super A> handler) {
+                if (handler != null) handler.completed(-1, attachment); //数据由接收线程读取
+            }
+
+            @Override
+            public Future<Integer> read(ByteBuffer dst) {
+                return CompletableFuture.completedFuture(-1);
+            }
+
+            @Override
+            public void setReadTimeoutSecond(int readTimeoutSecond) {
+                this.readTimeoutSecond = readTimeoutSecond;
+            }
+
+            @Override
+            public void setWriteTimeoutSecond(int writeTimeoutSecond) {
+                this.writeTimeoutSecond = writeTimeoutSecond;
+            }
+
+            @Override
+            public int getReadTimeoutSecond() {
+                return this.readTimeoutSecond;
+            }
+
+            @Override
+            public int getWriteTimeoutSecond() {
+                return this.writeTimeoutSecond;
+            }
+
+            @Override
+            public SocketAddress getRemoteAddress() {
+                return remoteAddress;
+            }
+
+            @Override
+            public SocketAddress getLocalAddress() {
+                try {
+                    return receiver.channel.getLocalAddress();
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+
+            @Override
+            public boolean isOpen() {
+                return receiver.channel.isOpen();
+            }
+
+            @Override
+            public boolean isTCP() {
+                return false;
+            }
+        }
+    }
+
     private static final class ProtocolTCPServer extends ProtocolServer {
 
         private final Context context;
@@ -178,8 +617,14 @@ public abstract class ProtocolServer {
 
         @Override
         public void open() throws IOException {
-            group = AsynchronousChannelGroup.withCachedThreadPool(context.executor, 1);
+            //虚拟线程模式下IO回调使用平台线程, 读取完请求后再转到虚拟线程执行Servlet
+            group = AsynchronousChannelGroup.withCachedThreadPool(context.isVirtualThreads() ? Executors.newCachedThreadPool((Runnable r) -> {
+                Thread t = new Thread(r, "Redkale-AIOThread-" + (context.getServerAddress() == null ? 0 : context.getServerAddress().getPort()));
+                t.setDaemon(true);
+                return t;
+            }) : context.executor, 1);
             this.serverChannel = AsynchronousServerSocketChannel.open(group);
+            this.timingWheel = createTimingWheel(context);
         }
 
         @Override
@@ -217,6 +662,7 @@ public abstract class ProtocolServer {
                     AsyncConnection conn = AsyncConnection.create(channel, null, context.readTimeoutSecond, context.writeTimeoutSecond);
                     conn.livingCounter = livingCounter;
                     conn.closedCounter = closedCounter;
+                    conn.startIdleCheck(timingWheel, aliveTimeoutSecond);
                     context.runAsync(new PrepareRunner(context, conn, null));
                 }
 
@@ -231,6 +677,7 @@ public abstract class ProtocolServer {
         @Override
         public void close() throws IOException {
             this.serverChannel.close();
+            this.timingWheel.stop();
         }
 
         @Override
@@ -239,4 +686,128 @@ public abstract class ProtocolServer {
         }
     }
 
+    private static final class ProtocolNIOTCPServer extends ProtocolServer {
+
+        private final Context context;
+
+        private final int loopCount;
+
+        private final boolean inline;
+
+        private NIOEventLoop[] loops;
+
+        private int loopIndex;
+
+        private ServerSocketChannel serverChannel;
+
+        public ProtocolNIOTCPServer(Context context, int loopCount, boolean inline) {
+            this.context = context;
+            this.loopCount = loopCount;
+            this.inline = inline;
+        }
+
+        @Override
+        public void open() throws IOException {
+            this.serverChannel = ServerSocketChannel.open();
+            this.serverChannel.configureBlocking(false);
+            this.timingWheel = createTimingWheel(context);
+            this.loops = new NIOEventLoop[loopCount];
+            final int port = context.getServerAddress() == null ? 0 : context.getServerAddress().getPort();
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new NIOEventLoop("Redkale-NIOEventLoop-" + port + "-" + (i + 1));
+                loops[i].start();
+            }
+        }
+
+        @Override
+        public void bind(SocketAddress local, int backlog) throws IOException {
+            this.serverChannel.bind(local, backlog);
+        }
+
+        @Override
+        public <T> void setOption(SocketOption<T> name, T value) throws IOException {
+            this.serverChannel.setOption(name, value);
+        }
+
+        @Override
+        public <T> Set<SocketOption<?>> supportedOptions() {
+            return this.serverChannel.supportedOptions();
+        }
+
+        @Override
+        public void accept() {
+            final NIOEventLoop acceptLoop = loops[0];
+            final CountDownLatch cdl = new CountDownLatch(1);
+            acceptLoop.execute(() -> {
+                try {
+                    acceptLoop.register(serverChannel, SelectionKey.OP_ACCEPT, (int readyOps) -> accept0());
+                } catch (IOException e) {
+                    context.logger.log(Level.SEVERE, ServerSocketChannel.class.getSimpleName() + " register erroneous", e);
+                }
+                cdl.countDown();
+            });
+            try {
+                cdl.await();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        //在loops[0]线程内执行
+        private void accept0() {
+            while (true) {
+                final SocketChannel channel;
+                try {
+                    channel = serverChannel.accept();
+                    if (channel == null) return;
+                } catch (IOException e) {
+                    return;
+                }
+                if (maxconns > 0 && livingCounter.get() >= maxconns) {
+                    try {
+                        channel.close();
+                    } catch (Exception e) {
+                    }
+                    continue;
+                }
+                try {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                } catch (IOException e) {
+                    try {
+                        channel.close();
+                    } catch (Exception ex) {
+                    }
+                    continue;
+                }
+                final NIOEventLoop loop = loops[(loopIndex++ & Integer.MAX_VALUE) % loops.length];
+                createCounter.incrementAndGet();
+                livingCounter.incrementAndGet();
+                AsyncConnection conn = AsyncConnection.create(channel, loop, inline ? null : context.executor, context.readTimeoutSecond, context.writeTimeoutSecond);
+                conn.livingCounter = livingCounter;
+                conn.closedCounter = closedCounter;
+                conn.startIdleCheck(timingWheel, aliveTimeoutSecond);
+                if (inline) {
+                    loop.execute(new PrepareRunner(context, conn, null));
+                } else {
+                    context.runAsync(new PrepareRunner(context, conn, null));
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.serverChannel.close();
+            this.timingWheel.stop();
+            for (NIOEventLoop loop : loops) {
+                loop.shutdown();
+            }
+        }
+
+        @Override
+        public AsynchronousChannelGroup getChannelGroup() {
+            return null;
+        }
+    }
+
 }
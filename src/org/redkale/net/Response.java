@@ -24,6 +24,9 @@ import java.util.logging.Level;
 @SuppressWarnings("unchecked")
 public abstract class Response<C extends Context, R extends Request<C>> {
 
+    //第二个起的body ByteBuffer的容量
+    static final int LARGE_BUFFER_CAPACITY = Integer.getInteger("net.buffer.largecapacity", 64 * 1024);
+
     protected final C context;
 
     protected final R request;
@@ -46,16 +49,17 @@ public abstract class Response<C extends Context, R extends Request<C>> {
 
     private Supplier<ByteBuffer> bodyBufferSupplier;
 
+    //请求占用的并发限制, 回收时释放
+    ConcurrencyLimiter limiter;
+
+    long limitStart;
+
     private final CompletionHandler finishHandler = new CompletionHandler<Integer, ByteBuffer>() {
 
         @Override
         public void completed(Integer result, ByteBuffer attachment) {
-            if (attachment.hasRemaining()) {
-                channel.write(attachment, attachment, this);
-            } else {
-                offerResponseBuffer(attachment);
-                finish();
-            }
+            offerResponseBuffer(attachment);
+            finish();
         }
 
         @Override
@@ -65,14 +69,10 @@ public abstract class Response<C extends Context, R extends Request<C>> {
         }
 
         private void offerResponseBuffer(ByteBuffer attachment) {
-            if (writeHeadBuffer == null) {
-                if (context.bufferPool.getRecyclerPredicate().test(attachment)) {
-                    writeHeadBuffer = attachment;
-                }
-            } else if (writeBodyBuffer == null) {
-                if (context.bufferPool.getRecyclerPredicate().test(attachment)) {
-                    writeBodyBuffer = attachment;
-                }
+            if (writeHeadBuffer == null && context.bufferPool.getRecyclerPredicate().test(attachment)) {
+                writeHeadBuffer = attachment;
+            } else if (writeBodyBuffer == null && context.bufferPool.getRecyclerPredicate().test(attachment)) {
+                writeBodyBuffer = attachment;
             } else {
                 context.offerBuffer(attachment);
             }
@@ -84,19 +84,8 @@ public abstract class Response<C extends Context, R extends Request<C>> {
 
         @Override
         public void completed(final Integer result, final ByteBuffer[] attachments) {
-            int index = -1;
-            for (int i = 0; i < attachments.length; i++) {
-                if (attachments[i].hasRemaining()) {
-                    index = i;
-                    break;
-                }
-            }
-            if (index >= 0) {
-                channel.write(attachments, index, attachments.length - index, attachments, this);
-            } else {
-                offerResponseBuffer(attachments);
-                finish();
-            }
+            offerResponseBuffer(attachments);
+            finish();
         }
 
         @Override
@@ -132,7 +121,7 @@ public abstract class Response<C extends Context, R extends Request<C>> {
         this.writeBodyBuffer = context.pollBuffer();
         this.bodyBufferSupplier = () -> {
             ByteBuffer buffer = writeBodyBuffer;
-            if (buffer == null) return context.pollBuffer();
+            if (buffer == null) return context.pollBuffer(LARGE_BUFFER_CAPACITY); //内容较多时使用更大的ByteBuffer, 减少分段
             writeBodyBuffer = null;
             return buffer;
         };
@@ -169,6 +158,10 @@ public abstract class Response<C extends Context, R extends Request<C>> {
 
     protected boolean recycle() {
         if (!inited) return false;
+        if (limiter != null) {
+            limiter.release(limitStart);
+            limiter = null;
+        }
         boolean keepAlive = request.keepAlive;
         if (recycleListener != null) {
             try {
@@ -183,7 +176,7 @@ public abstract class Response<C extends Context, R extends Request<C>> {
         this.servlet = null;
         request.recycle();
         if (channel != null) {
-            if (keepAlive) {
+            if (keepAlive && channel.isTCP()) { //UDP的数据包由接收线程读取
                 this.context.runAsync(new PrepareRunner(context, channel, null));
             } else {
                 try {
@@ -272,37 +265,34 @@ public abstract class Response<C extends Context, R extends Request<C>> {
 
     public void finish(ByteBuffer buffer) {
         if (!this.inited) return; //避免重复关闭
-        this.channel.write(buffer, buffer, finishHandler);
+        this.channel.offerWrite(buffer, buffer, finishHandler);
     }
 
     public void finish(boolean kill, ByteBuffer buffer) {
         if (!this.inited) return; //避免重复关闭
         if (kill) refuseAlive();
-        this.channel.write(buffer, buffer, finishHandler);
+        this.channel.offerWrite(buffer, buffer, finishHandler);
     }
 
     public void finish(ByteBuffer... buffers) {
         if (!this.inited) return; //避免重复关闭
-        this.channel.write(buffers, buffers, finishHandler2);
+        this.channel.offerWrite(buffers, buffers, finishHandler2);
     }
 
     public void finish(boolean kill, ByteBuffer... buffers) {
         if (!this.inited) return; //避免重复关闭
         if (kill) refuseAlive();
-        this.channel.write(buffers, buffers, finishHandler2);
+        this.channel.offerWrite(buffers, buffers, finishHandler2);
     }
 
+    //通过出站队列写出, 与之前未完成的send合并为一次聚集写, 全部写完后回收缓冲再回调
     protected <A> void send(final ByteBuffer buffer, final A attachment, final CompletionHandler<Integer, A> handler) {
-        this.channel.write(buffer, attachment, new CompletionHandler<Integer, A>() {
+        this.channel.offerWrite(buffer, attachment, new CompletionHandler<Integer, A>() {
 
             @Override
             public void completed(Integer result, A attachment) {
-                if (buffer.hasRemaining()) {
-                    channel.write(buffer, attachment, this);
-                } else {
-                    context.offerBuffer(buffer);
-                    if (handler != null) handler.completed(result, attachment);
-                }
+                context.offerBuffer(buffer);
+                if (handler != null) handler.completed(result, attachment);
             }
 
             @Override
@@ -315,25 +305,14 @@ public abstract class Response<C extends Context, R extends Request<C>> {
     }
 
     protected <A> void send(final ByteBuffer[] buffers, A attachment, final CompletionHandler<Integer, A> handler) {
-        this.channel.write(buffers, attachment, new CompletionHandler<Integer, A>() {
+        this.channel.offerWrite(buffers, attachment, new CompletionHandler<Integer, A>() {
 
             @Override
             public void completed(Integer result, A attachment) {
-                int index = -1;
-                for (int i = 0; i < buffers.length; i++) {
-                    if (buffers[i].hasRemaining()) {
-                        index = i;
-                        break;
-                    }
-                    context.offerBuffer(buffers[i]);
+                for (ByteBuffer buffer : buffers) {
+                    context.offerBuffer(buffer);
                 }
-                if (index == 0) {
-                    channel.write(buffers, attachment, this);
-                } else if (index > 0) {
-                    ByteBuffer[] newattachs = new ByteBuffer[buffers.length - index];
-                    System.arraycopy(buffers, index, newattachs, 0, newattachs.length);
-                    channel.write(newattachs, attachment, this);
-                } else if (handler != null) handler.completed(result, attachment);
+                if (handler != null) handler.completed(result, attachment);
             }
 
             @Override
@@ -90,6 +90,9 @@ public abstract class Server<K extends Serializable, C extends Context, R extend
 
     //最大连接数
     protected int maxconns;
+
+    //连接最长存活秒数
+    protected int aliveTimeoutSecond;
     
     protected Server(long serverStartTime, String protocol, PrepareServlet<K, C, R, P, S> servlet) {
         this.serverStartTime = serverStartTime;
@@ -105,6 +108,7 @@ public abstract class Server<K extends Serializable, C extends Context, R extend
         this.maxconns = config.getIntValue("maxconns", 0);
         this.readTimeoutSecond = config.getIntValue("readTimeoutSecond", 0);
         this.writeTimeoutSecond = config.getIntValue("writeTimeoutSecond", 0);
+        this.aliveTimeoutSecond = config.getIntValue("aliveTimeoutSecond", 0);
         this.backlog = parseLenth(config.getValue("backlog"), 8 * 1024);
         this.maxbody = parseLenth(config.getValue("maxbody"), 64 * 1024);
         int bufCapacity = parseLenth(config.getValue("bufferCapacity"), 8 * 1024);
@@ -117,11 +121,17 @@ public abstract class Server<K extends Serializable, C extends Context, R extend
         final AtomicInteger counter = new AtomicInteger();
         final Format f = createFormat();
         final String n = name;
-        this.executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(threads, (Runnable r) -> {
-            Thread t = new WorkThread(executor, r);
-            t.setName(n + "-ServletThread-" + f.format(counter.incrementAndGet()));
-            return t;
-        });
+        final ThreadFactory virtualFactory = "virtual".equalsIgnoreCase(config.getValue("executor")) ? Utility.virtualThreadFactory(n + "-VirtualThread-") : null;
+        if (virtualFactory != null) {
+            this.executor = new VirtualThreadExecutor(virtualFactory);
+        } else {
+            if ("virtual".equalsIgnoreCase(config.getValue("executor"))) logger.warning(this.name + " executor=virtual not supported by JDK " + System.getProperty("java.version") + ", use threads pool");
+            this.executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(threads, (Runnable r) -> {
+                Thread t = new WorkThread(executor, r);
+                t.setName(n + "-ServletThread-" + f.format(counter.incrementAndGet()));
+                return t;
+            });
+        }
     }
 
     protected static int parseLenth(String value, int defValue) {
@@ -172,7 +182,7 @@ public abstract class Server<K extends Serializable, C extends Context, R extend
 
     public void setThreads(int threads) {
         int oldthreads = this.threads;
-        this.context.executor.setCorePoolSize(threads);
+        if (!this.context.isVirtualThreads()) this.context.executor.setCorePoolSize(threads); //虚拟线程模式下不限制线程数
         this.threads = threads;
         logger.info("[" + Thread.currentThread().getName() + "] " + this.getClass().getSimpleName() + " change threads from " + oldthreads + " to " + threads);
     }
@@ -184,18 +194,20 @@ public abstract class Server<K extends Serializable, C extends Context, R extend
 
     public void start() throws IOException {
         this.context = this.createContext();
+        this.context.bufferUsage = getBufferUsage();
         this.prepare.init(this.context, config);
-        this.serverChannel = ProtocolServer.create(this.protocol, context);
+        this.serverChannel = ProtocolServer.create(this.protocol, context, config);
         this.serverChannel.open();
         if (this.serverChannel.supportedOptions().contains(StandardSocketOptions.TCP_NODELAY)) {
             this.serverChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
         }
         serverChannel.bind(address, backlog);
         serverChannel.setMaxconns(this.maxconns);
+        serverChannel.setAliveTimeoutSecond(this.aliveTimeoutSecond);
         serverChannel.accept(); 
         final String threadName = "[" + Thread.currentThread().getName() + "] ";
         logger.info(threadName + this.getClass().getSimpleName() + ("TCP".equalsIgnoreCase(protocol) ? "" : ("." + protocol)) + " listen: " + address
-            + ", threads: " + threads + ", bufferCapacity: " + bufferCapacity + ", bufferPoolSize: " + bufferPoolSize + ", responsePoolSize: " + responsePoolSize
+            + ", threads: " + (executor instanceof VirtualThreadExecutor ? "virtual" : threads) + ", bufferCapacity: " + bufferCapacity + ", bufferPoolSize: " + bufferPoolSize + ", responsePoolSize: " + responsePoolSize
             + ", started in " + (System.currentTimeMillis() - context.getServerStartTime()) + " ms");
     }
 
@@ -284,6 +296,11 @@ public abstract class Server<K extends Serializable, C extends Context, R extend
         return serverChannel == null ? -1 : serverChannel.getLivingCount();
     }
 
+    //ByteBuffer借出、归还、泄漏数
+    public ByteBufferAllocator.Usage getBufferUsage() {
+        return ByteBufferAllocator.root().usage(name);
+    }
+
     protected Format createFormat() {
         String sf = "0";
         if (this.threads > 10) sf = "00";
@@ -11,6 +11,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import org.redkale.convert.*;
@@ -18,7 +19,9 @@ import org.redkale.convert.json.JsonConvert;
 import org.redkale.util.*;
 
 /**
- * 传输客户端
+ * 传输客户端  <br>
+ * 连接异步建立, 不阻塞调用线程; 每个节点带熔断器: 连续失败net.transport.breaker.failures(默认3)次后熔断,
+ * 熔断net.transport.breaker.openmillis(默认5000)毫秒后放行一个探测请求(半开), 探测成功则恢复, 失败则继续熔断。
  *
  * <p>
  * 详情见: https://redkale.org
@@ -33,6 +36,17 @@ public final class Transport {
 
     protected static final boolean supportTcpNoDelay;
 
+    //建立连接的超时毫秒数
+    protected static final long CONNECT_TIMEOUT_MILLIS = Long.getLong("net.transport.connect.timeoutmillis", 2000);
+
+    //连续失败多少次后熔断
+    protected static final int BREAKER_FAILURES = Integer.getInteger("net.transport.breaker.failures", 3);
+
+    //熔断多少毫秒后进入半开状态
+    protected static final long BREAKER_OPEN_MILLIS = Long.getLong("net.transport.breaker.openmillis", 5000);
+
+    private static final TransportStrategy.AddressStrategy DEFAULT_STRATEGY = new TransportStrategy.WeightedRoundRobinStrategy();
+
     static {
         boolean tcpNoDelay = false;
         try {
@@ -81,6 +95,7 @@ public final class Transport {
         this.subprotocol = subprotocol == null ? "" : subprotocol.trim();
         this.protocol = protocol;
         this.factory = factory;
+        factory.transportReferences.removeIf(ref -> ref.get() == null);
         factory.transportReferences.add(new WeakReference<>(this));
         this.tcp = "TCP".equalsIgnoreCase(protocol);
         this.group = transportChannelGroup;
@@ -96,7 +111,11 @@ public final class Transport {
         if (addresses != null) {
             for (InetSocketAddress addr : addresses) {
                 if (clientAddress != null && clientAddress.equals(addr)) continue;
-                list.add(new TransportAddress(addr));
+                TransportAddress old = null;
+                for (TransportAddress ta : oldAddresses) {
+                    if (addr.equals(ta.address)) old = ta; //保留原有的连接池和熔断状态
+                }
+                list.add(old == null ? createAddress(addr) : old);
             }
         }
         this.transportAddres = list.toArray(new TransportAddress[list.size()]);
@@ -112,12 +131,12 @@ public final class Transport {
         if (addr == null) return false;
         synchronized (this) {
             if (this.transportAddres == null) {
-                this.transportAddres = new TransportAddress[]{new TransportAddress(addr)};
+                this.transportAddres = new TransportAddress[]{createAddress(addr)};
             } else {
                 for (TransportAddress i : this.transportAddres) {
                     if (addr.equals(i.address)) return false;
                 }
-                this.transportAddres = Utility.append(transportAddres, new TransportAddress(addr));
+                this.transportAddres = Utility.append(transportAddres, createAddress(addr));
             }
             return true;
         }
@@ -129,9 +148,18 @@ public final class Transport {
         synchronized (this) {
             this.transportAddres = Utility.remove(transportAddres, new TransportAddress(addr));
         }
+        BlockingQueue<AsyncConnection> queue = connPool.remove(addr);
+        if (queue != null) queue.forEach(c -> c.dispose());
         return true;
     }
 
+    private TransportAddress createAddress(InetSocketAddress addr) {
+        TransportAddress transportAddr = new TransportAddress(addr);
+        transportAddr.weight = factory.getWeight(addr);
+        connPool.put(addr, transportAddr.conns); //心跳通过connPool遍历连接
+        return transportAddr;
+    }
+
     public String getName() {
         return name;
     }
@@ -191,79 +219,140 @@ public final class Transport {
 
     public CompletableFuture<AsyncConnection> pollConnection(SocketAddress addr) {
         if (this.strategy != null) return strategy.pollConnection(addr, this);
-        if (addr == null && this.transportAddres.length == 1) addr = this.transportAddres[0].address;
+        return pollConnection(addr, DEFAULT_STRATEGY);
+    }
+
+    /**
+     * 获取连接, 优先复用连接池中的连接, 否则异步建立连接, 不阻塞调用线程  <br>
+     * addr为null时由selector从未熔断的节点中选择, 建连失败会换其他节点重试; 所有节点都被熔断时返回null
+     *
+     * @param addr     指定的地址, 为null表示由负载均衡策略选择
+     * @param selector 负载均衡策略
+     *
+     * @return 连接CompletableFuture
+     */
+    public CompletableFuture<AsyncConnection> pollConnection(SocketAddress addr, TransportStrategy.AddressStrategy selector) {
+        final TransportAddress[] addrs = this.transportAddres;
+        if (addr == null && addrs.length == 1) addr = addrs[0].address;
         final boolean rand = addr == null;
-        if (rand && this.transportAddres.length < 1) throw new RuntimeException("Transport (" + this.name + ") have no remoteAddress list");
-        try {
-            if (tcp) {
-                AsynchronousSocketChannel channel = null;
-                if (rand) {   //取地址
-                    TransportAddress transportAddr;
-                    boolean tryed = false;
-                    for (int i = 0; i < transportAddres.length; i++) {
-                        transportAddr = transportAddres[i];
-                        addr = transportAddr.address;
-                        if (!transportAddr.enable) continue;
-                        final BlockingQueue<AsyncConnection> queue = transportAddr.conns;
-                        if (!queue.isEmpty()) {
-                            AsyncConnection conn;
-                            while ((conn = queue.poll()) != null) {
-                                if (conn.isOpen()) return CompletableFuture.completedFuture(conn);
-                            }
-                        }
-                        tryed = true;
-                        if (channel == null) {
-                            channel = AsynchronousSocketChannel.open(group);
-                            if (supportTcpNoDelay) channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
-                        }
-                        try {
-                            channel.connect(addr).get(2, TimeUnit.SECONDS);
-                            transportAddr.enable = true;
-                            break;
-                        } catch (Exception iex) {
-                            transportAddr.enable = false;
-                            channel = null;
-                        }
-                    }
-                    if (channel == null && !tryed) {
-                        for (int i = 0; i < transportAddres.length; i++) {
-                            transportAddr = transportAddres[i];
-                            addr = transportAddr.address;
-                            if (channel == null) {
-                                channel = AsynchronousSocketChannel.open(group);
-                                if (supportTcpNoDelay) channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
-                            }
-                            try {
-                                channel.connect(addr).get(2, TimeUnit.SECONDS);
-                                transportAddr.enable = true;
-                                break;
-                            } catch (Exception iex) {
-                                transportAddr.enable = false;
-                                channel = null;
-                            }
-                        }
-                    }
-                } else {
-                    return AsyncConnection.createTCP(group, addr, supportTcpNoDelay, 6, 6);
-                }
-                if (channel == null) return CompletableFuture.completedFuture(null);
-                return CompletableFuture.completedFuture(AsyncConnection.create(channel, addr, 6, 6));
-            } else { // UDP
-                if (rand) addr = this.transportAddres[0].address;
+        if (rand && addrs.length < 1) throw new RuntimeException("Transport (" + this.name + ") have no remoteAddress list");
+        if (!tcp) { // UDP
+            try {
+                if (rand) addr = addrs[0].address;
                 DatagramChannel channel = DatagramChannel.open();
                 channel.configureBlocking(true);
                 channel.connect(addr);
                 return CompletableFuture.completedFuture(AsyncConnection.create(channel, addr, true, 6, 6));
+            } catch (Exception ex) {
+                throw new RuntimeException("transport address = " + addr, ex);
             }
-        } catch (Exception ex) {
-            throw new RuntimeException("transport address = " + addr, ex);
+        }
+        if (rand) return pollConnection(selector, new HashSet<>());
+        TransportAddress transportAddr = null;
+        for (TransportAddress ta : addrs) {
+            if (addr.equals(ta.address)) {
+                transportAddr = ta;
+                break;
+            }
+        }
+        if (transportAddr == null) return connect(addr); //不在节点列表中的地址不复用连接、不熔断
+        if (!transportAddr.tryAcquire(System.currentTimeMillis())) {
+            CompletableFuture<AsyncConnection> future = new CompletableFuture<>();
+            future.completeExceptionally(new RuntimeException("transport address = " + addr + " is broken"));
+            return future;
+        }
+        return pollConnection(transportAddr);
+    }
+
+    private CompletableFuture<AsyncConnection> pollConnection(final TransportStrategy.AddressStrategy selector, final Set<TransportAddress> tryed) {
+        final long now = System.currentTimeMillis();
+        final List<TransportAddress> list = new ArrayList<>();
+        for (TransportAddress ta : this.transportAddres) {
+            if (!tryed.contains(ta) && ta.isAvailable(now)) list.add(ta);
+        }
+        if (list.isEmpty()) return CompletableFuture.completedFuture(null);
+        final TransportAddress transportAddr = selector.select(list.toArray(new TransportAddress[list.size()]));
+        tryed.add(transportAddr);
+        if (!transportAddr.tryAcquire(now)) return pollConnection(selector, tryed); //半开状态的探测请求已被其他调用方占用
+        return pollConnection(transportAddr).handle((conn, exc) -> {
+            if (conn != null) return CompletableFuture.completedFuture(conn);
+            return pollConnection(selector, tryed);
+        }).thenCompose(f -> f);
+    }
+
+    private CompletableFuture<AsyncConnection> pollConnection(final TransportAddress transportAddr) {
+        AsyncConnection conn;
+        while ((conn = transportAddr.conns.poll()) != null) {
+            if (conn.isOpen()) return CompletableFuture.completedFuture(transportAddr.borrow(conn));
+        }
+        return connect(transportAddr.address).whenComplete((c, exc) -> {
+            if (exc != null) transportAddr.markFailure(System.currentTimeMillis());
+        }).thenApply(transportAddr::borrow);
+    }
+
+    //异步建立连接, 超过CONNECT_TIMEOUT_MILLIS毫秒未连上则关闭通道并以InterruptedByTimeoutException失败
+    private CompletableFuture<AsyncConnection> connect(final SocketAddress addr) {
+        final CompletableFuture<AsyncConnection> future = new CompletableFuture<>();
+        try {
+            final AsynchronousSocketChannel channel = AsynchronousSocketChannel.open(group);
+            if (supportTcpNoDelay) channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            final TimingWheel.Timeout timeout = factory.timingWheel.schedule(() -> {
+                if (future.completeExceptionally(new InterruptedByTimeoutException())) closeChannel(channel);
+            }, CONNECT_TIMEOUT_MILLIS);
+            channel.connect(addr, null, new CompletionHandler<Void, Void>() {
+
+                @Override
+                public void completed(Void result, Void attachment) {
+                    timeout.cancel();
+                    final AsyncConnection conn = AsyncConnection.create(channel, addr, 6, 6);
+                    if (!future.complete(conn)) {
+                        closeChannel(channel);
+                        return;
+                    }
+                    conn.startIdleCheck(factory.timingWheel, 0);
+                    factory.schedulePing(Transport.this, conn);
+                }
+
+                @Override
+                public void failed(Throwable exc, Void attachment) {
+                    timeout.cancel();
+                    future.completeExceptionally(exc);
+                    closeChannel(channel);
+                }
+            });
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static void closeChannel(AsynchronousSocketChannel channel) {
+        try {
+            channel.close();
+        } catch (Exception e) {
         }
     }
 
     public void offerConnection(final boolean forceClose, AsyncConnection conn) {
+        offerConnection(forceClose, !forceClose, conn);
+    }
+
+    /**
+     * 归还连接
+     *
+     * @param forceClose 是否关闭连接
+     * @param success    请求是否成功, 失败时不计入耗时并累计熔断的失败次数; 如被限流拒绝时连接可复用但不算成功
+     * @param conn       连接
+     */
+    public void offerConnection(final boolean forceClose, final boolean success, AsyncConnection conn) {
+        final TransportAddress transportAddr = conn.transportAddress;
+        if (transportAddr != null) {
+            conn.transportAddress = null;
+            transportAddr.release(conn, success);
+        }
         if (!forceClose && conn.isTCP()) {
             if (conn.isOpen()) {
-                BlockingQueue<AsyncConnection> queue = connPool.get(conn.getRemoteAddress());
+                BlockingQueue<AsyncConnection> queue = transportAddr == null ? connPool.get(conn.getRemoteAddress()) : transportAddr.conns;
                 if (queue == null) {
                     queue = new ArrayBlockingQueue<>(MAX_POOL_LIMIT);
                     connPool.put(conn.getRemoteAddress(), queue);
@@ -277,7 +366,7 @@ public final class Transport {
 
     public <A> void async(SocketAddress addr, final ByteBuffer buffer, A att, final CompletionHandler<Integer, A> handler) {
         pollConnection(addr).whenComplete((conn, ex) -> {
-            if (ex != null) {
+            if (ex != null || conn == null) {
                 factory.getLogger().log(Level.WARNING, Transport.class.getSimpleName() + " async error", ex);
                 return;
             }
@@ -315,12 +404,39 @@ public final class Transport {
 
     public static class TransportAddress {
 
+        private static final int BREAKER_CLOSED = 0;
+
+        private static final int BREAKER_OPEN = 1;
+
+        private static final int BREAKER_HALFOPEN = 2;
+
         protected InetSocketAddress address;
 
         protected volatile boolean enable;
 
         protected final BlockingQueue<AsyncConnection> conns = new ArrayBlockingQueue<>(MAX_POOL_LIMIT);
 
+        //加权轮询的权重
+        protected int weight = 1;
+
+        //平滑加权轮询的当前权重, 由WeightedRoundRobinStrategy同步修改
+        int currentWeight;
+
+        //在途请求数
+        protected final AtomicInteger inflight = new AtomicInteger();
+
+        //请求耗时的指数移动平均值
+        protected volatile long latencyNanos;
+
+        //熔断状态
+        protected final AtomicInteger breaker = new AtomicInteger(BREAKER_CLOSED);
+
+        //连续失败次数
+        protected final AtomicInteger failures = new AtomicInteger();
+
+        //进入熔断或半开状态的时间
+        protected volatile long breakTime;
+
         public TransportAddress(InetSocketAddress address) {
             this.address = address;
             this.enable = true;
@@ -340,6 +456,69 @@ public final class Transport {
             return enable;
         }
 
+        public int getWeight() {
+            return weight;
+        }
+
+        public int getInflightCount() {
+            return inflight.get();
+        }
+
+        public double getLatencyMillis() {
+            return latencyNanos / 1000_000.0;
+        }
+
+        //未熔断, 或熔断时间已过可以发起探测请求
+        boolean isAvailable(long now) {
+            return breaker.get() == BREAKER_CLOSED || now - breakTime >= BREAKER_OPEN_MILLIS;
+        }
+
+        //获取请求许可, 熔断时间已过时只允许一个调用方进入半开状态发起探测请求; 探测请求迟迟没有结果时再放行一个
+        boolean tryAcquire(long now) {
+            if (breaker.get() == BREAKER_CLOSED) return true;
+            synchronized (this) {
+                if (breaker.get() == BREAKER_CLOSED) return true;
+                if (now - breakTime < BREAKER_OPEN_MILLIS) return false;
+                breaker.set(BREAKER_HALFOPEN);
+                breakTime = now;
+                return true;
+            }
+        }
+
+        AsyncConnection borrow(AsyncConnection conn) {
+            inflight.incrementAndGet();
+            conn.transportAddress = this;
+            conn.polltime = System.nanoTime();
+            return conn;
+        }
+
+        void release(AsyncConnection conn, boolean success) {
+            inflight.decrementAndGet();
+            if (!success) {
+                markFailure(System.currentTimeMillis());
+                return;
+            }
+            final long nanos = System.nanoTime() - conn.polltime;
+            final long old = latencyNanos;
+            latencyNanos = old == 0 ? nanos : (old - (old >> 3) + (nanos >> 3)); //权重1/8
+            failures.set(0);
+            if (breaker.get() != BREAKER_CLOSED) breaker.set(BREAKER_CLOSED);
+            enable = true;
+        }
+
+        void markFailure(long now) {
+            if (breaker.get() == BREAKER_HALFOPEN) { //探测失败, 重新熔断
+                breakTime = now;
+                breaker.set(BREAKER_OPEN);
+                enable = false;
+                return;
+            }
+            if (failures.incrementAndGet() >= BREAKER_FAILURES && breaker.compareAndSet(BREAKER_CLOSED, BREAKER_OPEN)) {
+                breakTime = now;
+                enable = false;
+            }
+        }
+
         @ConvertColumn(ignore = true)
         public BlockingQueue<AsyncConnection> getConns() {
             return conns;
@@ -58,6 +58,9 @@ public class TransportFactory {
 
     protected final List<WeakReference<Transport>> transportReferences = new CopyOnWriteArrayList<>();
 
+    //节点的权重, 用于加权轮询, 未配置的节点权重为1
+    protected final Map<InetSocketAddress, Integer> weights = new ConcurrentHashMap<>();
+
     //心跳周期， 单位：秒
     protected int pinginterval;
 
@@ -67,8 +70,8 @@ public class TransportFactory {
     //TCP写入超时秒数
     protected int writeTimeoutSecond;
 
-    //ping的定时器
-    private ScheduledThreadPoolExecutor pingScheduler;
+    //检查连接读写超时和心跳的时间轮
+    protected final TimingWheel timingWheel;
 
     //ping的内容
     private ByteBuffer pingBuffer;
@@ -87,6 +90,7 @@ public class TransportFactory {
         this.readTimeoutSecond = readTimeoutSecond;
         this.writeTimeoutSecond = writeTimeoutSecond;
         this.strategy = strategy;
+        this.timingWheel = new TimingWheel("Transport-TimingWheel-Thread", 100, 512);
     }
 
     protected TransportFactory(ExecutorService executor, ObjectPool<ByteBuffer> bufferPool, AsynchronousChannelGroup channelGroup,
@@ -98,19 +102,9 @@ public class TransportFactory {
         if (conf != null) {
             this.pinginterval = conf.getIntValue(NAME_PINGINTERVAL, 0);
         }
-        if (this.pinginterval > 0) {
-            if (this.pingScheduler == null && pingBuffer != null) {
-                this.pingBuffer = pingBuffer.asReadOnlyBuffer();
-                this.pongLength = pongLength;
-                this.pingScheduler = new ScheduledThreadPoolExecutor(1, (Runnable r) -> {
-                    final Thread t = new Thread(r, this.getClass().getSimpleName() + "-TransportFactoryPingTask-Thread");
-                    t.setDaemon(true);
-                    return t;
-                });
-                pingScheduler.scheduleAtFixedRate(() -> {
-                    pings();
-                }, pinginterval, pinginterval, TimeUnit.SECONDS);
-            }
+        if (this.pinginterval > 0 && pingBuffer != null) {
+            this.pingBuffer = pingBuffer.asReadOnlyBuffer();
+            this.pongLength = pongLength;
         }
     }
 
@@ -123,12 +117,7 @@ public class TransportFactory {
     }
 
     public static TransportFactory create(int threads, int bufferPoolSize, int bufferCapacity, int readTimeoutSecond, int writeTimeoutSecond) {
-        final ObjectPool<ByteBuffer> transportPool = new ObjectPool<>(new AtomicLong(), new AtomicLong(), bufferPoolSize,
-            (Object... params) -> ByteBuffer.allocateDirect(bufferCapacity), null, (e) -> {
-                if (e == null || e.isReadOnly() || e.capacity() != bufferCapacity) return false;
-                e.clear();
-                return true;
-            });
+        final ObjectPool<ByteBuffer> transportPool = ByteBufferAllocator.root().createPool("Transport", new AtomicLong(), new AtomicLong(), bufferPoolSize, bufferCapacity);
         final AtomicInteger counter = new AtomicInteger();
         ExecutorService transportExec = Executors.newFixedThreadPool(threads, (Runnable r) -> {
             Thread t = new Thread(r);
@@ -260,6 +249,16 @@ public class TransportFactory {
         return new Transport(groupName, info.protocol, info.subprotocol, this, this.bufferPool, this.channelGroup, sncpAddress, info.addresses, this.strategy);
     }
 
+    public void setWeight(InetSocketAddress addr, int weight) {
+        if (addr == null) return;
+        this.weights.put(addr, Math.max(1, weight));
+    }
+
+    public int getWeight(InetSocketAddress addr) {
+        if (addr == null) return 1;
+        return this.weights.getOrDefault(addr, 1);
+    }
+
     public ExecutorService getExecutor() {
         return executor;
     }
@@ -291,7 +290,7 @@ public class TransportFactory {
     }
 
     public void shutdownNow() {
-        if (this.pingScheduler != null) this.pingScheduler.shutdownNow();
+        this.timingWheel.stop();
         try {
             this.channelGroup.shutdownNow();
         } catch (Exception e) {
@@ -299,71 +298,64 @@ public class TransportFactory {
         }
     }
 
-    private void pings() {
-        long timex = System.currentTimeMillis() - (this.pinginterval < 15 ? this.pinginterval : (this.pinginterval - 3)) * 1000;
-        List<WeakReference> nulllist = new ArrayList<>();
-        for (WeakReference<Transport> ref : transportReferences) {
-            Transport transport = ref.get();
-            if (transport == null) {
-                nulllist.add(ref);
-                continue;
-            }
-            List<BlockingQueue<AsyncConnection>> list = new ArrayList<>(transport.getAsyncConnectionPool().values());
-            for (final BlockingQueue<AsyncConnection> queue : list) {
-                AsyncConnection conn;
-                while ((conn = queue.poll()) != null) {
-                    if (conn.getLastWriteTime() > timex && false) { //最近几秒内已经进行过IO操作
-                        queue.offer(conn);
-                    } else { //超过一定时间的连接需要进行ping处理
-                        ByteBuffer sendBuffer = pingBuffer.duplicate();
-                        final AsyncConnection localconn = conn;
-                        final BlockingQueue<AsyncConnection> localqueue = queue;
-                        localconn.write(sendBuffer, sendBuffer, new CompletionHandler<Integer, ByteBuffer>() {
-                            @Override
-                            public void completed(Integer result, ByteBuffer buffer) {
-                                if (buffer.hasRemaining()) {
-                                    localconn.write(buffer, buffer, this);
-                                    return;
-                                }
-                                ByteBuffer pongBuffer = bufferPool.get();
-                                localconn.read(pongBuffer, pongBuffer, new CompletionHandler<Integer, ByteBuffer>() {
-                                    int counter = 0;
-
-                                    @Override
-                                    public void completed(Integer result, ByteBuffer attachment) {
-                                        if (counter > 3) {
-                                            bufferPool.accept(attachment);
-                                            localconn.dispose();
-                                            return;
-                                        }
-                                        if (pongLength > 0 && attachment.position() < pongLength) {
-                                            counter++;
-                                            localconn.read(pongBuffer, pongBuffer, this);
-                                            return;
-                                        }
-                                        bufferPool.accept(attachment);
-                                        localqueue.offer(localconn);
-                                    }
-
-                                    @Override
-                                    public void failed(Throwable exc, ByteBuffer attachment) {
-                                        localconn.dispose();
-                                    }
-                                });
-                            }
-
-                            @Override
-                            public void failed(Throwable exc, ByteBuffer buffer) {
-                                localconn.dispose();
-                            }
-                        });
-                    }
+    //连接空闲超过pinginterval秒且在连接池中时发送心跳, 每个连接在时间轮中只有一个检查任务
+    void schedulePing(final Transport transport, final AsyncConnection conn) {
+        if (this.pinginterval < 1 || this.pingBuffer == null) return;
+        timingWheel.schedule(() -> checkPing(transport, conn), this.pinginterval * 1000L);
+    }
+
+    private void checkPing(final Transport transport, final AsyncConnection conn) {
+        if (!conn.isOpen()) return;
+        final long interval = this.pinginterval * 1000L;
+        final long idle = System.currentTimeMillis() - Math.max(conn.getLastReadTime(), conn.getLastWriteTime());
+        if (idle < interval) { //最近有过IO操作
+            timingWheel.schedule(() -> checkPing(transport, conn), interval - idle);
+            return;
+        }
+        timingWheel.schedule(() -> checkPing(transport, conn), interval);
+        final BlockingQueue<AsyncConnection> queue = transport.getAsyncConnectionPool().get(conn.getRemoteAddress());
+        if (queue == null || !queue.remove(conn)) return; //正在使用中
+        ByteBuffer sendBuffer = pingBuffer.duplicate();
+        conn.write(sendBuffer, sendBuffer, new CompletionHandler<Integer, ByteBuffer>() {
+            @Override
+            public void completed(Integer result, ByteBuffer buffer) {
+                if (buffer.hasRemaining()) {
+                    conn.write(buffer, buffer, this);
+                    return;
                 }
+                ByteBuffer pongBuffer = bufferPool.get();
+                conn.read(pongBuffer, pongBuffer, new CompletionHandler<Integer, ByteBuffer>() {
+                    int counter = 0;
+
+                    @Override
+                    public void completed(Integer result, ByteBuffer attachment) {
+                        if (counter > 3) {
+                            bufferPool.accept(attachment);
+                            conn.dispose();
+                            return;
+                        }
+                        if (pongLength > 0 && attachment.position() < pongLength) {
+                            counter++;
+                            conn.read(pongBuffer, pongBuffer, this);
+                            return;
+                        }
+                        bufferPool.accept(attachment);
+                        if (!queue.offer(conn)) conn.dispose();
+                    }
+
+                    @Override
+                    public void failed(Throwable exc, ByteBuffer attachment) {
+                        bufferPool.accept(attachment);
+                        conn.dispose();
+                    }
+                });
             }
-        }
-        for (WeakReference ref : nulllist) {
-            transportReferences.remove(ref);
-        }
+
+            @Override
+            public void failed(Throwable exc, ByteBuffer buffer) {
+                conn.dispose();
+            }
+        });
     }
 
     private static boolean checkName(String name) {  //不能含特殊字符
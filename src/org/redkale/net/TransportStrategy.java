@@ -6,10 +6,12 @@
 package org.redkale.net;
 
 import java.net.SocketAddress;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.*;
+import org.redkale.net.Transport.TransportAddress;
 
 /**
- * 远程请求的负载均衡策略
+ * 远程请求的负载均衡策略  <br>
+ * 内置: roundrobin(按节点权重加权轮询, 默认)、leastinflight(在途请求数最少优先)、p2c(随机取两个节点, 按在途请求数和平均耗时选较优的一个)
  *
  * <p>
  * 详情见: https://redkale.org
@@ -19,4 +21,94 @@ import java.util.concurrent.CompletableFuture;
 public interface TransportStrategy {
 
     public CompletableFuture<AsyncConnection> pollConnection(SocketAddress addr, Transport transport);
+
+    public static TransportStrategy create(String name, ClassLoader loader) {
+        if (name == null || name.isEmpty() || "roundrobin".equalsIgnoreCase(name)) return new WeightedRoundRobinStrategy();
+        if ("leastinflight".equalsIgnoreCase(name)) return new LeastInflightStrategy();
+        if ("p2c".equalsIgnoreCase(name)) return new PowerOfTwoChoicesStrategy();
+        try {
+            return (TransportStrategy) (loader == null ? Thread.currentThread().getContextClassLoader() : loader).loadClass(name).newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException("TransportStrategy (" + name + ") create error", e);
+        }
+    }
+
+    /**
+     * 只负责从节点中选择一个, 连接复用、异步建连、熔断和建连失败后的重试由Transport完成
+     */
+    public static abstract class AddressStrategy implements TransportStrategy {
+
+        @Override
+        public CompletableFuture<AsyncConnection> pollConnection(SocketAddress addr, Transport transport) {
+            return transport.pollConnection(addr, this);
+        }
+
+        /**
+         * 选择一个节点
+         *
+         * @param addresses 未被熔断的节点, 至少一个
+         *
+         * @return TransportAddress
+         */
+        public abstract TransportAddress select(TransportAddress[] addresses);
+    }
+
+    /**
+     * 平滑加权轮询, 权重通过&lt;node weight="2"&gt;配置
+     */
+    public static class WeightedRoundRobinStrategy extends AddressStrategy {
+
+        @Override
+        public TransportAddress select(TransportAddress[] addresses) {
+            if (addresses.length == 1) return addresses[0];
+            synchronized (this) {
+                TransportAddress rs = null;
+                int total = 0;
+                for (TransportAddress addr : addresses) {
+                    addr.currentWeight += addr.weight;
+                    total += addr.weight;
+                    if (rs == null || addr.currentWeight > rs.currentWeight) rs = addr;
+                }
+                rs.currentWeight -= total;
+                return rs;
+            }
+        }
+    }
+
+    /**
+     * 在途请求数最少优先
+     */
+    public static class LeastInflightStrategy extends AddressStrategy {
+
+        @Override
+        public TransportAddress select(TransportAddress[] addresses) {
+            final int start = ThreadLocalRandom.current().nextInt(addresses.length); //相同时避免总是选中第一个
+            TransportAddress rs = addresses[start];
+            for (int i = 1; i < addresses.length; i++) {
+                TransportAddress addr = addresses[(start + i) % addresses.length];
+                if (addr.getInflightCount() < rs.getInflightCount()) rs = addr;
+            }
+            return rs;
+        }
+    }
+
+    /**
+     * 随机取两个节点, 选(在途请求数+1)*平均耗时较小的一个
+     */
+    public static class PowerOfTwoChoicesStrategy extends AddressStrategy {
+
+        @Override
+        public TransportAddress select(TransportAddress[] addresses) {
+            if (addresses.length == 1) return addresses[0];
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final int i = random.nextInt(addresses.length);
+            int j = random.nextInt(addresses.length - 1);
+            if (j >= i) j++;
+            return score(addresses[i]) <= score(addresses[j]) ? addresses[i] : addresses[j];
+        }
+
+        private static double score(TransportAddress addr) {
+            return (addr.getInflightCount() + 1) * (addr.getLatencyMillis() + 1.0);
+        }
+    }
 }
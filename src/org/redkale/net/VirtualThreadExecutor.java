@@ -0,0 +1,64 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.net;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 虚拟线程模式的执行器, 每个任务在一个新的虚拟线程内执行  <br>
+ * 继承ThreadPoolExecutor只为兼容Context、Server中的类型, 不使用其线程池和队列。
+ *
+ * <p>
+ * 详情见: https://redkale.org
+ *
+ * @author zhangjx
+ */
+final class VirtualThreadExecutor extends ThreadPoolExecutor {
+
+    private final ThreadFactory factory;
+
+    private final AtomicInteger activeCounter = new AtomicInteger();
+
+    private volatile boolean shutdown;
+
+    public VirtualThreadExecutor(ThreadFactory factory) {
+        super(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        this.factory = factory;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) throw new RejectedExecutionException("VirtualThreadExecutor is shutdown");
+        activeCounter.incrementAndGet();
+        factory.newThread(() -> {
+            WorkThread.VIRTUAL_EXECUTOR.set(this);
+            try {
+                command.run();
+            } finally {
+                activeCounter.decrementAndGet();
+            }
+        }).start();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return activeCounter.get();
+    }
+
+    @Override
+    public void shutdown() {
+        this.shutdown = true;
+        super.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        this.shutdown = true;
+        return super.shutdownNow();
+    }
+}
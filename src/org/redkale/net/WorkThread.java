@@ -17,6 +17,9 @@ import java.util.concurrent.*;
  */
 public class WorkThread extends Thread {
 
+    //虚拟线程模式下虚拟线程所属的执行器, 虚拟线程不能是WorkThread
+    static final ThreadLocal<ExecutorService> VIRTUAL_EXECUTOR = new ThreadLocal<>();
+
     private final ExecutorService executor;
 
     public WorkThread(ExecutorService executor, Runnable runner) {
@@ -32,4 +35,15 @@ public class WorkThread extends Thread {
     public ExecutorService getExecutor() {
         return executor;
     }
+
+    /**
+     * 当前线程所属Server的执行器, 兼容虚拟线程模式
+     *
+     * @return ExecutorService, 不是Server的工作线程时返回null
+     */
+    public static ExecutorService currentExecutor() {
+        final Thread thread = Thread.currentThread();
+        if (thread instanceof WorkThread) return ((WorkThread) thread).getExecutor();
+        return VIRTUAL_EXECUTOR.get();
+    }
 }
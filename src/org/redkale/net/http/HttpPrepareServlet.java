@@ -45,6 +45,10 @@ public class HttpPrepareServlet extends PrepareServlet<String, HttpContext, Http
 
     private BiPredicate<String, String>[] forbidURIPredicates; //禁用的URL的Predicate, 必须与 forbidURIMaps 保持一致
 
+    private Predicate<String>[] priorityPredicates; //并发限制中URL的优先级, 按配置顺序匹配, 与 priorityValues 一一对应
+
+    private int[] priorityValues;
+
     private List<HttpServlet> removeHttpServlet(final Predicate<MappingEntry> predicateEntry, final Predicate<Map.Entry<String, WebSocketServlet>> predicateFilter) {
         List<HttpServlet> servlets = new ArrayList<>();
         synchronized (allMapStrings) {
@@ -198,6 +202,19 @@ public class HttpPrepareServlet extends PrepareServlet<String, HttpContext, Http
     @Override
     public void init(HttpContext context, AnyValue config) {
         super.init(context, config); //必须要执行
+        AnyValue limiterConf = config.getAnyValue("limiter");
+        if (this.limiter != null && limiterConf != null) {
+            //<priority mapping="^/pay/.*" value="high"/>
+            AnyValue[] priorityConfs = limiterConf.getAnyValues("priority");
+            Predicate<String>[] predicates = new Predicate[priorityConfs.length];
+            int[] values = new int[priorityConfs.length];
+            for (int i = 0; i < priorityConfs.length; i++) {
+                predicates[i] = Pattern.compile(priorityConfs[i].getValue("mapping")).asPredicate();
+                values[i] = ConcurrencyLimiter.parsePriority(priorityConfs[i].getValue("value"));
+            }
+            this.priorityPredicates = predicates;
+            this.priorityValues = values;
+        }
         Collection<HttpServlet> servlets = getServlets();
         servlets.forEach(s -> {
             s.preInit(context, getServletConf(s));
@@ -230,6 +247,22 @@ public class HttpPrepareServlet extends PrepareServlet<String, HttpContext, Http
         this.resourceHttpServlet.init(context, resConfig);
     }
 
+    @Override
+    protected int limitPriority(HttpRequest request) {
+        final Predicate<String>[] predicates = this.priorityPredicates;
+        if (predicates == null) return ConcurrencyLimiter.PRIORITY_NORMAL;
+        final String uri = request.getRequestURI();
+        for (int i = 0; i < predicates.length; i++) {
+            if (predicates[i].test(uri)) return priorityValues[i];
+        }
+        return ConcurrencyLimiter.PRIORITY_NORMAL;
+    }
+
+    @Override
+    protected void reject(HttpRequest request, HttpResponse response) {
+        response.finish(503, null);
+    }
+
     @Override
     public void execute(HttpRequest request, HttpResponse response) throws IOException {
         try {
@@ -273,12 +273,7 @@ public class HttpServer extends Server<String, HttpContext, HttpRequest, HttpRes
         AtomicLong cycleBufferCounter = new AtomicLong();
         this.bufferCapacity = Math.max(this.bufferCapacity, 16 * 1024 + 16); //兼容 HTTP 2.0;
         final int rcapacity = this.bufferCapacity;
-        ObjectPool<ByteBuffer> bufferPool = new ObjectPool<>(createBufferCounter, cycleBufferCounter, this.bufferPoolSize,
-            (Object... params) -> ByteBuffer.allocateDirect(rcapacity), null, (e) -> {
-                if (e == null || e.isReadOnly() || e.capacity() != rcapacity) return false;
-                e.clear();
-                return true;
-            });
+        ObjectPool<ByteBuffer> bufferPool = ByteBufferAllocator.root().createPool(this.name, createBufferCounter, cycleBufferCounter, this.bufferPoolSize, rcapacity);
         final List<String[]> defaultAddHeaders = new ArrayList<>();
         final List<String[]> defaultSetHeaders = new ArrayList<>();
         boolean autoOptions = false;
@@ -14,7 +14,7 @@ import java.nio.channels.*;
 import java.util.*;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.logging.*;
 
@@ -40,9 +40,10 @@ class WebSocketRunner implements Runnable {
 
     volatile boolean closed = false;
 
-    private AtomicBoolean writing = new AtomicBoolean();
+    //最多未写完的消息数
+    private static final int MAX_PENDINGS = 1024;
 
-    private final BlockingQueue<QueueEntry> queue = new ArrayBlockingQueue(1024);
+    private final AtomicInteger pendings = new AtomicInteger();
 
     private final BiConsumer<WebSocket, Object> restMessageConsumer;  //主要供RestWebSocket使用
 
@@ -354,70 +355,38 @@ class WebSocketRunner implements Runnable {
         boolean debug = true;
         //System.out.println("推送消息");
         //if (debug) context.getLogger().log(Level.FINEST, "send web socket message:  " + packet);
-        final CompletableFuture<Integer> futureResult = new CompletableFuture<>();
-        if (writing.getAndSet(true)) {
-            queue.add(new QueueEntry(futureResult, packet));
-            return futureResult;
+        if (pendings.incrementAndGet() > MAX_PENDINGS) { //对端接收过慢
+            pendings.decrementAndGet();
+            return CompletableFuture.completedFuture(RETCODE_SENDEXCEPTION);
         }
-        ByteBuffer[] buffers = packet.sendBuffers != null ? packet.duplicateSendBuffers() : packet.encode(this.context.getBufferSupplier());
+        final CompletableFuture<Integer> futureResult = new CompletableFuture<>();
         try {
+            final boolean shared = packet.sendBuffers != null; //共享的sendBuffers由WebSocketEngine在全部发送完成后归还, duplicate不能放入对象池
+            ByteBuffer[] buffers = shared ? packet.duplicateSendBuffers() : packet.encode(this.context.getBufferSupplier());
             this.lastSendTime = System.currentTimeMillis();
-            channel.write(buffers, buffers, new CompletionHandler<Integer, ByteBuffer[]>() {
-
-                private CompletableFuture<Integer> future = futureResult;
+            //连续发送的消息在出站队列中合并为一次聚集写
+            channel.offerWrite(buffers, buffers, new CompletionHandler<Integer, ByteBuffer[]>() {
 
                 @Override
                 public void completed(Integer result, ByteBuffer[] attachments) {
-                    if (attachments == null || closed) {
-                        if (future != null) {
-                            future.complete(RETCODE_WSOCKET_CLOSED);
-                            future = null;
-                            if (attachments != null) {
-                                for (ByteBuffer buf : attachments) {
-                                    context.offerBuffer(buf);
-                                }
-                            }
-                        }
-                        return;
-                    }
-                    try {
-                        int index = -1;
-                        for (int i = 0; i < attachments.length; i++) {
-                            if (attachments[i].hasRemaining()) {
-                                index = i;
-                                break;
-                            }
-                        }
-                        if (index >= 0) {
-                            channel.write(attachments, index, attachments.length - index, attachments, this);
-                            return;
-                        }
-                        if (future != null) {
-                            future.complete(0);
-                            future = null;
-                            if (attachments != null) {
-                                for (ByteBuffer buf : attachments) {
-                                    context.offerBuffer(buf);
-                                }
-                            }
-                        }
-                        QueueEntry entry = queue.poll();
-                        if (entry != null) {
-                            future = entry.future;
-                            ByteBuffer[] buffers = entry.packet.sendBuffers != null ? entry.packet.duplicateSendBuffers() : entry.packet.encode(context.getBufferSupplier());
-                            lastSendTime = System.currentTimeMillis();
-                            channel.write(buffers, buffers, this);
+                    pendings.decrementAndGet();
+                    if (!shared) {
+                        for (ByteBuffer buf : attachments) {
+                            context.offerBuffer(buf);
                         }
-                    } catch (Exception e) {
-                        closeRunner(0);
-                        context.getLogger().log(Level.WARNING, "WebSocket sendMessage abort on rewrite, force to close channel, live " + (System.currentTimeMillis() - webSocket.getCreatetime()) / 1000 + " seconds", e);
                     }
-                    writing.set(false);
+                    futureResult.complete(closed ? RETCODE_WSOCKET_CLOSED : 0);
                 }
 
                 @Override
                 public void failed(Throwable exc, ByteBuffer[] attachments) {
-                    writing.set(false);
+                    pendings.decrementAndGet();
+                    if (!shared) {
+                        for (ByteBuffer buf : attachments) {
+                            context.offerBuffer(buf);
+                        }
+                    }
+                    futureResult.complete(RETCODE_SENDEXCEPTION);
                     closeRunner(0);
                     if (exc != null) {
                         context.getLogger().log(Level.FINE, "WebSocket sendMessage on CompletionHandler failed, force to close channel, live " + (System.currentTimeMillis() - webSocket.getCreatetime()) / 1000 + " seconds", exc);
@@ -425,7 +394,7 @@ class WebSocketRunner implements Runnable {
                 }
             });
         } catch (Exception t) {
-            writing.set(false);
+            pendings.decrementAndGet();
             closeRunner(0);
             context.getLogger().log(Level.FINE, "WebSocket sendMessage abort, force to close channel, live " + (System.currentTimeMillis() - webSocket.getCreatetime()) / 1000 + " seconds", t);
             futureResult.complete(RETCODE_SENDEXCEPTION);
@@ -453,17 +422,4 @@ class WebSocketRunner implements Runnable {
         }
     }
 
-    private static final class QueueEntry {
-
-        public final CompletableFuture<Integer> future;
-
-        public final WebSocketPacket packet;
-
-        public QueueEntry(CompletableFuture<Integer> future, WebSocketPacket packet) {
-            this.future = future;
-            this.packet = packet;
-        }
-
-    }
-
 }
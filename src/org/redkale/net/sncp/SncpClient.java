@@ -420,13 +420,19 @@ public final class SncpClient {
                                 }
                                 return;
                             }
-                            checkResult(seqid, action, buffer);
+                            try {
+                                checkResult(seqid, action, buffer);
+                            } catch (RuntimeException e) { //响应与请求不匹配, 连接上的数据已错乱, 只能关闭
+                                fail(e, true, false);
+                                return;
+                            }
 
                             final int respBodyLength = buffer.getInt();
                             final int retcode = buffer.getInt();
-                            if (retcode != 0) {
-                                logger.log(Level.SEVERE, action.method + " sncp (params: " + convert.convertTo(params) + ") deal error (retcode=" + retcode + ", retinfo=" + SncpResponse.getRetCodeInfo(retcode) + ")");
-                                throw new RuntimeException("remote service(" + action.method + ") deal error (retcode=" + retcode + ", retinfo=" + SncpResponse.getRetCodeInfo(retcode) + ")");
+                            if (retcode != 0) { //响应已完整读取时连接可继续复用; 被限流拒绝不算成功, 避免负载均衡继续偏向该节点
+                                fail(new RuntimeException("remote service(" + action.method + ") deal error (retcode=" + retcode + ", retinfo=" + SncpResponse.getRetCodeInfo(retcode) + ")"),
+                                    respBodyLength != buffer.remaining(), retcode != SncpResponse.RETCODE_OVERLOAD);
+                                return;
                             }
 
                             if (respBodyLength > buffer.remaining()) { // 数据不全，需要继续读取
@@ -466,6 +472,18 @@ public final class SncpClient {
                             }
                         }
 
+                        //结束请求并归还连接, 保证TransportAddress的在途请求数被扣减
+                        private void fail(Throwable exc, boolean forceClose, boolean success) {
+                            logger.log(Level.SEVERE, action.method + " sncp (params: " + convert.convertTo(params) + ") remote error", exc);
+                            future.completeExceptionally(exc);
+                            transport.offerBuffer(buffer);
+                            transport.offerConnection(forceClose, success, conn);
+                            if (handler != null) {
+                                final Object handlerAttach = action.handlerAttachParamIndex >= 0 ? params[action.handlerAttachParamIndex] : null;
+                                handler.failed(exc, handlerAttach);
+                            }
+                        }
+
                         @Override
                         public void failed(Throwable exc, Void attachment2) {
                             logger.log(Level.SEVERE, action.method + " sncp (params: " + convert.convertTo(params) + ") remote read exec failed", exc);
@@ -483,8 +501,13 @@ public final class SncpClient {
                 @Override
                 public void failed(Throwable exc, ByteBuffer[] attachment) {
                     logger.log(Level.SEVERE, action.method + " sncp (params: " + convert.convertTo(params) + ") remote write exec failed", exc);
+                    future.completeExceptionally(new RuntimeException(action.method + " sncp remote write failed", exc));
                     transport.offerBuffer(buffer);
                     transport.offerConnection(true, conn);
+                    if (handler != null) {
+                        final Object handlerAttach = action.handlerAttachParamIndex >= 0 ? params[action.handlerAttachParamIndex] : null;
+                        handler.failed(exc, handlerAttach);
+                    }
                 }
             });
             return future;
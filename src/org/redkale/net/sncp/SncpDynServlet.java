@@ -587,9 +587,16 @@ public final class SncpDynServlet extends SncpServlet {
             try {
                 SncpServletAction instance = (SncpServletAction) newClazz.newInstance();
                 instance.method = method;
-                java.lang.reflect.Type[] ptypes = method.getGenericParameterTypes();
+                java.lang.reflect.Method gmethod = method; //动态类中重载的方法(如RpcMultiRun)没有泛型信息, 需从父类中获取
+                if (method.getDeclaringClass().getAnnotation(SncpDyn.class) != null) {
+                    try {
+                        gmethod = method.getDeclaringClass().getSuperclass().getMethod(method.getName(), method.getParameterTypes());
+                    } catch (NoSuchMethodException e) {
+                    }
+                }
+                java.lang.reflect.Type[] ptypes = gmethod.getGenericParameterTypes();
                 java.lang.reflect.Type[] types = new java.lang.reflect.Type[ptypes.length + 1];
-                java.lang.reflect.Type rt = method.getGenericReturnType();
+                java.lang.reflect.Type rt = gmethod.getGenericReturnType();
                 if (rt instanceof TypeVariable) {
                     TypeVariable tv = (TypeVariable) rt;
                     if (tv.getBounds().length == 1) rt = tv.getBounds()[0];
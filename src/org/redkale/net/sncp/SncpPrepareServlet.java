@@ -5,7 +5,7 @@
  */
 package org.redkale.net.sncp;
 
-import org.redkale.net.PrepareServlet;
+import org.redkale.net.*;
 import org.redkale.util.AnyValue;
 import java.io.IOException;
 import org.redkale.service.Service;
@@ -64,6 +64,16 @@ public class SncpPrepareServlet extends PrepareServlet<DLong, SncpContext, SncpR
         getServlets().forEach(s -> s.destroy(context, getServletConf(s)));
     }
 
+    @Override
+    protected int limitPriority(SncpRequest request) {
+        return request.isPing() ? ConcurrencyLimiter.PRIORITY_HIGH : ConcurrencyLimiter.PRIORITY_NORMAL; //过载时仍响应心跳
+    }
+
+    @Override
+    protected void reject(SncpRequest request, SncpResponse response) {
+        response.finish(SncpResponse.RETCODE_OVERLOAD, null);
+    }
+
     @Override
     public void execute(SncpRequest request, SncpResponse response) throws IOException {
         if (request.isPing()) {
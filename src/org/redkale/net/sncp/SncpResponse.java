@@ -25,6 +25,8 @@ public final class SncpResponse extends Response<SncpContext, SncpRequest> {
 
     public static final int RETCODE_ILLSERVICEVER = (1 << 11); //无效serviceversion
 
+    public static final int RETCODE_OVERLOAD = (1 << 12); //超过并发限制
+
     public static final int RETCODE_ILLACTIONID = (1 << 15); //无效actionid
 
     public static final int RETCODE_THROWEXCEPTION = (1 << 30); //内部异常
@@ -40,6 +42,7 @@ public final class SncpResponse extends Response<SncpContext, SncpRequest> {
     public static String getRetCodeInfo(int retcode) {
         if (retcode == RETCODE_ILLSERVICEID) return "serviceid is invalid";
         if (retcode == RETCODE_ILLSERVICEVER) return "serviceversion is invalid";
+        if (retcode == RETCODE_OVERLOAD) return "server is overloaded";
         if (retcode == RETCODE_ILLACTIONID) return "actionid is invalid";
         if (retcode == RETCODE_THROWEXCEPTION) return "Inner exception";
         return null;
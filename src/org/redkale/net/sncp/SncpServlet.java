@@ -47,11 +47,8 @@ public abstract class SncpServlet extends Servlet<SncpContext, SncpRequest, Sncp
     public abstract DLong getServiceid();
 
     protected ExecutorService getExecutor() {
-        Thread thread = Thread.currentThread();
-        if (thread instanceof WorkThread) {
-            return ((WorkThread) thread).getExecutor();
-        }
-        return ForkJoinPool.commonPool();
+        ExecutorService executor = WorkThread.currentExecutor();
+        return executor == null ? ForkJoinPool.commonPool() : executor;
     }
 
     @Override
@@ -15,19 +15,11 @@ import org.redkale.net.WorkThread;
 public abstract class AbstractService implements Service {
 
     protected void runAsync(Runnable runner) {
-        Thread thread = Thread.currentThread();
-        if (thread instanceof WorkThread) {
-            ((WorkThread) thread).runAsync(runner);
-        } else {
-            ForkJoinPool.commonPool().execute(runner);
-        }
+        getExecutor().execute(runner);
     }
 
     protected ExecutorService getExecutor() {
-        Thread thread = Thread.currentThread();
-        if (thread instanceof WorkThread) {
-            return ((WorkThread) thread).getExecutor();
-        }
-        return ForkJoinPool.commonPool();
+        ExecutorService executor = WorkThread.currentExecutor();
+        return executor == null ? ForkJoinPool.commonPool() : executor;
     }
 }
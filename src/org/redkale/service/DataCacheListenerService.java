@@ -6,12 +6,29 @@
 package org.redkale.service;
 
 import java.io.*;
+import java.lang.reflect.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.*;
+import java.util.zip.*;
 import javax.annotation.*;
+import org.redkale.convert.json.JsonConvert;
 import org.redkale.source.*;
 import org.redkale.util.*;
 
 /**
- * 实现进程间DataSource的缓存数据同步
+ * 实现进程间DataSource的缓存数据同步    <br>
+ * 本地的缓存变更按Entity类和主键合并(同一主键的多次变更只保留最终结果), 每隔batchmillis毫秒打包成一个批次,
+ * 超过1K的批次使用GZIP压缩后广播给其他节点。
+ * 每个批次带有节点ID和递增的序号, 接收方发现序号不连续时重新加载该节点涉及的Entity缓存。
+ * <blockquote><pre>
+ * &lt;service value="org.redkale.service.DataCacheListenerService"&gt;
+ *      &lt;property name="batchmillis" value="20"/&gt;  &lt;!-- 合并窗口毫秒数, 默认20 --&gt;
+ *      &lt;property name="batchmaxsize" value="10000"/&gt;  &lt;!-- 单批次最大变更数, 默认10000 --&gt;
+ * &lt;/service&gt;
+ * </pre></blockquote>
  *
  * <p>
  * 详情见: https://redkale.org
@@ -22,28 +39,271 @@ import org.redkale.util.*;
 @ResourceType(DataCacheListener.class)
 public class DataCacheListenerService implements DataCacheListener, Service {
 
+    private static final String OP_INSERT = "I";
+
+    private static final String OP_UPDATE = "U";
+
+    private static final String OP_DELETE = "D";
+
+    private static final String OP_REPLACE = "R"; //先删除再新增
+
+    private static final int COMPRESS_SIZE = 1024;
+
+    protected final Logger logger = Logger.getLogger(this.getClass().getSimpleName());
+
+    protected final String nodeid = Utility.uuid();
+
     @Resource(name = "$")
     private DataSource source;
 
+    protected long batchMillis = 20;
+
+    protected int batchMaxSize = 10000;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    //待发送的变更, 按Entity类、主键合并
+    private LinkedHashMap<Class, LinkedHashMap<Serializable, Object[]>> pendings = new LinkedHashMap<>();
+
+    private int pendingSize;
+
+    private boolean scheduled;
+
+    private ScheduledThreadPoolExecutor scheduler;
+
+    //接收方: 每个节点最后收到的批次序号
+    private final ConcurrentHashMap<String, Long> sequences = new ConcurrentHashMap<>();
+
+    //接收方: 每个节点同步过的Entity类, 序号不连续时重新加载
+    private final ConcurrentHashMap<String, Set<Class>> nodeClasses = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Class, Attribute> primarys = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Class> classes = new ConcurrentHashMap<>();
+
+    @Override
+    public void init(AnyValue conf) {
+        if (conf != null) {
+            for (AnyValue p : conf.getAnyValues("property")) {
+                if ("batchmillis".equalsIgnoreCase(p.getValue("name"))) this.batchMillis = Long.parseLong(p.getValue("value"));
+                if ("batchmaxsize".equalsIgnoreCase(p.getValue("name"))) this.batchMaxSize = Integer.parseInt(p.getValue("value"));
+            }
+        }
+        if (this.scheduler == null) {
+            this.scheduler = new ScheduledThreadPoolExecutor(1, (Runnable r) -> {
+                final Thread t = new Thread(r, "DataCacheListener-Sync-Thread");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    @Override
+    public void destroy(AnyValue conf) {
+        if (this.scheduler != null) this.scheduler.shutdown();
+        flush();
+    }
+
     @Override
-    @RpcMultiRun(selfrun = false, async = true)
     public <T> int insertCache(Class<T> clazz, T... entitys) {
-        if (!(source instanceof DataCacheListener)) return -2;
-        return ((DataCacheListener) source).insertCache(clazz, entitys);
+        if (entitys.length == 0) return 0;
+        final Attribute<T, Serializable> primary = primary(clazz);
+        for (T entity : entitys) {
+            change(clazz, primary.get(entity), OP_INSERT, entity);
+        }
+        return entitys.length;
     }
 
     @Override
-    @RpcMultiRun(selfrun = false, async = true)
     public <T> int updateCache(Class<T> clazz, T... entitys) {
-        if (!(source instanceof DataCacheListener)) return -2;
-        return ((DataCacheListener) source).updateCache(clazz, entitys);
+        if (entitys.length == 0) return 0;
+        final Attribute<T, Serializable> primary = primary(clazz);
+        for (T entity : entitys) {
+            change(clazz, primary.get(entity), OP_UPDATE, entity);
+        }
+        return entitys.length;
     }
 
     @Override
-    @RpcMultiRun(selfrun = false, async = true)
     public <T> int deleteCache(Class<T> clazz, Serializable... ids) {
+        for (Serializable id : ids) {
+            change(clazz, id, OP_DELETE, null);
+        }
+        return ids.length;
+    }
+
+    @Override
+    @RpcMultiRun(selfrun = false, async = true)
+    public <T> int clearQueryCache(Class<T> clazz) {
+        if (!(source instanceof DataCacheListener)) return -2;
+        return ((DataCacheListener) source).clearQueryCache(clazz);
+    }
+
+    /**
+     * 接收其他节点广播的变更批次
+     *
+     * @param data 批次数据
+     *
+     * @return 应用的变更数
+     */
+    @RpcMultiRun(selfrun = false, async = true)
+    public int syncCache(byte[] data) {
         if (!(source instanceof DataCacheListener)) return -2;
-        return ((DataCacheListener) source).deleteCache(clazz, ids);
+        final String[][] rows = decode(data);
+        final String fromnode = rows[0][0];
+        if (nodeid.equals(fromnode)) return 0; //未启用SNCP时调用的是本地方法
+        final long seq = Long.parseLong(rows[0][1]);
+        final Set<Class> synclasses = nodeClasses.computeIfAbsent(fromnode, n -> new CopyOnWriteArraySet<>());
+        final Long last = sequences.put(fromnode, seq);
+        final DataCacheListener listener = (DataCacheListener) source;
+        //同一批次内每个主键只有一个变更, 同类同操作的变更合并应用
+        final Map<Class, Map<String, List<Object>>> groups = new LinkedHashMap<>();
+        for (int i = 1; i < rows.length; i++) {
+            final String[] row = rows[i];
+            final Class clazz = loadClass(row[1]);
+            final Object value = JsonConvert.root().convertFrom(OP_DELETE.equals(row[0]) ? primary(clazz).type() : clazz, row[2]);
+            groups.computeIfAbsent(clazz, c -> new HashMap<>()).computeIfAbsent(row[0], o -> new ArrayList<>()).add(value);
+        }
+        for (Map.Entry<Class, Map<String, List<Object>>> en : groups.entrySet()) {
+            final Class clazz = en.getKey();
+            final Map<String, List<Object>> ops = en.getValue();
+            List<Object> list = ops.get(OP_DELETE);
+            if (list != null) listener.deleteCache(clazz, list.toArray(new Serializable[list.size()]));
+            list = ops.get(OP_REPLACE);
+            if (list != null) {
+                final Attribute primary = primary(clazz);
+                final Serializable[] ids = new Serializable[list.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = (Serializable) primary.get(list.get(i));
+                }
+                listener.deleteCache(clazz, ids);
+                listener.insertCache(clazz, list.toArray((Object[]) Array.newInstance(clazz, list.size())));
+            }
+            list = ops.get(OP_INSERT);
+            if (list != null) listener.insertCache(clazz, list.toArray((Object[]) Array.newInstance(clazz, list.size())));
+            list = ops.get(OP_UPDATE);
+            if (list != null) listener.updateCache(clazz, list.toArray((Object[]) Array.newInstance(clazz, list.size())));
+        }
+        synclasses.addAll(groups.keySet());
+        if (last != null && last + 1 != seq) { //丢失或乱序的批次, 重新加载
+            logger.log(Level.WARNING, "DataCacheListener sync from node(" + fromnode + ") expect seq " + (last + 1) + " but " + seq + ", reload " + synclasses);
+            if (source instanceof DataJdbcSource) {
+                for (Class clazz : synclasses) {
+                    ((DataJdbcSource) source).refreshCache(clazz);
+                }
+            }
+        }
+        return rows.length - 1;
+    }
+
+    private void change(Class clazz, Serializable id, String op, Object entity) {
+        boolean full;
+        synchronized (this) {
+            LinkedHashMap<Serializable, Object[]> map = pendings.computeIfAbsent(clazz, c -> new LinkedHashMap<>());
+            Object[] old = map.get(id);
+            if (old == null) {
+                map.put(id, new Object[]{op, entity});
+                pendingSize++;
+            } else if (op == OP_DELETE) {
+                if (old[0] == OP_INSERT) { //新增后删除, 其他节点无需变更
+                    map.remove(id);
+                    pendingSize--;
+                } else {
+                    old[0] = OP_DELETE;
+                    old[1] = null;
+                }
+            } else if (op == OP_INSERT) {
+                old[0] = old[0] == OP_DELETE ? OP_REPLACE : OP_INSERT;
+                old[1] = entity;
+            } else if (old[0] != OP_DELETE) { //OP_UPDATE保留原有的操作类型
+                old[1] = entity;
+            }
+            full = pendingSize >= batchMaxSize;
+            if (!full && !scheduled && scheduler != null) {
+                scheduled = true;
+                scheduler.schedule(this::flush, batchMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full || scheduler == null) {
+            if (scheduler == null) {
+                flush();
+            } else {
+                scheduler.execute(this::flush);
+            }
+        }
+    }
+
+    private void flush() {
+        final byte[] data;
+        synchronized (this) {
+            scheduled = false;
+            if (pendingSize == 0) return;
+            final List<String[]> rows = new ArrayList<>(pendingSize + 1);
+            rows.add(new String[]{nodeid, String.valueOf(sequence.incrementAndGet())});
+            for (Map.Entry<Class, LinkedHashMap<Serializable, Object[]>> en : pendings.entrySet()) {
+                final String className = en.getKey().getName();
+                for (Map.Entry<Serializable, Object[]> item : en.getValue().entrySet()) {
+                    final Object[] change = item.getValue();
+                    rows.add(new String[]{(String) change[0], className, JsonConvert.root().convertTo(change[0] == OP_DELETE ? item.getKey() : change[1])});
+                }
+            }
+            pendings = new LinkedHashMap<>();
+            pendingSize = 0;
+            data = encode(rows.toArray(new String[rows.size()][]));
+        }
+        try {
+            this.syncCache(data); //在同一线程内按序号顺序发出
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "DataCacheListener sync " + data.length + " bytes error", e);
+        }
+    }
+
+    private static byte[] encode(String[][] rows) {
+        final byte[] bs = JsonConvert.root().convertTo(rows).getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(bs.length, COMPRESS_SIZE) + 1);
+        if (bs.length < COMPRESS_SIZE) {
+            out.write(0);
+            out.write(bs, 0, bs.length);
+            return out.toByteArray();
+        }
+        out.write(1);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bs);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String[][] decode(byte[] data) {
+        InputStream in = new ByteArrayInputStream(data, 1, data.length - 1);
+        try {
+            if (data[0] == 1) in = new GZIPInputStream(in);
+            return JsonConvert.root().convertFrom(String[][].class, new String(Utility.readBytesThenClose(in), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Class loadClass(String name) {
+        return classes.computeIfAbsent(name, n -> {
+            try {
+                return Thread.currentThread().getContextClassLoader().loadClass(n);
+            } catch (ClassNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private Attribute primary(Class clazz) {
+        return primarys.computeIfAbsent(clazz, c -> {
+            for (Class cltmp = c; cltmp != Object.class; cltmp = cltmp.getSuperclass()) {
+                for (Field field : cltmp.getDeclaredFields()) {
+                    if (field.getAnnotation(javax.persistence.Id.class) != null) return Attribute.create(cltmp, field);
+                }
+            }
+            throw new RuntimeException(c.getName() + " have no primary column by @javax.persistence.Id");
+        });
     }
 
 }
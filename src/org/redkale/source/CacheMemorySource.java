@@ -7,6 +7,7 @@ package org.redkale.source;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.net.InetSocketAddress;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
@@ -52,10 +53,26 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
 
     private boolean needStore;
 
+    //持久化方式: json(默认, 关闭时整体写入文本文件)、bson(定时快照 + 追加写的操作日志)
+    private String storeMode = "json";
+
+    private CacheMemoryStore store;
+
+    //订阅了失效通知的CacheNearSource节点地址, value为订阅的过期时间点
+    private final ConcurrentHashMap<InetSocketAddress, Long> nearSubscribers = new ConcurrentHashMap<>();
+
+    //待推送给CacheNearSource的已变化key
+    private final Set<String> nearChangedKeys = ConcurrentHashMap.newKeySet();
+
+    private ScheduledFuture nearNotifyFuture;
+
     private Type objValueType;
 
     private ScheduledThreadPoolExecutor scheduler;
 
+    //异步方法的线程池, 与业务请求的线程池隔离
+    private SourceExecutor executor;
+
     private Consumer<CacheEntry> expireHandler;
 
     private final Logger logger = Logger.getLogger(this.getClass().getSimpleName());
@@ -100,6 +117,11 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
                 }
             }
             this.initTransient(prop.getBoolValue("store-ignore", false));
+            this.storeMode = prop.getValue("store-mode", "json").trim().toLowerCase();
+        }
+        if (this.executor == null) {
+            final int threads = prop == null ? Runtime.getRuntime().availableProcessors() : prop.getIntValue("executor-threads", Runtime.getRuntime().availableProcessors());
+            this.executor = new SourceExecutor(self.getClass().getSimpleName(), threads, prop == null ? threads * 1024 : prop.getIntValue("executor-queuesize", threads * 1024));
         }
         String expireHandlerClass = prop == null ? null : prop.getValue("expirehandler");
         if (expireHandlerClass != null) {
@@ -126,6 +148,7 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
                 });
                 for (String key : keys) {
                     CacheEntry entry = container.remove(key);
+                    if (entry != null && !nearSubscribers.isEmpty()) nearChangedKeys.add(key);
                     if (expireHandler != null && entry != null) expireHandler.accept(entry);
                 }
             }, 10, 10, TimeUnit.SECONDS);
@@ -136,7 +159,9 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         boolean datasync = false; //是否从远程同步过数据
         //----------同步数据……-----------
         // TODO
-        if (this.needStore) {
+        if (this.needStore && "bson".equals(this.storeMode)) {
+            initBsonStore(prop);
+        } else if (this.needStore) {
             try {
                 File store = home == null ? new File("cache/" + resourceName()) : new File(home, "cache/" + resourceName());
                 if (!store.isFile() || !store.canRead()) return;
@@ -190,6 +215,71 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         }
     }
 
+    private void initBsonStore(AnyValue prop) {
+        final int snapshotSeconds = prop == null ? 300 : prop.getIntValue("store-snapshot-seconds", 300);
+        final int flushMillis = prop == null ? 1000 : prop.getIntValue("store-flush-millis", 1000);
+        try {
+            CacheMemoryStore cacheStore = new CacheMemoryStore(home == null ? new File("cache") : new File(home, "cache"), resourceName(), objValueType);
+            long s = System.currentTimeMillis();
+            int count = cacheStore.load(container);
+            logger.info(CacheSource.class.getSimpleName() + "(" + resourceName() + ") load " + container.size() + " entrys from " + count + " store records in " + (System.currentTimeMillis() - s) + " ms");
+            this.store = cacheStore;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, CacheSource.class.getSimpleName() + "(" + resourceName() + ") load store file error ", e);
+            return;
+        }
+        final CacheMemoryStore cacheStore = this.store;
+        if (flushMillis > 0) scheduler.scheduleWithFixedDelay(() -> cacheStore.flush(), flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        if (snapshotSeconds > 0) {
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    cacheStore.snapshot(container.values());
+                } catch (Throwable t) {
+                    logger.log(Level.SEVERE, CacheSource.class.getSimpleName() + "(" + resourceName() + ") store snapshot error", t);
+                }
+            }, snapshotSeconds, snapshotSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    //key的值发生了变化(新增、修改、删除)
+    private void changed(final String key) {
+        storeChanged(key);
+        if (!nearSubscribers.isEmpty()) nearChangedKeys.add(key);
+    }
+
+    //增删集合key的一个元素, 操作日志中只记录该元素, 返回集合是否发生了变化
+    private boolean changeItem(final byte op, final CacheEntry entry, final Object item) {
+        final CacheMemoryStore cs = this.store;
+        boolean rs;
+        if (cs != null) {
+            rs = cs.changeItem(op, entry, item);
+        } else if (entry.listValue != null) {
+            rs = op == CacheMemoryStore.OP_ADD_ITEM ? entry.listValue.add(item) : entry.listValue.remove(item);
+        } else if (entry.csetValue != null) {
+            rs = op == CacheMemoryStore.OP_ADD_ITEM ? entry.csetValue.add(item) : entry.csetValue.remove(item);
+        } else {
+            rs = false;
+        }
+        if (rs && !nearSubscribers.isEmpty()) nearChangedKeys.add(entry.key);
+        return rs;
+    }
+
+    //key只刷新了过期时间, 值未变化, 无需通知近端缓存
+    private void expireChanged(final CacheEntry entry) {
+        if (store != null) store.expire(entry);
+    }
+
+    //将key的最新状态写入操作日志, 不存在则记录为删除
+    private void storeChanged(final String key) {
+        if (store == null || key == null) return;
+        CacheEntry entry = container.get(key);
+        if (entry == null) {
+            store.remove(key);
+        } else {
+            store.put(entry);
+        }
+    }
+
     /**
      * public static void main(String[] args) throws Exception {
      * AnyValue.DefaultAnyValue conf = new AnyValue.DefaultAnyValue();
@@ -251,6 +341,15 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         destroy(null);
     }
 
+    @Override
+    protected ExecutorService getExecutor() {
+        return executor == null ? super.getExecutor() : executor;
+    }
+
+    public SourceExecutor getSourceExecutor() {
+        return executor;
+    }
+
     @Override
     public String resourceName() {
         Resource res = this.getClass().getAnnotation(Resource.class);
@@ -259,7 +358,22 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
 
     @Override
     public void destroy(AnyValue conf) {
-        if (scheduler != null) scheduler.shutdownNow();
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            nearNotifyFuture = null;
+        }
+        if (this.store != null) {
+            this.store.snapshot(container.values());
+            this.store.close();
+            this.store = null;
+            container.clear();
+            return;
+        }
         if (!this.needStore || Sncp.isRemote(this) || container.isEmpty()) return;
         try {
             File store = new File(home, "cache/" + resourceName());
@@ -368,6 +482,7 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         if (entry == null || entry.isExpired()) return null;
         entry.lastAccessed = (int) (System.currentTimeMillis() / 1000);
         entry.expireSeconds = expireSeconds;
+        expireChanged(entry);
         if (entry.isListCacheType()) return (V) (entry.listValue == null ? null : new ArrayList(entry.listValue));
         if (entry.isSetCacheType()) return (V) (entry.csetValue == null ? null : new HashSet(entry.csetValue));
         return (V) entry.objectValue;
@@ -381,6 +496,7 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         if (entry == null || entry.isExpired()) return null;
         entry.lastAccessed = (int) (System.currentTimeMillis() / 1000);
         entry.expireSeconds = expireSeconds;
+        expireChanged(entry);
         return (String) entry.objectValue;
     }
 
@@ -392,6 +508,7 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         if (entry == null || entry.isExpired()) return defValue;
         entry.lastAccessed = (int) (System.currentTimeMillis() / 1000);
         entry.expireSeconds = expireSeconds;
+        expireChanged(entry);
         return entry.objectValue == null ? defValue : (entry.objectValue instanceof AtomicLong ? ((AtomicLong) entry.objectValue).get() : (Long) entry.objectValue);
 
     }
@@ -422,6 +539,7 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         if (entry == null) return;
         entry.lastAccessed = (int) (System.currentTimeMillis() / 1000);
         entry.expireSeconds = expireSeconds;
+        expireChanged(entry);
     }
 
     @Override
@@ -441,6 +559,7 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
             entry.objectValue = value;
             entry.lastAccessed = (int) (System.currentTimeMillis() / 1000);
         }
+        changed(key);
     }
 
     @Override
@@ -490,6 +609,7 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
             entry.lastAccessed = (int) (System.currentTimeMillis() / 1000);
             entry.objectValue = value;
         }
+        changed(key);
     }
 
     @Override
@@ -535,6 +655,7 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         CacheEntry entry = container.get(key);
         if (entry == null) return;
         entry.expireSeconds = expireSeconds;
+        expireChanged(entry);
     }
 
     @Override
@@ -548,6 +669,7 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
     public void remove(String key) {
         if (key == null) return;
         container.remove(key);
+        changed(key);
     }
 
     @Override
@@ -565,17 +687,23 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
     @Override
     @RpcMultiRun
     public long incr(final String key, long num) {
+        return incr(CacheEntryType.ATOMIC, key, num);
+    }
+
+    protected long incr(final CacheEntryType cacheType, final String key, long num) {
         CacheEntry entry = container.get(key);
         if (entry == null) {
             synchronized (container) {
                 entry = container.get(key);
                 if (entry == null) {
-                    entry = new CacheEntry(CacheEntryType.ATOMIC, key, new AtomicLong(), null, null);
+                    entry = new CacheEntry(cacheType, key, new AtomicLong(), null, null);
                     container.put(key, entry);
                 }
             }
         }
-        return ((AtomicLong) entry.objectValue).addAndGet(num);
+        long rs = ((AtomicLong) entry.objectValue).addAndGet(num);
+        changed(key);
+        return rs;
     }
 
     @Override
@@ -728,14 +856,11 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         if (key == null) return;
         CacheEntry entry = container.get(key);
         if (entry == null || !entry.isListCacheType() || entry.listValue == null) {
-            ConcurrentLinkedQueue list = new ConcurrentLinkedQueue();
-            entry = new CacheEntry(cacheType, key, null, null, list);
+            entry = new CacheEntry(cacheType, key, null, null, new ConcurrentLinkedQueue());
             CacheEntry old = container.putIfAbsent(key, entry);
-            if (old != null) list = old.listValue;
-            if (list != null) list.add(value);
-        } else {
-            entry.listValue.add(value);
+            if (old != null) entry = old;
         }
+        if (entry.listValue != null) changeItem(CacheMemoryStore.OP_ADD_ITEM, entry, value);
     }
 
     @Override
@@ -780,7 +905,7 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         if (key == null) return;
         CacheEntry entry = container.get(key);
         if (entry == null || entry.listValue == null) return;
-        entry.listValue.remove(value);
+        changeItem(CacheMemoryStore.OP_REMOVE_ITEM, entry, value);
     }
 
     @Override
@@ -789,7 +914,7 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         if (key == null) return;
         CacheEntry entry = container.get(key);
         if (entry == null || entry.listValue == null) return;
-        entry.listValue.remove(value);
+        changeItem(CacheMemoryStore.OP_REMOVE_ITEM, entry, value);
     }
 
     @Override
@@ -798,7 +923,7 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         if (key == null) return;
         CacheEntry entry = container.get(key);
         if (entry == null || entry.listValue == null) return;
-        entry.listValue.remove(value);
+        changeItem(CacheMemoryStore.OP_REMOVE_ITEM, entry, value);
     }
 
     @Override
@@ -823,14 +948,11 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         if (key == null) return;
         CacheEntry entry = container.get(key);
         if (entry == null || !entry.isSetCacheType() || entry.csetValue == null) {
-            CopyOnWriteArraySet set = new CopyOnWriteArraySet();
-            entry = new CacheEntry(cacheType, key, null, set, null);
+            entry = new CacheEntry(cacheType, key, null, new CopyOnWriteArraySet(), null);
             CacheEntry old = container.putIfAbsent(key, entry);
-            if (old != null) set = old.csetValue;
-            if (set != null) set.add(value);
-        } else {
-            entry.csetValue.add(value);
+            if (old != null) entry = old;
         }
+        if (entry.csetValue != null) changeItem(CacheMemoryStore.OP_ADD_ITEM, entry, value);
     }
 
     @Override
@@ -842,13 +964,13 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
     @Override
     @RpcMultiRun
     public void appendStringSetItem(String key, String value) {
-        appendSetItem(CacheEntryType.OBJECT_SET, key, value);
+        appendSetItem(CacheEntryType.STRING_SET, key, value);
     }
 
     @Override
     @RpcMultiRun
     public void appendLongSetItem(String key, long value) {
-        appendSetItem(CacheEntryType.OBJECT_SET, key, value);
+        appendSetItem(CacheEntryType.LONG_SET, key, value);
     }
 
     @Override
@@ -875,7 +997,7 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         if (key == null) return;
         CacheEntry entry = container.get(key);
         if (entry == null || entry.csetValue == null) return;
-        entry.csetValue.remove(value);
+        changeItem(CacheMemoryStore.OP_REMOVE_ITEM, entry, value);
     }
 
     @Override
@@ -884,7 +1006,7 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         if (key == null) return;
         CacheEntry entry = container.get(key);
         if (entry == null || entry.csetValue == null) return;
-        entry.csetValue.remove(value);
+        changeItem(CacheMemoryStore.OP_REMOVE_ITEM, entry, value);
     }
 
     @Override
@@ -893,7 +1015,7 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         if (key == null) return;
         CacheEntry entry = container.get(key);
         if (entry == null || entry.csetValue == null) return;
-        entry.csetValue.remove(value);
+        changeItem(CacheMemoryStore.OP_REMOVE_ITEM, entry, value);
     }
 
     @Override
@@ -914,6 +1036,153 @@ public class CacheMemorySource<V extends Object> extends AbstractService impleme
         return CompletableFuture.runAsync(() -> removeLongSetItem(key, value), getExecutor());
     }
 
+    @Override
+    public Map<String, V> getMany(final String... keys) {
+        final Map<String, V> map = new HashMap<>();
+        if (keys == null) return map;
+        for (String key : keys) {
+            V value = get(key);
+            if (value != null) map.put(key, value);
+        }
+        return map;
+    }
+
+    @Override
+    public CompletableFuture<Map<String, V>> getManyAsync(final String... keys) {
+        return CompletableFuture.supplyAsync(() -> getMany(keys), getExecutor());
+    }
+
+    @Override
+    @RpcMultiRun
+    public void setMany(final Map<String, V> values) {
+        if (values == null) return;
+        values.forEach((k, v) -> set(CacheEntryType.OBJECT, k, v));
+    }
+
+    @Override
+    @RpcMultiRun
+    public void setMany(final int expireSeconds, final Map<String, V> values) {
+        if (values == null) return;
+        values.forEach((k, v) -> set(CacheEntryType.OBJECT, expireSeconds, k, v));
+    }
+
+    //批量方法的异步版不能调用同步版, 否则本地模式下会被@RpcMultiRun重复同步到其他节点
+    @Override
+    @RpcMultiRun
+    public CompletableFuture<Void> setManyAsync(final Map<String, V> values) {
+        if (values == null) return CompletableFuture.completedFuture(null);
+        return CompletableFuture.runAsync(() -> values.forEach((k, v) -> set(CacheEntryType.OBJECT, k, v)), getExecutor());
+    }
+
+    @Override
+    @RpcMultiRun
+    public CompletableFuture<Void> setManyAsync(final int expireSeconds, final Map<String, V> values) {
+        if (values == null) return CompletableFuture.completedFuture(null);
+        return CompletableFuture.runAsync(() -> values.forEach((k, v) -> set(CacheEntryType.OBJECT, expireSeconds, k, v)), getExecutor());
+    }
+
+    protected void removeMany(final Collection<String> keys) {
+        for (String key : keys) {
+            if (key == null) continue;
+            container.remove(key);
+            changed(key);
+        }
+    }
+
+    @Override
+    @RpcMultiRun
+    public void removeMany(final String... keys) {
+        if (keys == null) return;
+        removeMany(Arrays.asList(keys));
+    }
+
+    @Override
+    @RpcMultiRun
+    public CompletableFuture<Void> removeManyAsync(final String... keys) {
+        if (keys == null) return CompletableFuture.completedFuture(null);
+        return CompletableFuture.runAsync(() -> removeMany(Arrays.asList(keys)), getExecutor());
+    }
+
+    protected Map<String, Long> incrMany(final CacheEntryType cacheType, final Map<String, Long> nums) {
+        final Map<String, Long> map = new HashMap<>();
+        if (nums == null) return map;
+        nums.forEach((k, v) -> {
+            if (k != null) map.put(k, incr(cacheType, k, v == null ? 1 : v));
+        });
+        return map;
+    }
+
+    @Override
+    @RpcMultiRun
+    public Map<String, Long> incrMany(final Map<String, Long> nums) {
+        return incrMany(CacheEntryType.ATOMIC, nums);
+    }
+
+    @Override
+    @RpcMultiRun
+    public CompletableFuture<Map<String, Long>> incrManyAsync(final Map<String, Long> nums) {
+        return CompletableFuture.supplyAsync(() -> incrMany(CacheEntryType.ATOMIC, nums), getExecutor());
+    }
+
+    /**
+     * CacheNearSource订阅本节点的key失效通知, 需定时重复订阅, 超过3倍订阅周期未续订的节点会被移除 <br>
+     * 该方法仅供CacheNearSource远程调用
+     *
+     * @param address   订阅方的SNCP地址, 由SNCP自动填充
+     * @param intervals 订阅方的续订周期(秒)
+     *
+     * @return 是否为新的订阅, 为true时订阅方需清空其本地缓存(首次订阅、本节点重启或推送失败被移除过)
+     */
+    public CompletableFuture<Boolean> subscribeNearAsync(@RpcSourceAddress InetSocketAddress address, final int intervals) {
+        if (address == null) return CompletableFuture.completedFuture(true);
+        boolean fresh = nearSubscribers.put(address, System.currentTimeMillis() + Math.max(intervals, 1) * 3000L) == null;
+        synchronized (nearSubscribers) {
+            if (nearNotifyFuture == null && scheduler != null) {
+                nearNotifyFuture = scheduler.scheduleWithFixedDelay(this::notifyNears, 10, 10, TimeUnit.MILLISECONDS);
+            }
+        }
+        return CompletableFuture.completedFuture(fresh);
+    }
+
+    /**
+     * 推送key失效通知给指定的CacheNearSource节点, 本地实现为空, 实际由目标节点上的CacheNearSource执行 <br>
+     * 该方法仅供内部调用
+     *
+     * @param address 目标节点的SNCP地址
+     * @param keys    已变化的key
+     *
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Void> invalidateNearAsync(@RpcTargetAddress InetSocketAddress address, final String... keys) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private void notifyNears() {
+        if (nearChangedKeys.isEmpty() || nearSubscribers.isEmpty()) return;
+        final List<String> list = new ArrayList<>();
+        for (Iterator<String> it = nearChangedKeys.iterator(); it.hasNext();) {
+            list.add(it.next());
+            it.remove();
+        }
+        if (list.isEmpty()) return;
+        final String[] keys = list.toArray(new String[list.size()]);
+        final long now = System.currentTimeMillis();
+        final CacheMemorySource remote = (remoteSource instanceof CacheMemorySource) ? (CacheMemorySource) remoteSource : null;
+        nearSubscribers.forEach((addr, deadline) -> {
+            if (deadline < now || remote == null) {
+                nearSubscribers.remove(addr);
+                return;
+            }
+            try {
+                remote.invalidateNearAsync(addr, keys).whenComplete((r, t) -> {
+                    if (t != null) nearSubscribers.remove(addr); //推送失败的节点需重新订阅, 订阅时会清空其本地缓存
+                });
+            } catch (Exception e) {
+                nearSubscribers.remove(addr);
+            }
+        });
+    }
+
     @Override
     public List<String> queryKeys() {
         return new ArrayList<>(container.keySet());
@@ -0,0 +1,392 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.source;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.*;
+import org.redkale.convert.bson.BsonConvert;
+import org.redkale.source.CacheSource.CacheEntry;
+import org.redkale.source.CacheSource.CacheEntryType;
+import org.redkale.util.*;
+
+/**
+ * CacheMemorySource的二进制持久化: 定时的BSON快照文件 + 追加写的操作日志 <br>
+ * 文件结构: cache/{name}.snap 为快照, cache/{name}.{gen}.log 为第gen代操作日志。 <br>
+ * 每条记录格式为: [op:1字节][len:4字节][cacheType:1字节][数据]。 <br>
+ * 数据为变更后的完整CacheEntry、删除的key、集合增删的单个元素或刷新后的过期时间, 回放时按顺序应用。 <br>
+ * 读刷新只改变过期时间, 同一key在两次flush之间的多次刷新合并为一条过期记录。 <br>
+ * 集合元素的增删在本对象的锁内修改集合并写日志, 生成快照时在同一把锁内切换到新一代日志并序列化内存数据,
+ * 因此每个元素的增删要么已包含在快照中, 要么只出现在新一代日志里, 回放时不会重复应用。
+ * 快照落盘(原子rename)后才删除旧代日志。
+ * <p>
+ * 详情见: https://redkale.org
+ *
+ * @author zhangjx
+ */
+final class CacheMemoryStore {
+
+    static final byte OP_PUT = 1;
+
+    static final byte OP_REMOVE = 2;
+
+    static final byte OP_EXPIRE = 3;
+
+    static final byte OP_ADD_ITEM = 4;
+
+    static final byte OP_REMOVE_ITEM = 5;
+
+    private static final int SNAP_MAGIC = 0x52534E50; //RSNP
+
+    private static final int FLUSH_SIZE = 64 * 1024; //缓冲区超过该大小时立即写文件
+
+    private static final Type STRING_ENTRY_TYPE = new TypeToken<CacheEntry<String>>() {
+    }.getType();
+
+    private static final Type LONG_ENTRY_TYPE = new TypeToken<CacheEntry<Long>>() {
+    }.getType();
+
+    private static final Type ATOMIC_ENTRY_TYPE = new TypeToken<CacheEntry<AtomicLong>>() {
+    }.getType();
+
+    private final Logger logger = Logger.getLogger(this.getClass().getSimpleName());
+
+    private final BsonConvert convert;
+
+    private final File dir;
+
+    private final String name;
+
+    private final Type objEntryType;
+
+    private final ByteArray buffer = new ByteArray(FLUSH_SIZE + 8192);
+
+    private final Map<String, CacheEntry> expires = new LinkedHashMap<>(); //待写入的过期时间变更
+
+    private FileChannel logChannel;
+
+    private long generation;
+
+    public CacheMemoryStore(File dir, String name, Type objValueType) {
+        this.convert = BsonConvert.root();
+        this.dir = dir;
+        this.name = name;
+        this.objEntryType = TypeToken.createParameterizedType(null, CacheEntry.class, objValueType == null ? Object.class : objValueType);
+    }
+
+    private Type entryType(CacheEntryType cacheType) {
+        switch (cacheType) {
+            case LONG:
+            case LONG_SET:
+            case LONG_LIST:
+                return LONG_ENTRY_TYPE;
+            case STRING:
+            case STRING_SET:
+            case STRING_LIST:
+                return STRING_ENTRY_TYPE;
+            case ATOMIC:
+                return ATOMIC_ENTRY_TYPE;
+            default:
+                return objEntryType;
+        }
+    }
+
+    private File snapFile() {
+        return new File(dir, name + ".snap");
+    }
+
+    private File logFile(long gen) {
+        return new File(dir, name + "." + gen + ".log");
+    }
+
+    //按代数升序列出所有日志文件
+    private TreeMap<Long, File> listLogFiles() {
+        TreeMap<Long, File> logs = new TreeMap<>();
+        File[] files = dir.listFiles();
+        if (files == null) return logs;
+        String prefix = name + ".";
+        for (File file : files) {
+            String fname = file.getName();
+            if (!fname.startsWith(prefix) || !fname.endsWith(".log")) continue;
+            try {
+                logs.put(Long.parseLong(fname.substring(prefix.length(), fname.length() - 4)), file);
+            } catch (NumberFormatException e) {
+            }
+        }
+        return logs;
+    }
+
+    /**
+     * 加载快照并按顺序回放快照之后的操作日志, 最后打开新一代的日志文件
+     *
+     * @param container 回放的目标
+     *
+     * @return 加载的记录数
+     *
+     * @throws IOException IOException
+     */
+    public synchronized int load(final Map<String, CacheEntry<Object>> container) throws IOException {
+        dir.mkdirs();
+        int count = 0;
+        long snapgen = 0;
+        File snap = snapFile();
+        if (snap.isFile() && snap.length() >= 12) {
+            try (FileChannel channel = FileChannel.open(snap.toPath(), StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (mapped.getInt() == SNAP_MAGIC) {
+                    snapgen = mapped.getLong();
+                    count += replay(mapped, container);
+                } else {
+                    logger.log(Level.WARNING, name + " cache snapshot file (" + snap + ") is broken, ignore it");
+                }
+            }
+        }
+        long maxgen = snapgen;
+        for (Map.Entry<Long, File> en : listLogFiles().entrySet()) {
+            if (en.getKey() < snapgen) {  //已被快照包含
+                en.getValue().delete();
+                continue;
+            }
+            maxgen = Math.max(maxgen, en.getKey());
+            if (en.getValue().length() == 0) continue;
+            try (FileChannel channel = FileChannel.open(en.getValue().toPath(), StandardOpenOption.READ)) {
+                count += replay(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), container);
+            }
+        }
+        this.generation = maxgen + 1;
+        this.logChannel = FileChannel.open(logFile(this.generation).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return count;
+    }
+
+    private int replay(final ByteBuffer buf, final Map<String, CacheEntry<Object>> container) {
+        int count = 0;
+        byte[] bytes = new byte[1024];
+        while (buf.remaining() >= 6) {
+            byte op = buf.get();
+            int len = buf.getInt();
+            if (len < 1 || len > buf.remaining()) break; //进程崩溃时残留的不完整记录
+            if (bytes.length < len) bytes = new byte[len];
+            buf.get(bytes, 0, len);
+            if (op == OP_PUT) {
+                CacheEntry<Object> entry = convert.convertFrom(entryType(cacheType(bytes[0])), bytes, 1, len - 1);
+                if (entry != null && !entry.isExpired()) container.put(entry.key, entry);
+            } else if (op == OP_REMOVE) {
+                container.remove(new String(bytes, 1, len - 1, StandardCharsets.UTF_8));
+            } else if (op == OP_EXPIRE) {
+                if (len < 9) break;
+                CacheEntry<Object> entry = container.get(new String(bytes, 9, len - 9, StandardCharsets.UTF_8));
+                if (entry != null) {
+                    entry.expireSeconds = readInt(bytes, 1);
+                    entry.lastAccessed = readInt(bytes, 5);
+                }
+            } else if (op == OP_ADD_ITEM || op == OP_REMOVE_ITEM) {
+                CacheEntry<Object> item = convert.convertFrom(entryType(cacheType(bytes[0])), bytes, 1, len - 1);
+                if (item != null) replayItem(op, item, container);
+            } else {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    //集合元素的增删, item.objectValue为元素
+    private static void replayItem(final byte op, final CacheEntry<Object> item, final Map<String, CacheEntry<Object>> container) {
+        CacheEntry<Object> entry = container.get(item.key);
+        if (op == OP_ADD_ITEM) {
+            if (item.isListCacheType() && (entry == null || !entry.isListCacheType() || entry.listValue == null)) {
+                entry = new CacheEntry<>(item.cacheType, item.expireSeconds, item.lastAccessed, item.key, null, null, new ConcurrentLinkedQueue<>());
+                container.put(item.key, entry);
+            } else if (item.isSetCacheType() && (entry == null || !entry.isSetCacheType() || entry.csetValue == null)) {
+                entry = new CacheEntry<>(item.cacheType, item.expireSeconds, item.lastAccessed, item.key, null, new CopyOnWriteArraySet<>(), null);
+                container.put(item.key, entry);
+            }
+            if (entry.listValue != null) entry.listValue.add(item.objectValue);
+            if (entry.csetValue != null) entry.csetValue.add(item.objectValue);
+        } else if (entry != null) {
+            if (entry.listValue != null) entry.listValue.remove(item.objectValue);
+            if (entry.csetValue != null) entry.csetValue.remove(item.objectValue);
+        }
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16) | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+
+    private static CacheEntryType cacheType(byte b) {
+        return b == 0 ? CacheEntryType.OBJECT : CacheEntryType.values()[b - 1];
+    }
+
+    private static void writeRecord(final ByteArray array, final byte op, final CacheEntryType cacheType, final byte[] bytes) {
+        array.write(op);
+        array.writeInt(bytes.length + 1);
+        array.write((byte) (cacheType == null ? 0 : cacheType.ordinal() + 1));
+        array.write(bytes);
+    }
+
+    public void put(final CacheEntry entry) {
+        if (entry == null) return;
+        synchronized (this) {
+            if (logChannel == null) return;
+            expires.remove(entry.key); //完整记录中已包含过期时间
+            writeRecord(buffer, OP_PUT, entry.cacheType, convert.convertTo(entryType(entry.cacheType), entry));
+            if (buffer.size() >= FLUSH_SIZE) flush();
+        }
+    }
+
+    /**
+     * 增删集合中的单个元素并记录到日志, 不重写整个集合; 修改与写日志在同一把锁内, 与快照互斥
+     *
+     * @param op    OP_ADD_ITEM或OP_REMOVE_ITEM
+     * @param entry 集合所在的CacheEntry
+     * @param item  元素
+     *
+     * @return 集合是否发生了变化
+     */
+    public boolean changeItem(final byte op, final CacheEntry entry, final Object item) {
+        if (entry == null) return false;
+        final CacheEntry one = new CacheEntry(entry.cacheType, entry.expireSeconds, entry.lastAccessed, entry.key, item, null, null);
+        synchronized (this) {
+            boolean rs;
+            if (entry.listValue != null) {
+                rs = op == OP_ADD_ITEM ? entry.listValue.add(item) : entry.listValue.remove(item);
+            } else if (entry.csetValue != null) {
+                rs = op == OP_ADD_ITEM ? entry.csetValue.add(item) : entry.csetValue.remove(item);
+            } else {
+                return false;
+            }
+            if (!rs || logChannel == null) return rs;
+            if (expires.containsKey(entry.key) && expires.get(entry.key) != entry) expires.remove(entry.key); //key已被删除重建
+            writeRecord(buffer, op, entry.cacheType, convert.convertTo(entryType(entry.cacheType), one));
+            if (buffer.size() >= FLUSH_SIZE) flush();
+            return true;
+        }
+    }
+
+    /**
+     * 记录过期时间的变更, 在flush时才写入, 期间同一key的多次变更只写一条
+     *
+     * @param entry CacheEntry
+     */
+    public void expire(final CacheEntry entry) {
+        if (entry == null) return;
+        synchronized (this) {
+            if (logChannel == null) return;
+            expires.put(entry.key, entry);
+        }
+    }
+
+    public void remove(final String key) {
+        if (key == null) return;
+        synchronized (this) {
+            if (logChannel == null) return;
+            expires.remove(key);
+            writeRecord(buffer, OP_REMOVE, null, key.getBytes(StandardCharsets.UTF_8));
+            if (buffer.size() >= FLUSH_SIZE) flush();
+        }
+    }
+
+    /**
+     * 将缓冲区中的日志写入当前日志文件
+     */
+    public synchronized void flush() {
+        if (logChannel == null) return;
+        if (!expires.isEmpty()) {
+            for (CacheEntry entry : expires.values()) {
+                byte[] keys = entry.key.getBytes(StandardCharsets.UTF_8);
+                buffer.write(OP_EXPIRE);
+                buffer.writeInt(keys.length + 9);
+                buffer.write((byte) 0);
+                buffer.writeInt(entry.expireSeconds);
+                buffer.writeInt(entry.lastAccessed);
+                buffer.write(keys);
+            }
+            expires.clear();
+        }
+        if (buffer.isEmpty()) return;
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(buffer.directBytes(), 0, buffer.size());
+            while (buf.hasRemaining()) {
+                logChannel.write(buf);
+            }
+            buffer.clear();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, name + " cache write log file error", e);
+        }
+    }
+
+    /**
+     * 生成快照, 在后台线程中调用
+     *
+     * @param entrys 当前的全部缓存数据
+     */
+    public void snapshot(final Collection<CacheEntry<Object>> entrys) {
+        final ByteArray array = new ByteArray(64 * 1024);
+        final long snapgen;
+        synchronized (this) { //切换日志与序列化在同一把锁内, 集合元素的增删不会同时出现在快照和新一代日志中
+            if (logChannel == null) return;
+            flush();
+            try {
+                logChannel.close();
+                this.generation++;
+                this.logChannel = FileChannel.open(logFile(this.generation).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, name + " cache switch log file error", e);
+                return;
+            }
+            snapgen = this.generation;
+            array.writeInt(SNAP_MAGIC);
+            array.writeInt((int) (snapgen >>> 32));
+            array.writeInt((int) snapgen);
+            for (CacheEntry<Object> entry : entrys) {
+                if (entry.isExpired()) continue;
+                writeRecord(array, OP_PUT, entry.cacheType, convert.convertTo(entryType(entry.cacheType), entry));
+            }
+        }
+        File tmp = new File(dir, name + ".snap.tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, array);
+            channel.force(true);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, name + " cache write snapshot file error", e);
+            tmp.delete();
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), snapFile().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, name + " cache rename snapshot file error", e);
+            return;
+        }
+        for (Map.Entry<Long, File> en : listLogFiles().entrySet()) {
+            if (en.getKey() < snapgen) en.getValue().delete();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteArray array) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(array.directBytes(), 0, array.size());
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    public synchronized void close() {
+        flush();
+        if (logChannel == null) return;
+        try {
+            logChannel.close();
+        } catch (IOException e) {
+        }
+        logChannel = null;
+    }
+}
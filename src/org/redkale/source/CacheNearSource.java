@@ -0,0 +1,865 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.source;
+
+import java.lang.reflect.Type;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+import javax.annotation.Resource;
+import org.redkale.net.sncp.*;
+import org.redkale.service.*;
+import org.redkale.util.*;
+
+/**
+ * 带本地近端缓存的CacheSource, 数据实际存放在同组的CacheMemorySource节点上 <br>
+ * 读操作(get、getString、getLong、exists、getMany)优先命中本地缓存, 未命中时通过SNCP读取并写入本地缓存; 写操作直接转发给远程节点并使本地缓存失效。 <br>
+ * 本节点定时向远程节点订阅key失效通知, 远程节点上的key发生变化时会批量推送给所有订阅的节点。 <br>
+ * 远程节点的CacheMemorySource需配置 &lt;property name="near-enabled" value="true"/&gt; 才会开放SNCP服务。 <br>
+ * 配置项: near-max-size 本地缓存最大key数(默认10000), near-expire-seconds 本地缓存的过期秒数(默认60), near-subscribe-seconds 订阅周期(默认30)。
+ *
+ * @param <V> value类型
+ * <p>
+ * 详情见: https://redkale.org
+ *
+ * @author zhangjx
+ */
+@Local
+@AutoLoad(false)
+@ResourceType(CacheSource.class)
+public class CacheNearSource<V extends Object> extends AbstractService implements CacheSource<V>, Service, AutoCloseable, Resourcable {
+
+    private static final byte NEAR_OBJECT = 1;
+
+    private static final byte NEAR_STRING = 2;
+
+    private static final byte NEAR_LONG = 3;
+
+    private final Logger logger = Logger.getLogger(this.getClass().getSimpleName());
+
+    private final ConcurrentHashMap<String, NearEntry> nears = new ConcurrentHashMap<>();
+
+    //每次失效都会递增, 远程读取前后不一致时说明期间可能有变化, 读取结果不放入本地缓存
+    private final AtomicLong stamp = new AtomicLong();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final AtomicLong hitCounter = new AtomicLong();
+
+    private final AtomicLong missCounter = new AtomicLong();
+
+    private final AtomicLong invalidateCounter = new AtomicLong();
+
+    private int nearMaxSize = 10000;
+
+    private int nearExpireSeconds = 60;
+
+    private int subscribeSeconds = 30;
+
+    private ScheduledThreadPoolExecutor scheduler;
+
+    @RpcRemote
+    protected CacheSource<V> remoteSource;
+
+    public CacheNearSource() {
+    }
+
+    @Override
+    public void initValueType(Type valueType) {
+        if (remoteSource instanceof CacheMemorySource && !Sncp.isRemote((Service) remoteSource)) remoteSource.initValueType(valueType);
+    }
+
+    @Override
+    public void initTransient(boolean flag) {
+        if (remoteSource instanceof CacheMemorySource && !Sncp.isRemote((Service) remoteSource)) remoteSource.initTransient(flag);
+    }
+
+    @Override
+    public final String getType() {
+        return "near";
+    }
+
+    @Override
+    public void init(AnyValue conf) {
+        if (Sncp.isRemote(this)) return;
+        AnyValue prop = conf == null ? null : conf.getAnyValue("properties");
+        if (prop != null) {
+            this.nearMaxSize = Math.max(16, prop.getIntValue("near-max-size", this.nearMaxSize));
+            this.nearExpireSeconds = Math.max(1, prop.getIntValue("near-expire-seconds", this.nearExpireSeconds));
+            this.subscribeSeconds = Math.max(1, prop.getIntValue("near-subscribe-seconds", this.subscribeSeconds));
+        }
+        if (remoteSource == null) { //没有SNCP节点时退化为本地内存缓存
+            logger.log(Level.WARNING, this.getClass().getSimpleName() + "(" + resourceName() + ") have no remote nodes, use local CacheMemorySource");
+            CacheMemorySource<V> local = new CacheMemorySource<>();
+            local.init(conf);
+            this.remoteSource = local;
+            return;
+        }
+        final CacheNearSource self = this;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, (Runnable r) -> {
+            final Thread t = new Thread(r, self.getClass().getSimpleName() + "-Subscriber-Thread");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::subscribe, 0, subscribeSeconds, TimeUnit.SECONDS);
+    }
+
+    private void subscribe() {
+        try {
+            ((CacheNearSource) remoteSource).subscribeNearAsync(null, subscribeSeconds).whenComplete((rs, t) -> {
+                if (t != null || !Boolean.FALSE.equals(rs)) clearNears(); //订阅失败或新订阅期间可能遗漏了失效通知
+            });
+        } catch (Exception e) {
+            clearNears();
+            logger.log(Level.FINER, this.getClass().getSimpleName() + "(" + resourceName() + ") subscribe error", e);
+        }
+        final long now = System.currentTimeMillis();
+        nears.entrySet().removeIf(en -> en.getValue().expireTime < now);
+    }
+
+    @Override
+    public void close() throws Exception {  //给Application 关闭时调用
+        destroy(null);
+    }
+
+    @Override
+    public String resourceName() {
+        Resource res = this.getClass().getAnnotation(Resource.class);
+        return res == null ? "cachenear" : res.name();
+    }
+
+    @Override
+    public void destroy(AnyValue conf) {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        nears.clear();
+        if (remoteSource instanceof CacheMemorySource && !Sncp.isRemote((Service) remoteSource)) ((CacheMemorySource) remoteSource).destroy(conf);
+    }
+
+    /**
+     * 订阅远程节点的key失效通知, 本地实现为空, 实际由远程节点上的CacheMemorySource执行 <br>
+     * 该方法仅供内部调用
+     *
+     * @param address   本节点的SNCP地址, 由SNCP自动填充
+     * @param intervals 续订周期(秒)
+     *
+     * @return 是否为新的订阅
+     */
+    public CompletableFuture<Boolean> subscribeNearAsync(@RpcSourceAddress InetSocketAddress address, final int intervals) {
+        return CompletableFuture.completedFuture(true);
+    }
+
+    /**
+     * 接收远程节点推送的key失效通知 <br>
+     * 该方法仅供远程节点的CacheMemorySource调用
+     *
+     * @param address 本节点的SNCP地址
+     * @param keys    已变化的key
+     *
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Void> invalidateNearAsync(@RpcTargetAddress InetSocketAddress address, final String... keys) {
+        invalidate(keys);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    public long getNearHitCount() {
+        return hitCounter.get();
+    }
+
+    public long getNearMissCount() {
+        return missCounter.get();
+    }
+
+    public long getNearInvalidateCount() {
+        return invalidateCounter.get();
+    }
+
+    public int getNearSize() {
+        return nears.size();
+    }
+
+    private void clearNears() {
+        stamp.incrementAndGet();
+        nears.clear();
+    }
+
+    private void invalidate(final String key) {
+        stamp.incrementAndGet();
+        if (nears.remove(key) != null) invalidateCounter.incrementAndGet();
+    }
+
+    private void invalidate(final String... keys) {
+        if (keys == null) return;
+        stamp.incrementAndGet();
+        for (String key : keys) {
+            if (nears.remove(key) != null) invalidateCounter.incrementAndGet();
+        }
+    }
+
+    private void invalidate(final Collection<String> keys) {
+        if (keys == null) return;
+        stamp.incrementAndGet();
+        for (String key : keys) {
+            if (nears.remove(key) != null) invalidateCounter.incrementAndGet();
+        }
+    }
+
+    private Object nearGet(final String key, final byte type) {
+        NearEntry entry = nears.get(key);
+        if (entry == null || entry.type != type) {
+            missCounter.incrementAndGet();
+            return null;
+        }
+        if (entry.expireTime < System.currentTimeMillis()) {
+            nears.remove(key, entry);
+            missCounter.incrementAndGet();
+            return null;
+        }
+        hitCounter.incrementAndGet();
+        return entry.value;
+    }
+
+    private void nearPut(final long oldstamp, final String key, final byte type, final Object value) {
+        if (value == null || stamp.get() != oldstamp) return;
+        if (nears.size() >= nearMaxSize) evict();
+        nears.put(key, new NearEntry(type, value, System.currentTimeMillis() + nearExpireSeconds * 1000L));
+        if (stamp.get() != oldstamp) nears.remove(key); //放入期间可能收到了失效通知
+    }
+
+    //先移除过期的, 仍超出时随机移除1/8
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) return;
+        try {
+            final long now = System.currentTimeMillis();
+            nears.entrySet().removeIf(en -> en.getValue().expireTime < now);
+            int count = nears.size() - nearMaxSize + nearMaxSize / 8;
+            if (count <= 0) return;
+            for (Iterator<String> it = nears.keySet().iterator(); it.hasNext() && count > 0; count--) {
+                it.next();
+                it.remove();
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    @Override
+    public boolean exists(final String key) {
+        if (nearGet(key, NEAR_OBJECT) != null) return true;
+        return remoteSource.exists(key);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> existsAsync(final String key) {
+        if (nearGet(key, NEAR_OBJECT) != null) return CompletableFuture.completedFuture(true);
+        return remoteSource.existsAsync(key);
+    }
+
+    @Override
+    public V get(final String key) {
+        Object rs = nearGet(key, NEAR_OBJECT);
+        if (rs != null) return (V) rs;
+        final long oldstamp = stamp.get();
+        V val = remoteSource.get(key);
+        nearPut(oldstamp, key, NEAR_OBJECT, val);
+        return val;
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(final String key) {
+        Object rs = nearGet(key, NEAR_OBJECT);
+        if (rs != null) return CompletableFuture.completedFuture((V) rs);
+        final long oldstamp = stamp.get();
+        return remoteSource.getAsync(key).whenComplete((val, t) -> {
+            if (t == null) nearPut(oldstamp, key, NEAR_OBJECT, val);
+        });
+    }
+
+    @Override
+    public String getString(final String key) {
+        Object rs = nearGet(key, NEAR_STRING);
+        if (rs != null) return (String) rs;
+        final long oldstamp = stamp.get();
+        String val = remoteSource.getString(key);
+        nearPut(oldstamp, key, NEAR_STRING, val);
+        return val;
+    }
+
+    @Override
+    public CompletableFuture<String> getStringAsync(final String key) {
+        Object rs = nearGet(key, NEAR_STRING);
+        if (rs != null) return CompletableFuture.completedFuture((String) rs);
+        final long oldstamp = stamp.get();
+        return remoteSource.getStringAsync(key).whenComplete((val, t) -> {
+            if (t == null) nearPut(oldstamp, key, NEAR_STRING, val);
+        });
+    }
+
+    @Override
+    public long getLong(final String key, long defValue) {
+        Object rs = nearGet(key, NEAR_LONG);
+        if (rs != null) return (Long) rs;
+        final long oldstamp = stamp.get();
+        long val = remoteSource.getLong(key, defValue);
+        if (val != defValue) nearPut(oldstamp, key, NEAR_LONG, val);  //无法区分默认值与不存在, 默认值不缓存
+        return val;
+    }
+
+    @Override
+    public CompletableFuture<Long> getLongAsync(final String key, long defValue) {
+        Object rs = nearGet(key, NEAR_LONG);
+        if (rs != null) return CompletableFuture.completedFuture((Long) rs);
+        final long oldstamp = stamp.get();
+        return remoteSource.getLongAsync(key, defValue).whenComplete((val, t) -> {
+            if (t == null && val != null && val != defValue) nearPut(oldstamp, key, NEAR_LONG, val);
+        });
+    }
+
+    @Override
+    public Map<String, V> getMany(final String... keys) {
+        final Map<String, V> map = new LinkedHashMap<>();
+        final List<String> misses = nearGetMany(map, keys);
+        if (misses.isEmpty()) return map;
+        final long oldstamp = stamp.get();
+        nearPutMany(oldstamp, map, remoteSource.getMany(misses.toArray(new String[misses.size()])));
+        return map;
+    }
+
+    @Override
+    public CompletableFuture<Map<String, V>> getManyAsync(final String... keys) {
+        final Map<String, V> map = new LinkedHashMap<>();
+        final List<String> misses = nearGetMany(map, keys);
+        if (misses.isEmpty()) return CompletableFuture.completedFuture(map);
+        final long oldstamp = stamp.get();
+        return remoteSource.getManyAsync(misses.toArray(new String[misses.size()])).thenApply(rs -> {
+            nearPutMany(oldstamp, map, rs);
+            return map;
+        });
+    }
+
+    private List<String> nearGetMany(final Map<String, V> map, final String... keys) {
+        final List<String> misses = new ArrayList<>();
+        for (String key : keys) {
+            Object rs = nearGet(key, NEAR_OBJECT);
+            if (rs == null) {
+                misses.add(key);
+            } else {
+                map.put(key, (V) rs);
+            }
+        }
+        return misses;
+    }
+
+    private void nearPutMany(final long oldstamp, final Map<String, V> map, final Map<String, V> rs) {
+        if (rs == null) return;
+        rs.forEach((k, v) -> {
+            map.put(k, v);
+            nearPut(oldstamp, k, NEAR_OBJECT, v);
+        });
+    }
+
+    @Override
+    public V getAndRefresh(final String key, final int expireSeconds) {
+        return remoteSource.getAndRefresh(key, expireSeconds);
+    }
+
+    @Override
+    public void refresh(final String key, final int expireSeconds) {
+        remoteSource.refresh(key, expireSeconds);
+    }
+
+    @Override
+    public void set(final String key, final V value) {
+        remoteSource.set(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public void set(final int expireSeconds, final String key, final V value) {
+        remoteSource.set(expireSeconds, key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public void setExpireSeconds(final String key, final int expireSeconds) {
+        remoteSource.setExpireSeconds(key, expireSeconds);
+    }
+
+    @Override
+    public void remove(final String key) {
+        remoteSource.remove(key);
+        invalidate(key);
+    }
+
+    @Override
+    public long incr(final String key) {
+        long rs = remoteSource.incr(key);
+        invalidate(key);
+        return rs;
+    }
+
+    @Override
+    public long incr(final String key, long num) {
+        long rs = remoteSource.incr(key, num);
+        invalidate(key);
+        return rs;
+    }
+
+    @Override
+    public long decr(final String key) {
+        long rs = remoteSource.decr(key);
+        invalidate(key);
+        return rs;
+    }
+
+    @Override
+    public long decr(final String key, long num) {
+        long rs = remoteSource.decr(key, num);
+        invalidate(key);
+        return rs;
+    }
+
+    @Override
+    public Collection<V> getCollection(final String key) {
+        return remoteSource.getCollection(key);
+    }
+
+    @Override
+    public int getCollectionSize(final String key) {
+        return remoteSource.getCollectionSize(key);
+    }
+
+    @Override
+    public Collection<V> getCollectionAndRefresh(final String key, final int expireSeconds) {
+        return remoteSource.getCollectionAndRefresh(key, expireSeconds);
+    }
+
+    @Override
+    public void appendListItem(final String key, final V value) {
+        remoteSource.appendListItem(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public void removeListItem(final String key, final V value) {
+        remoteSource.removeListItem(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public boolean existsSetItem(final String key, final V value) {
+        return remoteSource.existsSetItem(key, value);
+    }
+
+    @Override
+    public void appendSetItem(final String key, final V value) {
+        remoteSource.appendSetItem(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public void removeSetItem(final String key, final V value) {
+        remoteSource.removeSetItem(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public List<String> queryKeys() {
+        return remoteSource.queryKeys();
+    }
+
+    @Override
+    public int getKeySize() {
+        return remoteSource.getKeySize();
+    }
+
+    @Override
+    public List<CacheEntry<Object>> queryList() {
+        return remoteSource.queryList();
+    }
+
+    @Override
+    public String getStringAndRefresh(final String key, final int expireSeconds) {
+        return remoteSource.getStringAndRefresh(key, expireSeconds);
+    }
+
+    @Override
+    public void setString(final String key, final String value) {
+        remoteSource.setString(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public void setString(final int expireSeconds, final String key, final String value) {
+        remoteSource.setString(expireSeconds, key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public Collection<String> getStringCollection(final String key) {
+        return remoteSource.getStringCollection(key);
+    }
+
+    @Override
+    public Collection<String> getStringCollectionAndRefresh(final String key, final int expireSeconds) {
+        return remoteSource.getStringCollectionAndRefresh(key, expireSeconds);
+    }
+
+    @Override
+    public void appendStringListItem(final String key, final String value) {
+        remoteSource.appendStringListItem(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public void removeStringListItem(final String key, final String value) {
+        remoteSource.removeStringListItem(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public boolean existsStringSetItem(final String key, final String value) {
+        return remoteSource.existsStringSetItem(key, value);
+    }
+
+    @Override
+    public void appendStringSetItem(final String key, final String value) {
+        remoteSource.appendStringSetItem(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public void removeStringSetItem(final String key, final String value) {
+        remoteSource.removeStringSetItem(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public long getLongAndRefresh(final String key, final int expireSeconds, long defValue) {
+        return remoteSource.getLongAndRefresh(key, expireSeconds, defValue);
+    }
+
+    @Override
+    public void setLong(final String key, final long value) {
+        remoteSource.setLong(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public void setLong(final int expireSeconds, final String key, final long value) {
+        remoteSource.setLong(expireSeconds, key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public Collection<Long> getLongCollection(final String key) {
+        return remoteSource.getLongCollection(key);
+    }
+
+    @Override
+    public Collection<Long> getLongCollectionAndRefresh(final String key, final int expireSeconds) {
+        return remoteSource.getLongCollectionAndRefresh(key, expireSeconds);
+    }
+
+    @Override
+    public void appendLongListItem(final String key, final long value) {
+        remoteSource.appendLongListItem(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public void removeLongListItem(final String key, final long value) {
+        remoteSource.removeLongListItem(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public boolean existsLongSetItem(final String key, final long value) {
+        return remoteSource.existsLongSetItem(key, value);
+    }
+
+    @Override
+    public void appendLongSetItem(final String key, final long value) {
+        remoteSource.appendLongSetItem(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public void removeLongSetItem(final String key, final long value) {
+        remoteSource.removeLongSetItem(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public void setMany(final Map<String, V> values) {
+        remoteSource.setMany(values);
+        invalidate(values.keySet());
+    }
+
+    @Override
+    public void setMany(final int expireSeconds, final Map<String, V> values) {
+        remoteSource.setMany(expireSeconds, values);
+        invalidate(values.keySet());
+    }
+
+    @Override
+    public void removeMany(final String... keys) {
+        remoteSource.removeMany(keys);
+        invalidate(keys);
+    }
+
+    @Override
+    public Map<String, Long> incrMany(final Map<String, Long> nums) {
+        Map<String, Long> rs = remoteSource.incrMany(nums);
+        invalidate(nums.keySet());
+        return rs;
+    }
+
+    @Override
+    public CompletableFuture<V> getAndRefreshAsync(final String key, final int expireSeconds) {
+        return remoteSource.getAndRefreshAsync(key, expireSeconds);
+    }
+
+    @Override
+    public CompletableFuture<Void> refreshAsync(final String key, final int expireSeconds) {
+        return remoteSource.refreshAsync(key, expireSeconds);
+    }
+
+    @Override
+    public CompletableFuture<Void> setAsync(final String key, final V value) {
+        return remoteSource.setAsync(key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> setAsync(final int expireSeconds, final String key, final V value) {
+        return remoteSource.setAsync(expireSeconds, key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> setExpireSecondsAsync(final String key, final int expireSeconds) {
+        return remoteSource.setExpireSecondsAsync(key, expireSeconds);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeAsync(final String key) {
+        return remoteSource.removeAsync(key).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Long> incrAsync(final String key) {
+        return remoteSource.incrAsync(key).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Long> incrAsync(final String key, long num) {
+        return remoteSource.incrAsync(key, num).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Long> decrAsync(final String key) {
+        return remoteSource.decrAsync(key).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Long> decrAsync(final String key, long num) {
+        return remoteSource.decrAsync(key, num).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Collection<V>> getCollectionAsync(final String key) {
+        return remoteSource.getCollectionAsync(key);
+    }
+
+    @Override
+    public CompletableFuture<Integer> getCollectionSizeAsync(final String key) {
+        return remoteSource.getCollectionSizeAsync(key);
+    }
+
+    @Override
+    public CompletableFuture<Collection<V>> getCollectionAndRefreshAsync(final String key, final int expireSeconds) {
+        return remoteSource.getCollectionAndRefreshAsync(key, expireSeconds);
+    }
+
+    @Override
+    public CompletableFuture<Void> appendListItemAsync(final String key, final V value) {
+        return remoteSource.appendListItemAsync(key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeListItemAsync(final String key, final V value) {
+        return remoteSource.removeListItemAsync(key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> existsSetItemAsync(final String key, final V value) {
+        return remoteSource.existsSetItemAsync(key, value);
+    }
+
+    @Override
+    public CompletableFuture<Void> appendSetItemAsync(final String key, final V value) {
+        return remoteSource.appendSetItemAsync(key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeSetItemAsync(final String key, final V value) {
+        return remoteSource.removeSetItemAsync(key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> queryKeysAsync() {
+        return remoteSource.queryKeysAsync();
+    }
+
+    @Override
+    public CompletableFuture<Integer> getKeySizeAsync() {
+        return remoteSource.getKeySizeAsync();
+    }
+
+    @Override
+    public CompletableFuture<List<CacheEntry< Object>>> queryListAsync() {
+        return remoteSource.queryListAsync();
+    }
+
+    @Override
+    public CompletableFuture<String> getStringAndRefreshAsync(final String key, final int expireSeconds) {
+        return remoteSource.getStringAndRefreshAsync(key, expireSeconds);
+    }
+
+    @Override
+    public CompletableFuture<Void> setStringAsync(final String key, final String value) {
+        return remoteSource.setStringAsync(key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> setStringAsync(final int expireSeconds, final String key, final String value) {
+        return remoteSource.setStringAsync(expireSeconds, key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Collection<String>> getStringCollectionAsync(final String key) {
+        return remoteSource.getStringCollectionAsync(key);
+    }
+
+    @Override
+    public CompletableFuture<Collection<String>> getStringCollectionAndRefreshAsync(final String key, final int expireSeconds) {
+        return remoteSource.getStringCollectionAndRefreshAsync(key, expireSeconds);
+    }
+
+    @Override
+    public CompletableFuture<Void> appendStringListItemAsync(final String key, final String value) {
+        return remoteSource.appendStringListItemAsync(key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeStringListItemAsync(final String key, final String value) {
+        return remoteSource.removeStringListItemAsync(key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> existsStringSetItemAsync(final String key, final String value) {
+        return remoteSource.existsStringSetItemAsync(key, value);
+    }
+
+    @Override
+    public CompletableFuture<Void> appendStringSetItemAsync(final String key, final String value) {
+        return remoteSource.appendStringSetItemAsync(key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeStringSetItemAsync(final String key, final String value) {
+        return remoteSource.removeStringSetItemAsync(key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Long> getLongAndRefreshAsync(final String key, final int expireSeconds, long defValue) {
+        return remoteSource.getLongAndRefreshAsync(key, expireSeconds, defValue);
+    }
+
+    @Override
+    public CompletableFuture<Void> setLongAsync(final String key, long value) {
+        return remoteSource.setLongAsync(key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> setLongAsync(final int expireSeconds, final String key, final long value) {
+        return remoteSource.setLongAsync(expireSeconds, key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Collection<Long>> getLongCollectionAsync(final String key) {
+        return remoteSource.getLongCollectionAsync(key);
+    }
+
+    @Override
+    public CompletableFuture<Collection<Long>> getLongCollectionAndRefreshAsync(final String key, final int expireSeconds) {
+        return remoteSource.getLongCollectionAndRefreshAsync(key, expireSeconds);
+    }
+
+    @Override
+    public CompletableFuture<Void> appendLongListItemAsync(final String key, final long value) {
+        return remoteSource.appendLongListItemAsync(key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeLongListItemAsync(final String key, final long value) {
+        return remoteSource.removeLongListItemAsync(key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> existsLongSetItemAsync(final String key, final long value) {
+        return remoteSource.existsLongSetItemAsync(key, value);
+    }
+
+    @Override
+    public CompletableFuture<Void> appendLongSetItemAsync(final String key, final long value) {
+        return remoteSource.appendLongSetItemAsync(key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeLongSetItemAsync(final String key, final long value) {
+        return remoteSource.removeLongSetItemAsync(key, value).whenComplete((r, t) -> invalidate(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> setManyAsync(final Map<String, V> values) {
+        return remoteSource.setManyAsync(values).whenComplete((r, t) -> invalidate(values.keySet()));
+    }
+
+    @Override
+    public CompletableFuture<Void> setManyAsync(final int expireSeconds, final Map<String, V> values) {
+        return remoteSource.setManyAsync(expireSeconds, values).whenComplete((r, t) -> invalidate(values.keySet()));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeManyAsync(final String... keys) {
+        return remoteSource.removeManyAsync(keys).whenComplete((r, t) -> invalidate(keys));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Long>> incrManyAsync(final Map<String, Long> nums) {
+        return remoteSource.incrManyAsync(nums).whenComplete((r, t) -> invalidate(nums.keySet()));
+    }
+
+    private static final class NearEntry {
+
+        public final byte type;
+
+        public final Object value;
+
+        public final long expireTime;
+
+        public NearEntry(byte type, Object value, long expireTime) {
+            this.type = type;
+            this.value = value;
+            this.expireTime = expireTime;
+        }
+    }
+}
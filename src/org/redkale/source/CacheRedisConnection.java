@@ -0,0 +1,305 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.source;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.redkale.net.*;
+import org.redkale.util.ByteArray;
+
+/**
+ * CacheRedisSource的单个Redis连接, 多个请求共用一个连接 <br>
+ * 并发提交的命令会合并到同一个写缓冲区中一次性写出(pipelining), Redis按请求顺序返回结果, 因此按提交顺序依次完成等待中的请求。
+ * <p>
+ * 详情见: https://redkale.org
+ *
+ * @author zhangjx
+ */
+final class CacheRedisConnection {
+
+    private static final Object INCOMPLETE = new Object();
+
+    private static final byte[] CRLF = new byte[]{'\r', '\n'};
+
+    private final SocketAddress address;
+
+    //已写入(或待写入)缓冲区、等待结果的请求, 与写入顺序一致
+    private final ConcurrentLinkedQueue<RedisRequest> pendings = new ConcurrentLinkedQueue<>();
+
+    private final ByteArray outbox = new ByteArray(1024);
+
+    private final AtomicBoolean writing = new AtomicBoolean();
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+
+    private byte[] inbox = new byte[8192];
+
+    private int inboxSize;
+
+    private int parsePos;
+
+    private volatile AsyncConnection conn;
+
+    private volatile boolean closed;
+
+    public CacheRedisConnection(final Transport transport, final SocketAddress address, final byte[]... initCommands) {
+        this.address = address;
+        for (byte[] cmd : initCommands) {
+            if (cmd == null) continue;
+            send(cmd).whenComplete((rs, t) -> { //AUTH、SELECT失败时关闭连接, 已提交的请求都以该错误失败
+                if (t != null) close(new IOException("redis connection (" + address + ") init error: " + t.getMessage(), t));
+            });
+        }
+        transport.pollConnection(address).whenComplete((c, t) -> {
+            if (t != null || c == null) {
+                close(t == null ? new IOException("connect redis (" + address + ") error") : t);
+                return;
+            }
+            c.setReadTimeoutSecond(0); //读操作一直挂起, 超时由CacheRedisSource定时检查
+            this.conn = c;
+            if (closed) {
+                c.dispose();
+                return;
+            }
+            read();
+            flush();
+        });
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * 编码RESP命令
+     *
+     * @param args 命令及参数
+     *
+     * @return RESP格式的字节
+     */
+    public static byte[] command(final byte[]... args) {
+        ByteArray array = new ByteArray(64);
+        array.write((byte) '*');
+        array.write(String.valueOf(args.length).getBytes());
+        array.write(CRLF);
+        for (byte[] arg : args) {
+            array.write((byte) '$');
+            array.write(String.valueOf(arg.length).getBytes());
+            array.write(CRLF);
+            array.write(arg);
+            array.write(CRLF);
+        }
+        return array.getBytes();
+    }
+
+    /**
+     * 提交命令, 结果类型: 简单字符串为String、整数为Long、批量字符串为byte[]、数组为List、空值为null
+     *
+     * @param command RESP格式的命令
+     *
+     * @return 结果CompletableFuture
+     */
+    public CompletableFuture<Object> send(final byte[] command) {
+        final RedisRequest req = new RedisRequest();
+        synchronized (outbox) {
+            if (closed) {
+                req.completeExceptionally(new IOException("redis connection (" + address + ") closed"));
+                return req;
+            }
+            outbox.write(command);
+            pendings.add(req);
+        }
+        if (conn != null) flush();
+        return req;
+    }
+
+    private void flush() {
+        if (!writing.compareAndSet(false, true)) return;
+        final byte[] bytes;
+        synchronized (outbox) {
+            if (outbox.isEmpty() || closed) {
+                writing.set(false);
+                return;
+            }
+            bytes = outbox.getBytesAndClear();
+        }
+        conn.write(ByteBuffer.wrap(bytes), null, new CompletionHandler<Integer, Void>() {
+
+            private ByteBuffer buffer;
+
+            @Override
+            public void completed(Integer result, Void attachment) {
+                if (buffer == null) buffer = ByteBuffer.wrap(bytes, result, bytes.length - result);
+                if (buffer.hasRemaining()) {
+                    conn.write(buffer, attachment, this);
+                    return;
+                }
+                writing.set(false);
+                flush(); //写的过程中可能又有新的命令
+            }
+
+            @Override
+            public void failed(Throwable exc, Void attachment) {
+                writing.set(false);
+                close(exc);
+            }
+        });
+    }
+
+    private void read() {
+        readBuffer.clear();
+        conn.read(readBuffer, null, new CompletionHandler<Integer, Void>() {
+
+            @Override
+            public void completed(Integer result, Void attachment) {
+                if (result < 0) {
+                    close(new IOException("redis connection (" + address + ") closed by server"));
+                    return;
+                }
+                readBuffer.flip();
+                int len = readBuffer.remaining();
+                if (inboxSize + len > inbox.length) inbox = Arrays.copyOf(inbox, Math.max(inbox.length * 2, inboxSize + len));
+                readBuffer.get(inbox, inboxSize, len);
+                inboxSize += len;
+                try {
+                    decode();
+                } catch (Exception e) {
+                    close(e);
+                    return;
+                }
+                if (!closed) read();
+            }
+
+            @Override
+            public void failed(Throwable exc, Void attachment) {
+                close(exc);
+            }
+        });
+    }
+
+    private void decode() {
+        int start = 0;
+        while (start < inboxSize) {
+            parsePos = start;
+            Object rs = readReply();
+            if (rs == INCOMPLETE) break;
+            start = parsePos;
+            RedisRequest req = pendings.poll();
+            if (req == null) throw new RuntimeException("redis connection (" + address + ") receive unexpected reply");
+            if (rs instanceof RedisError) {
+                req.completeExceptionally(new RuntimeException(((RedisError) rs).message));
+            } else {
+                req.complete(rs);
+            }
+        }
+        if (start > 0) {
+            System.arraycopy(inbox, start, inbox, 0, inboxSize - start);
+            inboxSize -= start;
+        }
+    }
+
+    private Object readReply() {
+        if (parsePos >= inboxSize) return INCOMPLETE;
+        final byte type = inbox[parsePos];
+        final int start = parsePos + 1;
+        int end = -1;
+        for (int i = start; i < inboxSize - 1; i++) {
+            if (inbox[i] == '\r' && inbox[i + 1] == '\n') {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) return INCOMPLETE;
+        parsePos = end + 2;
+        switch (type) {
+            case '+':
+                return new String(inbox, start, end - start, StandardCharsets.UTF_8);
+            case '-':
+                return new RedisError(new String(inbox, start, end - start, StandardCharsets.UTF_8));
+            case ':':
+                return parseLong(start, end);
+            case '$': {
+                int len = (int) parseLong(start, end);
+                if (len < 0) return null;
+                if (parsePos + len + 2 > inboxSize) return INCOMPLETE;
+                byte[] bs = Arrays.copyOfRange(inbox, parsePos, parsePos + len);
+                parsePos += len + 2;
+                return bs;
+            }
+            case '*': {
+                int size = (int) parseLong(start, end);
+                if (size < 0) return null;
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    Object item = readReply();
+                    if (item == INCOMPLETE) return INCOMPLETE;
+                    list.add(item);
+                }
+                return list;
+            }
+            default:
+                throw new RuntimeException("redis connection (" + address + ") receive illegal reply type (" + (char) type + ")");
+        }
+    }
+
+    private long parseLong(int start, int end) {
+        boolean negative = inbox[start] == '-';
+        long rs = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            rs = rs * 10 + (inbox[i] - '0');
+        }
+        return negative ? -rs : rs;
+    }
+
+    /**
+     * 检查最早的请求是否超时, 超时则关闭连接
+     *
+     * @param timeoutMillis 超时毫秒数
+     */
+    public void checkTimeout(final long timeoutMillis) {
+        RedisRequest req = pendings.peek();
+        if (req != null && System.currentTimeMillis() - req.createtime > timeoutMillis) {
+            close(new TimeoutException("redis connection (" + address + ") request timeout"));
+        }
+    }
+
+    public void close(Throwable cause) {
+        synchronized (outbox) {
+            if (closed) return;
+            closed = true;
+            outbox.clear();
+        }
+        if (conn != null) conn.dispose();
+        RedisRequest req;
+        while ((req = pendings.poll()) != null) {
+            req.completeExceptionally(cause);
+        }
+    }
+
+    private static final class RedisRequest extends CompletableFuture<Object> {
+
+        public final long createtime = System.currentTimeMillis();
+    }
+
+    private static final class RedisError {
+
+        public final String message;
+
+        public RedisError(String message) {
+            this.message = message;
+        }
+    }
+}
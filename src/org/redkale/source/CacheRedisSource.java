@@ -0,0 +1,963 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.source;
+
+import java.lang.reflect.Type;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.*;
+import java.util.logging.*;
+import javax.annotation.Resource;
+import org.redkale.convert.ConvertException;
+import org.redkale.convert.json.JsonConvert;
+import org.redkale.net.*;
+import org.redkale.service.*;
+import org.redkale.util.*;
+
+/**
+ * CacheSource的Redis实现, 直接基于AsyncConnection使用RESP协议通信, 不依赖第三方客户端 <br>
+ * 所有请求共用少量长连接(connections), 并发的命令在同一连接上自动合并写出(pipelining), *Async方法全程无阻塞。 <br>
+ * 配置项: host(默认127.0.0.1)、port(默认6379)、password、db(默认0)、connections(连接数, 默认2)、timeout-seconds(请求超时秒数, 默认6)、value-type。 <br>
+ * V类型的值以JSON格式存储, 未配置value-type时按JSON的自然类型(String、Long、Double、Boolean、Map、List)读取; String与long类型的值以原始文本存储, 因此可与incr/decr共用。
+ *
+ * @param <V> value类型
+ * <p>
+ * 详情见: https://redkale.org
+ *
+ * @author zhangjx
+ */
+@Local
+@AutoLoad(false)
+@ResourceType(CacheSource.class)
+public class CacheRedisSource<V extends Object> extends AbstractService implements CacheSource<V>, Service, AutoCloseable, Resourcable {
+
+    private final Logger logger = Logger.getLogger(this.getClass().getSimpleName());
+
+    @Resource
+    private JsonConvert defaultConvert;
+
+    @Resource(name = "$_convert")
+    private JsonConvert convert;
+
+    @Resource
+    private TransportFactory transportFactory;
+
+    private boolean ownTransportFactory;
+
+    private Transport transport;
+
+    private InetSocketAddress address;
+
+    private byte[][] initCommands;
+
+    private CacheRedisConnection[] conns;
+
+    private final AtomicInteger connIndex = new AtomicInteger();
+
+    private int timeoutSeconds = 6;
+
+    private Type objValueType;
+
+    private ScheduledThreadPoolExecutor scheduler;
+
+    public CacheRedisSource() {
+    }
+
+    @Override
+    public final void initValueType(Type valueType) {
+        this.objValueType = valueType == Object.class ? null : valueType;
+    }
+
+    @Override
+    public final void initTransient(boolean flag) {
+    }
+
+    @Override
+    public final String getType() {
+        return "redis";
+    }
+
+    @Override
+    public void init(AnyValue conf) {
+        if (this.convert == null) this.convert = this.defaultConvert;
+        if (this.convert == null) this.convert = JsonConvert.root();
+        AnyValue prop = conf == null ? null : conf.getAnyValue("properties");
+        String host = "127.0.0.1";
+        int port = 6379;
+        String password = null;
+        int db = 0;
+        int connections = 2;
+        if (prop != null) {
+            String storeValueStr = prop.getValue("value-type");
+            if (storeValueStr != null) {
+                try {
+                    this.initValueType(Thread.currentThread().getContextClassLoader().loadClass(storeValueStr));
+                } catch (Throwable e) {
+                    logger.log(Level.SEVERE, this.getClass().getSimpleName() + " load value class (" + storeValueStr + ") error", e);
+                }
+            }
+            host = prop.getValue("host", host);
+            port = prop.getIntValue("port", port);
+            password = prop.getValue("password");
+            db = prop.getIntValue("db", db);
+            connections = Math.max(1, prop.getIntValue("connections", connections));
+            this.timeoutSeconds = Math.max(1, prop.getIntValue("timeout-seconds", this.timeoutSeconds));
+        }
+        if (this.transportFactory == null) {
+            this.transportFactory = TransportFactory.create(Math.max(2, Runtime.getRuntime().availableProcessors()));
+            this.ownTransportFactory = true;
+        }
+        this.address = new InetSocketAddress(host, port);
+        this.transport = transportFactory.createTransportTCP("redis", null, Arrays.asList(this.address));
+        List<byte[]> inits = new ArrayList<>();
+        if (password != null && !password.isEmpty()) inits.add(command("AUTH", password));
+        if (db > 0) inits.add(command("SELECT", db));
+        this.initCommands = inits.toArray(new byte[inits.size()][]);
+        this.conns = new CacheRedisConnection[connections];
+
+        final CacheRedisSource self = this;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, (Runnable r) -> {
+            final Thread t = new Thread(r, self.getClass().getSimpleName() + "-Timeout-Thread");
+            t.setDaemon(true);
+            return t;
+        });
+        final long timeoutMillis = this.timeoutSeconds * 1000L;
+        scheduler.scheduleWithFixedDelay(() -> {
+            for (CacheRedisConnection conn : conns) {
+                if (conn != null && !conn.isClosed()) conn.checkTimeout(timeoutMillis);
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void close() throws Exception {  //给Application 关闭时调用
+        destroy(null);
+    }
+
+    @Override
+    public String resourceName() {
+        Resource res = this.getClass().getAnnotation(Resource.class);
+        return res == null ? "cacheredis" : res.name();
+    }
+
+    @Override
+    public void destroy(AnyValue conf) {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (conns != null) {
+            for (CacheRedisConnection conn : conns) {
+                if (conn != null) conn.close(new IllegalStateException(this.getClass().getSimpleName() + " is closed"));
+            }
+        }
+        if (ownTransportFactory) transportFactory.shutdownNow();
+    }
+
+    //轮询选取连接, 已关闭的连接会重建
+    private CacheRedisConnection connection() {
+        final int index = (connIndex.getAndIncrement() & 0x7fffffff) % conns.length;
+        CacheRedisConnection conn = conns[index];
+        if (conn != null && !conn.isClosed()) return conn;
+        synchronized (conns) {
+            conn = conns[index];
+            if (conn == null || conn.isClosed()) {
+                conn = new CacheRedisConnection(transport, address, initCommands);
+                conns[index] = conn;
+            }
+        }
+        return conn;
+    }
+
+    private static byte[] command(final Object... args) {
+        byte[][] bs = new byte[args.length][];
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            bs[i] = arg instanceof byte[] ? (byte[]) arg : String.valueOf(arg).getBytes(StandardCharsets.UTF_8);
+        }
+        return CacheRedisConnection.command(bs);
+    }
+
+    private CompletableFuture<Object> send(final Object... args) {
+        return connection().send(command(args));
+    }
+
+    //---------------------- 编解码 ----------------------
+    private byte[] encodeValue(final Object value) {
+        String json = objValueType == null ? convert.convertTo(value) : convert.convertTo(objValueType, value);
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private V decodeValue(final Object rs) {
+        if (rs == null) return null;
+        String json = new String((byte[]) rs, StandardCharsets.UTF_8);
+        if (objValueType != null) return convert.convertFrom(objValueType, json);
+        final int[] pos = new int[1];
+        final Object value = parseJson(json, pos);
+        if (skipBlank(json, pos) < json.length()) throw new ConvertException("illegal json text (" + json + ")");
+        return (V) value;
+    }
+
+    //JsonConvert不支持反解析为Object, 未配置value-type时自行按JSON的自然类型解析
+    private static Object parseJson(final String json, final int[] pos) {
+        final int start = skipBlank(json, pos);
+        if (start >= json.length()) throw new ConvertException("illegal json text (" + json + ")");
+        final char ch = json.charAt(start);
+        if (ch == '"') {
+            int end = start + 1;
+            while (end < json.length() && json.charAt(end) != '"') {
+                end += json.charAt(end) == '\\' ? 2 : 1;
+            }
+            pos[0] = end + 1;
+            return JsonConvert.root().convertFrom(String.class, json.substring(start, Math.min(end + 1, json.length())));
+        }
+        if (ch == '{' || ch == '[') {
+            final boolean map = ch == '{';
+            final Map<String, Object> values = map ? new LinkedHashMap<>() : null;
+            final List<Object> items = map ? null : new ArrayList<>();
+            pos[0] = start + 1;
+            if (skipBlank(json, pos) < json.length() && json.charAt(pos[0]) == (map ? '}' : ']')) {
+                pos[0]++;
+                return map ? values : items;
+            }
+            while (true) {
+                if (map) {
+                    Object name = parseJson(json, pos);
+                    if (!(name instanceof String) || skipBlank(json, pos) >= json.length() || json.charAt(pos[0]++) != ':') {
+                        throw new ConvertException("illegal json text (" + json + ")");
+                    }
+                    values.put((String) name, parseJson(json, pos));
+                } else {
+                    items.add(parseJson(json, pos));
+                }
+                final char sep = skipBlank(json, pos) < json.length() ? json.charAt(pos[0]++) : 0;
+                if (sep == (map ? '}' : ']')) return map ? values : items;
+                if (sep != ',') throw new ConvertException("illegal json text (" + json + ")");
+            }
+        }
+        int end = start;
+        while (end < json.length() && ",}] \t\r\n".indexOf(json.charAt(end)) < 0) end++;
+        pos[0] = end;
+        final String text = json.substring(start, end);
+        if ("null".equals(text)) return null;
+        if ("true".equals(text)) return Boolean.TRUE;
+        if ("false".equals(text)) return Boolean.FALSE;
+        try {
+            if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) return Long.parseLong(text);
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new ConvertException("illegal json text (" + json + ")", e);
+        }
+    }
+
+    private static int skipBlank(final String json, final int[] pos) {
+        while (pos[0] < json.length() && Character.isWhitespace(json.charAt(pos[0]))) pos[0]++;
+        return pos[0];
+    }
+
+    private static String decodeString(final Object rs) {
+        if (rs == null) return null;
+        return rs instanceof byte[] ? new String((byte[]) rs, StandardCharsets.UTF_8) : rs.toString();
+    }
+
+    private static Long decodeLong(final Object rs) {
+        if (rs == null) return null;
+        if (rs instanceof Long) return (Long) rs;
+        return Long.parseLong(decodeString(rs));
+    }
+
+    private static long decodeLong(final Object rs, final long defValue) {
+        Long val = decodeLong(rs);
+        return val == null ? defValue : val;
+    }
+
+    private static boolean decodeBool(final Object rs) {
+        return rs instanceof Long && (Long) rs > 0;
+    }
+
+    private static <T> T join(final CompletableFuture<T> future) {
+        return future.join();
+    }
+
+    //---------------------- 通用实现 ----------------------
+    private CompletableFuture<Object> getAndRefreshAsync0(final String key, final int expireSeconds) {
+        final CacheRedisConnection conn = connection(); //同一连接上依次发送, 一次往返
+        CompletableFuture<Object> future = conn.send(command("GET", key));
+        conn.send(command("EXPIRE", key, expireSeconds));
+        return future;
+    }
+
+    private CompletableFuture<Void> setAsync0(final int expireSeconds, final String key, final byte[] value) {
+        CompletableFuture<Object> future = expireSeconds > 0 ? send("SETEX", key, expireSeconds, value) : send("SET", key, value);
+        return future.thenApply(rs -> null);
+    }
+
+    private <T> CompletableFuture<Collection<T>> getCollectionAsync0(final String key, final Function<Object, T> decoder) {
+        return send("TYPE", key).thenCompose(type -> {
+            final boolean set = "set".equals(type);
+            if (!set && !"list".equals(type)) return CompletableFuture.completedFuture(null);
+            CompletableFuture<Object> future = set ? send("SMEMBERS", key) : send("LRANGE", key, 0, -1);
+            return future.thenApply(rs -> {
+                final Collection<T> items = set ? new LinkedHashSet<>() : new ArrayList<>();
+                if (rs != null) {
+                    for (Object item : (List) rs) {
+                        items.add(decoder.apply(item));
+                    }
+                }
+                return items;
+            });
+        });
+    }
+
+    private <T> CompletableFuture<Collection<T>> getCollectionAndRefreshAsync0(final String key, final int expireSeconds, final Function<Object, T> decoder) {
+        CompletableFuture<Collection<T>> future = getCollectionAsync0(key, decoder);
+        refreshAsync(key, expireSeconds);
+        return future;
+    }
+
+    private CompletableFuture<Void> voidAsync(final Object... args) {
+        return send(args).thenApply(rs -> null);
+    }
+
+    //---------------------- 同步方法 ----------------------
+    @Override
+    public boolean exists(final String key) {
+        return join(existsAsync(key));
+    }
+
+    @Override
+    public V get(final String key) {
+        return join(getAsync(key));
+    }
+
+    @Override
+    public V getAndRefresh(final String key, final int expireSeconds) {
+        return join(getAndRefreshAsync(key, expireSeconds));
+    }
+
+    @Override
+    public void refresh(final String key, final int expireSeconds) {
+        join(refreshAsync(key, expireSeconds));
+    }
+
+    @Override
+    public void set(final String key, final V value) {
+        join(setAsync(key, value));
+    }
+
+    @Override
+    public void set(final int expireSeconds, final String key, final V value) {
+        join(setAsync(expireSeconds, key, value));
+    }
+
+    @Override
+    public void setExpireSeconds(final String key, final int expireSeconds) {
+        join(setExpireSecondsAsync(key, expireSeconds));
+    }
+
+    @Override
+    public void remove(final String key) {
+        join(removeAsync(key));
+    }
+
+    @Override
+    public long incr(final String key) {
+        return join(incrAsync(key));
+    }
+
+    @Override
+    public long incr(final String key, long num) {
+        return join(incrAsync(key, num));
+    }
+
+    @Override
+    public long decr(final String key) {
+        return join(decrAsync(key));
+    }
+
+    @Override
+    public long decr(final String key, long num) {
+        return join(decrAsync(key, num));
+    }
+
+    @Override
+    public Collection<V> getCollection(final String key) {
+        return join(getCollectionAsync(key));
+    }
+
+    @Override
+    public int getCollectionSize(final String key) {
+        return join(getCollectionSizeAsync(key));
+    }
+
+    @Override
+    public Collection<V> getCollectionAndRefresh(final String key, final int expireSeconds) {
+        return join(getCollectionAndRefreshAsync(key, expireSeconds));
+    }
+
+    @Override
+    public void appendListItem(final String key, final V value) {
+        join(appendListItemAsync(key, value));
+    }
+
+    @Override
+    public void removeListItem(final String key, final V value) {
+        join(removeListItemAsync(key, value));
+    }
+
+    @Override
+    public boolean existsSetItem(final String key, final V value) {
+        return join(existsSetItemAsync(key, value));
+    }
+
+    @Override
+    public void appendSetItem(final String key, final V value) {
+        join(appendSetItemAsync(key, value));
+    }
+
+    @Override
+    public void removeSetItem(final String key, final V value) {
+        join(removeSetItemAsync(key, value));
+    }
+
+    @Override
+    public List<String> queryKeys() {
+        return join(queryKeysAsync());
+    }
+
+    @Override
+    public int getKeySize() {
+        return join(getKeySizeAsync());
+    }
+
+    @Override
+    public List<CacheEntry<Object>> queryList() {
+        return join(queryListAsync());
+    }
+
+    @Override
+    public String getString(final String key) {
+        return join(getStringAsync(key));
+    }
+
+    @Override
+    public String getStringAndRefresh(final String key, final int expireSeconds) {
+        return join(getStringAndRefreshAsync(key, expireSeconds));
+    }
+
+    @Override
+    public void setString(final String key, final String value) {
+        join(setStringAsync(key, value));
+    }
+
+    @Override
+    public void setString(final int expireSeconds, final String key, final String value) {
+        join(setStringAsync(expireSeconds, key, value));
+    }
+
+    @Override
+    public Collection<String> getStringCollection(final String key) {
+        return join(getStringCollectionAsync(key));
+    }
+
+    @Override
+    public Collection<String> getStringCollectionAndRefresh(final String key, final int expireSeconds) {
+        return join(getStringCollectionAndRefreshAsync(key, expireSeconds));
+    }
+
+    @Override
+    public void appendStringListItem(final String key, final String value) {
+        join(appendStringListItemAsync(key, value));
+    }
+
+    @Override
+    public void removeStringListItem(final String key, final String value) {
+        join(removeStringListItemAsync(key, value));
+    }
+
+    @Override
+    public boolean existsStringSetItem(final String key, final String value) {
+        return join(existsStringSetItemAsync(key, value));
+    }
+
+    @Override
+    public void appendStringSetItem(final String key, final String value) {
+        join(appendStringSetItemAsync(key, value));
+    }
+
+    @Override
+    public void removeStringSetItem(final String key, final String value) {
+        join(removeStringSetItemAsync(key, value));
+    }
+
+    @Override
+    public long getLong(final String key, long defValue) {
+        return join(getLongAsync(key, defValue));
+    }
+
+    @Override
+    public long getLongAndRefresh(final String key, final int expireSeconds, long defValue) {
+        return join(getLongAndRefreshAsync(key, expireSeconds, defValue));
+    }
+
+    @Override
+    public void setLong(final String key, final long value) {
+        join(setLongAsync(key, value));
+    }
+
+    @Override
+    public void setLong(final int expireSeconds, final String key, final long value) {
+        join(setLongAsync(expireSeconds, key, value));
+    }
+
+    @Override
+    public Collection<Long> getLongCollection(final String key) {
+        return join(getLongCollectionAsync(key));
+    }
+
+    @Override
+    public Collection<Long> getLongCollectionAndRefresh(final String key, final int expireSeconds) {
+        return join(getLongCollectionAndRefreshAsync(key, expireSeconds));
+    }
+
+    @Override
+    public void appendLongListItem(final String key, final long value) {
+        join(appendLongListItemAsync(key, value));
+    }
+
+    @Override
+    public void removeLongListItem(final String key, final long value) {
+        join(removeLongListItemAsync(key, value));
+    }
+
+    @Override
+    public boolean existsLongSetItem(final String key, final long value) {
+        return join(existsLongSetItemAsync(key, value));
+    }
+
+    @Override
+    public void appendLongSetItem(final String key, final long value) {
+        join(appendLongSetItemAsync(key, value));
+    }
+
+    @Override
+    public void removeLongSetItem(final String key, final long value) {
+        join(removeLongSetItemAsync(key, value));
+    }
+
+    @Override
+    public Map<String, V> getMany(final String... keys) {
+        return join(getManyAsync(keys));
+    }
+
+    @Override
+    public void setMany(final Map<String, V> values) {
+        join(setManyAsync(values));
+    }
+
+    @Override
+    public void setMany(final int expireSeconds, final Map<String, V> values) {
+        join(setManyAsync(expireSeconds, values));
+    }
+
+    @Override
+    public void removeMany(final String... keys) {
+        join(removeManyAsync(keys));
+    }
+
+    @Override
+    public Map<String, Long> incrMany(final Map<String, Long> nums) {
+        return join(incrManyAsync(nums));
+    }
+
+    //---------------------- 异步方法 ----------------------
+    @Override
+    public CompletableFuture<Boolean> existsAsync(final String key) {
+        return send("EXISTS", key).thenApply(rs -> decodeBool(rs));
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(final String key) {
+        return send("GET", key).thenApply(rs -> decodeValue(rs));
+    }
+
+    @Override
+    public CompletableFuture<V> getAndRefreshAsync(final String key, final int expireSeconds) {
+        return getAndRefreshAsync0(key, expireSeconds).thenApply(rs -> decodeValue(rs));
+    }
+
+    @Override
+    public CompletableFuture<Void> refreshAsync(final String key, final int expireSeconds) {
+        return voidAsync("EXPIRE", key, expireSeconds);
+    }
+
+    @Override
+    public CompletableFuture<Void> setAsync(final String key, final V value) {
+        return setAsync0(0, key, encodeValue(value));
+    }
+
+    @Override
+    public CompletableFuture<Void> setAsync(final int expireSeconds, final String key, final V value) {
+        return setAsync0(expireSeconds, key, encodeValue(value));
+    }
+
+    @Override
+    public CompletableFuture<Void> setExpireSecondsAsync(final String key, final int expireSeconds) {
+        return voidAsync("EXPIRE", key, expireSeconds);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeAsync(final String key) {
+        return voidAsync("DEL", key);
+    }
+
+    @Override
+    public CompletableFuture<Long> incrAsync(final String key) {
+        return incrAsync(key, 1);
+    }
+
+    @Override
+    public CompletableFuture<Long> incrAsync(final String key, long num) {
+        return send("INCRBY", key, num).thenApply(rs -> decodeLong(rs));
+    }
+
+    @Override
+    public CompletableFuture<Long> decrAsync(final String key) {
+        return incrAsync(key, -1);
+    }
+
+    @Override
+    public CompletableFuture<Long> decrAsync(final String key, long num) {
+        return incrAsync(key, -num);
+    }
+
+    @Override
+    public CompletableFuture<Collection<V>> getCollectionAsync(final String key) {
+        return getCollectionAsync0(key, this::decodeValue);
+    }
+
+    @Override
+    public CompletableFuture<Integer> getCollectionSizeAsync(final String key) {
+        return send("TYPE", key).thenCompose(type -> {
+            if ("set".equals(type)) return send("SCARD", key);
+            if ("list".equals(type)) return send("LLEN", key);
+            return CompletableFuture.completedFuture((Object) 0L);
+        }).thenApply(rs -> (int) decodeLong(rs, 0L));
+    }
+
+    @Override
+    public CompletableFuture<Collection<V>> getCollectionAndRefreshAsync(final String key, final int expireSeconds) {
+        return getCollectionAndRefreshAsync0(key, expireSeconds, this::decodeValue);
+    }
+
+    @Override
+    public CompletableFuture<Void> appendListItemAsync(final String key, final V value) {
+        return voidAsync("RPUSH", key, encodeValue(value));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeListItemAsync(final String key, final V value) {
+        return voidAsync("LREM", key, 0, encodeValue(value));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> existsSetItemAsync(final String key, final V value) {
+        return send("SISMEMBER", key, encodeValue(value)).thenApply(rs -> decodeBool(rs));
+    }
+
+    @Override
+    public CompletableFuture<Void> appendSetItemAsync(final String key, final V value) {
+        return voidAsync("SADD", key, encodeValue(value));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeSetItemAsync(final String key, final V value) {
+        return voidAsync("SREM", key, encodeValue(value));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> queryKeysAsync() {
+        return scanAsync0("0", new HashSet<>(), new ArrayList<>(), (conn, key) -> CompletableFuture.completedFuture(key));
+    }
+
+    @Override
+    public CompletableFuture<Integer> getKeySizeAsync() {
+        return send("DBSIZE").thenApply(rs -> (int) decodeLong(rs, 0L));
+    }
+
+    @Override
+    public CompletableFuture<List<CacheEntry< Object>>> queryListAsync() {
+        return scanAsync0("0", new HashSet<>(), new ArrayList<>(), this::queryEntryAsync0);
+    }
+
+    //用SCAN分批遍历, 避免KEYS长时间阻塞Redis; SCAN可能重复返回同一个key, 按seen去重
+    private <T> CompletableFuture<List<T>> scanAsync0(final String cursor, final Set<String> seen, final List<T> rs,
+        final BiFunction<CacheRedisConnection, String, CompletableFuture<T>> mapper) {
+        return send("SCAN", cursor, "COUNT", 500).thenCompose(reply0 -> {
+            final List reply = (List) reply0;
+            final List<CompletableFuture<T>> futures = new ArrayList<>();
+            final CacheRedisConnection conn = connection();
+            for (Object item : (List) reply.get(1)) {
+                final String key = decodeString(item);
+                if (seen.add(key)) futures.add(mapper.apply(conn, key));
+            }
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).thenCompose(v -> {
+                for (CompletableFuture<T> future : futures) {
+                    T one = future.join();
+                    if (one != null) rs.add(one);
+                }
+                final String next = decodeString(reply.get(0));
+                return "0".equals(next) ? CompletableFuture.completedFuture(rs) : scanAsync0(next, seen, rs, mapper);
+            });
+        });
+    }
+
+    private CompletableFuture<CacheEntry<Object>> queryEntryAsync0(final CacheRedisConnection conn, final String key) {
+        final CompletableFuture<Object> ttlFuture = conn.send(command("TTL", key));
+        return conn.send(command("TYPE", key)).thenCompose(type -> {
+            final CompletableFuture<Object> future;
+            if ("string".equals(type)) {
+                future = conn.send(command("GET", key));
+            } else if ("list".equals(type)) {
+                future = conn.send(command("LRANGE", key, 0, -1));
+            } else if ("set".equals(type)) {
+                future = conn.send(command("SMEMBERS", key));
+            } else { //已删除或hash等非CacheSource写入的类型
+                return CompletableFuture.completedFuture(null);
+            }
+            return future.thenCombine(ttlFuture, (rs, ttl) -> createEntry(key, (String) type, rs, decodeLong(ttl, -1L)));
+        });
+    }
+
+    //Redis中不保存CacheEntryType, 按值推断: 整数为LONG, 能按value-type解析的为OBJECT, 否则为STRING
+    private CacheEntry<Object> createEntry(final String key, final String type, final Object rs, final long ttl) {
+        if (rs == null) return null;
+        final int expireSeconds = ttl > 0 ? (int) ttl : 0;
+        if ("string".equals(type)) {
+            final String text = decodeString(rs);
+            try {
+                return new CacheEntry<>(CacheEntryType.LONG, expireSeconds, key, Long.parseLong(text), null, null);
+            } catch (NumberFormatException e) {
+            }
+            final Object value = decodeValueOrNull(rs);
+            if (value == null) return new CacheEntry<>(CacheEntryType.STRING, expireSeconds, key, text, null, null);
+            return new CacheEntry<>(CacheEntryType.OBJECT, expireSeconds, key, value, null, null);
+        }
+        final List<Object> items = new ArrayList<>();
+        boolean decoded = true;
+        for (Object item : (List) rs) {
+            Object value = decodeValueOrNull(item);
+            if (value == null) {
+                decoded = false;
+                break;
+            }
+            items.add(value);
+        }
+        if (!decoded) {
+            items.clear();
+            for (Object item : (List) rs) {
+                items.add(decodeString(item));
+            }
+        }
+        if ("list".equals(type)) {
+            return new CacheEntry<>(decoded ? CacheEntryType.OBJECT_LIST : CacheEntryType.STRING_LIST, expireSeconds, key, null, null, new ConcurrentLinkedQueue<>(items));
+        }
+        return new CacheEntry<>(decoded ? CacheEntryType.OBJECT_SET : CacheEntryType.STRING_SET, expireSeconds, key, null, new CopyOnWriteArraySet<>(items), null);
+    }
+
+    private Object decodeValueOrNull(final Object rs) {
+        try {
+            return decodeValue(rs);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> getStringAsync(final String key) {
+        return send("GET", key).thenApply(rs -> decodeString(rs));
+    }
+
+    @Override
+    public CompletableFuture<String> getStringAndRefreshAsync(final String key, final int expireSeconds) {
+        return getAndRefreshAsync0(key, expireSeconds).thenApply(rs -> decodeString(rs));
+    }
+
+    @Override
+    public CompletableFuture<Void> setStringAsync(final String key, final String value) {
+        return setAsync0(0, key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public CompletableFuture<Void> setStringAsync(final int expireSeconds, final String key, final String value) {
+        return setAsync0(expireSeconds, key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public CompletableFuture<Collection<String>> getStringCollectionAsync(final String key) {
+        return getCollectionAsync0(key, CacheRedisSource::decodeString);
+    }
+
+    @Override
+    public CompletableFuture<Collection<String>> getStringCollectionAndRefreshAsync(final String key, final int expireSeconds) {
+        return getCollectionAndRefreshAsync0(key, expireSeconds, CacheRedisSource::decodeString);
+    }
+
+    @Override
+    public CompletableFuture<Void> appendStringListItemAsync(final String key, final String value) {
+        return voidAsync("RPUSH", key, value);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeStringListItemAsync(final String key, final String value) {
+        return voidAsync("LREM", key, 0, value);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> existsStringSetItemAsync(final String key, final String value) {
+        return send("SISMEMBER", key, value).thenApply(rs -> decodeBool(rs));
+    }
+
+    @Override
+    public CompletableFuture<Void> appendStringSetItemAsync(final String key, final String value) {
+        return voidAsync("SADD", key, value);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeStringSetItemAsync(final String key, final String value) {
+        return voidAsync("SREM", key, value);
+    }
+
+    @Override
+    public CompletableFuture<Long> getLongAsync(final String key, long defValue) {
+        return send("GET", key).thenApply(rs -> decodeLong(rs, defValue));
+    }
+
+    @Override
+    public CompletableFuture<Long> getLongAndRefreshAsync(final String key, final int expireSeconds, long defValue) {
+        return getAndRefreshAsync0(key, expireSeconds).thenApply(rs -> decodeLong(rs, defValue));
+    }
+
+    @Override
+    public CompletableFuture<Void> setLongAsync(final String key, long value) {
+        return setAsync0(0, key, String.valueOf(value).getBytes());
+    }
+
+    @Override
+    public CompletableFuture<Void> setLongAsync(final int expireSeconds, final String key, final long value) {
+        return setAsync0(expireSeconds, key, String.valueOf(value).getBytes());
+    }
+
+    @Override
+    public CompletableFuture<Collection<Long>> getLongCollectionAsync(final String key) {
+        return getCollectionAsync0(key, CacheRedisSource::decodeLong);
+    }
+
+    @Override
+    public CompletableFuture<Collection<Long>> getLongCollectionAndRefreshAsync(final String key, final int expireSeconds) {
+        return getCollectionAndRefreshAsync0(key, expireSeconds, CacheRedisSource::decodeLong);
+    }
+
+    @Override
+    public CompletableFuture<Void> appendLongListItemAsync(final String key, final long value) {
+        return voidAsync("RPUSH", key, value);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeLongListItemAsync(final String key, final long value) {
+        return voidAsync("LREM", key, 0, value);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> existsLongSetItemAsync(final String key, final long value) {
+        return send("SISMEMBER", key, value).thenApply(rs -> decodeBool(rs));
+    }
+
+    @Override
+    public CompletableFuture<Void> appendLongSetItemAsync(final String key, final long value) {
+        return voidAsync("SADD", key, value);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeLongSetItemAsync(final String key, final long value) {
+        return voidAsync("SREM", key, value);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, V>> getManyAsync(final String... keys) {
+        if (keys == null || keys.length == 0) return CompletableFuture.completedFuture(new HashMap<>());
+        Object[] args = new Object[keys.length + 1];
+        args[0] = "MGET";
+        System.arraycopy(keys, 0, args, 1, keys.length);
+        return send(args).thenApply(rs -> {
+            final Map<String, V> map = new HashMap<>();
+            final List list = (List) rs;
+            for (int i = 0; i < keys.length && i < list.size(); i++) {
+                V value = decodeValue(list.get(i));
+                if (value != null) map.put(keys[i], value);
+            }
+            return map;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> setManyAsync(final Map<String, V> values) {
+        if (values == null || values.isEmpty()) return CompletableFuture.completedFuture(null);
+        Object[] args = new Object[values.size() * 2 + 1];
+        args[0] = "MSET";
+        int index = 0;
+        for (Map.Entry<String, V> en : values.entrySet()) {
+            args[++index] = en.getKey();
+            args[++index] = encodeValue(en.getValue());
+        }
+        return voidAsync(args);
+    }
+
+    @Override
+    public CompletableFuture<Void> setManyAsync(final int expireSeconds, final Map<String, V> values) {
+        if (expireSeconds <= 0) return setManyAsync(values);
+        if (values == null || values.isEmpty()) return CompletableFuture.completedFuture(null);
+        final CacheRedisConnection conn = connection();
+        final CompletableFuture[] futures = new CompletableFuture[values.size()];
+        int index = 0;
+        for (Map.Entry<String, V> en : values.entrySet()) {
+            futures[index++] = conn.send(command("SETEX", en.getKey(), expireSeconds, encodeValue(en.getValue())));
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeManyAsync(final String... keys) {
+        if (keys == null || keys.length == 0) return CompletableFuture.completedFuture(null);
+        Object[] args = new Object[keys.length + 1];
+        args[0] = "DEL";
+        System.arraycopy(keys, 0, args, 1, keys.length);
+        return voidAsync(args);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Long>> incrManyAsync(final Map<String, Long> nums) {
+        final Map<String, Long> map = new LinkedHashMap<>();
+        if (nums == null || nums.isEmpty()) return CompletableFuture.completedFuture(map);
+        final CacheRedisConnection conn = connection();
+        final String[] keys = new String[nums.size()];
+        final CompletableFuture<Object>[] futures = new CompletableFuture[nums.size()];
+        int index = 0;
+        for (Map.Entry<String, Long> en : nums.entrySet()) {
+            keys[index] = en.getKey();
+            futures[index++] = conn.send(command("INCRBY", en.getKey(), en.getValue() == null ? 1L : en.getValue())); //与CacheMemorySource一致, null视为1
+        }
+        return CompletableFuture.allOf(futures).thenApply(v -> {
+            for (int i = 0; i < keys.length; i++) {
+                map.put(keys[i], decodeLong(futures[i].join()));
+            }
+            return map;
+        });
+    }
+}
@@ -122,6 +122,50 @@ public interface CacheSource<V extends Object> {
 
     public void removeLongSetItem(final String key, final long value);
 
+    //---------------------- 批量操作, 默认逐个调用单key的方法, 实现类可重载为一次调用 ---------------------------------
+    /**
+     * 批量获取值, 不存在或已过期的key不会出现在结果中
+     *
+     * @param keys 多个key
+     *
+     * @return key与值的Map
+     */
+    default Map<String, V> getMany(final String... keys) {
+        final Map<String, V> rs = new LinkedHashMap<>();
+        for (String key : keys) {
+            V value = get(key);
+            if (value != null) rs.put(key, value);
+        }
+        return rs;
+    }
+
+    default void setMany(final Map<String, V> values) {
+        values.forEach((k, v) -> set(k, v));
+    }
+
+    default void setMany(final int expireSeconds, final Map<String, V> values) {
+        values.forEach((k, v) -> set(expireSeconds, k, v));
+    }
+
+    default void removeMany(final String... keys) {
+        for (String key : keys) {
+            remove(key);
+        }
+    }
+
+    /**
+     * 批量自增, key不存在时从0开始自增, 自增值为null时按1自增
+     *
+     * @param nums key与自增值的Map
+     *
+     * @return key与自增后值的Map
+     */
+    default Map<String, Long> incrMany(final Map<String, Long> nums) {
+        final Map<String, Long> rs = new LinkedHashMap<>();
+        nums.forEach((k, v) -> rs.put(k, incr(k, v == null ? 1L : v)));
+        return rs;
+    }
+
     //---------------------- CompletableFuture 异步版 ---------------------------------
     public CompletableFuture<Boolean> existsAsync(final String key);
 
@@ -213,6 +257,51 @@ public interface CacheSource<V extends Object> {
 
     public CompletableFuture<Void> removeLongSetItemAsync(final String key, final long value);
 
+    default CompletableFuture<Map<String, V>> getManyAsync(final String... keys) {
+        final CompletableFuture<V>[] futures = new CompletableFuture[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            futures[i] = getAsync(keys[i]);
+        }
+        return CompletableFuture.allOf(futures).thenApply(v -> {
+            final Map<String, V> rs = new LinkedHashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                V value = futures[i].join();
+                if (value != null) rs.put(keys[i], value);
+            }
+            return rs;
+        });
+    }
+
+    default CompletableFuture<Void> setManyAsync(final Map<String, V> values) {
+        final List<CompletableFuture<Void>> futures = new ArrayList<>(values.size());
+        values.forEach((k, v) -> futures.add(setAsync(k, v)));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+    }
+
+    default CompletableFuture<Void> setManyAsync(final int expireSeconds, final Map<String, V> values) {
+        final List<CompletableFuture<Void>> futures = new ArrayList<>(values.size());
+        values.forEach((k, v) -> futures.add(setAsync(expireSeconds, k, v)));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+    }
+
+    default CompletableFuture<Void> removeManyAsync(final String... keys) {
+        final CompletableFuture<Void>[] futures = new CompletableFuture[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            futures[i] = removeAsync(keys[i]);
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    default CompletableFuture<Map<String, Long>> incrManyAsync(final Map<String, Long> nums) {
+        final Map<String, CompletableFuture<Long>> futures = new LinkedHashMap<>();
+        nums.forEach((k, v) -> futures.put(k, incrAsync(k, v == null ? 1L : v)));
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[futures.size()])).thenApply(v -> {
+            final Map<String, Long> rs = new LinkedHashMap<>();
+            futures.forEach((k, f) -> rs.put(k, f.join()));
+            return rs;
+        });
+    }
+
     default CompletableFuture<Boolean> isOpenAsync() {
         return CompletableFuture.completedFuture(isOpen());
     }
@@ -21,4 +21,16 @@ public interface DataCacheListener {
     public <T> int updateCache(Class<T> clazz, T... entitys);
 
     public <T> int deleteCache(Class<T> clazz, Serializable... ids);
+
+    /**
+     * 使Entity类的查询结果缓存失效, 用于没有EntityCache的Entity
+     *
+     * @param <T>   泛型
+     * @param clazz Entity类
+     *
+     * @return 结果, -1表示未启用查询结果缓存
+     */
+    default <T> int clearQueryCache(Class<T> clazz) {
+        return -1;
+    }
 }
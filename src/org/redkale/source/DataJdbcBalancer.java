@@ -0,0 +1,105 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.source;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多个读库连接池的负载均衡策略, 通过javax.persistence.replicas.balancer配置   <br>
+ * 可选值: roundrobin(默认)、leastinflight、latency 或 自定义实现类的类名   <br>
+ * 被摘除(isAvailable()为false)的连接池不参与选择, 全部被摘除时仍返回其中一个
+ *
+ * <p>
+ * 详情见: https://redkale.org
+ *
+ * @author zhangjx
+ */
+public interface DataJdbcBalancer {
+
+    /**
+     * 选择一个读库连接池
+     *
+     * @param pools 读库连接池, 至少一个
+     *
+     * @return PoolJdbcSource
+     */
+    public PoolJdbcSource select(PoolJdbcSource[] pools);
+
+    public static DataJdbcBalancer create(String name) {
+        if (name == null || name.isEmpty() || "roundrobin".equalsIgnoreCase(name)) return new RoundRobinBalancer();
+        if ("leastinflight".equalsIgnoreCase(name)) return new LeastInflightBalancer();
+        if ("latency".equalsIgnoreCase(name)) return new LatencyBalancer();
+        try {
+            return (DataJdbcBalancer) Thread.currentThread().getContextClassLoader().loadClass(name).newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException("DataJdbcBalancer (" + name + ") create error", e);
+        }
+    }
+
+    /**
+     * 轮询
+     */
+    public static class RoundRobinBalancer implements DataJdbcBalancer {
+
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public PoolJdbcSource select(PoolJdbcSource[] pools) {
+            final int start = index.getAndIncrement() & Integer.MAX_VALUE;
+            for (int i = 0; i < pools.length; i++) {
+                PoolJdbcSource pool = pools[(start + i) % pools.length];
+                if (pool.isAvailable()) return pool;
+            }
+            return pools[start % pools.length];
+        }
+    }
+
+    /**
+     * 借出连接数最少优先
+     */
+    public static class LeastInflightBalancer implements DataJdbcBalancer {
+
+        @Override
+        public PoolJdbcSource select(PoolJdbcSource[] pools) {
+            PoolJdbcSource rs = null;
+            final int start = ThreadLocalRandom.current().nextInt(pools.length); //相同时避免总是选中第一个
+            for (int i = 0; i < pools.length; i++) {
+                PoolJdbcSource pool = pools[(start + i) % pools.length];
+                if (!pool.isAvailable()) continue;
+                if (rs == null || pool.getInflightCount() < rs.getInflightCount()) rs = pool;
+            }
+            return rs == null ? pools[start] : rs;
+        }
+    }
+
+    /**
+     * 按平均耗时的倒数加权随机
+     */
+    public static class LatencyBalancer implements DataJdbcBalancer {
+
+        @Override
+        public PoolJdbcSource select(PoolJdbcSource[] pools) {
+            final double[] weights = new double[pools.length];
+            double total = 0;
+            for (int i = 0; i < pools.length; i++) {
+                if (!pools[i].isAvailable()) continue;
+                weights[i] = 1.0 / (1.0 + pools[i].getLatencyMillis());
+                total += weights[i];
+            }
+            if (total <= 0) return pools[ThreadLocalRandom.current().nextInt(pools.length)];
+            double r = ThreadLocalRandom.current().nextDouble(total);
+            for (int i = 0; i < pools.length; i++) {
+                r -= weights[i];
+                if (weights[i] > 0 && r < 0) return pools[i];
+            }
+            for (int i = pools.length - 1; i >= 0; i--) {
+                if (weights[i] > 0) return pools[i];
+            }
+            return pools[0];
+        }
+    }
+}
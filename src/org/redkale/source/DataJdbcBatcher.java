@@ -0,0 +1,272 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.source;
+
+import java.io.Serializable;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+
+/**
+ * DataJdbcSource的合并写入器(group commit) <br>
+ * 并发提交的同一张表的insert、update以及同一字段的updateColumn先排队等待若干毫秒,
+ * 再使用一个连接、一次JDBC批量执行并统一提交事务, 提交完成后依次完成每个调用方的CompletableFuture。
+ * 批量执行失败时回滚并逐个重新执行, 只让出错的调用方失败。 <br>
+ * 更新EntityCache和通知其他节点都在事务提交成功之后进行, 回滚的数据不会进入缓存。
+ * <p>
+ * 详情见: https://redkale.org
+ *
+ * @author zhangjx
+ */
+final class DataJdbcBatcher {
+
+    private static final int KIND_INSERT = 1;
+
+    private static final int KIND_UPDATE = 2;
+
+    private static final int KIND_COLUMN = 3;
+
+    private final DataJdbcSource source;
+
+    private final long delayMillis;
+
+    private final int maxSize;
+
+    private final ConcurrentHashMap<String, BatchGroup> groups = new ConcurrentHashMap<>();
+
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    public DataJdbcBatcher(final DataJdbcSource source, final long delayMillis, final int maxSize) {
+        this.source = source;
+        this.delayMillis = delayMillis;
+        this.maxSize = maxSize;
+        final String threadName = "DataSource-" + (source.name == null ? "" : (source.name + "-")) + "Batch-Thread";
+        this.scheduler = new ScheduledThreadPoolExecutor(Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors())), (Runnable r) -> {
+            final Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 合并insert, values分属不同表时返回null, 由调用方直接执行
+     *
+     * @param <T>    Entity类泛型
+     * @param info   EntityInfo
+     * @param values Entity对象
+     *
+     * @return CompletableFuture
+     */
+    public <T> CompletableFuture<Void> insert(final EntityInfo<T> info, final T... values) {
+        final String table = sameTable(info, values);
+        if (table == null) return null;
+        return submit(KIND_INSERT + ":" + table, KIND_INSERT, info, null, values).thenApply(x -> null);
+    }
+
+    /**
+     * 合并update, values分属不同表时返回null, 由调用方直接执行
+     *
+     * @param <T>    Entity类泛型
+     * @param info   EntityInfo
+     * @param values Entity对象
+     *
+     * @return CompletableFuture
+     */
+    public <T> CompletableFuture<Integer> update(final EntityInfo<T> info, final T... values) {
+        final String table = sameTable(info, values);
+        if (table == null) return null;
+        return submit(KIND_UPDATE + ":" + table, KIND_UPDATE, info, null, values);
+    }
+
+    /**
+     * 合并updateColumn, byte[]类型的值返回null, 由调用方直接执行
+     *
+     * @param <T>    Entity类泛型
+     * @param info   EntityInfo
+     * @param id     主键值
+     * @param column 字段名
+     * @param value  字段值
+     *
+     * @return CompletableFuture
+     */
+    public <T> CompletableFuture<Integer> updateColumn(final EntityInfo<T> info, final Serializable id, final String column, final Serializable value) {
+        if (value instanceof byte[]) return null;
+        return submit(KIND_COLUMN + ":" + info.getType().getName() + ":" + column, KIND_COLUMN, info, column, new Serializable[]{id, value});
+    }
+
+    private <T> String sameTable(final EntityInfo<T> info, final T... values) {
+        final String table = info.getTable(values[0]);
+        for (int i = 1; i < values.length; i++) {
+            if (!table.equals(info.getTable(values[i]))) return null;
+        }
+        return table;
+    }
+
+    private CompletableFuture<Integer> submit(final String key, final int kind, final EntityInfo info, final String column, final Object[] values) {
+        final BatchItem item = new BatchItem(values);
+        final BatchGroup group = groups.computeIfAbsent(key, k -> new BatchGroup(kind, info, column));
+        boolean full;
+        synchronized (group) {
+            group.items.add(item);
+            group.size += kind == KIND_COLUMN ? 1 : values.length;
+            full = group.size >= maxSize;
+            if (!full && !group.scheduled) {
+                group.scheduled = true;
+                scheduler.schedule(() -> flush(group), delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) scheduler.execute(() -> flush(group));
+        return item;
+    }
+
+    private void flush(final BatchGroup group) {
+        final List<BatchItem> items;
+        synchronized (group) {
+            group.scheduled = false;
+            if (group.items.isEmpty()) return;
+            items = group.items;
+            group.items = new ArrayList<>();
+            group.size = 0;
+        }
+        Connection conn = null;
+        Boolean autoCommit = null;
+        try {
+            conn = source.createWriteSQLConnection(group.info);
+            autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            int[] counts = null;
+            try {
+                counts = commit(conn, group, items);
+            } catch (Exception e) {
+                if (items.size() == 1) {
+                    items.get(0).completeExceptionally(e);
+                    return;
+                }
+                source.logger.log(Level.FINER, group.info.getType().getSimpleName() + " batch write " + items.size() + " items error, retry one by one", e);
+            }
+            if (counts != null) {
+                int index = 0;
+                for (BatchItem item : items) {
+                    int c = 0;
+                    for (int i = 0, len = group.kind == KIND_COLUMN ? 1 : item.values.length; i < len; i++) {
+                        int p = counts[index++];
+                        if (p >= 0) c += p;
+                    }
+                    item.complete(c);
+                }
+                return;
+            }
+            for (BatchItem item : items) { //逐个重试
+                try {
+                    int[] rs = commit(conn, group, Collections.singletonList(item));
+                    int c = 0;
+                    for (int p : rs) {
+                        if (p >= 0) c += p;
+                    }
+                    item.complete(c);
+                } catch (Exception e) {
+                    item.completeExceptionally(e);
+                }
+            }
+        } catch (Exception e) {
+            for (BatchItem item : items) {
+                item.completeExceptionally(e);
+            }
+        } finally {
+            if (conn != null) {
+                try {
+                    if (autoCommit != null) conn.setAutoCommit(autoCommit);
+                } catch (SQLException e) {
+                }
+                source.closeSQLConnection(conn);
+            }
+        }
+    }
+
+    //执行并提交事务, 提交成功后才更新缓存和通知其他节点; 失败时回滚并抛出异常
+    private int[] commit(final Connection conn, final BatchGroup group, final List<BatchItem> items) throws SQLException {
+        final List<Runnable> aftercommits = new ArrayList<>();
+        final int[] counts;
+        try {
+            counts = execute(conn, group, items, aftercommits);
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        }
+        for (Runnable updater : aftercommits) {
+            try {
+                updater.run();
+            } catch (Exception e) { //数据已提交, 不能再让调用方失败重试
+                source.logger.log(Level.SEVERE, group.info.getType().getSimpleName() + " update cache after batch commit error", e);
+            }
+        }
+        return counts;
+    }
+
+    private int[] execute(final Connection conn, final BatchGroup group, final List<BatchItem> items, final List<Runnable> aftercommits) {
+        if (group.kind == KIND_COLUMN) {
+            final Serializable[] ids = new Serializable[items.size()];
+            final Serializable[] values = new Serializable[items.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = (Serializable) items.get(i).values[0];
+                values[i] = (Serializable) items.get(i).values[1];
+            }
+            return source.updateColumnBatch(conn, group.info, aftercommits, ids, group.column, values);
+        }
+        int size = 0;
+        for (BatchItem item : items) {
+            size += item.values.length;
+        }
+        final Object[] values = (Object[]) java.lang.reflect.Array.newInstance(group.info.getType(), size);
+        int index = 0;
+        for (BatchItem item : items) {
+            System.arraycopy(item.values, 0, values, index, item.values.length);
+            index += item.values.length;
+        }
+        if (group.kind == KIND_UPDATE) return source.updateBatch(conn, group.info, aftercommits, values);
+        source.insert(conn, group.info, aftercommits, values);
+        return new int[size];
+    }
+
+    public void close() {
+        scheduler.shutdown();
+        for (BatchGroup group : groups.values()) {
+            flush(group);
+        }
+    }
+
+    private static final class BatchGroup {
+
+        final int kind;
+
+        final EntityInfo info;
+
+        final String column;
+
+        List<BatchItem> items = new ArrayList<>();
+
+        int size;
+
+        boolean scheduled;
+
+        public BatchGroup(int kind, EntityInfo info, String column) {
+            this.kind = kind;
+            this.info = info;
+            this.column = column;
+        }
+    }
+
+    private static final class BatchItem extends CompletableFuture<Integer> {
+
+        final Object[] values;
+
+        public BatchItem(Object[] values) {
+            this.values = values;
+        }
+    }
+}
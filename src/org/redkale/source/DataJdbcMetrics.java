@@ -0,0 +1,251 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.source;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+/**
+ * DataJdbcSource的SQL执行统计  <br>
+ * 按Entity类和操作类型(SELECT、INSERT、UPDATE、DELETE等)统计执行次数、失败次数、耗时分布和影响的记录数。
+ * 通过代理Connection拦截Statement的execute方法, 不需要修改各个查询方法。
+ * 代理使JDBC对象的每次方法调用(包括读取ResultSet的字段)都多一次反射调用, 因此默认关闭, 需配置javax.persistence.metrics=true开启。
+ * 耗时超过javax.persistence.slowsql.millis的SQL以WARNING级别输出SQL语句、耗时和调用方。
+ * <p>
+ * 详情见: https://redkale.org
+ *
+ * @author zhangjx
+ */
+public class DataJdbcMetrics {
+
+    //耗时分布的毫秒区间上限, 最后一个区间为大于5000ms
+    public static final long[] BUCKET_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+    private static final Class[] STATEMENT_TYPES = {Statement.class};
+
+    private static final Class[] PREPARED_TYPES = {PreparedStatement.class};
+
+    private static final Class[] CONNECTION_TYPES = {Connection.class};
+
+    private static final Class[] RESULTSET_TYPES = {ResultSet.class};
+
+    private final Logger logger;
+
+    private final long slowNanos;
+
+    private final ConcurrentHashMap<String, Item> items = new ConcurrentHashMap<>();
+
+    public DataJdbcMetrics(final Logger logger, final long slowMillis) {
+        this.logger = logger;
+        this.slowNanos = slowMillis * 1000_000L;
+    }
+
+    /**
+     * 返回代理的Connection, 其创建的Statement执行SQL时记录统计
+     *
+     * @param conn  原始连接
+     * @param clazz Entity类
+     *
+     * @return 代理的Connection
+     */
+    public Connection wrap(final Connection conn, final Class clazz) {
+        if (conn == null) return null;
+        return (Connection) Proxy.newProxyInstance(DataJdbcMetrics.class.getClassLoader(), CONNECTION_TYPES, (Object proxy, Method method, Object[] args) -> {
+            final String name = method.getName();
+            if ("equals".equals(name)) return proxy == args[0];
+            if ("hashCode".equals(name)) return System.identityHashCode(proxy);
+            final Object rs = invoke(conn, method, args);
+            if ("prepareStatement".equals(name)) return wrap((Statement) rs, PREPARED_TYPES, clazz, (String) args[0]);
+            if ("createStatement".equals(name)) return wrap((Statement) rs, STATEMENT_TYPES, clazz, null);
+            return rs;
+        });
+    }
+
+    private Statement wrap(final Statement stmt, final Class[] types, final Class clazz, final String presql) {
+        final String[] batchsql = new String[1];
+        return (Statement) Proxy.newProxyInstance(DataJdbcMetrics.class.getClassLoader(), types, (Object proxy, Method method, Object[] args) -> {
+            final String name = method.getName();
+            if ("addBatch".equals(name) && args != null && batchsql[0] == null) batchsql[0] = (String) args[0];
+            if (!name.startsWith("execute")) return invoke(stmt, method, args);
+            final String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : (presql == null ? batchsql[0] : presql);
+            final long start = System.nanoTime();
+            Object rs = null;
+            boolean error = true;
+            try {
+                rs = invoke(stmt, method, args);
+                error = false;
+            } finally {
+                long rows = 0;
+                if (rs instanceof Integer) rows = Math.max(0, (Integer) rs);
+                if (rs instanceof int[]) {
+                    for (int c : (int[]) rs) {
+                        if (c > 0) rows += c;
+                    }
+                }
+                record(clazz, sql, System.nanoTime() - start, rows, error);
+            }
+            if (rs instanceof ResultSet) return wrap((ResultSet) rs, clazz, sql);
+            return rs;
+        });
+    }
+
+    //查询的记录数在ResultSet关闭时计入
+    private ResultSet wrap(final ResultSet set, final Class clazz, final String sql) {
+        final long[] rows = new long[1];
+        return (ResultSet) Proxy.newProxyInstance(DataJdbcMetrics.class.getClassLoader(), RESULTSET_TYPES, (Object proxy, Method method, Object[] args) -> {
+            final String name = method.getName();
+            final Object rs = invoke(set, method, args);
+            if ("next".equals(name) && Boolean.TRUE.equals(rs)) {
+                rows[0]++;
+            } else if ("close".equals(name) && rows[0] > 0) {
+                item(clazz, operation(sql)).rowsCounter.addAndGet(rows[0]);
+                rows[0] = 0;
+            }
+            return rs;
+        });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    public void record(final Class clazz, final String sql, final long nanos, final long rows, final boolean error) {
+        item(clazz, operation(sql)).record(nanos, rows, error);
+        if (slowNanos > 0 && nanos >= slowNanos) {
+            logger.log(Level.WARNING, (clazz == null ? "" : clazz.getSimpleName()) + " slow sql cost " + (nanos / 1000_000) + " ms, caller " + caller() + ", sql=" + sql);
+        }
+    }
+
+    private Item item(final Class clazz, final String operation) {
+        final String entity = clazz == null ? "" : clazz.getName();
+        return items.computeIfAbsent(entity + ":" + operation, k -> new Item(entity, operation));
+    }
+
+    private static String operation(final String sql) {
+        if (sql == null) return "BATCH";
+        int start = 0;
+        while (start < sql.length() && !Character.isLetter(sql.charAt(start))) start++;
+        int end = start;
+        while (end < sql.length() && Character.isLetter(sql.charAt(end))) end++;
+        return sql.substring(start, end).toUpperCase();
+    }
+
+    //第一个非redkale数据源、非JDK的调用栈
+    private static String caller() {
+        for (StackTraceElement e : new Throwable().getStackTrace()) {
+            String cn = e.getClassName();
+            if (cn.startsWith("org.redkale.source.") || cn.startsWith("java.") || cn.startsWith("javax.")
+                || cn.startsWith("sun.") || cn.startsWith("jdk.") || cn.startsWith("com.sun.proxy.")) continue;
+            return e.toString();
+        }
+        return null;
+    }
+
+    public List<Item> getItems() {
+        List<Item> list = new ArrayList<>(items.values());
+        list.sort((a, b) -> a.entity.equals(b.entity) ? a.operation.compareTo(b.operation) : a.entity.compareTo(b.entity));
+        return list;
+    }
+
+    public void reset() {
+        items.clear();
+    }
+
+    /**
+     * 一个Entity类一种操作的统计
+     */
+    public static class Item {
+
+        private final String entity;
+
+        private final String operation;
+
+        private final AtomicLong counter = new AtomicLong();
+
+        private final AtomicLong errorCounter = new AtomicLong();
+
+        private final AtomicLong rowsCounter = new AtomicLong();
+
+        private final AtomicLong nanosCounter = new AtomicLong();
+
+        private volatile long maxNanos;
+
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_MILLIS.length + 1);
+
+        public Item(String entity, String operation) {
+            this.entity = entity;
+            this.operation = operation;
+        }
+
+        void record(final long nanos, final long rows, final boolean error) {
+            counter.incrementAndGet();
+            if (error) errorCounter.incrementAndGet();
+            if (rows > 0) rowsCounter.addAndGet(rows);
+            nanosCounter.addAndGet(nanos);
+            if (nanos > maxNanos) maxNanos = nanos;
+            final long millis = nanos / 1000_000;
+            int index = 0;
+            while (index < BUCKET_MILLIS.length && millis >= BUCKET_MILLIS[index]) index++;
+            histogram.incrementAndGet(index);
+        }
+
+        public String getEntity() {
+            return entity;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public long getCount() {
+            return counter.get();
+        }
+
+        public long getErrors() {
+            return errorCounter.get();
+        }
+
+        public long getRows() {
+            return rowsCounter.get();
+        }
+
+        public double getAvgMillis() {
+            final long count = counter.get();
+            return count == 0 ? 0 : (nanosCounter.get() / 1000_000.0 / count);
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / 1000_000.0;
+        }
+
+        /**
+         * 耗时分布, 第i项为耗时小于BUCKET_MILLIS[i]毫秒(且不小于前一区间)的次数, 最后一项为大于等于5000毫秒的次数
+         *
+         * @return 各区间的次数
+         */
+        public long[] getHistogram() {
+            long[] rs = new long[histogram.length()];
+            for (int i = 0; i < rs.length; i++) {
+                rs[i] = histogram.get(i);
+            }
+            return rs;
+        }
+
+        @Override
+        public String toString() {
+            return entity + "." + operation + "{count = " + getCount() + ", errors = " + getErrors() + ", rows = " + getRows()
+                + ", avg = " + String.format("%.2f", getAvgMillis()) + "ms, max = " + String.format("%.2f", getMaxMillis()) + "ms, histogram = " + Arrays.toString(getHistogram()) + "}";
+        }
+    }
+}
@@ -9,7 +9,9 @@ import java.io.*;
 import java.net.URL;
 import java.sql.*;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.math.BigDecimal;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.*;
 import java.util.logging.*;
 import java.util.stream.Stream;
@@ -34,6 +36,8 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     protected static final Flipper FLIPPER_ONE = new Flipper(1);
 
+    protected static final int STREAM_FETCHSIZE = 1000;
+
     protected final Logger logger = Logger.getLogger(DataJdbcSource.class.getSimpleName());
 
     protected String name;
@@ -46,6 +50,46 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     protected PoolJdbcSource writePool;
 
+    //所有读库连接池, 第一个即readPool
+    protected PoolJdbcSource[] readPools;
+
+    protected DataJdbcBalancer readBalancer;
+
+    //写操作后同一Entity的读操作使用写库的时长, 0表示不启用
+    protected long readAfterWriteMillis;
+
+    //Entity最近一次写操作的时间
+    protected final ConcurrentHashMap<Class, Long> writeTimes = new ConcurrentHashMap<>();
+
+    //查询结果缓存, 未配置javax.persistence.querycache.size时为null
+    protected DataQueryCache queryCache;
+
+    //正在执行写操作的连接及其Entity类, 连接关闭后使查询结果缓存失效
+    protected final ConcurrentHashMap<Connection, Class> writingConns = new ConcurrentHashMap<>();
+
+    //待通知其他进程失效查询结果缓存的Entity类
+    protected final Set<Class> queryCacheChanges = new CopyOnWriteArraySet<>();
+
+    //是否已安排通知任务, 任务开始时清除
+    private final AtomicBoolean queryCacheScheduled = new AtomicBoolean();
+
+    private ScheduledThreadPoolExecutor queryCacheScheduler;
+
+    //异步方法的线程池
+    protected SourceExecutor executor;
+
+    //SQL执行统计, 默认关闭, javax.persistence.metrics=true或配置了javax.persistence.slowsql.millis时开启
+    protected DataJdbcMetrics metrics;
+
+    //合并写入器, 未配置javax.persistence.batch.delayms时为null
+    protected DataJdbcBatcher writeBatcher;
+
+    //updateColumns每条SQL最多更新的记录数
+    protected int updateChunkSize = 1000;
+
+    //分表并行查询的线程池
+    private volatile ExecutorService shardExecutor;
+
     @Resource(name = "$")
     protected DataCacheListener cacheListener;
 
@@ -94,7 +138,46 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         this.conf = null;
         this.readPool = new PoolJdbcSource(this, "read", readprop);
         this.writePool = new PoolJdbcSource(this, "write", writeprop);
+        final List<PoolJdbcSource> pools = new ArrayList<>();
+        pools.add(this.readPool);
+        for (String url : readprop.getProperty(JDBC_REPLICAS_URLS, "").trim().split("\\s+")) {
+            if (url.isEmpty()) continue;
+            Properties prop = new Properties();
+            prop.putAll(readprop);
+            prop.setProperty(JDBC_URL, url);
+            pools.add(new PoolJdbcSource(this, "read" + pools.size(), prop));
+        }
+        this.readPools = pools.toArray(new PoolJdbcSource[pools.size()]);
+        this.readBalancer = DataJdbcBalancer.create(readprop.getProperty(JDBC_REPLICAS_BALANCER));
+        this.readAfterWriteMillis = Integer.decode(readprop.getProperty(JDBC_REPLICAS_READAFTERWRITE, "0"));
+        final int queryCacheSize = Integer.decode(readprop.getProperty(JDBC_QUERYCACHE_SIZE, "0"));
+        if (queryCacheSize > 0) {
+            this.queryCache = new DataQueryCache(queryCacheSize, Integer.decode(readprop.getProperty(JDBC_QUERYCACHE_EXPIRESECONDS, "60")) * 1000L);
+            final String threadName = "DataSource-" + (unitName == null ? "" : (unitName + "-")) + "QueryCache-Thread";
+            this.queryCacheScheduler = new ScheduledThreadPoolExecutor(1, (Runnable r) -> {
+                final Thread t = new Thread(r, threadName);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        final long slowMillis = Long.decode(readprop.getProperty(JDBC_SLOWSQL_MILLIS, "0"));
+        if (slowMillis > 0 || "true".equalsIgnoreCase(readprop.getProperty(JDBC_METRICS))) { //代理JDBC对象有额外开销, 需显式开启
+            this.metrics = new DataJdbcMetrics(logger, slowMillis);
+        }
+        this.updateChunkSize = Integer.decode(writeprop.getProperty(JDBC_BATCH_MAXSIZE, "1000"));
+        final int batchDelay = Integer.decode(writeprop.getProperty(JDBC_BATCH_DELAYMS, "0"));
+        if (batchDelay > 0) {
+            this.writeBatcher = new DataJdbcBatcher(this, batchDelay, this.updateChunkSize);
+        }
         this.cacheForbidden = "NONE".equalsIgnoreCase(readprop.getProperty(JDBC_CACHE_MODE));
+        int conns = writePool.getMaxConns();
+        for (PoolJdbcSource pool : readPools) {
+            conns += pool.getMaxConns();
+        }
+        final int threads = Integer.decode(readprop.getProperty(JDBC_EXECUTOR_THREADS, "" + conns));
+        final String executorName = "DataSource-" + (unitName == null ? "" : unitName);
+        this.executor = new SourceExecutor(executorName, threads, Integer.decode(readprop.getProperty(JDBC_EXECUTOR_QUEUESIZE, "" + threads * 64)),
+            "virtual".equalsIgnoreCase(readprop.getProperty(JDBC_EXECUTOR_MODE)) ? Utility.virtualThreadFactory(executorName + "-VirtualThread-") : null);
     }
 
     @Local
@@ -111,15 +194,42 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
     @Override
     @Local
     public void close() throws Exception {
-        readPool.close();
+        if (writeBatcher != null) writeBatcher.close();
+        if (shardExecutor != null) shardExecutor.shutdown();
+        if (queryCacheScheduler != null) queryCacheScheduler.shutdown();
+        if (executor != null) executor.shutdown();
+        for (PoolJdbcSource pool : readPools) {
+            pool.close();
+        }
         writePool.close();
     }
 
+    //异步方法使用独立的有界线程池, 与业务请求的线程池隔离
+    @Override
+    protected ExecutorService getExecutor() {
+        return executor == null ? super.getExecutor() : executor;
+    }
+
+    @Local
+    public DataJdbcMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Local
+    public SourceExecutor getSourceExecutor() {
+        return executor;
+    }
+
     @Local
     public PoolJdbcSource getReadPoolJdbcSource() {
         return readPool;
     }
 
+    @Local
+    public PoolJdbcSource[] getReadPoolJdbcSources() {
+        return readPools;
+    }
+
     @Local
     public PoolJdbcSource getWritePoolJdbcSource() {
         return writePool;
@@ -127,12 +237,114 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Local
     public Connection createReadSQLConnection() {
-        return readPool.poll();
+        return metrics == null ? pollReadConnection() : metrics.wrap(pollReadConnection(), null);
+    }
+
+    private Connection pollReadConnection() {
+        if (readPools.length == 1) return readPool.poll();
+        PoolJdbcSource pool = readBalancer.select(readPools);
+        try {
+            return pool.poll();
+        } catch (RuntimeException e) { //换一个读库重试一次
+            for (PoolJdbcSource other : readPools) {
+                if (other != pool && other.isAvailable()) return other.poll();
+            }
+            throw e;
+        }
     }
 
     @Local
     public <T> Connection createWriteSQLConnection() {
-        return writePool.poll();
+        return metrics == null ? writePool.poll() : metrics.wrap(writePool.poll(), null);
+    }
+
+    //写操作后的短时间内同一Entity的读操作使用写库, 避免读到从库未同步的数据
+    protected <T> Connection createReadSQLConnection(final EntityInfo<T> info) {
+        if (readAfterWriteMillis > 0) {
+            Long time = writeTimes.get(info.getType());
+            if (time != null && System.currentTimeMillis() - time < readAfterWriteMillis) {
+                return metrics == null ? writePool.poll() : metrics.wrap(writePool.poll(), info.getType());
+            }
+        }
+        return metrics == null ? pollReadConnection() : metrics.wrap(pollReadConnection(), info.getType());
+    }
+
+    protected <T> Connection createWriteSQLConnection(final EntityInfo<T> info) {
+        if (readAfterWriteMillis > 0) writeTimes.put(info.getType(), System.currentTimeMillis());
+        final Connection conn = metrics == null ? writePool.poll() : metrics.wrap(writePool.poll(), info.getType());
+        if (queryCache != null) writingConns.put(conn, info.getType());
+        return conn;
+    }
+
+    //查询结果缓存: 命中则返回缓存结果的副本, 否则执行loader
+    protected <T, R> R queryCache(final EntityInfo<T> info, final FilterNode node, final String sql, final Supplier<R> loader) {
+        if (queryCache == null || !queryCache.isCacheable(info)) return loader.get();
+        return queryCache.query(info, node, sql, loader);
+    }
+
+    //写操作完成后使查询结果缓存失效, 并合并通知其他进程
+    private void changeQueryCache(final Class clazz) {
+        queryCache.invalidate(clazz);
+        if (cacheListener == null) return;
+        queryCacheChanges.add(clazz);
+        if (queryCacheScheduled.compareAndSet(false, true)) {
+            queryCacheScheduler.schedule(this::flushQueryCacheChanges, 10, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushQueryCacheChanges() {
+        queryCacheScheduled.set(false); //先清除标记, 之后加入的变更会重新安排任务
+        for (Class clz : queryCacheChanges) {
+            queryCacheChanges.remove(clz);
+            try {
+                cacheListener.clearQueryCache(clz);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "clearQueryCache(" + clz.getName() + ") notify error", e);
+            }
+        }
+        if (!queryCacheChanges.isEmpty() && queryCacheScheduled.compareAndSet(false, true)) {
+            queryCacheScheduler.schedule(this::flushQueryCacheChanges, 10, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public <T> int clearQueryCache(Class<T> clazz) {
+        if (queryCache == null) return -1;
+        queryCache.invalidate(clazz);
+        return 0;
+    }
+
+    @Local
+    public long[] getQueryCacheCounts() {
+        if (queryCache == null) return new long[3];
+        return new long[]{queryCache.getSize(), queryCache.getHitCount(), queryCache.getMissCount()};
+    }
+
+    //异步获取连接后再提交给线程池执行, 连接池已满时不占用线程等待; 线程池已满时归还连接并返回失败的CompletableFuture
+    protected <T> CompletableFuture<T> supplyAsync(final PoolJdbcSource pool, final Supplier<T> supplier) {
+        return pool.pollAsync().thenCompose(conn -> {
+            final CompletableFuture<T> future = new CompletableFuture<>();
+            try {
+                getExecutor().execute(() -> {
+                    try {
+                        future.complete(pool.execute(conn, supplier));
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                closeSQLConnection(conn);
+                future.completeExceptionally(e);
+            }
+            return future;
+        });
+    }
+
+    protected CompletableFuture<Void> runAsync(final PoolJdbcSource pool, final Runnable runner) {
+        return supplyAsync(pool, () -> {
+            runner.run();
+            return null;
+        });
     }
 
     @Local
@@ -143,6 +355,10 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         } catch (Exception e) {
             logger.log(Level.WARNING, "closeSQLConnection abort", e);
         }
+        if (queryCache != null) {
+            Class clazz = writingConns.remove(sqlconn);
+            if (clazz != null) changeQueryCache(clazz);
+        }
     }
 
     @Override
@@ -192,12 +408,12 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         }
         final EntityInfo<T> info = loadEntityInfo((Class<T>) values[0].getClass());
         if (info.isVirtualEntity()) {
-            insert(null, info, values);
+            insert(null, info, null, values);
             return;
         }
-        Connection conn = createWriteSQLConnection();
+        Connection conn = createWriteSQLConnection(info);
         try {
-            insert(conn, info, values);
+            insert(conn, info, null, values);
         } finally {
             closeSQLConnection(conn);
         }
@@ -205,11 +421,37 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Override
     public <T> CompletableFuture<Void> insertAsync(@RpcCall(DataCallArrayAttribute.class) T... values) {
-        return CompletableFuture.runAsync(() -> insert(values), getExecutor());
+        if (writeBatcher != null && values.length > 0) {
+            final EntityInfo<T> info = loadEntityInfo((Class<T>) values[0].getClass());
+            CompletableFuture<Void> future = info.isVirtualEntity() ? null : writeBatcher.insert(info, values);
+            if (future != null) return future;
+        }
+        return runAsync(writePool, () -> insert(values));
     }
 
-    protected <T> void insert(final Connection conn, final EntityInfo<T> info, T... values) {
+    /**
+     * 新增对象
+     *
+     * @param <T>          Entity类泛型
+     * @param conn         Connection
+     * @param info         EntityInfo
+     * @param aftercommits 不为null时更新缓存和通知其他节点的操作不立即执行, 而是加入该列表由调用方在事务提交后执行
+     * @param values       Entity对象
+     */
+    protected <T> void insert(final Connection conn, final EntityInfo<T> info, final List<Runnable> aftercommits, T... values) {
         if (values.length == 0) return;
+        if (info.tableStrategy != null && values.length > 1) { //按分表分组新增
+            final Map<String, List<T>> groups = new LinkedHashMap<>();
+            for (T value : values) {
+                groups.computeIfAbsent(info.getTable(value), t -> new ArrayList<>()).add(value);
+            }
+            if (groups.size() > 1) {
+                for (List<T> group : groups.values()) {
+                    insert(conn, info, aftercommits, group.toArray((T[]) java.lang.reflect.Array.newInstance(info.getType(), group.size())));
+                }
+                return;
+            }
+        }
         try {
             if (!info.isVirtualEntity()) {
                 final String sql = info.getInsertSQL(values[0]);
@@ -299,10 +541,17 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
             }
             final EntityCache<T> cache = info.getCache();
             if (cache != null) { //更新缓存
-                for (final T value : values) {
-                    cache.insert(value);
+                final Runnable updater = () -> {
+                    for (final T value : values) {
+                        cache.insert(value);
+                    }
+                    if (cacheListener != null) cacheListener.insertCache(info.getType(), values);
+                };
+                if (aftercommits == null) {
+                    updater.run();
+                } else {
+                    aftercommits.add(updater);
                 }
-                if (cacheListener != null) cacheListener.insertCache(info.getType(), values);
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -373,7 +622,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         if (info.isVirtualEntity()) { //虚拟表只更新缓存Cache
             return delete(null, info, values);
         }
-        Connection conn = createWriteSQLConnection();
+        Connection conn = createWriteSQLConnection(info);
         try {
             return delete(conn, info, values);
         } finally {
@@ -383,7 +632,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Override
     public <T> CompletableFuture<Integer> deleteAsync(final T... values) {
-        return CompletableFuture.supplyAsync(() -> delete(values), getExecutor());
+        return supplyAsync(writePool, () -> delete(values));
     }
 
     protected <T> int delete(final Connection conn, final EntityInfo<T> info, T... values) {
@@ -403,7 +652,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         if (info.isVirtualEntity()) { //虚拟表只更新缓存Cache
             return delete(null, info, ids);
         }
-        Connection conn = createWriteSQLConnection();
+        Connection conn = createWriteSQLConnection(info);
         try {
             return delete(conn, info, ids);
         } finally {
@@ -413,7 +662,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Override
     public <T> CompletableFuture<Integer> deleteAsync(final Class<T> clazz, final Serializable... ids) {
-        return CompletableFuture.supplyAsync(() -> delete(clazz, ids), getExecutor());
+        return supplyAsync(writePool, () -> delete(clazz, ids));
     }
 
     protected <T> int delete(final Connection conn, final EntityInfo<T> info, Serializable... keys) {
@@ -456,7 +705,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         if (info.isVirtualEntity()) {
             return delete(null, info, null, node);
         }
-        Connection conn = createWriteSQLConnection();
+        Connection conn = createWriteSQLConnection(info);
         try {
             return delete(conn, info, null, node);
         } finally {
@@ -466,7 +715,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Override
     public <T> CompletableFuture<Integer> deleteAsync(final Class<T> clazz, final FilterNode node) {
-        return CompletableFuture.supplyAsync(() -> delete(clazz, node), getExecutor());
+        return supplyAsync(writePool, () -> delete(clazz, node));
     }
 
     @Override
@@ -475,7 +724,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         if (info.isVirtualEntity()) {
             return delete(null, info, flipper, node);
         }
-        Connection conn = createWriteSQLConnection();
+        Connection conn = createWriteSQLConnection(info);
         try {
             return delete(conn, info, flipper, node);
         } finally {
@@ -485,7 +734,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Override
     public <T> CompletableFuture<Integer> deleteAsync(final Class<T> clazz, final Flipper flipper, FilterNode node) {
-        return CompletableFuture.supplyAsync(() -> delete(clazz, flipper, node), getExecutor());
+        return supplyAsync(writePool, () -> delete(clazz, flipper, node));
     }
 
     protected <T> int delete(final Connection conn, final EntityInfo<T> info, final Flipper flipper, final FilterNode node) {
@@ -566,7 +815,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         if (info.isVirtualEntity()) {
             return update(null, info, values);
         }
-        Connection conn = createWriteSQLConnection();
+        Connection conn = createWriteSQLConnection(info);
         try {
             return update(conn, info, values);
         } finally {
@@ -576,13 +825,59 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Override
     public <T> CompletableFuture<Integer> updateAsync(final T... values) {
-        return CompletableFuture.supplyAsync(() -> update(values), getExecutor());
+        if (writeBatcher != null && values.length > 0) {
+            final EntityInfo<T> info = loadEntityInfo((Class<T>) values[0].getClass());
+            CompletableFuture<Integer> future = info.isVirtualEntity() ? null : writeBatcher.update(info, values);
+            if (future != null) return future;
+        }
+        return supplyAsync(writePool, () -> update(values));
     }
 
     protected <T> int update(final Connection conn, final EntityInfo<T> info, T... values) {
+        final int[] pc = updateBatch(conn, info, null, values);
+        if (pc == null) return -1;
+        int c = 0;
+        for (int p : pc) {
+            if (p >= 0) c += p;
+        }
+        return c;
+    }
+
+    /**
+     * 批量更新对象, 返回每个对象对应的更新条数; 虚拟表且无缓存时返回null
+     *
+     * @param <T>    Entity类泛型
+     * @param conn         Connection
+     * @param info         EntityInfo
+     * @param aftercommits 不为null时更新缓存和通知其他节点的操作加入该列表, 由调用方在事务提交后执行
+     * @param values       Entity对象
+     *
+     * @return 每个对象的更新条数
+     */
+    protected <T> int[] updateBatch(final Connection conn, final EntityInfo<T> info, final List<Runnable> aftercommits, T... values) {
+        if (info.tableStrategy != null && values.length > 1) { //按分表分组更新
+            final Map<String, List<Integer>> groups = new LinkedHashMap<>();
+            for (int i = 0; i < values.length; i++) {
+                groups.computeIfAbsent(info.getTable(values[i]), t -> new ArrayList<>()).add(i);
+            }
+            if (groups.size() > 1) {
+                final int[] rs = new int[values.length];
+                for (List<Integer> group : groups.values()) {
+                    final T[] array = (T[]) java.lang.reflect.Array.newInstance(info.getType(), group.size());
+                    for (int i = 0; i < array.length; i++) {
+                        array[i] = values[group.get(i)];
+                    }
+                    final int[] pc = updateBatch(conn, info, aftercommits, array);
+                    for (int i = 0; pc != null && i < pc.length; i++) {
+                        rs[group.get(i)] = pc[i];
+                    }
+                }
+                return rs;
+            }
+        }
         try {
             Class clazz = info.getType();
-            int c = -1;
+            int[] pc = null;
             if (!info.isVirtualEntity()) {
                 final String updateSQL = info.getUpdateSQL(values[0]);
                 final Attribute<T, Serializable> primary = info.getPrimary();
@@ -624,22 +919,27 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
                         logger.finest(info.getType().getSimpleName() + " update sql=" + sb.toString().replaceAll("(\r|\n)", "\\n"));
                     } //打印结束
                 }
-                int[] pc = prestmt.executeBatch();
-                c = 0;
-                for (int p : pc) {
-                    if (p >= 0) c += p;
-                }
+                pc = prestmt.executeBatch();
                 prestmt.close();
             }
             //---------------------------------------------------
             final EntityCache<T> cache = info.getCache();
-            if (cache == null) return c;
-            int c2 = 0;
-            for (final T value : values) {
-                c2 += cache.update(value);
+            if (cache == null) return pc;
+            if (aftercommits != null && pc != null) {
+                aftercommits.add(() -> {
+                    for (T value : values) {
+                        cache.update(value);
+                    }
+                    if (cacheListener != null) cacheListener.updateCache(clazz, values);
+                });
+                return pc;
+            }
+            int[] pc2 = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                pc2[i] = cache.update(values[i]);
             }
             if (cacheListener != null) cacheListener.updateCache(clazz, values);
-            return c >= 0 ? c : c2;
+            return pc != null ? pc : pc2;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -662,7 +962,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         if (info.isVirtualEntity()) {
             return updateColumn(null, info, id, column, value);
         }
-        Connection conn = createWriteSQLConnection();
+        Connection conn = createWriteSQLConnection(info);
         try {
             return updateColumn(conn, info, id, column, value);
         } finally {
@@ -672,7 +972,12 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Override
     public <T> CompletableFuture<Integer> updateColumnAsync(final Class<T> clazz, final Serializable id, final String column, final Serializable value) {
-        return CompletableFuture.supplyAsync(() -> updateColumn(clazz, id, column, value), getExecutor());
+        if (writeBatcher != null) {
+            final EntityInfo<T> info = loadEntityInfo(clazz);
+            CompletableFuture<Integer> future = info.isVirtualEntity() ? null : writeBatcher.updateColumn(info, id, column, value);
+            if (future != null) return future;
+        }
+        return supplyAsync(writePool, () -> updateColumn(clazz, id, column, value));
     }
 
     protected <T> int updateColumn(Connection conn, final EntityInfo<T> info, Serializable id, String column, final Serializable value) {
@@ -712,6 +1017,59 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         }
     }
 
+    /**
+     * 根据主键值批量更新对象的column对应的值, 所有语句在一次executeBatch中执行, 不支持byte[]类型的值
+     *
+     * @param <T>          Entity类的泛型
+     * @param conn         Connection
+     * @param info         EntityInfo
+     * @param aftercommits 不为null时更新缓存和通知其他节点的操作加入该列表, 由调用方在事务提交后执行
+     * @param ids          主键值
+     * @param column       字段名
+     * @param values       字段值, 与ids一一对应
+     *
+     * @return 每个主键对应的更新条数
+     */
+    protected <T> int[] updateColumnBatch(final Connection conn, final EntityInfo<T> info, final List<Runnable> aftercommits,
+        final Serializable[] ids, final String column, final Serializable[] values) {
+        try {
+            int[] pc = null;
+            if (!info.isVirtualEntity()) {
+                conn.setReadOnly(false);
+                final Statement stmt = conn.createStatement();
+                for (int i = 0; i < ids.length; i++) {
+                    String sql = "UPDATE " + info.getTable(ids[i]) + " SET " + info.getSQLColumn(null, column) + " = "
+                        + info.formatToString(values[i]) + " WHERE " + info.getPrimarySQLColumn() + " = " + FilterNode.formatToString(ids[i]);
+                    if (info.isLoggable(logger, Level.FINEST)) logger.finest(info.getType().getSimpleName() + " update sql=" + sql);
+                    stmt.addBatch(sql);
+                }
+                pc = stmt.executeBatch();
+                stmt.close();
+            }
+            //---------------------------------------------------
+            final EntityCache<T> cache = info.getCache();
+            if (cache == null) return pc;
+            if (aftercommits != null && pc != null) {
+                aftercommits.add(() -> {
+                    for (int i = 0; i < ids.length; i++) {
+                        T rs = cache.update(ids[i], info.getAttribute(column), values[i]);
+                        if (cacheListener != null) cacheListener.updateCache(info.getType(), rs);
+                    }
+                });
+                return pc;
+            }
+            int[] pc2 = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                T rs = cache.update(ids[i], info.getAttribute(column), values[i]);
+                if (cacheListener != null) cacheListener.updateCache(info.getType(), rs);
+                pc2[i] = rs == null ? 0 : 1;
+            }
+            return pc != null ? pc : pc2;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * 根据主键值更新对象的column对应的值， 必须是Entity Class
      *
@@ -729,7 +1087,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         if (info.isVirtualEntity()) {
             return updateColumn(null, info, column, value, node);
         }
-        Connection conn = createWriteSQLConnection();
+        Connection conn = createWriteSQLConnection(info);
         try {
             return updateColumn(conn, info, column, value, node);
         } finally {
@@ -739,7 +1097,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Override
     public <T> CompletableFuture<Integer> updateColumnAsync(final Class<T> clazz, final String column, final Serializable value, final FilterNode node) {
-        return CompletableFuture.supplyAsync(() -> updateColumn(clazz, column, value, node), getExecutor());
+        return supplyAsync(writePool, () -> updateColumn(clazz, column, value, node));
     }
 
     protected <T> int updateColumn(Connection conn, final EntityInfo<T> info, String column, final Serializable value, FilterNode node) {
@@ -811,7 +1169,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         if (info.isVirtualEntity()) {
             return updateColumn(null, info, id, values);
         }
-        Connection conn = createWriteSQLConnection();
+        Connection conn = createWriteSQLConnection(info);
         try {
             return updateColumn(conn, info, id, values);
         } finally {
@@ -821,7 +1179,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Override
     public <T> CompletableFuture<Integer> updateColumnAsync(final Class<T> clazz, final Serializable id, final ColumnValue... values) {
-        return CompletableFuture.supplyAsync(() -> updateColumn(clazz, id, values), getExecutor());
+        return supplyAsync(writePool, () -> updateColumn(clazz, id, values));
     }
 
     protected <T> int updateColumn(final Connection conn, final EntityInfo<T> info, final Serializable id, final ColumnValue... values) {
@@ -881,6 +1239,110 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         }
     }
 
+    /**
+     * 批量更新多条记录的多个column对应的值, 每条记录的值可以不同， 必须是Entity Class
+     *
+     * @param <T>    Entity类的泛型
+     * @param clazz  Entity类
+     * @param values 主键值与字段值
+     *
+     * @return 更新的数据条数
+     */
+    @Override
+    public <T> int updateColumns(final Class<T> clazz, final Map<? extends Serializable, ColumnValue[]> values) {
+        final EntityInfo<T> info = loadEntityInfo(clazz);
+        if (values == null || values.isEmpty()) return 0;
+        if (info.isVirtualEntity()) {
+            int c = 0;
+            for (Map.Entry<? extends Serializable, ColumnValue[]> en : values.entrySet()) {
+                c += Math.max(0, updateColumn(null, info, en.getKey(), en.getValue()));
+            }
+            return c;
+        }
+        Connection conn = createWriteSQLConnection(info);
+        try {
+            return updateColumns(conn, info, values);
+        } finally {
+            closeSQLConnection(conn);
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<Integer> updateColumnsAsync(final Class<T> clazz, final Map<? extends Serializable, ColumnValue[]> values) {
+        return supplyAsync(writePool, () -> updateColumns(clazz, values));
+    }
+
+    //更新相同字段且在同一张表的记录合并成一条CASE WHEN语句, 各数据库通用
+    protected <T> int updateColumns(final Connection conn, final EntityInfo<T> info, final Map<? extends Serializable, ColumnValue[]> values) {
+        final Map<String, List<Map.Entry<? extends Serializable, ColumnValue[]>>> groups = new LinkedHashMap<>();
+        int c = 0;
+        for (Map.Entry<? extends Serializable, ColumnValue[]> en : values.entrySet()) {
+            final ColumnValue[] cols = en.getValue();
+            if (cols == null || cols.length < 1) continue;
+            final StringBuilder key = new StringBuilder(info.getTable(en.getKey()));
+            boolean blob = false;
+            for (ColumnValue col : cols) {
+                key.append(',').append(col.getColumn());
+                if (col.getValue() instanceof byte[]) blob = true;
+            }
+            if (blob) { //含二进制字段的记录单独更新
+                c += Math.max(0, updateColumn(conn, info, en.getKey(), cols));
+            } else {
+                groups.computeIfAbsent(key.toString(), k -> new ArrayList<>()).add(en);
+            }
+        }
+        try {
+            final String primary = info.getPrimarySQLColumn();
+            final List<T> rs = new ArrayList<>();
+            final EntityCache<T> cache = info.getCache();
+            for (List<Map.Entry<? extends Serializable, ColumnValue[]>> group : groups.values()) {
+                final String table = info.getTable(group.get(0).getKey());
+                final ColumnValue[] first = group.get(0).getValue();
+                final List<Attribute<T, Serializable>> attrs = new ArrayList<>();
+                for (ColumnValue col : first) {
+                    Attribute<T, Serializable> attr = info.getUpdateAttribute(col.getColumn());
+                    if (attr == null) throw new RuntimeException(info.getType() + " cannot found column " + col.getColumn());
+                    attrs.add(attr);
+                }
+                for (int from = 0; from < group.size(); from += updateChunkSize) {
+                    final List<Map.Entry<? extends Serializable, ColumnValue[]>> chunk = group.subList(from, Math.min(group.size(), from + updateChunkSize));
+                    final StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+                    for (int i = 0; i < first.length; i++) {
+                        final String column = info.getSQLColumn(null, first[i].getColumn());
+                        if (i > 0) sql.append(", ");
+                        sql.append(column).append(" = CASE ").append(primary);
+                        for (Map.Entry<? extends Serializable, ColumnValue[]> en : chunk) {
+                            sql.append(" WHEN ").append(FilterNode.formatToString(en.getKey())).append(" THEN ").append(info.formatSQLValue(column, en.getValue()[i]));
+                        }
+                        sql.append(" ELSE ").append(column).append(" END");
+                    }
+                    sql.append(" WHERE ").append(primary).append(" IN (");
+                    boolean comma = false;
+                    for (Map.Entry<? extends Serializable, ColumnValue[]> en : chunk) {
+                        if (comma) sql.append(", ");
+                        sql.append(FilterNode.formatToString(en.getKey()));
+                        comma = true;
+                    }
+                    sql.append(')');
+                    if (info.isLoggable(logger, Level.FINEST)) logger.finest(info.getType().getSimpleName() + " updateColumns " + chunk.size() + " rows sql=" + sql);
+                    conn.setReadOnly(false);
+                    final Statement stmt = conn.createStatement();
+                    c += stmt.executeUpdate(sql.toString());
+                    stmt.close();
+                }
+                if (cache == null) continue;
+                for (Map.Entry<? extends Serializable, ColumnValue[]> en : group) {
+                    T r = cache.updateColumn(en.getKey(), attrs, Arrays.asList(en.getValue()));
+                    if (r != null) rs.add(r);
+                }
+            }
+            if (cacheListener != null && !rs.isEmpty()) cacheListener.updateCache(info.getType(), rs.toArray((T[]) java.lang.reflect.Array.newInstance(info.getType(), rs.size())));
+            return c;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * 根据主键值更新对象的多个column对应的值， 必须是Entity Class
      *
@@ -897,7 +1359,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         if (info.isVirtualEntity()) {
             return updateColumn(null, info, node, null, values);
         }
-        Connection conn = createWriteSQLConnection();
+        Connection conn = createWriteSQLConnection(info);
         try {
             return updateColumn(conn, info, node, null, values);
         } finally {
@@ -907,7 +1369,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Override
     public <T> CompletableFuture<Integer> updateColumnAsync(final Class<T> clazz, final FilterNode node, final ColumnValue... values) {
-        return CompletableFuture.supplyAsync(() -> updateColumn(clazz, node, values), getExecutor());
+        return supplyAsync(writePool, () -> updateColumn(clazz, node, values));
     }
 
     /**
@@ -927,7 +1389,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         if (info.isVirtualEntity()) {
             return updateColumn(null, info, node, flipper, values);
         }
-        Connection conn = createWriteSQLConnection();
+        Connection conn = createWriteSQLConnection(info);
         try {
             return updateColumn(conn, info, node, flipper, values);
         } finally {
@@ -937,7 +1399,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Override
     public <T> CompletableFuture<Integer> updateColumnAsync(final Class<T> clazz, final FilterNode node, final Flipper flipper, final ColumnValue... values) {
-        return CompletableFuture.supplyAsync(() -> updateColumn(clazz, node, flipper, values), getExecutor());
+        return supplyAsync(writePool, () -> updateColumn(clazz, node, flipper, values));
     }
 
     protected <T> int updateColumn(final Connection conn, final EntityInfo<T> info, final FilterNode node, final Flipper flipper, final ColumnValue... values) {
@@ -1017,7 +1479,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Override
     public <T> CompletableFuture<Integer> updateColumnAsync(final T bean, final String... columns) {
-        return CompletableFuture.supplyAsync(() -> updateColumn(bean, columns), getExecutor());
+        return supplyAsync(writePool, () -> updateColumn(bean, columns));
     }
 
     @Override
@@ -1027,7 +1489,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Override
     public <T> CompletableFuture<Integer> updateColumnAsync(final T bean, final FilterNode node, final String... columns) {
-        return CompletableFuture.supplyAsync(() -> updateColumn(bean, node, columns), getExecutor());
+        return supplyAsync(writePool, () -> updateColumn(bean, node, columns));
     }
 
     @Override
@@ -1036,7 +1498,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         if (info.isVirtualEntity()) {
             return updateColumns(null, info, bean, selects);
         }
-        Connection conn = createWriteSQLConnection();
+        Connection conn = createWriteSQLConnection(info);
         try {
             return updateColumns(conn, info, bean, selects);
         } finally {
@@ -1046,7 +1508,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Override
     public <T> CompletableFuture<Integer> updateColumnAsync(final T bean, final SelectColumn selects) {
-        return CompletableFuture.supplyAsync(() -> updateColumn(bean, selects), getExecutor());
+        return supplyAsync(writePool, () -> updateColumn(bean, selects));
     }
 
     protected <T> int updateColumns(final Connection conn, final EntityInfo<T> info, final T bean, final SelectColumn selects) {
@@ -1112,7 +1574,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         if (info.isVirtualEntity()) {
             return updateColumns(null, info, bean, node, selects);
         }
-        Connection conn = createWriteSQLConnection();
+        Connection conn = createWriteSQLConnection(info);
         try {
             return updateColumns(conn, info, bean, node, selects);
         } finally {
@@ -1122,7 +1584,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
 
     @Override
     public <T> CompletableFuture<Integer> updateColumnAsync(final T bean, final FilterNode node, final SelectColumn selects) {
-        return CompletableFuture.supplyAsync(() -> updateColumn(bean, node, selects), getExecutor());
+        return supplyAsync(writePool, () -> updateColumn(bean, node, selects));
     }
 
     protected <T> int updateColumns(final Connection conn, final EntityInfo<T> info, final T bean, final FilterNode node, final SelectColumn selects) {
@@ -1301,7 +1763,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
     public <N extends Number> Map<String, N> getNumberMap(final Class entityClass, final FilterNode node, final FilterFuncColumn... columns) {
         if (columns == null || columns.length == 0) return new HashMap<>();
         final EntityInfo info = loadEntityInfo(entityClass);
-        final Connection conn = createReadSQLConnection();
+        final Connection conn = createReadSQLConnection(info);
         final Map map = new HashMap<>();
         try {
             final EntityCache cache = info.getCache();
@@ -1370,38 +1832,65 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
     @Override
     public Number getNumberResult(final Class entityClass, final FilterFunc func, final Number defVal, final String column, final FilterNode node) {
         final EntityInfo info = loadEntityInfo(entityClass);
-        final Connection conn = createReadSQLConnection();
-        try {
-            final EntityCache cache = info.getCache();
-            if (cache != null && (info.isVirtualEntity() || cache.isFullLoaded())) {
-                if (node == null || node.isCacheUseable(this)) {
-                    return cache.getNumberResult(func, defVal, column, node);
-                }
+        final EntityCache cache = info.getCache();
+        if (cache != null && (info.isVirtualEntity() || cache.isFullLoaded())) {
+            if (node == null || node.isCacheUseable(this)) {
+                return cache.getNumberResult(func, defVal, column, node);
             }
-            final Map<Class, String> joinTabalis = node == null ? null : node.getJoinTabalis();
-            final Set<String> haset = new HashSet<>();
-            final CharSequence join = node == null ? null : node.createSQLJoin(this, false, joinTabalis, haset, info);
-            final CharSequence where = node == null ? null : node.createSQLExpress(info, joinTabalis);
-            final String sql = "SELECT " + func.getColumn((column == null || column.isEmpty() ? "*" : info.getSQLColumn("a", column))) + " FROM " + info.getTable(node) + " a"
-                + (join == null ? "" : join) + ((where == null || where.length() == 0) ? "" : (" WHERE " + where));
-            if (info.isLoggable(logger, Level.FINEST)) logger.finest(entityClass.getSimpleName() + " single sql=" + sql);
-            conn.setReadOnly(true);
-            final PreparedStatement prestmt = conn.prepareStatement(sql);
-            Number rs = defVal;
-            ResultSet set = prestmt.executeQuery();
-            if (set.next()) {
-                Object o = set.getObject(1);
-                if (o != null) rs = (Number) o;
+        }
+        final String[] tables = info.getTables(node);
+        if (tables.length == 1) return getNumberResult(tables[0], info, func, defVal, column, node);
+        Number rs = null;
+        if (func == FilterFunc.AVG) {
+            Number sum = null;
+            Number count = null;
+            for (Number[] item : queryShards(tables, table -> new Number[]{getNumberResult(table, info, FilterFunc.SUM, null, column, node), getNumberResult(table, info, FilterFunc.COUNT, null, column, node)})) {
+                sum = mergeNumber(FilterFunc.SUM, sum, item[0]);
+                count = mergeNumber(FilterFunc.COUNT, count, item[1]);
+            }
+            if (sum != null && count != null && count.longValue() > 0) rs = sum.doubleValue() / count.longValue();
+        } else if (func == FilterFunc.DISTINCTCOUNT) {
+            final Set<List<Object>> set = new HashSet<>();
+            queryShards(tables, table -> queryDistinct(table, info, node, column)).forEach(set::addAll);
+            rs = (long) set.size();
+        } else {
+            for (Number item : queryShards(tables, table -> getNumberResult(table, info, func, null, column, node))) {
+                rs = mergeNumber(func, rs, item);
             }
-            set.close();
-            prestmt.close();
-            return rs;
-        } catch (SQLException e) {
-            if (info.tableStrategy != null && info.tablenotexistSqlstates.contains(';' + e.getSQLState() + ';')) return defVal;
-            throw new RuntimeException(e);
-        } finally {
-            if (conn != null) closeSQLConnection(conn);
         }
+        return rs == null ? defVal : rs;
+    }
+
+    protected Number getNumberResult(final String table, final EntityInfo info, final FilterFunc func, final Number defVal, final String column, final FilterNode node) {
+        final Class entityClass = info.getType();
+        final Map<Class, String> joinTabalis = node == null ? null : node.getJoinTabalis();
+        final Set<String> haset = new HashSet<>();
+        final CharSequence join = node == null ? null : node.createSQLJoin(this, false, joinTabalis, haset, info);
+        final CharSequence where = node == null ? null : node.createSQLExpress(info, joinTabalis);
+        final String sql = "SELECT " + func.getColumn((column == null || column.isEmpty() ? "*" : info.getSQLColumn("a", column))) + " FROM " + table + " a"
+            + (join == null ? "" : join) + ((where == null || where.length() == 0) ? "" : (" WHERE " + where));
+        return queryCache(info, node, sql + " -- " + defVal, () -> {
+            final Connection conn = createReadSQLConnection(info);
+            try {
+                if (info.isLoggable(logger, Level.FINEST)) logger.finest(entityClass.getSimpleName() + " single sql=" + sql);
+                conn.setReadOnly(true);
+                final PreparedStatement prestmt = conn.prepareStatement(sql);
+                Number rs = defVal;
+                ResultSet set = prestmt.executeQuery();
+                if (set.next()) {
+                    Object o = set.getObject(1);
+                    if (o != null) rs = (Number) o;
+                }
+                set.close();
+                prestmt.close();
+                return rs;
+            } catch (SQLException e) {
+                if (info.tableStrategy != null && info.tablenotexistSqlstates.contains(';' + e.getSQLState() + ';')) return defVal;
+                throw new RuntimeException(e);
+            } finally {
+                if (conn != null) closeSQLConnection(conn);
+            }
+        });
     }
 
     //-----------------------queryColumnMapAsync-----------------------------
@@ -1428,40 +1917,72 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
     @Override
     public <T, K extends Serializable, N extends Number> Map<K, N> queryColumnMap(final Class<T> entityClass, final String keyColumn, final FilterFunc func, final String funcColumn, FilterNode node) {
         final EntityInfo info = loadEntityInfo(entityClass);
-        final Connection conn = createReadSQLConnection();
-        try {
-            final EntityCache cache = info.getCache();
-            if (cache != null && (info.isVirtualEntity() || cache.isFullLoaded())) {
-                if (node == null || node.isCacheUseable(this)) {
-                    return cache.queryColumnMap(keyColumn, func, funcColumn, node);
-                }
+        final EntityCache cache = info.getCache();
+        if (cache != null && (info.isVirtualEntity() || cache.isFullLoaded())) {
+            if (node == null || node.isCacheUseable(this)) {
+                return cache.queryColumnMap(keyColumn, func, funcColumn, node);
             }
-            final String sqlkey = info.getSQLColumn(null, keyColumn);
-            final Map<Class, String> joinTabalis = node == null ? null : node.getJoinTabalis();
-            final Set<String> haset = new HashSet<>();
-            final CharSequence join = node == null ? null : node.createSQLJoin(this, false, joinTabalis, haset, info);
-            final CharSequence where = node == null ? null : node.createSQLExpress(info, joinTabalis);
-            final String sql = "SELECT a." + sqlkey + ", " + func.getColumn((funcColumn == null || funcColumn.isEmpty() ? "*" : info.getSQLColumn("a", funcColumn)))
-                + " FROM " + info.getTable(node) + " a" + (join == null ? "" : join) + ((where == null || where.length() == 0) ? "" : (" WHERE " + where)) + " GROUP BY a." + sqlkey;
-            if (info.isLoggable(logger, Level.FINEST)) logger.finest(entityClass.getSimpleName() + " single sql=" + sql);
-            conn.setReadOnly(true);
-            final PreparedStatement prestmt = conn.prepareStatement(sql);
-            Map<K, N> rs = new LinkedHashMap<>();
-            ResultSet set = prestmt.executeQuery();
-            ResultSetMetaData rsd = set.getMetaData();
-            boolean smallint = rsd.getColumnType(1) == Types.SMALLINT;
-            while (set.next()) {
-                rs.put((K) (smallint ? set.getShort(1) : set.getObject(1)), (N) set.getObject(2));
+        }
+        final String[] tables = info.getTables(node);
+        if (tables.length == 1) return queryColumnMap(tables[0], info, keyColumn, func, funcColumn, node);
+        final Map<K, N> rs = new LinkedHashMap<>();
+        if (func == FilterFunc.AVG) {
+            final Map<K, Number> sums = new LinkedHashMap<>();
+            final Map<K, Number> counts = new HashMap<>();
+            for (Map<K, Number>[] item : queryShards(tables, table -> new Map[]{queryColumnMap(table, info, keyColumn, FilterFunc.SUM, funcColumn, node), queryColumnMap(table, info, keyColumn, FilterFunc.COUNT, funcColumn, node)})) {
+                item[0].forEach((k, v) -> sums.put(k, mergeNumber(FilterFunc.SUM, sums.get(k), v)));
+                item[1].forEach((k, v) -> counts.put(k, mergeNumber(FilterFunc.COUNT, counts.get(k), v)));
+            }
+            sums.forEach((k, v) -> {
+                Number count = counts.get(k);
+                if (v != null && count != null && count.longValue() > 0) rs.put(k, (N) (Number) (v.doubleValue() / count.longValue()));
+            });
+        } else if (func == FilterFunc.DISTINCTCOUNT) {
+            final Set<List<Object>> set = new HashSet<>();
+            queryShards(tables, table -> queryDistinct(table, info, node, keyColumn, funcColumn)).forEach(set::addAll);
+            for (List<Object> item : set) {
+                rs.put((K) item.get(0), (N) (Number) (rs.containsKey((K) item.get(0)) ? rs.get((K) item.get(0)).longValue() + 1 : 1L));
+            }
+        } else {
+            for (Map<K, N> item : queryShards(tables, table -> (Map<K, N>) queryColumnMap(table, info, keyColumn, func, funcColumn, node))) {
+                item.forEach((k, v) -> rs.put(k, (N) mergeNumber(func, rs.get(k), v)));
             }
-            set.close();
-            prestmt.close();
-            return rs;
-        } catch (SQLException e) {
-            if (info.tableStrategy != null && info.tablenotexistSqlstates.contains(';' + e.getSQLState() + ';')) return new LinkedHashMap<>();
-            throw new RuntimeException(e);
-        } finally {
-            if (conn != null) closeSQLConnection(conn);
         }
+        return rs;
+    }
+
+    protected <K extends Serializable, N extends Number> Map<K, N> queryColumnMap(final String table, final EntityInfo info, final String keyColumn, final FilterFunc func, final String funcColumn, FilterNode node) {
+        final Class entityClass = info.getType();
+        final String sqlkey = info.getSQLColumn(null, keyColumn);
+        final Map<Class, String> joinTabalis = node == null ? null : node.getJoinTabalis();
+        final Set<String> haset = new HashSet<>();
+        final CharSequence join = node == null ? null : node.createSQLJoin(this, false, joinTabalis, haset, info);
+        final CharSequence where = node == null ? null : node.createSQLExpress(info, joinTabalis);
+        final String sql = "SELECT a." + sqlkey + ", " + func.getColumn((funcColumn == null || funcColumn.isEmpty() ? "*" : info.getSQLColumn("a", funcColumn)))
+            + " FROM " + table + " a" + (join == null ? "" : join) + ((where == null || where.length() == 0) ? "" : (" WHERE " + where)) + " GROUP BY a." + sqlkey;
+        return queryCache(info, node, sql, () -> {
+            final Connection conn = createReadSQLConnection(info);
+            try {
+                if (info.isLoggable(logger, Level.FINEST)) logger.finest(entityClass.getSimpleName() + " single sql=" + sql);
+                conn.setReadOnly(true);
+                final PreparedStatement prestmt = conn.prepareStatement(sql);
+                Map<K, N> rs = new LinkedHashMap<>();
+                ResultSet set = prestmt.executeQuery();
+                ResultSetMetaData rsd = set.getMetaData();
+                boolean smallint = rsd.getColumnType(1) == Types.SMALLINT;
+                while (set.next()) {
+                    rs.put((K) (smallint ? set.getShort(1) : set.getObject(1)), (N) set.getObject(2));
+                }
+                set.close();
+                prestmt.close();
+                return rs;
+            } catch (SQLException e) {
+                if (info.tableStrategy != null && info.tablenotexistSqlstates.contains(';' + e.getSQLState() + ';')) return new LinkedHashMap<>();
+                throw new RuntimeException(e);
+            } finally {
+                if (conn != null) closeSQLConnection(conn);
+            }
+        });
     }
 
     @Override
@@ -1498,27 +2019,29 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
             if (cache.isFullLoaded() || rs != null) return rs;
         }
 
-        final Connection conn = createReadSQLConnection();
-        try {
-            final SelectColumn sels = selects;
-            final String sql = "SELECT " + info.getQueryColumns(null, selects) + " FROM " + info.getTable(pk) + " WHERE " + info.getPrimarySQLColumn() + " = " + FilterNode.formatToString(pk);
-            if (info.isLoggable(logger, Level.FINEST)) logger.finest(clazz.getSimpleName() + " find sql=" + sql);
-            conn.setReadOnly(true);
-            final PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-            ps.setFetchSize(1);
-            final ResultSet set = ps.executeQuery();
-            T rs = set.next() ? info.getValue(sels, set) : null;
-            set.close();
-            ps.close();
-            return rs;
-        } catch (SQLException sex) {
-            if (info.tableStrategy != null && info.tablenotexistSqlstates.contains(';' + sex.getSQLState() + ';')) return null;
-            throw new RuntimeException(sex);
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
-        } finally {
-            closeSQLConnection(conn);
-        }
+        final SelectColumn sels = selects;
+        final String sql = "SELECT " + info.getQueryColumns(null, selects) + " FROM " + info.getTable(pk) + " WHERE " + info.getPrimarySQLColumn() + " = " + FilterNode.formatToString(pk);
+        return queryCache(info, null, sql, () -> {
+            final Connection conn = createReadSQLConnection(info);
+            try {
+                if (info.isLoggable(logger, Level.FINEST)) logger.finest(clazz.getSimpleName() + " find sql=" + sql);
+                conn.setReadOnly(true);
+                final PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(1);
+                final ResultSet set = ps.executeQuery();
+                T rs = set.next() ? info.getValue(sels, set) : null;
+                set.close();
+                ps.close();
+                return rs;
+            } catch (SQLException sex) {
+                if (info.tableStrategy != null && info.tablenotexistSqlstates.contains(';' + sex.getSQLState() + ';')) return null;
+                throw new RuntimeException(sex);
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            } finally {
+                closeSQLConnection(conn);
+            }
+        });
     }
 
     @Override
@@ -1572,30 +2095,32 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         final EntityCache<T> cache = info.getCache();
         if (cache != null && cache.isFullLoaded() && (node == null || node.isCacheUseable(this))) return cache.find(selects, node);
 
-        final Connection conn = createReadSQLConnection();
-        try {
-            final SelectColumn sels = selects;
-            final Map<Class, String> joinTabalis = node == null ? null : node.getJoinTabalis();
-            final CharSequence join = node == null ? null : node.createSQLJoin(this, false, joinTabalis, new HashSet<>(), info);
-            final CharSequence where = node == null ? null : node.createSQLExpress(info, joinTabalis);
-            final String sql = "SELECT " + info.getQueryColumns("a", selects) + " FROM " + info.getTable(node) + " a" + (join == null ? "" : join) + ((where == null || where.length() == 0) ? "" : (" WHERE " + where));
-            if (info.isLoggable(logger, Level.FINEST)) logger.finest(clazz.getSimpleName() + " find sql=" + sql);
-            conn.setReadOnly(true);
-            final PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-            ps.setFetchSize(1);
-            final ResultSet set = ps.executeQuery();
-            T rs = set.next() ? info.getValue(sels, set) : null;
-            set.close();
-            ps.close();
-            return rs;
-        } catch (SQLException se) {
-            if (info.tableStrategy != null && info.tablenotexistSqlstates.contains(';' + se.getSQLState() + ';')) return null;
-            throw new RuntimeException(se);
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
-        } finally {
-            closeSQLConnection(conn);
-        }
+        final SelectColumn sels = selects;
+        final Map<Class, String> joinTabalis = node == null ? null : node.getJoinTabalis();
+        final CharSequence join = node == null ? null : node.createSQLJoin(this, false, joinTabalis, new HashSet<>(), info);
+        final CharSequence where = node == null ? null : node.createSQLExpress(info, joinTabalis);
+        final String sql = "SELECT " + info.getQueryColumns("a", selects) + " FROM " + info.getTable(node) + " a" + (join == null ? "" : join) + ((where == null || where.length() == 0) ? "" : (" WHERE " + where));
+        return queryCache(info, node, sql, () -> {
+            final Connection conn = createReadSQLConnection(info);
+            try {
+                if (info.isLoggable(logger, Level.FINEST)) logger.finest(clazz.getSimpleName() + " find sql=" + sql);
+                conn.setReadOnly(true);
+                final PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(1);
+                final ResultSet set = ps.executeQuery();
+                T rs = set.next() ? info.getValue(sels, set) : null;
+                set.close();
+                ps.close();
+                return rs;
+            } catch (SQLException se) {
+                if (info.tableStrategy != null && info.tablenotexistSqlstates.contains(';' + se.getSQLState() + ';')) return null;
+                throw new RuntimeException(se);
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            } finally {
+                closeSQLConnection(conn);
+            }
+        });
     }
 
     @Override
@@ -1642,7 +2167,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
             if (cache.isFullLoaded() || val != null) return val;
         }
 
-        final Connection conn = createReadSQLConnection();
+        final Connection conn = createReadSQLConnection(info);
         try {
             final Attribute<T, Serializable> attr = info.getAttribute(column);
             final String sql = "SELECT " + info.getSQLColumn(null, column) + " FROM " + info.getTable(pk) + " WHERE " + info.getPrimarySQLColumn() + " = " + FilterNode.formatToString(pk);
@@ -1694,7 +2219,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         final EntityCache<T> cache = info.getCache();
         if (cache != null && cache.isFullLoaded() && (node == null || node.isCacheUseable(this))) return cache.findColumn(column, defValue, node);
 
-        final Connection conn = createReadSQLConnection();
+        final Connection conn = createReadSQLConnection(info);
         try {
             final Attribute<T, Serializable> attr = info.getAttribute(column);
             final Map<Class, String> joinTabalis = node == null ? null : node.getJoinTabalis();
@@ -1742,7 +2267,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
             if (rs || cache.isFullLoaded()) return rs;
         }
 
-        final Connection conn = createReadSQLConnection();
+        final Connection conn = createReadSQLConnection(info);
         final boolean log = info.isLoggable(logger, Level.FINEST);
         String logstr = null;
         try {
@@ -1788,7 +2313,7 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         final EntityCache<T> cache = info.getCache();
         if (cache != null && cache.isFullLoaded() && (node == null || node.isCacheUseable(this))) return cache.exists(node);
 
-        final Connection conn = createReadSQLConnection();
+        final Connection conn = createReadSQLConnection(info);
         final boolean log = info.isLoggable(logger, Level.FINEST);
         String logstr = null;
         try {
@@ -1902,6 +2427,67 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
         return CompletableFuture.supplyAsync(() -> queryColumnList(selectedColumn, clazz, flipper, node), getExecutor());
     }
 
+    @Override
+    public <T> List<Object[]> queryColumnsList(final Class<T> clazz, final Flipper flipper, final FilterNode node, final String... columns) {
+        final EntityInfo<T> info = loadEntityInfo(clazz);
+        final Attribute<T, Serializable>[] attrs = new Attribute[columns.length];
+        for (int i = 0; i < attrs.length; i++) {
+            attrs[i] = info.getAttribute(columns[i]);
+            if (attrs[i] == null) throw new RuntimeException(info.getType() + " cannot found column " + columns[i]);
+        }
+        final EntityCache<T> cache = info.getCache();
+        final String[] tables = info.getTables(node);
+        if ((cache != null && cache.isFullLoaded() && (node == null || node.isCacheUseable(this))) || tables.length > 1) {
+            final List<Object[]> rs = new ArrayList<>();
+            for (T t : querySheet(true, false, clazz, SelectColumn.createIncludes(columns), flipper, node).list(true)) {
+                final Object[] row = new Object[attrs.length];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = attrs[i].get(t);
+                }
+                rs.add(row);
+            }
+            return rs;
+        }
+        final EntityInfo.Projection<T> projection = new EntityInfo.Projection<>(attrs);
+        final Map<Class, String> joinTabalis = node == null ? null : node.getJoinTabalis();
+        final CharSequence join = node == null ? null : node.createSQLJoin(this, false, joinTabalis, new HashSet<>(), info);
+        final CharSequence where = node == null ? null : node.createSQLExpress(info, joinTabalis);
+        final StringBuilder sels = new StringBuilder();
+        for (String col : columns) {
+            if (sels.length() > 0) sels.append(',');
+            sels.append(info.getSQLColumn("a", col));
+        }
+        final String sql = "SELECT " + sels + " FROM " + tables[0] + " a" + (join == null ? "" : join)
+            + ((where == null || where.length() == 0) ? "" : (" WHERE " + where)) + info.createSQLOrderby(flipper);
+        final Connection conn = createReadSQLConnection(info);
+        try {
+            if (info.isLoggable(logger, Level.FINEST)) logger.finest(clazz.getSimpleName() + " query columns sql=" + sql);
+            conn.setReadOnly(true);
+            final PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+            if (flipper != null && flipper.getLimit() > 0) ps.setFetchSize(flipper.getLimit());
+            final ResultSet set = ps.executeQuery();
+            if (flipper != null && flipper.getOffset() > 0) set.absolute(flipper.getOffset());
+            final int limit = flipper == null || flipper.getLimit() < 1 ? Integer.MAX_VALUE : flipper.getLimit();
+            final List<Object[]> rs = new ArrayList<>();
+            while (rs.size() < limit && set.next()) {
+                rs.add(projection.readRow(set));
+            }
+            set.close();
+            ps.close();
+            return rs;
+        } catch (SQLException se) {
+            if (info.tableStrategy != null && info.tablenotexistSqlstates.contains(';' + se.getSQLState() + ';')) return new ArrayList<>();
+            throw new RuntimeException(se);
+        } finally {
+            closeSQLConnection(conn);
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<List<Object[]>> queryColumnsListAsync(final Class<T> clazz, final Flipper flipper, final FilterNode node, final String... columns) {
+        return CompletableFuture.supplyAsync(() -> queryColumnsList(clazz, flipper, node, columns), getExecutor());
+    }
+
     /**
      * 根据指定参数查询对象某个字段的集合
      * <p>
@@ -2297,48 +2883,335 @@ public class DataJdbcSource extends AbstractService implements DataSource, DataC
                 return cache.querySheet(needtotal, selects, flipper, node);
             }
         }
-        final Connection conn = createReadSQLConnection();
+        final String[] tables = info.getTables(node);
+        if (tables.length == 1) return querySheet(tables[0], needtotal, info, selects, flipper, node);
+        //每个分表取前offset+limit条记录, 合并后再做全局翻页
+        final Flipper shardFlipper = flipper == null ? null : new Flipper(flipper.getOffset() + flipper.getLimit(), 0, flipper.getSort());
+        final Comparator<T> comparator = info.createComparator(flipper);
+        if (comparator != null && selects != null) { //归并时比较的是查询出的对象, 排序字段未查询时顺序会错乱
+            for (String item : flipper.getSort().split(",")) {
+                final String column = item.trim().split("\\s+")[0];
+                if (!column.isEmpty() && !selects.test(column)) throw new RuntimeException("Flipper sort column (" + column + ") must be in SelectColumn across tables");
+            }
+        }
+        final List<Sheet<T>> sheets = queryShards(tables, table -> querySheet(table, needtotal, info, selects, shardFlipper, node));
+        long total = 0;
+        final List<T> list = new ArrayList<>();
+        if (comparator == null) {
+            for (Sheet<T> sheet : sheets) {
+                total += Math.max(0, sheet.getTotal());
+                if (!sheet.isEmpty()) list.addAll(sheet.list(true));
+            }
+        } else { //k路归并
+            final List<Iterator<T>> its = new ArrayList<>();
+            final PriorityQueue<Map.Entry<T, Integer>> heads = new PriorityQueue<>(tables.length, (a, b) -> comparator.compare(a.getKey(), b.getKey()));
+            for (Sheet<T> sheet : sheets) {
+                total += Math.max(0, sheet.getTotal());
+                Iterator<T> it = sheet.isEmpty() ? Collections.emptyIterator() : sheet.list(true).iterator();
+                if (it.hasNext()) heads.add(new AbstractMap.SimpleEntry<>(it.next(), its.size()));
+                its.add(it);
+            }
+            final int max = flipper == null ? Integer.MAX_VALUE : shardFlipper.getLimit();
+            while (!heads.isEmpty() && list.size() < max) {
+                Map.Entry<T, Integer> head = heads.poll();
+                list.add(head.getKey());
+                Iterator<T> it = its.get(head.getValue());
+                if (it.hasNext()) heads.add(new AbstractMap.SimpleEntry<>(it.next(), head.getValue()));
+            }
+        }
+        if (flipper == null) return new Sheet<>(list.size(), list);
+        final List<T> page = list.size() <= flipper.getOffset() ? new ArrayList<>()
+            : new ArrayList<>(list.subList(flipper.getOffset(), Math.min(list.size(), flipper.getOffset() + flipper.getLimit())));
+        return new Sheet<>(needtotal ? total : page.size(), page);
+    }
+
+    protected <T> Sheet<T> querySheet(final String table, final boolean needtotal, final EntityInfo<T> info, final SelectColumn selects, final Flipper flipper, final FilterNode node) {
+        final Class<T> clazz = info.getType();
+        final SelectColumn sels = selects;
+        final List<T> list = new ArrayList();
+        final Map<Class, String> joinTabalis = node == null ? null : node.getJoinTabalis();
+        final CharSequence join = node == null ? null : node.createSQLJoin(this, false, joinTabalis, new HashSet<>(), info);
+        final CharSequence where = node == null ? null : node.createSQLExpress(info, joinTabalis);
+        final String sql = "SELECT " + info.getQueryColumns("a", selects) + " FROM " + table + " a" + (join == null ? "" : join)
+            + ((where == null || where.length() == 0) ? "" : (" WHERE " + where)) + info.createSQLOrderby(flipper);
+        return queryCache(info, node, sql + " -- " + (flipper == null ? "" : (flipper.getOffset() + "," + flipper.getLimit())) + (needtotal ? " total" : ""), () -> {
+            final Connection conn = createReadSQLConnection(info);
+            try {
+                if (info.isLoggable(logger, Level.FINEST)) {
+                    logger.finest(clazz.getSimpleName() + " query sql=" + sql + (flipper == null || flipper.getLimit() < 1 ? "" : (" LIMIT " + flipper.getOffset() + "," + flipper.getLimit())));
+                }
+                conn.setReadOnly(true);
+                final PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+                if (flipper != null && flipper.getLimit() > 0) ps.setFetchSize(flipper.getLimit());
+                final ResultSet set = ps.executeQuery();
+                if (flipper != null && flipper.getOffset() > 0) set.absolute(flipper.getOffset());
+                final int limit = flipper == null || flipper.getLimit() < 1 ? Integer.MAX_VALUE : flipper.getLimit();
+                int i = 0;
+                while (set.next()) {
+                    i++;
+                    list.add(info.getValue(sels, set));
+                    if (limit <= i) break;
+                }
+                long total = list.size();
+                if (needtotal && flipper != null) {
+                    set.last();
+                    total = set.getRow();
+                }
+                set.close();
+                ps.close();
+                return new Sheet<>(total, list);
+            } catch (SQLException se) {
+                if (info.tableStrategy != null && info.tablenotexistSqlstates.contains(';' + se.getSQLState() + ';')) return new Sheet<>();
+                throw new RuntimeException(se);
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            } finally {
+                closeSQLConnection(conn);
+            }
+        });
+    }
+
+    @Override
+    public <T> Stream<T> queryStream(final Class<T> clazz, final FilterNode node) {
+        return queryStream(clazz, null, null, node);
+    }
+
+    @Override
+    public <T> Stream<T> queryStream(final Class<T> clazz, final SelectColumn selects, final FilterNode node) {
+        return queryStream(clazz, selects, null, node);
+    }
+
+    /**
+     * 以Stream方式查询记录, 多个分表时按表的顺序依次读取, flipper的排序只在单表内有效
+     *
+     * @param <T>     Entity类的泛型
+     * @param clazz   Entity类
+     * @param selects 收集的字段集合
+     * @param flipper 翻页对象
+     * @param node    过滤条件
+     *
+     * @return Entity对象的Stream
+     */
+    @Override
+    public <T> Stream<T> queryStream(final Class<T> clazz, final SelectColumn selects, final Flipper flipper, final FilterNode node) {
+        final EntityInfo<T> info = loadEntityInfo(clazz);
+        final EntityCache<T> cache = info.getCache();
+        if (cache != null && cache.isFullLoaded() && (node == null || node.isCacheUseable(this))) {
+            return cache.querySheet(false, selects, flipper, node).list(true).stream();
+        }
+        final String[] tables = info.getTables(node);
+        Stream<T> stream = tables.length == 1 ? queryStream(tables[0], info, selects, flipper, node) : queryStream(tables, info, selects, flipper, node);
+        if (flipper != null && flipper.getOffset() > 0) stream = stream.skip(flipper.getOffset());
+        if (flipper != null && flipper.getLimit() > 0) stream = stream.limit(flipper.getLimit());
+        return stream;
+    }
+
+    //多个分表按顺序逐表打开游标, 前一个表读完才查询下一个表; 不用flatMap, Java 8的flatMap会将内层Stream整个推送完, 无法提前结束
+    private <T> Stream<T> queryStream(final String[] tables, final EntityInfo<T> info, final SelectColumn selects, final Flipper flipper, final FilterNode node) {
+        final Stream<T>[] current = new Stream[1];
+        final Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private int index;
+
+            private Spliterator<T> inner;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                while (true) {
+                    if (inner == null) {
+                        if (index >= tables.length) return false;
+                        synchronized (current) {
+                            current[0] = queryStream(tables[index++], info, selects, flipper, node);
+                        }
+                        inner = current[0].spliterator();
+                    }
+                    if (inner.tryAdvance(action)) return true;
+                    inner = null;
+                }
+            }
+        };
+        return java.util.stream.StreamSupport.stream(spliterator, false).onClose(() -> {
+            synchronized (current) {
+                if (current[0] != null) current[0].close();
+            }
+        });
+    }
+
+    //单表的只进游标, 读取完毕或Stream关闭时释放连接; flipper的limit大于0时最多读取offset+limit行
+    protected <T> Stream<T> queryStream(final String table, final EntityInfo<T> info, final SelectColumn selects, final Flipper flipper, final FilterNode node) {
+        final Map<Class, String> joinTabalis = node == null ? null : node.getJoinTabalis();
+        final CharSequence join = node == null ? null : node.createSQLJoin(this, false, joinTabalis, new HashSet<>(), info);
+        final CharSequence where = node == null ? null : node.createSQLExpress(info, joinTabalis);
+        final String sql = "SELECT " + info.getQueryColumns("a", selects) + " FROM " + table + " a" + (join == null ? "" : join)
+            + ((where == null || where.length() == 0) ? "" : (" WHERE " + where)) + info.createSQLOrderby(flipper);
+        if (info.isLoggable(logger, Level.FINEST)) logger.finest(info.getType().getSimpleName() + " stream sql=" + sql);
+        final Connection conn = createReadSQLConnection(info);
+        boolean autoCommit = true;
+        PreparedStatement ps = null;
+        ResultSet set = null;
+        try {
+            autoCommit = conn.getAutoCommit();
+            conn.setReadOnly(true);
+            if (readPool.isPostgresql()) conn.setAutoCommit(false); //PostgreSQL只在事务内按fetchSize分批读取
+            ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(readPool.isMysql() ? Integer.MIN_VALUE : STREAM_FETCHSIZE); //MySQL只有Integer.MIN_VALUE才逐行读取
+            if (flipper != null && flipper.getLimit() > 0) { //限制游标的行数, 避免提前关闭时驱动读完剩余的行
+                ps.setMaxRows((int) Math.min(Integer.MAX_VALUE, (long) flipper.getOffset() + flipper.getLimit()));
+            }
+            set = ps.executeQuery();
+        } catch (SQLException se) {
+            closeStream(conn, autoCommit, ps, set);
+            if (info.tableStrategy != null && info.tablenotexistSqlstates.contains(';' + se.getSQLState() + ';')) return Stream.empty();
+            throw new RuntimeException(se);
+        } catch (RuntimeException ex) {
+            closeStream(conn, autoCommit, ps, set);
+            throw ex;
+        }
+        final boolean autoCommit0 = autoCommit;
+        final PreparedStatement ps0 = ps;
+        final ResultSet set0 = set;
+        final Runnable closer = new Runnable() {
+            private boolean closed;
+
+            @Override
+            public synchronized void run() {
+                if (closed) return;
+                closed = true;
+                closeStream(conn, autoCommit0, ps0, set0);
+            }
+        };
+        final Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!set0.next()) {
+                        closer.run(); //读取完毕立即释放连接, 不依赖调用方close
+                        return false;
+                    }
+                    action.accept(info.getValue(selects, set0));
+                    return true;
+                } catch (SQLException e) {
+                    closer.run();
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        return java.util.stream.StreamSupport.stream(spliterator, false).onClose(closer);
+    }
+
+    private void closeStream(final Connection conn, final boolean autoCommit, final PreparedStatement ps, final ResultSet set) {
+        try {
+            if (set != null) set.close();
+            if (ps != null) ps.close();
+            if (conn.getAutoCommit() != autoCommit) conn.setAutoCommit(autoCommit);
+        } catch (SQLException e) {
+            logger.log(Level.FINER, "close stream cursor error", e);
+        } finally {
+            closeSQLConnection(conn);
+        }
+    }
+
+    //查询字段去重后的值, 用于合并多个分表的DISTINCTCOUNT
+    protected Set<List<Object>> queryDistinct(final String table, final EntityInfo info, final FilterNode node, final String... columns) {
+        final Connection conn = createReadSQLConnection(info);
         try {
-            final SelectColumn sels = selects;
-            final List<T> list = new ArrayList();
             final Map<Class, String> joinTabalis = node == null ? null : node.getJoinTabalis();
             final CharSequence join = node == null ? null : node.createSQLJoin(this, false, joinTabalis, new HashSet<>(), info);
             final CharSequence where = node == null ? null : node.createSQLExpress(info, joinTabalis);
-            final String sql = "SELECT " + info.getQueryColumns("a", selects) + " FROM " + info.getTable(node) + " a" + (join == null ? "" : join)
-                + ((where == null || where.length() == 0) ? "" : (" WHERE " + where)) + info.createSQLOrderby(flipper);
-            if (info.isLoggable(logger, Level.FINEST)) {
-                logger.finest(clazz.getSimpleName() + " query sql=" + sql + (flipper == null || flipper.getLimit() < 1 ? "" : (" LIMIT " + flipper.getOffset() + "," + flipper.getLimit())));
+            final StringBuilder sb = new StringBuilder();
+            for (String col : columns) {
+                if (sb.length() > 0) sb.append(", ");
+                sb.append(info.getSQLColumn("a", col));
             }
+            final String sql = "SELECT DISTINCT " + sb + " FROM " + table + " a" + (join == null ? "" : join) + ((where == null || where.length() == 0) ? "" : (" WHERE " + where));
+            if (info.isLoggable(logger, Level.FINEST)) logger.finest(info.getType().getSimpleName() + " distinct sql=" + sql);
             conn.setReadOnly(true);
-            final PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-            if (flipper != null && flipper.getLimit() > 0) ps.setFetchSize(flipper.getLimit());
-            final ResultSet set = ps.executeQuery();
-            if (flipper != null && flipper.getOffset() > 0) set.absolute(flipper.getOffset());
-            final int limit = flipper == null || flipper.getLimit() < 1 ? Integer.MAX_VALUE : flipper.getLimit();
-            int i = 0;
+            final PreparedStatement prestmt = conn.prepareStatement(sql);
+            final Set<List<Object>> rs = new HashSet<>();
+            ResultSet set = prestmt.executeQuery();
             while (set.next()) {
-                i++;
-                list.add(info.getValue(sels, set));
-                if (limit <= i) break;
-            }
-            long total = list.size();
-            if (needtotal && flipper != null) {
-                set.last();
-                total = set.getRow();
+                Object[] item = new Object[columns.length];
+                for (int i = 0; i < item.length; i++) {
+                    item[i] = set.getObject(i + 1);
+                }
+                rs.add(Arrays.asList(item));
             }
             set.close();
-            ps.close();
-            return new Sheet<>(total, list);
-        } catch (SQLException se) {
-            if (info.tableStrategy != null && info.tablenotexistSqlstates.contains(';' + se.getSQLState() + ';')) return new Sheet<>();
-            throw new RuntimeException(se);
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
+            prestmt.close();
+            return rs;
+        } catch (SQLException e) {
+            if (info.tableStrategy != null && info.tablenotexistSqlstates.contains(';' + e.getSQLState() + ';')) return new HashSet<>();
+            throw new RuntimeException(e);
         } finally {
             closeSQLConnection(conn);
         }
     }
 
+    /**
+     * 在多个分表上并行执行操作, 结果与tables顺序一致, 第一个表在当前线程中执行
+     *
+     * @param <R>    结果类型
+     * @param tables 表名
+     * @param action 单表操作
+     *
+     * @return 结果集合
+     */
+    protected <R> List<R> queryShards(final String[] tables, final Function<String, R> action) {
+        final List<CompletableFuture<R>> futures = new ArrayList<>(tables.length);
+        final ExecutorService executor = shardExecutor();
+        for (int i = 1; i < tables.length; i++) {
+            final String table = tables[i];
+            futures.add(CompletableFuture.supplyAsync(() -> action.apply(table), executor));
+        }
+        final List<R> rs = new ArrayList<>(tables.length);
+        rs.add(action.apply(tables[0]));
+        try {
+            for (CompletableFuture<R> future : futures) {
+                rs.add(future.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+        return rs;
+    }
+
+    //分表查询在独立的线程池中执行, 避免占满调用方的线程池
+    private ExecutorService shardExecutor() {
+        if (shardExecutor == null) {
+            synchronized (this) {
+                if (shardExecutor == null) {
+                    final String threadName = "DataSource-" + (name == null ? "" : (name + "-")) + "Shard-Thread";
+                    //线程数不超过读连接数, 线程都忙时由调用方线程执行, 不会无限创建线程也不会互相等待
+                    final int threads = Math.max(1, readPool.getMaxConns());
+                    final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), (Runnable r) -> {
+                        final Thread t = new Thread(r, threadName);
+                        t.setDaemon(true);
+                        return t;
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+                    executor.allowCoreThreadTimeOut(true);
+                    shardExecutor = executor;
+                }
+            }
+        }
+        return shardExecutor;
+    }
+
+    //合并多个分表的聚合结果, null表示无值
+    protected static Number mergeNumber(final FilterFunc func, final Number n1, final Number n2) {
+        if (n1 == null) return n2;
+        if (n2 == null) return n1;
+        switch (func) {
+            case MAX:
+                return ((Comparable) n1).compareTo(n2) >= 0 ? n1 : n2;
+            case MIN:
+                return ((Comparable) n1).compareTo(n2) <= 0 ? n1 : n2;
+            default: //COUNT、SUM
+                if (n1 instanceof BigDecimal || n2 instanceof BigDecimal) return new BigDecimal(n1.toString()).add(new BigDecimal(n2.toString()));
+                if (n1 instanceof Double || n1 instanceof Float || n2 instanceof Double || n2 instanceof Float) return n1.doubleValue() + n2.doubleValue();
+                return n1.longValue() + n2.longValue();
+        }
+    }
+
     protected static StringBuilder multisplit(char ch1, char ch2, String split, StringBuilder sb, String str, int from) {
         if (str == null) return sb;
         int pos1 = str.indexOf(ch1, from);
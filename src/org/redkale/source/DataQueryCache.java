@@ -0,0 +1,180 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.source;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Supplier;
+import org.redkale.util.*;
+
+/**
+ * DataJdbcSource的查询结果缓存, 只用于没有EntityCache的Entity  <br>
+ * 以SQL语句为key, 按LRU淘汰, 缓存项同时有过期时间。   <br>
+ * 每个Entity类有一个版本号, 写操作完成后版本号加一, 缓存项记录查询开始前相关Entity(含关联表)的版本号, 版本号变化即失效。
+ * <p>
+ * 详情见: https://redkale.org
+ *
+ * @author zhangjx
+ */
+final class DataQueryCache {
+
+    private static final Object NULL = new Object();
+
+    private final int maxSize;
+
+    private final long expireMillis;
+
+    private final LinkedHashMap<String, QueryEntry> entrys;
+
+    private final ConcurrentHashMap<Class, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<Class, Reproduce> reproduces = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCounter = new AtomicLong();
+
+    private final AtomicLong missCounter = new AtomicLong();
+
+    public DataQueryCache(final int maxSize, final long expireMillis) {
+        this.maxSize = maxSize;
+        this.expireMillis = expireMillis;
+        this.entrys = new LinkedHashMap<String, QueryEntry>(Math.min(maxSize, 1024), 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, QueryEntry> eldest) {
+                return size() > DataQueryCache.this.maxSize;
+            }
+        };
+    }
+
+    public boolean isCacheable(final EntityInfo info) {
+        return info.getCache() == null && !info.isVirtualEntity();
+    }
+
+    /**
+     * 命中则返回缓存结果的副本, 否则执行loader并缓存其结果的副本
+     *
+     * @param <R>    结果类型
+     * @param info   EntityInfo
+     * @param node   过滤条件, 用于获取关联表
+     * @param sql    SQL语句
+     * @param loader 查询数据库
+     *
+     * @return 查询结果
+     */
+    public <R> R query(final EntityInfo info, final FilterNode node, final String sql, final Supplier<R> loader) {
+        final QueryEntry entry;
+        synchronized (entrys) {
+            entry = entrys.get(sql);
+        }
+        if (entry != null) {
+            if (entry.expireTime > System.currentTimeMillis() && entry.isValid()) {
+                hitCounter.incrementAndGet();
+                return entry.value == NULL ? null : (R) copy(info, entry.value);
+            }
+            synchronized (entrys) {
+                entrys.remove(sql, entry);
+            }
+        }
+        missCounter.incrementAndGet();
+        final Map<Class, String> joins = node == null ? null : node.getJoinTabalis();
+        final Class[] classes = new Class[joins == null ? 1 : (joins.size() + 1)];
+        classes[0] = info.getType();
+        if (joins != null) {
+            int i = 0;
+            for (Class clz : joins.keySet()) {
+                classes[++i] = clz;
+            }
+        }
+        final AtomicLong[] vers = new AtomicLong[classes.length];
+        final long[] snapshot = new long[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            vers[i] = versions.computeIfAbsent(classes[i], c -> new AtomicLong());
+            snapshot[i] = vers[i].get(); //必须在查询之前获取版本号
+        }
+        final R rs = loader.get();
+        final QueryEntry newEntry = new QueryEntry(rs == null ? NULL : copy(info, rs), vers, snapshot, System.currentTimeMillis() + expireMillis);
+        if (newEntry.isValid()) {
+            synchronized (entrys) {
+                entrys.put(sql, newEntry);
+            }
+        }
+        return rs;
+    }
+
+    /**
+     * 使Entity类相关的缓存项失效
+     *
+     * @param clazz Entity类
+     */
+    public void invalidate(final Class clazz) {
+        versions.computeIfAbsent(clazz, c -> new AtomicLong()).incrementAndGet();
+    }
+
+    public void clear() {
+        synchronized (entrys) {
+            entrys.clear();
+        }
+    }
+
+    public int getSize() {
+        synchronized (entrys) {
+            return entrys.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCounter.get();
+    }
+
+    public long getMissCount() {
+        return missCounter.get();
+    }
+
+    //返回副本, 防止调用方修改缓存中的对象
+    private Object copy(final EntityInfo info, final Object value) {
+        if (value instanceof Sheet) {
+            Sheet sheet = (Sheet) value;
+            if (sheet.isEmpty()) return new Sheet(sheet.getTotal(), new ArrayList());
+            List list = new ArrayList(sheet.getRows().size());
+            for (Object item : sheet.getRows()) {
+                list.add(copy(info, item));
+            }
+            return new Sheet(sheet.getTotal(), list);
+        }
+        if (value instanceof Map) return new LinkedHashMap((Map) value);
+        if (info.getType().isInstance(value)) {
+            Reproduce reproduce = reproduces.computeIfAbsent(info.getType(), t -> Reproduce.create(t, t));
+            return reproduce.apply(info.getCreator().create(), value);
+        }
+        return value;
+    }
+
+    private static final class QueryEntry {
+
+        final Object value;
+
+        final AtomicLong[] versions;
+
+        final long[] snapshot;
+
+        final long expireTime;
+
+        public QueryEntry(Object value, AtomicLong[] versions, long[] snapshot, long expireTime) {
+            this.value = value;
+            this.versions = versions;
+            this.snapshot = snapshot;
+            this.expireTime = expireTime;
+        }
+
+        boolean isValid() {
+            for (int i = 0; i < versions.length; i++) {
+                if (versions[i].get() != snapshot[i]) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -266,6 +266,32 @@ public interface DataSource {
      */
     public <T> CompletableFuture<Integer> updateColumnAsync(final Class<T> clazz, final Serializable id, final ColumnValue... values);
 
+    /**
+     * 批量更新多条记录的部分字段, 每条记录的字段值可以不同   <br>
+     * 字段赋值操作选项见 ColumnExpress, 更新相同字段的记录合并成一条SQL, 按javax.persistence.batch.maxsize条分批执行   <br>
+     * 等价SQL: UPDATE {table} SET {column1} = CASE {primary} WHEN {id1} THEN {value1} WHEN {id2} THEN {value2} &#183;&#183;&#183; END, &#183;&#183;&#183; WHERE {primary} IN ({id1}, {id2}, &#183;&#183;&#183;)   <br>
+     *
+     * @param <T>    Entity泛型
+     * @param clazz  Entity类
+     * @param values 主键与对应的更新字段
+     *
+     * @return 影响的记录条数
+     */
+    public <T> int updateColumns(final Class<T> clazz, final Map<? extends Serializable, ColumnValue[]> values);
+
+    /**
+     * 批量更新多条记录的部分字段, 每条记录的字段值可以不同   <br>
+     * 字段赋值操作选项见 ColumnExpress, 更新相同字段的记录合并成一条SQL, 按javax.persistence.batch.maxsize条分批执行   <br>
+     * 等价SQL: UPDATE {table} SET {column1} = CASE {primary} WHEN {id1} THEN {value1} WHEN {id2} THEN {value2} &#183;&#183;&#183; END, &#183;&#183;&#183; WHERE {primary} IN ({id1}, {id2}, &#183;&#183;&#183;)   <br>
+     *
+     * @param <T>    Entity泛型
+     * @param clazz  Entity类
+     * @param values 主键与对应的更新字段
+     *
+     * @return 影响的记录条数CompletableFuture
+     */
+    public <T> CompletableFuture<Integer> updateColumnsAsync(final Class<T> clazz, final Map<? extends Serializable, ColumnValue[]> values);
+
     /**
      * 更新符合过滤条件记录的部分字段   <br>
      * 字段赋值操作选项见 ColumnExpress   <br>
@@ -1440,6 +1466,34 @@ public interface DataSource {
      */
     public <T, V extends Serializable> CompletableFuture<List<V>> queryColumnListAsync(final String selectedColumn, final Class<T> clazz, final Flipper flipper, final FilterNode node);
 
+    /**
+     * 查询符合过滤条件记录的多个字段, 每条记录返回与columns顺序一致的字段值数组, 不创建Entity对象   <br>
+     * 等价SQL: SELECT {column1},{column2}, &#183;&#183;&#183; FROM {table} WHERE {filter node} ORDER BY {flipper.sort} LIMIT {flipper.limit}  <br>
+     *
+     * @param <T>     Entity泛型
+     * @param clazz   Entity类
+     * @param flipper 翻页对象
+     * @param node    过滤条件
+     * @param columns 指定字段
+     *
+     * @return 字段值数组的集合
+     */
+    public <T> List<Object[]> queryColumnsList(final Class<T> clazz, final Flipper flipper, final FilterNode node, final String... columns);
+
+    /**
+     * 查询符合过滤条件记录的多个字段, 每条记录返回与columns顺序一致的字段值数组, 不创建Entity对象   <br>
+     * 等价SQL: SELECT {column1},{column2}, &#183;&#183;&#183; FROM {table} WHERE {filter node} ORDER BY {flipper.sort} LIMIT {flipper.limit}  <br>
+     *
+     * @param <T>     Entity泛型
+     * @param clazz   Entity类
+     * @param flipper 翻页对象
+     * @param node    过滤条件
+     * @param columns 指定字段
+     *
+     * @return 字段值数组的集合CompletableFuture
+     */
+    public <T> CompletableFuture<List<Object[]>> queryColumnsListAsync(final Class<T> clazz, final Flipper flipper, final FilterNode node, final String... columns);
+
     /**
      * 查询符合过滤条件记录的某个字段Sheet集合   <br>
      * 等价SQL: SELECT {selectedColumn} FROM {table} WHERE {filter node} ORDER BY {flipper.sort} LIMIT {flipper.limit}  <br>
@@ -2035,4 +2089,47 @@ public interface DataSource {
      */
     public <T> CompletableFuture<Sheet<T>> querySheetAsync(final Class<T> clazz, final SelectColumn selects, final Flipper flipper, final FilterNode node);
 
+    //-----------------------stream----------------------------
+    /**
+     * 以Stream方式查询符合过滤条件的记录, 使用只进游标边读边转换, 不会一次性加载全部记录, 适合遍历整表   <br>
+     * 返回的Stream占用一个数据库连接, 读取完毕或调用close方法后释放, 建议使用try-with-resources   <br>
+     * 等价SQL: SELECT * FROM {table} WHERE {filter node}  <br>
+     *
+     * @param <T>   Entity泛型
+     * @param clazz Entity类
+     * @param node  过滤条件
+     *
+     * @return Entity的Stream
+     */
+    public <T> Stream<T> queryStream(final Class<T> clazz, final FilterNode node);
+
+    /**
+     * 以Stream方式查询符合过滤条件的记录, 使用只进游标边读边转换, 不会一次性加载全部记录, 适合遍历整表   <br>
+     * 返回的Stream占用一个数据库连接, 读取完毕或调用close方法后释放, 建议使用try-with-resources   <br>
+     * 等价SQL: SELECT {column1},{column2}, &#183;&#183;&#183; FROM {table} WHERE {filter node}  <br>
+     *
+     * @param <T>     Entity泛型
+     * @param clazz   Entity类
+     * @param selects 指定字段
+     * @param node    过滤条件
+     *
+     * @return Entity的Stream
+     */
+    public <T> Stream<T> queryStream(final Class<T> clazz, final SelectColumn selects, final FilterNode node);
+
+    /**
+     * 以Stream方式查询符合过滤条件的记录, 使用只进游标边读边转换, 不会一次性加载全部记录, 适合遍历整表   <br>
+     * 返回的Stream占用一个数据库连接, 读取完毕或调用close方法后释放, 建议使用try-with-resources   <br>
+     * 等价SQL: SELECT {column1},{column2}, &#183;&#183;&#183; FROM {table} WHERE {filter node} ORDER BY {flipper.sort} LIMIT {flipper.limit}  <br>
+     *
+     * @param <T>     Entity泛型
+     * @param clazz   Entity类
+     * @param selects 指定字段
+     * @param flipper 翻页对象
+     * @param node    过滤条件
+     *
+     * @return Entity的Stream
+     */
+    public <T> Stream<T> queryStream(final Class<T> clazz, final SelectColumn selects, final Flipper flipper, final FilterNode node);
+
 }
@@ -25,6 +25,44 @@ public final class DataSources {
 
     public static final String JDBC_CONNECTIONSMAX = "javax.persistence.connections.limit";
 
+    public static final String JDBC_CONNECTIONS_MINIDLE = "javax.persistence.connections.minidle";
+
+    public static final String JDBC_CONNECTIONS_TIMEOUT = "javax.persistence.connections.timeout";
+
+    public static final String JDBC_CONNECTIONS_VALIDATEIDLE = "javax.persistence.connections.validateidle";
+
+    public static final String JDBC_CONNECTIONS_KEEPALIVE = "javax.persistence.connections.keepalive";
+
+    public static final String JDBC_CONNECTIONS_LEAKDETECT = "javax.persistence.connections.leakdetect";
+
+    public static final String JDBC_BATCH_DELAYMS = "javax.persistence.batch.delayms";
+
+    public static final String JDBC_BATCH_MAXSIZE = "javax.persistence.batch.maxsize";
+
+    public static final String JDBC_REPLICAS_URLS = "javax.persistence.replicas.urls";
+
+    public static final String JDBC_REPLICAS_BALANCER = "javax.persistence.replicas.balancer";
+
+    public static final String JDBC_REPLICAS_EJECTSECONDS = "javax.persistence.replicas.ejectseconds";
+
+    public static final String JDBC_REPLICAS_READAFTERWRITE = "javax.persistence.replicas.readafterwrite";
+
+    public static final String JDBC_QUERYCACHE_SIZE = "javax.persistence.querycache.size";
+
+    public static final String JDBC_QUERYCACHE_EXPIRESECONDS = "javax.persistence.querycache.expireseconds";
+
+    public static final String JDBC_EXECUTOR_THREADS = "javax.persistence.executor.threads";
+
+    public static final String JDBC_EXECUTOR_QUEUESIZE = "javax.persistence.executor.queuesize";
+
+    //值为virtual时异步方法在虚拟线程内执行(需JDK21+)
+    public static final String JDBC_EXECUTOR_MODE = "javax.persistence.executor.mode";
+
+    //值为true时开启SQL执行统计, 默认关闭
+    public static final String JDBC_METRICS = "javax.persistence.metrics";
+
+    public static final String JDBC_SLOWSQL_MILLIS = "javax.persistence.slowsql.millis";
+
     public static final String JDBC_CONTAIN_SQLTEMPLATE = "javax.persistence.contain.sqltemplate";
 
     public static final String JDBC_NOTCONTAIN_SQLTEMPLATE = "javax.persistence.notcontain.sqltemplate";
@@ -54,4 +54,19 @@ public interface DistributeTableStrategy<T> {
      */
     public String getTable(String table, FilterNode node);
 
+    /**
+     * 获取过滤条件覆盖的所有表名   <br>
+     * 跨表查询（DataSource.queryList、DataSource.querySheet、DataSource.getNumberResult、DataSource.queryColumnMap）时调用本方法获取表名,
+     * 返回多个表名时会在每个表上并行查询再合并结果   <br>
+     * 默认只返回getTable(table, node)的表名
+     *
+     * @param table 模板表的表名
+     * @param node  过滤条件
+     *
+     * @return 带库名的全表名集合
+     */
+    default String[] getTables(String table, FilterNode node) {
+        return new String[]{getTable(table, node)};
+    }
+
 }
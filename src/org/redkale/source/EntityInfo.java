@@ -116,6 +116,12 @@ public final class EntityInfo<T> {
     //Flipper.sort转换成以ORDER BY开头SQL的缓存
     private final Map<String, String> sortOrderbySqls = new ConcurrentHashMap<>();
 
+    //Flipper.sort转换成Comparator的缓存, 用于合并分表查询结果
+    private final Map<String, Comparator<T>> sortComparators = new ConcurrentHashMap<>();
+
+    //SelectColumn对应的按列序号读取ResultSet的缓存
+    private final Map<String, Projection<T>> projections = new ConcurrentHashMap<>();
+
     //是否由数据库生成主键值
     final boolean autoGenerated;
 
@@ -480,6 +486,23 @@ public final class EntityInfo<T> {
         return t == null || t.isEmpty() ? table : t;
     }
 
+    /**
+     * 根据过滤条件获取Entity覆盖的所有表名
+     *
+     * @param node 过滤条件
+     *
+     * @return String[]
+     */
+    public String[] getTables(FilterNode node) {
+        if (tableStrategy == null) return new String[]{table};
+        String[] ts = tableStrategy.getTables(table, node);
+        if (ts == null || ts.length == 0) return new String[]{getTable(node)};
+        for (int i = 0; i < ts.length; i++) {
+            if (ts[i] == null || ts[i].isEmpty()) ts[i] = table;
+        }
+        return ts;
+    }
+
     /**
      * 根据Entity对象获取Entity的表名
      *
@@ -579,6 +602,37 @@ public final class EntityInfo<T> {
         return sql;
     }
 
+    /**
+     * 将Flipper.sort转换成Comparator, 只支持字段名排序
+     *
+     * @param flipper 翻页对象
+     *
+     * @return Comparator, 无排序时返回null
+     */
+    protected Comparator<T> createComparator(Flipper flipper) {
+        if (flipper == null || flipper.getSort() == null) return null;
+        final String sort = flipper.getSort();
+        if (sort.isEmpty() || sort.indexOf(';') >= 0 || sort.indexOf('\n') >= 0) return null;
+        Comparator<T> comparator = this.sortComparators.get(sort);
+        if (comparator != null) return comparator;
+        for (String item : sort.split(",")) {
+            if (item.trim().isEmpty()) continue;
+            String[] sub = item.trim().split("\\s+");
+            final Attribute<T, Serializable> attr = getAttribute(sub[0]);
+            if (attr == null) throw new RuntimeException("Flipper not supported sort (" + sort + ") across tables");
+            final boolean desc = sub.length > 1 && sub[1].equalsIgnoreCase("DESC");
+            Comparator<T> c = (T o1, T o2) -> {
+                Comparable c1 = (Comparable) attr.get(o1);
+                Comparable c2 = (Comparable) attr.get(o2);
+                int rs = c1 == null ? (c2 == null ? 0 : -1) : (c2 == null ? 1 : c1.compareTo(c2));
+                return desc ? -rs : rs;
+            };
+            comparator = comparator == null ? c : comparator.thenComparing(c);
+        }
+        if (comparator != null) this.sortComparators.put(sort, comparator);
+        return comparator;
+    }
+
     /**
      * 根据field字段名获取数据库对应的字段名
      *
@@ -683,6 +737,10 @@ public final class EntityInfo<T> {
      * @throws SQLException SQLException
      */
     protected T getValue(final SelectColumn sels, final ResultSet set) throws SQLException {
+        if (sels != null && this.constructorParameters == null) {
+            final Projection<T> projection = getProjection(sels);
+            if (projection != null) return projection.read(creator.create(), set);
+        }
         T obj;
         Attribute<T, Serializable>[] attrs = this.queryAttributes;
         if (this.constructorParameters == null) {
@@ -706,6 +764,87 @@ public final class EntityInfo<T> {
         return obj;
     }
 
+    /**
+     * 获取SelectColumn对应的投影, 其列序号与getQueryColumns(tabalis, sels)生成的字段顺序一致, 没有选中任何字段时返回null
+     *
+     * @param sels 指定字段
+     *
+     * @return Projection
+     */
+    protected Projection<T> getProjection(final SelectColumn sels) {
+        final String key = sels.toString();
+        Projection<T> projection = projections.get(key);
+        if (projection != null) return projection;
+        final List<Attribute<T, Serializable>> attrs = new ArrayList<>();
+        for (Attribute<T, Serializable> attr : this.attributes) {
+            if (sels.test(attr.field())) attrs.add(attr);
+        }
+        if (attrs.isEmpty()) return null;
+        projection = new Projection<>(attrs.toArray(new Attribute[attrs.size()]));
+        if (projections.size() > 1024) projections.clear(); //防止动态生成的SelectColumn过多
+        projections.put(key, projection);
+        return projection;
+    }
+
+    /**
+     * 只读取指定字段的投影, 按列序号和基本类型的getXXX方法读取ResultSet, 避免按列名查找和装箱
+     *
+     * @param <T> Entity类的泛型
+     */
+    protected static final class Projection<T> {
+
+        private final Attribute<T, Serializable>[] attributes;
+
+        private final Class[] types;
+
+        Projection(Attribute<T, Serializable>[] attributes) {
+            this.attributes = attributes;
+            this.types = new Class[attributes.length];
+            for (int i = 0; i < attributes.length; i++) {
+                this.types[i] = attributes[i].type();
+            }
+        }
+
+        public Attribute<T, Serializable>[] getAttributes() {
+            return attributes;
+        }
+
+        public T read(final T obj, final ResultSet set) throws SQLException {
+            for (int i = 0; i < attributes.length; i++) {
+                attributes[i].set(obj, readColumn(set, i));
+            }
+            return obj;
+        }
+
+        public Object[] readRow(final ResultSet set) throws SQLException {
+            final Object[] row = new Object[attributes.length];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = readColumn(set, i);
+            }
+            return row;
+        }
+
+        private Serializable readColumn(final ResultSet set, final int i) throws SQLException {
+            final Class t = types[i];
+            final int index = i + 1;
+            if (!t.isPrimitive()) {
+                if (t == byte[].class) {
+                    Blob blob = set.getBlob(index);
+                    return blob == null ? null : blob.getBytes(1, (int) blob.length()); //不支持超过2G的数据
+                }
+                return (Serializable) set.getObject(index);
+            }
+            if (t == int.class) return set.getInt(index);
+            if (t == long.class) return set.getLong(index);
+            if (t == double.class) return set.getDouble(index);
+            if (t == float.class) return set.getFloat(index);
+            if (t == short.class) return set.getShort(index);
+            if (t == byte.class) return set.getByte(index);
+            if (t == boolean.class) return set.getBoolean(index);
+            return (char) set.getInt(index); //char
+        }
+    }
+
     protected Serializable getFieldValue(Attribute<T, Serializable> attr, final ResultSet set) throws SQLException {
         final Class t = attr.type();
         Serializable o;
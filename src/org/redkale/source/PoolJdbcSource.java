@@ -13,13 +13,14 @@ import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 import java.sql.*;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.*;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import javax.sql.*;
 import static org.redkale.source.DataSources.*;
 
 /**
- *
+ * JDBC连接池, 支持异步获取连接(FIFO排队)、按空闲时长检查连接有效性、后台保活、最小空闲连接预热和连接泄漏检测
  * <p>
  * 详情见: https://redkale.org
  *
@@ -35,26 +36,76 @@ public class PoolJdbcSource {
 
     private final AtomicLong cycleCounter = new AtomicLong();
 
+    //获取连接的等待统计
+    private final AtomicLong waitCounter = new AtomicLong();
+
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    private volatile long maxWaitNanos;
+
     private final AtomicLong saveCounter = new AtomicLong();
 
+    //已借出未归还的连接数
+    private final AtomicInteger inflightCounter = new AtomicInteger();
+
+    //连续失败次数, 达到3次后暂时摘除
+    private final AtomicInteger failCounter = new AtomicInteger();
+
+    //连接借出时长的指数移动平均值(毫秒), 近似SQL执行耗时
+    private volatile double latencyMillis;
+
+    private volatile long ejectUntil;
+
     private final ConnectionPoolDataSource source;
 
-    private final ArrayBlockingQueue<PooledConnection> queue;
+    //所有存活的物理连接
+    private final ConcurrentHashMap<PooledConnection, PooledEntry> entrys = new ConcurrentHashMap<>();
+
+    //空闲的物理连接, 头部为最近归还的连接
+    private final ConcurrentLinkedDeque<PooledEntry> idles = new ConcurrentLinkedDeque<>();
+
+    //等待连接的请求, 先到先得
+    private final ConcurrentLinkedQueue<CompletableFuture<Connection>> waiters = new ConcurrentLinkedQueue<>();
+
+    //异步方法预先获取的连接, 执行同步方法时poll()直接返回该连接
+    private final ThreadLocal<Connection> reserved = new ThreadLocal<>();
 
     private final ConnectionEventListener listener;
 
+    //定时任务: 等待超时、触发后台维护, 不执行会阻塞的操作
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    //创建物理连接、后台维护等会阻塞的操作, 数据库无响应时不影响等待超时的触发
+    private final ThreadPoolExecutor creator;
+
+    private final AtomicBoolean maintaining = new AtomicBoolean();
+
     private final DataJdbcSource dataSource;
 
     private final String stype; // "" 或 "read"  或 "write"
 
     private final int max;
 
+    private final int minIdle;
+
+    private final int timeoutSeconds;
+
+    private final long validateIdleMillis;
+
+    private final long keepaliveMillis;
+
+    private final long leakDetectMillis;
+
+    private final long ejectMillis;
+
     private String url;
 
     private String user;
 
     private String password;
 
+    private volatile boolean closed;
+
     final Properties props;
 
     public PoolJdbcSource(DataJdbcSource source, String stype, Properties prop) {
@@ -66,22 +117,61 @@ public class PoolJdbcSource {
         this.user = prop.getProperty(JDBC_USER);
         this.password = prop.getProperty(JDBC_PWD);
         this.max = Integer.decode(prop.getProperty(JDBC_CONNECTIONSMAX, "" + Runtime.getRuntime().availableProcessors() * 16));
-        this.queue = new ArrayBlockingQueue<>(this.max);
+        this.minIdle = Math.min(this.max, Integer.decode(prop.getProperty(JDBC_CONNECTIONS_MINIDLE, "0")));
+        this.timeoutSeconds = Integer.decode(prop.getProperty(JDBC_CONNECTIONS_TIMEOUT, "6"));
+        this.validateIdleMillis = Integer.decode(prop.getProperty(JDBC_CONNECTIONS_VALIDATEIDLE, "30")) * 1000L;
+        this.keepaliveMillis = Integer.decode(prop.getProperty(JDBC_CONNECTIONS_KEEPALIVE, "300")) * 1000L;
+        this.leakDetectMillis = Integer.decode(prop.getProperty(JDBC_CONNECTIONS_LEAKDETECT, "0")) * 1000L;
+        this.ejectMillis = Integer.decode(prop.getProperty(JDBC_REPLICAS_EJECTSECONDS, "30")) * 1000L;
         this.listener = new ConnectionEventListener() {
 
             @Override
             public void connectionClosed(ConnectionEvent event) {
-                PooledConnection pc = (PooledConnection) event.getSource();
-                if (queue.offer(pc)) saveCounter.incrementAndGet();
+                PooledEntry entry = entrys.get((PooledConnection) event.getSource());
+                if (entry == null) return;
+                if (entry.borrowTime > 0) {
+                    inflightCounter.decrementAndGet();
+                    latencyMillis = latencyMillis * 0.8 + (System.currentTimeMillis() - entry.borrowTime) * 0.2;
+                }
+                entry.giveback();
+                failCounter.set(0);
+                saveCounter.incrementAndGet();
+                offer(entry);
             }
 
             @Override
             public void connectionErrorOccurred(ConnectionEvent event) {
-                usingCounter.decrementAndGet();
+                PooledEntry entry = entrys.get((PooledConnection) event.getSource());
+                if (entry != null) discard(entry);
+                fail();
                 if ("08S01".equals(event.getSQLException().getSQLState())) return; //MySQL特性， 长时间连接没使用会抛出com.mysql.jdbc.exceptions.jdbc4.CommunicationsException
                 dataSource.logger.log(Level.WARNING, "connectionErronOccurred  [" + event.getSQLException().getSQLState() + "]", event.getSQLException());
             }
         };
+        final String threadName = "DataSource-" + (source.name == null ? "" : (source.name + "-")) + stype + "-Pool-Thread";
+        this.scheduler = new ScheduledThreadPoolExecutor(1, (Runnable r) -> {
+            final Thread t = new Thread(r, threadName.replace("-Thread", "-Timer"));
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true); //已获得连接的等待超时任务及时移出队列
+        final int threads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+        this.creator = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (Runnable r) -> {
+            final Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        });
+        this.creator.allowCoreThreadTimeOut(true);
+        this.scheduler.scheduleWithFixedDelay(() -> {
+            if (closed || !maintaining.compareAndSet(false, true)) return; //上一次维护未结束时跳过
+            creator.execute(() -> {
+                try {
+                    maintain();
+                } finally {
+                    maintaining.set(false);
+                }
+            });
+        }, 0, 5, TimeUnit.SECONDS);
         if (this.isOracle()) {
             this.props.setProperty(JDBC_CONTAIN_SQLTEMPLATE, "INSTR(${keystr}, ${column}) > 0");
             this.props.setProperty(JDBC_NOTCONTAIN_SQLTEMPLATE, "INSTR(${keystr}, ${column}) = 0");
@@ -225,8 +315,7 @@ public class PoolJdbcSource {
                                     PoolJdbcSource pool = ref.get();
                                     if (pool == null) continue;
                                     try {
-                                        Properties property = m.get(pool.dataSource.name);
-                                        if (property == null) property = m.get(pool.dataSource.name + "." + pool.stype);
+                                        Properties property = pool.reloadProperties(m);
                                         if (property != null) pool.change(property);
                                     } catch (Exception ex) {
                                         dataSource.logger.log(Level.INFO, event.context() + " occur error", ex);
@@ -251,6 +340,26 @@ public class PoolJdbcSource {
         }
     }
 
+    //从重新加载的配置中找出本连接池的配置, 只读副本(read1、read2……)取read配置并替换为对应的副本url
+    private Properties reloadProperties(final Map<String, Properties> m) {
+        Properties property = m.get(dataSource.name + "." + stype);
+        if (property != null) return property;
+        if (!stype.startsWith("read") || stype.length() == 4) return m.get(dataSource.name);
+        Properties readprop = m.get(dataSource.name + ".read");
+        if (readprop == null) readprop = m.get(dataSource.name);
+        if (readprop == null) return null;
+        final int replica = Integer.parseInt(stype.substring(4));
+        int index = 0;
+        for (String url : readprop.getProperty(JDBC_REPLICAS_URLS, "").trim().split("\\s+")) {
+            if (url.isEmpty() || ++index != replica) continue;
+            property = new Properties();
+            property.putAll(readprop);
+            property.setProperty(JDBC_URL, url);
+            return property;
+        }
+        return null; //副本已从配置中移除, 保持原样
+    }
+
     public void change(Properties property) {
         Method seturlm;
         Class clazz = source.getClass();
@@ -276,52 +385,289 @@ public class PoolJdbcSource {
         }
     }
 
+    /**
+     * 同步获取连接, 连接池已满时最多等待 javax.persistence.connections.timeout 秒
+     *
+     * @return Connection
+     */
     public Connection poll() {
-        return poll(0, null);
+        Connection conn = reserved.get();
+        if (conn != null) {
+            reserved.remove();
+            return conn;
+        }
+        CompletableFuture<Connection> future = pollAsync();
+        try {
+            return future.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            if (!future.cancel(false)) return future.join(); //超时的同时刚好获得连接
+            throw new RuntimeException(DataSource.class.getSimpleName() + "(" + dataSource.name + "." + stype + ") poll connection timeout, max connections " + max, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            throw new RuntimeException(e);
+        }
     }
 
-    private Connection poll(final int count, SQLException e) {
+    /**
+     * 异步获取连接, 有空闲连接直接返回; 连接数未满则异步创建新连接; 否则进入FIFO队列等待归还的连接
+     *
+     * @return Connection的CompletableFuture
+     */
+    public CompletableFuture<Connection> pollAsync() {
+        if (closed) {
+            CompletableFuture<Connection> future = new CompletableFuture<>();
+            future.completeExceptionally(new SQLException(DataSource.class.getSimpleName() + "(" + dataSource.name + "." + stype + ") is closed"));
+            return future;
+        }
+        //有人排队时不插队, 保证先到先得
+        Connection conn = waiters.isEmpty() ? pollIdle() : null;
+        if (conn != null) {
+            waitCounter.incrementAndGet();
+            return CompletableFuture.completedFuture(conn);
+        }
+        final long start = System.nanoTime();
+        if (reserveCreate()) {
+            return CompletableFuture.supplyAsync(() -> {
+                Connection rs = checkout(create(0, null));
+                if (rs == null) throw new RuntimeException(DataSource.class.getSimpleName() + "(" + dataSource.name + "." + stype + ") create pooled connection error");
+                recordWait(start);
+                return rs;
+            }, creator);
+        }
+        final CompletableFuture<Connection> future = new CompletableFuture<>();
+        future.thenRun(() -> recordWait(start));
+        waiters.add(future);
+        //入队前可能刚好有连接被归还
+        PooledEntry entry = idles.pollFirst();
+        if (entry != null) offer(entry);
+        if (!future.isDone()) {
+            final ScheduledFuture<?> timeout = scheduler.schedule(() -> {
+                future.completeExceptionally(new TimeoutException(DataSource.class.getSimpleName() + "(" + dataSource.name + "." + stype + ") poll connection timeout, max connections " + max));
+            }, timeoutSeconds, TimeUnit.SECONDS);
+            future.whenComplete((c, e) -> timeout.cancel(false));
+        }
+        return future;
+    }
+
+    /**
+     * 在当前线程中使用已获取的连接执行操作, 操作中调用poll()会直接返回该连接, 操作结束后未被使用的连接归还连接池
+     *
+     * @param <T>      结果类型
+     * @param conn     pollAsync获取的连接
+     * @param supplier 操作
+     *
+     * @return 操作结果
+     */
+    public <T> T execute(final Connection conn, final Supplier<T> supplier) {
+        reserved.set(conn);
+        try {
+            return supplier.get();
+        } finally {
+            Connection unused = reserved.get();
+            reserved.remove();
+            if (unused != null) dataSource.closeSQLConnection(unused);
+        }
+    }
+
+    private Connection pollIdle() {
+        PooledEntry entry;
+        while ((entry = idles.pollFirst()) != null) {
+            Connection conn = checkout(entry);
+            if (conn != null) return conn;
+        }
+        return null;
+    }
+
+    private boolean reserveCreate() {
+        for (;;) {
+            long count = usingCounter.get();
+            if (count >= max) return false;
+            if (usingCounter.compareAndSet(count, count + 1)) return true;
+        }
+    }
+
+    //调用前须已通过reserveCreate占用名额
+    private PooledEntry create(final int count, SQLException e) {
         if (count >= 3) {
+            usingCounter.decrementAndGet();
+            fail();
             dataSource.logger.log(Level.WARNING, "create pooled connection error", e);
             throw new RuntimeException(e);
         }
-        PooledConnection result = queue.poll();
-        if (result == null) {
-            if (usingCounter.get() >= max) {
-                try {
-                    result = queue.poll(6, TimeUnit.SECONDS);
-                } catch (Exception t) {
-                    dataSource.logger.log(Level.WARNING, "take pooled connection error", t);
-                }
-            }
-            if (result == null) {
-                try {
-                    result = source.getPooledConnection();
-                    result.addConnectionEventListener(listener);
-                    usingCounter.incrementAndGet();
-                } catch (SQLException ex) {
-                    return poll(count + 1, ex);
-                }
-                creatCounter.incrementAndGet();
-            }
-        } else {
-            cycleCounter.incrementAndGet();
+        try {
+            PooledConnection pc = source.getPooledConnection();
+            PooledEntry entry = new PooledEntry(pc);
+            entrys.put(pc, entry);
+            pc.addConnectionEventListener(listener);
+            creatCounter.incrementAndGet();
+            return entry;
+        } catch (SQLException ex) {
+            return create(count + 1, ex);
         }
-        Connection conn;
+    }
+
+    //空闲超过validateIdleMillis的连接才做有效性检查
+    private Connection checkout(PooledEntry entry) {
         try {
-            conn = result.getConnection();
-            if (!conn.isValid(1)) {
+            Connection conn = entry.pooled.getConnection();
+            if (entry.lastUsedTime > 0 && System.currentTimeMillis() - entry.lastUsedTime > validateIdleMillis && !conn.isValid(1)) {
                 dataSource.logger.info("sql connection is not vaild");
-                usingCounter.decrementAndGet();
-                return poll(0, null);
+                discard(entry);
+                return null;
             }
+            if (entry.lastUsedTime > 0) cycleCounter.incrementAndGet();
+            entry.borrow(leakDetectMillis > 0);
+            inflightCounter.incrementAndGet();
+            return conn;
         } catch (SQLException ex) {
             if (!"08S01".equals(ex.getSQLState())) {//MySQL特性， 长时间连接没使用会抛出com.mysql.jdbc.exceptions.jdbc4.CommunicationsException
                 dataSource.logger.log(Level.FINER, "result.getConnection from pooled connection abort [" + ex.getSQLState() + "]", ex);
             }
-            return poll(0, null);
+            discard(entry);
+            return null;
+        }
+    }
+
+    //归还的连接优先交给排队最久的请求
+    private void offer(PooledEntry entry) {
+        if (closed) {
+            discard(entry);
+            return;
+        }
+        CompletableFuture<Connection> waiter;
+        while ((waiter = waiters.poll()) != null) {
+            if (waiter.isDone()) continue;
+            Connection conn = checkout(entry);
+            if (conn == null) { //连接已失效, 为等待者创建新连接
+                waiters.add(waiter);
+                fillWaiters();
+                return;
+            }
+            if (!waiter.complete(conn)) dataSource.closeSQLConnection(conn); //等待者刚好超时, 连接重新归还
+            return;
         }
-        return conn;
+        idles.offerFirst(entry);
+        //放入空闲队列前可能刚好有新的等待者
+        if (!waiters.isEmpty() && idles.remove(entry)) offer(entry);
+    }
+
+    private void discard(PooledEntry entry) {
+        if (entrys.remove(entry.pooled) == null) return;
+        idles.remove(entry);
+        usingCounter.decrementAndGet();
+        if (entry.borrowTime > 0) inflightCounter.decrementAndGet();
+        try {
+            entry.pooled.close();
+        } catch (Exception e) {
+        }
+        fillWaiters();
+    }
+
+    private void fillWaiters() {
+        if (closed) return;
+        while (!waiters.isEmpty() && reserveCreate()) {
+            creator.execute(() -> {
+                try {
+                    offer(create(0, null));
+                } catch (Exception e) {
+                    CompletableFuture<Connection> waiter = waiters.poll();
+                    if (waiter != null) waiter.completeExceptionally(e);
+                }
+            });
+        }
+    }
+
+    //后台维护: 保活长时间空闲的连接、预热最小空闲连接、检测连接泄漏
+    private void maintain() {
+        if (closed) return;
+        try {
+            final long now = System.currentTimeMillis();
+            if (keepaliveMillis > 0) {
+                for (PooledEntry entry : idles) {
+                    if (now - entry.lastUsedTime < keepaliveMillis || !idles.remove(entry)) continue;
+                    try (Connection conn = entry.pooled.getConnection()) {
+                        if (!conn.isValid(1)) {
+                            discard(entry);
+                            continue;
+                        }
+                        entry.borrow(false);
+                        inflightCounter.incrementAndGet();
+                    } catch (SQLException e) {
+                        discard(entry);
+                    } //close后通过listener归还
+                }
+            }
+            while (idles.size() < minIdle && reserveCreate()) {
+                PooledEntry entry = create(0, null);
+                entry.giveback();
+                offer(entry);
+            }
+            if (leakDetectMillis > 0) {
+                for (PooledEntry entry : entrys.values()) {
+                    if (entry.borrowTime > 0 && !entry.leakReported && now - entry.borrowTime > leakDetectMillis) {
+                        entry.leakReported = true;
+                        dataSource.logger.log(Level.WARNING, DataSource.class.getSimpleName() + "(" + dataSource.name + "." + stype + ") connection leak detected, borrowed " + (now - entry.borrowTime) + " ms ago", entry.borrowStack);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            dataSource.logger.log(Level.FINER, DataSource.class.getSimpleName() + "(" + dataSource.name + "." + stype + ") maintain pool error", e);
+        }
+    }
+
+    private void fail() {
+        if (failCounter.incrementAndGet() >= 3 && ejectMillis > 0) {
+            failCounter.set(0);
+            this.ejectUntil = System.currentTimeMillis() + ejectMillis;
+            dataSource.logger.log(Level.WARNING, DataSource.class.getSimpleName() + "(" + dataSource.name + "." + stype + ") " + url + " ejected for " + ejectMillis + " ms");
+        }
+    }
+
+    /**
+     * 是否可用, 连续失败后会被暂时摘除
+     *
+     * @return 是否可用
+     */
+    public boolean isAvailable() {
+        return !closed && System.currentTimeMillis() >= ejectUntil;
+    }
+
+    public int getInflightCount() {
+        return inflightCounter.get();
+    }
+
+    public double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    private void recordWait(final long start) {
+        final long nanos = System.nanoTime() - start;
+        waitCounter.incrementAndGet();
+        waitNanos.addAndGet(nanos);
+        if (nanos > maxWaitNanos) maxWaitNanos = nanos;
+    }
+
+    public long getWaitCount() {
+        return waitCounter.get();
+    }
+
+    public double getAvgWaitMillis() {
+        final long count = waitCounter.get();
+        return count == 0 ? 0 : (waitNanos.get() / 1000_000.0 / count);
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos / 1000_000.0;
+    }
+
+    public int getMaxConns() {
+        return max;
     }
 
     public long getCreatCount() {
@@ -336,12 +682,55 @@ public class PoolJdbcSource {
         return saveCounter.longValue();
     }
 
+    public long getUsingCount() {
+        return usingCounter.longValue();
+    }
+
+    public int getIdleCount() {
+        return idles.size();
+    }
+
+    public int getWaitingCount() {
+        return waiters.size();
+    }
+
     public void close() {
-        queue.stream().forEach(x -> {
-            try {
-                x.close();
-            } catch (Exception e) {
-            }
-        });
+        this.closed = true;
+        this.scheduler.shutdownNow();
+        this.creator.shutdownNow();
+        CompletableFuture<Connection> waiter;
+        while ((waiter = waiters.poll()) != null) {
+            waiter.completeExceptionally(new SQLException(DataSource.class.getSimpleName() + "(" + dataSource.name + "." + stype + ") is closed"));
+        }
+        new ArrayList<>(entrys.values()).forEach(this::discard);
+    }
+
+    private static final class PooledEntry {
+
+        final PooledConnection pooled;
+
+        volatile long lastUsedTime; //0表示新建未使用
+
+        volatile long borrowTime;
+
+        volatile Throwable borrowStack;
+
+        volatile boolean leakReported;
+
+        public PooledEntry(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        void borrow(boolean trace) {
+            this.borrowTime = System.currentTimeMillis();
+            this.borrowStack = trace ? new Throwable("connection borrowed at") : null;
+            this.leakReported = false;
+        }
+
+        void giveback() {
+            this.lastUsedTime = System.currentTimeMillis();
+            this.borrowTime = 0;
+            this.borrowStack = null;
+        }
     }
 }
@@ -0,0 +1,150 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.source;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * 数据源专用的有界线程池, 用于执行DataSource、CacheSource的异步方法    <br>
+ * 与业务请求的线程池隔离, 数据库变慢时只会占满本线程池, 不影响其他请求。
+ * 等待队列满时立即抛出RejectedExecutionException, 不阻塞调用方。
+ * 同时统计任务在队列中的等待时间。
+ * 指定虚拟线程的ThreadFactory时每个任务在新的虚拟线程内执行, 执行中和等待的任务总数不超过threads+queueSize。
+ *
+ * <p>
+ * 详情见: https://redkale.org
+ *
+ * @author zhangjx
+ */
+public class SourceExecutor extends ThreadPoolExecutor {
+
+    private final String name;
+
+    private final int queueSize;
+
+    private final AtomicLong executedCounter = new AtomicLong();
+
+    private final AtomicLong rejectedCounter = new AtomicLong();
+
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    private volatile long maxWaitNanos;
+
+    private final ThreadFactory virtualFactory;
+
+    private final int maxVirtuals;
+
+    private final AtomicInteger virtualCounter = new AtomicInteger();
+
+    public SourceExecutor(final String name, final int threads, final int queueSize) {
+        this(name, threads, queueSize, null);
+    }
+
+    public SourceExecutor(final String name, final int threads, final int queueSize, final ThreadFactory virtualFactory) {
+        super(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, name + "-Executor-Thread-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.name = name;
+        this.queueSize = queueSize;
+        this.virtualFactory = virtualFactory;
+        this.maxVirtuals = threads + queueSize;
+        this.allowCoreThreadTimeOut(true);
+        this.setRejectedExecutionHandler((Runnable r, ThreadPoolExecutor executor) -> {
+            rejectedCounter.incrementAndGet();
+            throw new RejectedExecutionException(name + " executor is saturated (threads = " + threads + ", queue = " + queueSize + ")");
+        });
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        final long createTime = System.nanoTime();
+        if (virtualFactory != null) {
+            if (isShutdown()) throw new RejectedExecutionException(name + " executor is shutdown");
+            if (virtualCounter.incrementAndGet() > maxVirtuals) {
+                virtualCounter.decrementAndGet();
+                rejectedCounter.incrementAndGet();
+                throw new RejectedExecutionException(name + " executor is saturated (virtual threads = " + maxVirtuals + ")");
+            }
+            virtualFactory.newThread(() -> {
+                final long wait = System.nanoTime() - createTime;
+                waitNanos.addAndGet(wait);
+                executedCounter.incrementAndGet();
+                if (wait > maxWaitNanos) maxWaitNanos = wait;
+                try {
+                    command.run();
+                } finally {
+                    virtualCounter.decrementAndGet();
+                }
+            }).start();
+            return;
+        }
+        super.execute(() -> {
+            final long wait = System.nanoTime() - createTime;
+            waitNanos.addAndGet(wait);
+            executedCounter.incrementAndGet();
+            if (wait > maxWaitNanos) maxWaitNanos = wait;
+            command.run();
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getWaitingCount() {
+        return getQueue().size();
+    }
+
+    public boolean isVirtual() {
+        return virtualFactory != null;
+    }
+
+    public long getExecutedCount() {
+        return executedCounter.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCounter.get();
+    }
+
+    /**
+     * 任务在队列中的平均等待毫秒数
+     *
+     * @return 平均等待毫秒数
+     */
+    public double getAvgWaitMillis() {
+        final long count = executedCounter.get();
+        return count == 0 ? 0 : (waitNanos.get() / 1000_000.0 / count);
+    }
+
+    /**
+     * 任务在队列中的最大等待毫秒数
+     *
+     * @return 最大等待毫秒数
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos / 1000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{name = " + name + ", threads = " + (isVirtual() ? (virtualCounter.get() + "/" + maxVirtuals + "(virtual)") : (getPoolSize() + "/" + getMaximumPoolSize()))
+            + ", waiting = " + getWaitingCount() + "/" + queueSize + ", executed = " + getExecutedCount() + ", rejected = " + getRejectedCount()
+            + ", avgwait = " + String.format("%.2f", getAvgWaitMillis()) + "ms, maxwait = " + String.format("%.2f", getMaxWaitMillis()) + "ms}";
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.util;
+
+import java.lang.ref.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+/**
+ * 按尺寸分类的直接内存ByteBuffer分配器  <br>
+ * 每种容量是一个尺寸类, 从net.buffer.slabsize(默认: 1M, 至少容纳16个)大小的slab中切分出该容量的ByteBuffer, 归还后供同一尺寸类复用。
+ * 超过1M的ByteBuffer不切分, 直接分配。 <br>
+ * 借出未归还且已不可达的ByteBuffer计为泄漏, 其duplicate或slice可能仍在使用, 所占的slab区域不再复用。 <br>
+ * 按使用者(如Server名)统计借出、归还、泄漏数。
+ *
+ * <p>
+ * 详情见: https://redkale.org
+ *
+ * @author zhangjx
+ */
+public final class ByteBufferAllocator {
+
+    private static final Logger logger = Logger.getLogger(ByteBufferAllocator.class.getSimpleName());
+
+    public static final int MIN_SIZECLASS = 1024;
+
+    public static final int MAX_SIZECLASS = 1024 * 1024;
+
+    private static final ByteBufferAllocator root = new ByteBufferAllocator(Integer.getInteger("net.buffer.slabsize", 1024 * 1024));
+
+    private final int slabSize;
+
+    private final ConcurrentHashMap<Integer, SizeClass> classes = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Usage> usages = new ConcurrentHashMap<>();
+
+    //借出未归还的ByteBuffer, 弱引用以便发现泄漏
+    private final ConcurrentHashMap<ChunkRef, ChunkRef> outstandings = new ConcurrentHashMap<>();
+
+    private final ReferenceQueue<ByteBuffer> leakQueue = new ReferenceQueue<>();
+
+    private final AtomicLong slabCounter = new AtomicLong();
+
+    private final AtomicLong slabBytes = new AtomicLong();
+
+    public ByteBufferAllocator(int slabSize) {
+        this.slabSize = Math.max(MIN_SIZECLASS * 16, slabSize);
+    }
+
+    public static ByteBufferAllocator root() {
+        return root;
+    }
+
+    /**
+     * 不小于size的尺寸类容量, 为2的幂且不小于1K
+     *
+     * @param size 需要的容量
+     *
+     * @return 尺寸类容量
+     */
+    public static int sizeClass(int size) {
+        if (size <= MIN_SIZECLASS) return MIN_SIZECLASS;
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    public Usage usage(String name) {
+        return usages.computeIfAbsent(name, Usage::new);
+    }
+
+    public List<Usage> getUsages() {
+        return new ArrayList<>(usages.values());
+    }
+
+    /**
+     * 创建从本分配器借出指定容量ByteBuffer的对象池, 对象池满时归还给分配器
+     *
+     * @param name         使用者名称
+     * @param creatCounter 创建数
+     * @param cycleCounter 回收数
+     * @param max          对象池大小
+     * @param capacity     ByteBuffer的容量
+     *
+     * @return ObjectPool
+     */
+    public ObjectPool<ByteBuffer> createPool(String name, AtomicLong creatCounter, AtomicLong cycleCounter, int max, final int capacity) {
+        final Usage usage = usage(name);
+        ObjectPool<ByteBuffer> pool = new ObjectPool<>(creatCounter, cycleCounter, max, (Object... params) -> allocate(capacity, usage), null, (e) -> {
+            if (e == null || e.isReadOnly() || e.capacity() != capacity) return false;
+            if (!isOutstanding(e)) return false; //只接收本分配器借出的原始对象, 丢弃其duplicate
+            e.clear();
+            return true;
+        });
+        pool.setOverflow(this::free);
+        return pool;
+    }
+
+    /**
+     * 借出指定容量的直接内存ByteBuffer, 使用完后需调用free归还
+     *
+     * @param capacity 容量
+     * @param usage    使用者, 可以为null
+     *
+     * @return ByteBuffer
+     */
+    public ByteBuffer allocate(int capacity, Usage usage) {
+        if (capacity > MAX_SIZECLASS) return ByteBuffer.allocateDirect(capacity);
+        expunge();
+        final SizeClass sc = classes.computeIfAbsent(capacity, SizeClass::new);
+        Region region = sc.frees.poll();
+        if (region == null) region = sc.carve();
+        ByteBuffer buffer = region.view;
+        region.view = null; //借出期间只由ByteBuffer自身可达, 不可达时可发现泄漏
+        if (buffer == null) buffer = region.slice(capacity);
+        buffer.clear();
+        final ChunkRef ref = new ChunkRef(buffer, leakQueue, sc, region, usage);
+        outstandings.put(ref, ref);
+        sc.outstanding.incrementAndGet();
+        if (usage != null) {
+            usage.allocatedCounter.incrementAndGet();
+            usage.outstanding.incrementAndGet();
+        }
+        return buffer;
+    }
+
+    /**
+     * 归还ByteBuffer, 不是本分配器借出的或已归还的忽略
+     *
+     * @param buffer ByteBuffer
+     *
+     * @return 是否归还成功
+     */
+    public boolean free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) return false;
+        final ChunkRef ref = outstandings.remove(new ChunkRef(buffer, null, null, null, null));
+        if (ref == null) return false;
+        ref.clear();
+        buffer.clear();
+        ref.region.view = buffer;
+        ref.sizeClass.frees.offer(ref.region);
+        ref.sizeClass.outstanding.decrementAndGet();
+        if (ref.usage != null) {
+            ref.usage.freedCounter.incrementAndGet();
+            ref.usage.outstanding.decrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * 判断ByteBuffer是否为本分配器借出且未归还的原始对象, 其duplicate或slice返回false
+     *
+     * @param buffer ByteBuffer
+     *
+     * @return 是否借出未归还
+     */
+    public boolean isOutstanding(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) return false;
+        return outstandings.containsKey(new ChunkRef(buffer, null, null, null, null));
+    }
+
+    //统计已不可达的借出ByteBuffer, 其duplicate可能仍在使用, slab区域不放回空闲队列
+    private void expunge() {
+        Reference<? extends ByteBuffer> r;
+        while ((r = leakQueue.poll()) != null) {
+            final ChunkRef ref = (ChunkRef) r;
+            if (outstandings.remove(ref) == null) continue;
+            ref.sizeClass.outstanding.decrementAndGet();
+            if (ref.usage != null) {
+                ref.usage.leakedCounter.incrementAndGet();
+                ref.usage.outstanding.decrementAndGet();
+            }
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "ByteBuffer(capacity = " + ref.sizeClass.capacity + ") leaked by " + (ref.usage == null ? null : ref.usage.name));
+            }
+        }
+    }
+
+    public long getSlabCount() {
+        return slabCounter.get();
+    }
+
+    public long getSlabBytes() {
+        return slabBytes.get();
+    }
+
+    /**
+     * 各尺寸类借出未归还的数量
+     *
+     * @return 容量 - 数量
+     */
+    public Map<Integer, Long> getOutstandings() {
+        expunge();
+        Map<Integer, Long> rs = new TreeMap<>();
+        for (SizeClass sc : classes.values()) {
+            rs.put(sc.capacity, sc.outstanding.get());
+        }
+        return rs;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{slabs = " + getSlabCount() + ", slabBytes = " + getSlabBytes() + ", outstandings = " + getOutstandings() + ", usages = " + usages.values() + "}";
+    }
+
+    private final class SizeClass {
+
+        final int capacity;
+
+        final int count; //每个slab切分的个数
+
+        final ConcurrentLinkedQueue<Region> frees = new ConcurrentLinkedQueue<>();
+
+        final AtomicLong outstanding = new AtomicLong();
+
+        private ByteBuffer slab;
+
+        private int index;
+
+        public SizeClass(int capacity) {
+            this.capacity = capacity;
+            this.count = Math.max(16, slabSize / capacity);
+        }
+
+        synchronized Region carve() {
+            if (slab == null || index >= count) {
+                slab = ByteBuffer.allocateDirect(capacity * count);
+                index = 0;
+                slabCounter.incrementAndGet();
+                slabBytes.addAndGet(slab.capacity());
+            }
+            return new Region(slab, capacity * index++);
+        }
+    }
+
+    private static final class Region {
+
+        final ByteBuffer slab;
+
+        final int offset;
+
+        ByteBuffer view; //空闲时缓存的ByteBuffer
+
+        public Region(ByteBuffer slab, int offset) {
+            this.slab = slab;
+            this.offset = offset;
+        }
+
+        ByteBuffer slice(int capacity) {
+            final ByteBuffer dup = slab.duplicate();
+            dup.limit(offset + capacity).position(offset);
+            return dup.slice();
+        }
+    }
+
+    //按ByteBuffer的引用相等比较的弱引用
+    private static final class ChunkRef extends WeakReference<ByteBuffer> {
+
+        final int hash;
+
+        final SizeClass sizeClass;
+
+        final Region region;
+
+        final Usage usage;
+
+        public ChunkRef(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue, SizeClass sizeClass, Region region, Usage usage) {
+            super(buffer, queue);
+            this.hash = System.identityHashCode(buffer);
+            this.sizeClass = sizeClass;
+            this.region = region;
+            this.usage = usage;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof ChunkRef)) return false;
+            final ByteBuffer buffer = get();
+            return buffer != null && buffer == ((ChunkRef) obj).get();
+        }
+    }
+
+    /**
+     * 一个使用者的统计
+     */
+    public static final class Usage {
+
+        private final String name;
+
+        private final AtomicLong allocatedCounter = new AtomicLong();
+
+        private final AtomicLong freedCounter = new AtomicLong();
+
+        private final AtomicLong leakedCounter = new AtomicLong();
+
+        private final AtomicLong outstanding = new AtomicLong();
+
+        public Usage(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getAllocatedCount() {
+            return allocatedCounter.get();
+        }
+
+        public long getFreedCount() {
+            return freedCounter.get();
+        }
+
+        public long getLeakedCount() {
+            return leakedCounter.get();
+        }
+
+        /**
+         * 借出未归还的数量, 包括使用者对象池中的
+         *
+         * @return 数量
+         */
+        public long getOutstandingCount() {
+            return outstanding.get();
+        }
+
+        @Override
+        public String toString() {
+            return name + "{allocated = " + getAllocatedCount() + ", freed = " + getFreedCount() + ", leaked = " + getLeakedCount() + ", outstanding = " + getOutstandingCount() + "}";
+        }
+    }
+}
@@ -33,6 +33,8 @@ public final class ObjectPool<T> implements Supplier<T>, Consumer<T> {
 
     private final Predicate<T> recycler;
 
+    private Consumer<T> overflow; //对象池已满时的处理
+
     private final AtomicLong creatCounter;
 
     private final AtomicLong cycleCounter;
@@ -71,6 +73,10 @@ public final class ObjectPool<T> implements Supplier<T>, Consumer<T> {
         return recycler;
     }
 
+    public void setOverflow(Consumer<T> overflow) {
+        this.overflow = overflow;
+    }
+
     @Override
     public T get() {
         T result = queue.poll();
@@ -94,7 +100,7 @@ public final class ObjectPool<T> implements Supplier<T>, Consumer<T> {
 //                    }
 //                }
 //            }
-            queue.offer(e);
+            if (!queue.offer(e) && overflow != null) overflow.accept(e);
         }
     }
 
@@ -0,0 +1,204 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+/**
+ * 哈希时间轮定时器   <br>
+ * 添加和取消任务都是O(1)操作, 到期精度为一个tick, 适用于大量连接的超时检查这类对精度要求不高的定时任务。
+ * 任务在时间轮的线程内执行, 不可有阻塞操作。
+ *
+ * <p>
+ * 详情见: https://redkale.org
+ *
+ * @author zhangjx
+ */
+public final class TimingWheel {
+
+    private static final Logger logger = Logger.getLogger(TimingWheel.class.getSimpleName());
+
+    private final long tickNanos;
+
+    private final Timeout[] buckets; //每个槽是一个双向链表的头, 只在时间轮线程内修改
+
+    private final int mask;
+
+    private final ConcurrentLinkedQueue<Timeout> pendings = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private final Thread worker;
+
+    private final long startNanos;
+
+    private long tick;
+
+    private volatile boolean running = true;
+
+    /**
+     * 创建时间轮
+     *
+     * @param name       线程名
+     * @param tickMillis 每个tick的毫秒数
+     * @param wheelSize  槽数, 会向上取整为2的幂
+     */
+    public TimingWheel(String name, long tickMillis, int wheelSize) {
+        int size = 1;
+        while (size < wheelSize) size <<= 1;
+        this.buckets = new Timeout[size];
+        this.mask = size - 1;
+        this.tickNanos = Math.max(1, tickMillis) * 1000_000L;
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 添加定时任务
+     *
+     * @param task        任务
+     * @param delayMillis 延迟毫秒数
+     *
+     * @return Timeout
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        final Timeout timeout = new Timeout(task, System.nanoTime() + Math.max(0, delayMillis) * 1000_000L);
+        pendings.offer(timeout);
+        counter.incrementAndGet();
+        return timeout;
+    }
+
+    /**
+     * 未到期且未取消的任务数
+     *
+     * @return 任务数
+     */
+    public int getCount() {
+        return counter.get();
+    }
+
+    public void stop() {
+        this.running = false;
+        this.worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            final long deadline = startNanos + (tick + 1) * tickNanos;
+            long sleep = deadline - System.nanoTime();
+            try {
+                while (sleep > 0) {
+                    Thread.sleep(sleep / 1000_000L, (int) (sleep % 1000_000L));
+                    sleep = deadline - System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                if (!running) break;
+            }
+            transfer();
+            expire(tick & mask, System.nanoTime());
+            tick++;
+        }
+    }
+
+    //把新添加的任务放入对应的槽
+    private void transfer() {
+        Timeout timeout;
+        for (int i = 0; i < 100_000 && (timeout = pendings.poll()) != null; i++) { //单次最多转移10万个, 避免当前tick延迟过多
+            if (timeout.state.get() != Timeout.ST_INIT) continue;
+            final long ticks = Math.max((timeout.deadline - startNanos) / tickNanos, tick);
+            timeout.rounds = (ticks - tick) / buckets.length;
+            final int index = (int) (ticks & mask);
+            timeout.next = buckets[index];
+            if (buckets[index] != null) buckets[index].prev = timeout;
+            buckets[index] = timeout;
+        }
+    }
+
+    private void expire(long index, long now) {
+        Timeout timeout = buckets[(int) index];
+        while (timeout != null) {
+            final Timeout next = timeout.next;
+            if (timeout.state.get() == Timeout.ST_CANCELLED) {
+                remove((int) index, timeout);
+            } else if (timeout.rounds > 0) {
+                timeout.rounds--;
+            } else if (timeout.deadline <= now) {
+                remove((int) index, timeout);
+                if (timeout.state.compareAndSet(Timeout.ST_INIT, Timeout.ST_EXPIRED)) {
+                    counter.decrementAndGet();
+                    try {
+                        timeout.task.run();
+                    } catch (Throwable t) {
+                        logger.log(Level.WARNING, worker.getName() + " run task erroneous", t);
+                    }
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    private void remove(int index, Timeout timeout) {
+        if (timeout.prev == null) {
+            buckets[index] = timeout.next;
+        } else {
+            timeout.prev.next = timeout.next;
+        }
+        if (timeout.next != null) timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    /**
+     * 定时任务的句柄
+     */
+    public final class Timeout {
+
+        private static final int ST_INIT = 0;
+
+        private static final int ST_CANCELLED = 1;
+
+        private static final int ST_EXPIRED = 2;
+
+        private final Runnable task;
+
+        private final long deadline;
+
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        private long rounds;
+
+        private Timeout prev;
+
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消任务, 任务从槽中移除延迟到时间轮线程下次经过该槽时
+         *
+         * @return 是否取消成功, 已到期或已取消返回false
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) return false;
+            counter.decrementAndGet();
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+    }
+}
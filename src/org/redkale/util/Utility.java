@@ -183,6 +183,24 @@ public final class Utility {
         return UUID.randomUUID().toString().replace("-", "");
     }
 
+    /**
+     * 创建虚拟线程的ThreadFactory, 线程名为name加序号; JDK不支持虚拟线程时返回null
+     *
+     * @param name 线程名前缀
+     *
+     * @return ThreadFactory
+     */
+    public static java.util.concurrent.ThreadFactory virtualThreadFactory(String name) {
+        try { //JDK21+
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Class builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name, 1L);
+            return (java.util.concurrent.ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
     /**
      * 将一个或多个新元素添加到数组开始，数组中的元素自动后移
      *
@@ -0,0 +1,93 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.net;
+
+/**
+ * 用合成的耗时驱动ConcurrencyLimiter的采样窗口, 检查gradient和aimd两种算法的限制调整以及优先级的配额
+ *
+ * @author zhangjx
+ */
+public class ConcurrencyLimiterTest {
+
+    private static long clock = System.nanoTime() + 1000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        //gradient: 耗时平稳时增加, 耗时升高后降低, 恢复后重新增加
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(false, 8, 1000, 100, 500);
+        for (int i = 0; i < 30; i++) {
+            window(limiter, 10, limiter.getLimit());
+        }
+        final int grown = limiter.getLimit();
+        System.out.println("gradient steady 10ms: 100 -> " + grown);
+        check(grown > 150, "gradient limit should grow when rtt is steady");
+        for (int i = 0; i < 20; i++) {
+            window(limiter, 40, limiter.getLimit());
+        }
+        final int shrunk = limiter.getLimit();
+        System.out.println("gradient rtt 40ms: " + grown + " -> " + shrunk);
+        check(shrunk < grown * 0.6, "gradient limit should drop when rtt rises");
+        for (int i = 0; i < 20; i++) {
+            window(limiter, 10, limiter.getLimit());
+        }
+        System.out.println("gradient back to 10ms: " + shrunk + " -> " + limiter.getLimit());
+        check(limiter.getLimit() > shrunk, "gradient limit should recover when rtt falls");
+
+        //在途请求数远低于限制时不增加
+        limiter = new ConcurrencyLimiter(false, 8, 1000, 100, 500);
+        for (int i = 0; i < 30; i++) {
+            window(limiter, 10, 5);
+        }
+        System.out.println("gradient app limited: 100 -> " + limiter.getLimit());
+        check(limiter.getLimit() == 100, "limit should not grow when app limited");
+
+        //aimd: 无超时每个窗口加1, 有超时乘以0.9
+        limiter = new ConcurrencyLimiter(true, 8, 1000, 100, 50);
+        for (int i = 0; i < 10; i++) {
+            window(limiter, 10, limiter.getLimit());
+        }
+        System.out.println("aimd no timeout: 100 -> " + limiter.getLimit());
+        check(limiter.getLimit() == 110, "aimd limit should increase by 1 per window");
+        window(limiter, 100, limiter.getLimit());
+        System.out.println("aimd timeout: 110 -> " + limiter.getLimit());
+        check(limiter.getLimit() == 99, "aimd limit should decrease by 10% on timeout");
+        for (int i = 0; i < 100; i++) {
+            window(limiter, 100, limiter.getLimit());
+        }
+        System.out.println("aimd keep timeout: -> " + limiter.getLimit());
+        check(limiter.getLimit() == 8, "aimd limit should stop at min");
+
+        //优先级配额: 低70%, 普通90%, 高100%
+        limiter = new ConcurrencyLimiter(false, 8, 1000, 100, 500);
+        final int low = acquire(limiter, ConcurrencyLimiter.PRIORITY_LOW);
+        final int normal = acquire(limiter, ConcurrencyLimiter.PRIORITY_NORMAL);
+        final int high = acquire(limiter, ConcurrencyLimiter.PRIORITY_HIGH);
+        System.out.println("priority accepted: low = " + low + ", normal = " + normal + ", high = " + high + ", " + limiter);
+        check(low == 70 && normal == 20 && high == 10, "priority quota is wrong");
+        check(limiter.getRejectedCount() == 3, "rejected count is wrong");
+        System.out.println("ConcurrencyLimiterTest ok");
+    }
+
+    //一个采样窗口: 10个请求, 每个耗时rttMillis毫秒
+    private static void window(ConcurrencyLimiter limiter, long rttMillis, int inflight) {
+        clock += 100_000_000L;
+        for (int i = 0; i < 10; i++) {
+            limiter.sample(clock, rttMillis * 1000_000L, inflight);
+        }
+    }
+
+    //持续获取许可直到被拒绝, 返回获取成功的次数
+    private static int acquire(ConcurrencyLimiter limiter, int priority) {
+        int count = 0;
+        while (limiter.tryAcquire(priority)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) throw new RuntimeException(message);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.net.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.redkale.test.bench.Benchmark;
+import org.redkale.util.AnyValue;
+
+/**
+ * HttpRequest.readHeader的解析和HttpPrepareServlet的路由, 不经过网络
+ *
+ * @author zhangjx
+ */
+public class HttpBenchmark {
+
+    private static final byte[] REQUEST = ("GET /bench/user/find?userid=100&name=%E4%B8%AD%E6%96%87 HTTP/1.1\r\n"
+        + "Host: www.redkale.org\r\n"
+        + "Connection: keep-alive\r\n"
+        + "User-Agent: Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/70.0.3538.77 Safari/537.36\r\n"
+        + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8\r\n"
+        + "Accept-Encoding: gzip, deflate\r\n"
+        + "Accept-Language: zh-CN,zh;q=0.9,en;q=0.8\r\n"
+        + "Cookie: JSESSIONID=3f2a6c1e9b8d4e7fa1c2; uid=100\r\n"
+        + "\r\n").getBytes(StandardCharsets.UTF_8);
+
+    public static class NoopServlet extends HttpServlet {
+
+        @Override
+        public void execute(HttpRequest req, HttpResponse resp) throws IOException {
+        }
+    }
+
+    public static void main(String[] args) throws Throwable {
+        Benchmark bench = new Benchmark();
+        register(bench);
+        System.exit(bench.run() ? 0 : 1);
+    }
+
+    public static void register(Benchmark bench) throws Throwable {
+        final HttpServer server = new HttpServer();
+        for (int i = 0; i < 50; i++) {
+            server.addHttpServlet("", new NoopServlet(), "/bench/module" + i + "/list", "/bench/module" + i + "/find");
+        }
+        for (int i = 0; i < 10; i++) {
+            server.addHttpServlet("", new NoopServlet(), "/bench/regex" + i + "/*");
+        }
+        server.addHttpServlet("", new NoopServlet(), "/bench/user/find", "/bench/item/*");
+        server.init(AnyValue.create().addValue("host", "127.0.0.1").addValue("port", "0"));
+        server.start();
+        bench.close(() -> server.shutdown());
+        final HttpContext context = server.getContext();
+        final HttpPrepareServlet prepare = (HttpPrepareServlet) server.getPrepareServlet();
+
+        final ByteBuffer buffer = ByteBuffer.wrap(REQUEST);
+        final HttpRequest request = new HttpRequest(context, null);
+        bench.add("http.readHeader", () -> {
+            buffer.clear();
+            int rs = request.readHeader(buffer);
+            request.recycle();
+            return rs;
+        });
+
+        final HttpResponse response = new HttpResponse(context, request, null, null, null, false);
+        final HttpRequest exactRequest = new HttpRequest(context, null);
+        exactRequest.readHeader(ByteBuffer.wrap(REQUEST));
+        bench.add("http.route.exact", () -> {
+            prepare.execute(exactRequest, response);
+            return exactRequest;
+        });
+        final HttpRequest regexRequest = new HttpRequest(context, null);
+        regexRequest.readHeader(ByteBuffer.wrap(new String(REQUEST, StandardCharsets.UTF_8).replace("/bench/user/find", "/bench/item/100").getBytes(StandardCharsets.UTF_8)));
+        bench.add("http.route.regex", () -> {
+            prepare.execute(regexRequest, response);
+            return regexRequest;
+        });
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.source;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import org.redkale.source.CacheSource.CacheEntry;
+import org.redkale.source.CacheSource.CacheEntryType;
+
+/**
+ * CacheMemoryStore的写日志、快照和回放
+ *
+ * @author zhangjx
+ */
+public class CacheMemoryStoreTest {
+
+    public static void main(String[] args) throws Exception {
+        final File dir = new File(System.getProperty("java.io.tmpdir"), "redkale-store-" + System.nanoTime());
+        CacheMemoryStore store = new CacheMemoryStore(dir, "test", String.class);
+        final Map<String, CacheEntry<Object>> container = new ConcurrentHashMap<>();
+        store.load(container);
+
+        CacheEntry<Object> str = new CacheEntry<>(CacheEntryType.STRING, "str", "abc", null, null);
+        CacheEntry<Object> removed = new CacheEntry<>(CacheEntryType.OBJECT, "removed", "xxx", null, null);
+        CacheEntry<Object> list = new CacheEntry<>(CacheEntryType.STRING_LIST, "list", null, null, new ConcurrentLinkedQueue<>(Arrays.asList("a", "b")));
+        CacheEntry<Object> set = new CacheEntry<>(CacheEntryType.LONG_SET, "set", null, new CopyOnWriteArraySet<>(Arrays.asList(1L)), null);
+        store.put(str);
+        store.put(removed);
+        store.put(list);
+        store.put(set);
+        store.remove("removed");
+        store.snapshot(Arrays.asList(str, list, set)); //快照之后的记录写入新一代日志
+
+        store.changeItem(CacheMemoryStore.OP_ADD_ITEM, list, "c");
+        store.changeItem(CacheMemoryStore.OP_REMOVE_ITEM, list, "a");
+        store.changeItem(CacheMemoryStore.OP_ADD_ITEM, set, 2L);
+        CacheEntry<Object> newset = new CacheEntry<>(CacheEntryType.STRING_SET, "newset", null, new CopyOnWriteArraySet<>(), null);
+        store.changeItem(CacheMemoryStore.OP_ADD_ITEM, newset, "x"); //集合不存在时回放会新建
+        for (int i = 0; i < 1000; i++) { //多次读刷新只写一条过期记录
+            str.expireSeconds = 3600;
+            str.lastAccessed = (int) (System.currentTimeMillis() / 1000);
+            store.expire(str);
+        }
+        store.close();
+
+        long logsize = 0;
+        for (File file : dir.listFiles()) {
+            if (file.getName().endsWith(".log")) logsize += file.length();
+        }
+        final Map<String, CacheEntry<Object>> loaded = new ConcurrentHashMap<>();
+        CacheMemoryStore store2 = new CacheMemoryStore(dir, "test", String.class);
+        int count = store2.load(loaded);
+        store2.close();
+        System.out.println("load " + count + " records, log size = " + logsize + ", keys = " + new TreeSet<>(loaded.keySet()));
+        check("str", loaded.get("str").objectValue, "abc");
+        check("str.expireSeconds", loaded.get("str").expireSeconds, 3600);
+        check("removed", loaded.get("removed"), null);
+        check("list", new ArrayList<>(loaded.get("list").listValue), Arrays.asList("b", "c"));
+        check("set", new TreeSet<>(loaded.get("set").csetValue), new TreeSet<>(Arrays.asList(1L, 2L)));
+        check("newset", new ArrayList<>(loaded.get("newset").csetValue), Arrays.asList("x"));
+        if (logsize > 1024) throw new RuntimeException("log size (" + logsize + ") too large");
+        clean(dir);
+
+        //快照期间持续追加列表元素, 回放后每个元素只出现一次
+        final File dir2 = new File(System.getProperty("java.io.tmpdir"), "redkale-store-" + System.nanoTime());
+        store = new CacheMemoryStore(dir2, "test", String.class);
+        store.load(new ConcurrentHashMap<>());
+        final CacheEntry<Object> big = new CacheEntry<>(CacheEntryType.STRING_LIST, "big", null, null, new ConcurrentLinkedQueue<>());
+        final List<CacheEntry<Object>> entrys = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            entrys.add(new CacheEntry<>(CacheEntryType.STRING, "k" + i, "v" + i, null, null));
+        }
+        entrys.add(big);
+        final int total = 20000;
+        final CacheMemoryStore store3 = store;
+        final Thread appender = new Thread(() -> {
+            for (int i = 0; i < total; i++) {
+                store3.changeItem(CacheMemoryStore.OP_ADD_ITEM, big, String.valueOf(i));
+            }
+        });
+        appender.start();
+        int snapshots = 0;
+        while (appender.isAlive()) {
+            store.snapshot(entrys);
+            snapshots++;
+        }
+        store.close();
+        final Map<String, CacheEntry<Object>> reloaded = new ConcurrentHashMap<>();
+        store = new CacheMemoryStore(dir2, "test", String.class);
+        store.load(reloaded);
+        store.close();
+        final List<Object> items = new ArrayList<>(reloaded.get("big").listValue);
+        System.out.println("append during " + snapshots + " snapshots, reloaded " + items.size() + " items");
+        check("big.size", items.size(), total);
+        check("big.distinct", new HashSet<>(items).size(), total);
+        clean(dir2);
+        System.out.println("CacheMemoryStoreTest ok");
+    }
+
+    private static void clean(File dir) {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private static void check(String name, Object value, Object expect) {
+        System.out.println(name + " = " + value);
+        if (!Objects.equals(value, expect)) throw new RuntimeException(name + " expect " + expect + " but " + value);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.source;
+
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+import org.redkale.convert.bson.*;
+import org.redkale.convert.json.*;
+import org.redkale.net.TransportFactory;
+import org.redkale.net.sncp.*;
+import org.redkale.test.sncp.SncpTest;
+import org.redkale.util.*;
+
+/**
+ * CacheNearSource的失效协议: 远程节点写入后近端副本失效、定时续订、重新订阅时清空近端缓存、失效期间读取的值不缓存
+ *
+ * @author zhangjx
+ */
+public class CacheNearSourceTest {
+
+    private static final int port = 4451;
+
+    public static void main(String[] args) throws Throwable {
+        ResourceFactory.root().register("", BsonConvert.class, BsonFactory.root().getConvert());
+        ResourceFactory.root().register("", JsonConvert.class, JsonFactory.root().getConvert());
+        final InetSocketAddress ownerAddr = new InetSocketAddress("127.0.0.1", port);
+        final InetSocketAddress nearAddr = new InetSocketAddress("127.0.0.1", port + 1);
+
+        //数据所在的节点
+        final TransportFactory ownerFactory = TransportFactory.create(Executors.newFixedThreadPool(4), SncpTest.newBufferPool(), SncpTest.newChannelGroup());
+        ownerFactory.addGroupInfo("owner", new LinkedHashSet<>());
+        final CacheMemorySource<String> owner = Sncp.createSimpleLocalService(CacheMemorySource.class, ownerFactory, ownerAddr, "owner");
+        ResourceFactory.root().inject(owner);
+        owner.init(null);
+        final SncpServer ownerServer = new SncpServer();
+        ownerServer.addSncpServlet(owner);
+        ownerServer.init(serverConf(port));
+        ownerServer.start();
+
+        //近端缓存节点, 每秒续订一次
+        final TransportFactory nearFactory = TransportFactory.create(Executors.newFixedThreadPool(4), SncpTest.newBufferPool(), SncpTest.newChannelGroup());
+        nearFactory.addGroupInfo("near", new LinkedHashSet<>(Arrays.asList(ownerAddr)));
+        final CacheNearSource<String> near = Sncp.createSimpleLocalService(CacheNearSource.class, nearFactory, nearAddr, "near");
+        ResourceFactory.root().inject(near);
+        AnyValue.DefaultAnyValue nearConf = new AnyValue.DefaultAnyValue();
+        nearConf.addValue("properties", new AnyValue.DefaultAnyValue().addValue("near-subscribe-seconds", "1"));
+        near.init(nearConf);
+        final SncpServer nearServer = new SncpServer();
+        nearServer.addSncpServlet(near);
+        nearServer.init(serverConf(port + 1));
+        nearServer.start();
+
+        final Map<InetSocketAddress, Long> subscribers = field(owner, "nearSubscribers");
+        waitFor("subscribed", () -> subscribers.containsKey(nearAddr));
+
+        //远程节点上的写操作使近端副本失效
+        near.setString("k1", "v1");
+        check("first read", near.getString("k1"), "v1");
+        final long hits = near.getNearHitCount();
+        check("second read", near.getString("k1"), "v1");
+        check("near hit", near.getNearHitCount(), hits + 1);
+        owner.setString("k1", "v2");
+        waitFor("invalidated", () -> near.getNearInvalidateCount() > 0);
+        check("read after owner write", near.getString("k1"), "v2");
+
+        //定时续订延长订阅的过期时间
+        final long deadline = subscribers.get(nearAddr);
+        waitFor("renewed", () -> subscribers.get(nearAddr) != null && subscribers.get(nearAddr) > deadline);
+
+        //远程节点丢失订阅(如推送失败被移除)后, 重新订阅时近端缓存被清空
+        near.getString("k1");
+        check("near size before resubscribe", near.getNearSize() > 0, true);
+        subscribers.remove(nearAddr);
+        owner.setString("k1", "v3"); //此变化不会推送给近端
+        waitFor("resubscribed", () -> subscribers.containsKey(nearAddr));
+        waitFor("cleared", () -> near.getNearSize() == 0);
+        check("read after resubscribe", near.getString("k1"), "v3");
+
+        near.destroy(null);
+        nearServer.shutdown();
+        ownerServer.shutdown();
+        owner.destroy(null);
+
+        //远程读取期间收到失效通知, 读到的旧值不放入近端缓存
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CacheMemorySource<String> slow = new CacheMemorySource<String>() {
+            @Override
+            public String getString(String key) {
+                final String rs = super.getString(key);
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+                return rs;
+            }
+        };
+        slow.setString("k2", "old");
+        final CacheNearSource<String> guarded = new CacheNearSource<>();
+        guarded.remoteSource = slow;
+        final CompletableFuture<String> read = CompletableFuture.supplyAsync(() -> guarded.getString("k2"));
+        reading.await();
+        slow.setString("k2", "new");
+        guarded.invalidateNearAsync(null, "k2");
+        release.countDown();
+        check("stale read", read.get(5, TimeUnit.SECONDS), "old");
+        check("stale value not cached", guarded.getNearSize(), 0);
+        check("read after invalidation", guarded.getString("k2"), "new");
+        check("fresh value cached", guarded.getNearSize(), 1);
+        System.out.println("CacheNearSourceTest ok");
+        System.exit(0);
+    }
+
+    private static AnyValue serverConf(int port) {
+        AnyValue.DefaultAnyValue conf = new AnyValue.DefaultAnyValue();
+        conf.addValue("host", "127.0.0.1");
+        conf.addValue("port", "" + port);
+        return conf;
+    }
+
+    private static <T> T field(Object obj, String name) throws Exception {
+        Class clazz = obj.getClass();
+        while (clazz != null) {
+            try {
+                Field field = clazz.getDeclaredField(name);
+                field.setAccessible(true);
+                return (T) field.get(obj);
+            } catch (NoSuchFieldException e) {
+                clazz = clazz.getSuperclass();
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+
+    private static void waitFor(String name, BooleanSupplier condition) throws InterruptedException {
+        final long end = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > end) throw new RuntimeException(name + " timeout");
+            Thread.sleep(10);
+        }
+        System.out.println(name);
+    }
+
+    private static void check(String name, Object value, Object expect) {
+        System.out.println(name + " = " + value);
+        if (!Objects.equals(value, expect)) throw new RuntimeException(name + " expect " + expect + " but " + value);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.source;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import static org.redkale.source.FilterExpress.*;
+import org.redkale.source.FilterNodeTest.CarTestTable;
+import org.redkale.test.bench.Benchmark;
+
+/**
+ * EntityCache按FilterNode过滤、排序、分页的查询和CacheMemorySource的读写
+ *
+ * @author zhangjx
+ */
+public class SourceBenchmark {
+
+    public static void main(String[] args) throws Throwable {
+        Benchmark bench = new Benchmark();
+        register(bench);
+        System.exit(bench.run() ? 0 : 1);
+    }
+
+    public static void register(Benchmark bench) throws Throwable {
+        final List<CarTestTable> list = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            list.add(new CarTestTable(70000 + i, 101 + i % 20, 1000000 + i, i % 3 == 0 ? "我的车" : "二手车"));
+        }
+        final EntityInfo<CarTestTable> info = EntityInfo.load(CarTestTable.class, false, new Properties(), null, (s, t) -> list);
+        final EntityCache<CarTestTable> cache = info.getCache();
+        final FilterNode andNode = FilterNode.create("userid", GREATERTHAN, 1005000).and("cartitle", LIKE, "我的");
+        final FilterNode orNode = FilterNode.create("cartype", IN, new int[]{101, 105, 110}).or("username", LIKE, "用户99");
+        final Flipper flipper = new Flipper(20);
+        final Flipper sortFlipper = new Flipper(20, 100, "userid DESC");
+        bench.add("cache.querySheet.and", () -> cache.querySheet(null, flipper, andNode));
+        bench.add("cache.querySheet.or.sort", () -> cache.querySheet(null, sortFlipper, orNode));
+
+        final CacheMemorySource<String> source = new CacheMemorySource<>();
+        source.initValueType(String.class);
+        source.init(null);
+        bench.close(() -> source.destroy(null));
+        final String[] keys = new String[10000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "bench:key:" + i;
+            source.set(keys[i], "value" + i);
+        }
+        final int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        bench.add("memory.set", () -> {
+            String key = keys[ThreadLocalRandom.current().nextInt(keys.length)];
+            source.set(key, key);
+            return key;
+        });
+        bench.add("memory.get", () -> source.get(keys[ThreadLocalRandom.current().nextInt(keys.length)]));
+        bench.add("memory.get", threads, () -> source.get(keys[ThreadLocalRandom.current().nextInt(keys.length)]));
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.test.bench;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+
+/**
+ * 简易的吞吐量基准测试  <br>
+ * 每项先预热bench.warmups轮, 再测量bench.iterations轮, 每轮bench.millis毫秒, 输出每秒操作数的均值和误差(99.9%置信区间)。
+ * 指定bench.baseline文件时与其中的结果比较, 加上误差后仍低于基线超过bench.tolerance(默认0.2)的视为性能回退;
+ * 指定bench.save文件时保存本次结果, 可作为之后的基线。 bench.filter为正则表达式, 只运行名称匹配的项。
+ * <blockquote><pre>
+ * java -Dbench.save=bench-1.6.2.properties org.redkale.test.bench.BenchmarkMain
+ * java -Dbench.baseline=bench-1.6.2.properties org.redkale.test.bench.BenchmarkMain
+ * </pre></blockquote>
+ *
+ * @author zhangjx
+ */
+public class Benchmark {
+
+    public static interface Task {
+
+        //返回值用于防止JIT消除无用计算
+        public Object run() throws Throwable;
+    }
+
+    private final int warmups = Integer.getInteger("bench.warmups", 3);
+
+    private final int iterations = Integer.getInteger("bench.iterations", 5);
+
+    private final long nanos = Long.getLong("bench.millis", 1000L) * 1000_000L;
+
+    private final double tolerance = Double.parseDouble(System.getProperty("bench.tolerance", "0.2"));
+
+    private final Pattern filter = System.getProperty("bench.filter") == null ? null : Pattern.compile(System.getProperty("bench.filter"));
+
+    private final List<Object[]> tasks = new ArrayList<>();
+
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+
+    private volatile Object sink;
+
+    public Benchmark add(String name, Task task) {
+        return add(name, 1, task);
+    }
+
+    /**
+     * 添加测试项, threads大于1时多线程同时运行, 结果为各线程吞吐量之和, 名称后追加"@线程数"
+     *
+     * @param name    名称
+     * @param threads 线程数
+     * @param task    单次操作
+     *
+     * @return Benchmark
+     */
+    public Benchmark add(String name, int threads, Task task) {
+        if (threads > 1) name += "@" + threads; //作为结果的键, 与单线程的区分
+        if (filter == null || filter.matcher(name).find()) tasks.add(new Object[]{name, threads, task});
+        return this;
+    }
+
+    //全部测试项运行完后关闭
+    public Benchmark close(AutoCloseable closeable) {
+        closeables.add(closeable);
+        return this;
+    }
+
+    /**
+     * 运行全部测试项
+     *
+     * @return 没有性能回退返回true
+     *
+     * @throws Exception 异常
+     */
+    public boolean run() throws Exception {
+        final Properties baseline = new Properties();
+        final String baselineFile = System.getProperty("bench.baseline");
+        if (baselineFile != null) {
+            try (InputStream in = new FileInputStream(baselineFile)) {
+                baseline.load(in);
+            }
+        }
+        final Properties results = new Properties();
+        final List<String> regressions = new ArrayList<>();
+        System.out.println(String.format("%-32s %8s %16s %14s %10s", "Benchmark", "Threads", "Score(ops/s)", "Error", "Baseline"));
+        try {
+            for (Object[] item : tasks) {
+                final String name = (String) item[0];
+                final int threads = (Integer) item[1];
+                final Task task = (Task) item[2];
+                for (int i = 0; i < warmups; i++) {
+                    measure(task, threads);
+                }
+                final double[] scores = new double[iterations];
+                for (int i = 0; i < iterations; i++) {
+                    scores[i] = measure(task, threads);
+                }
+                final double mean = Arrays.stream(scores).average().orElse(0);
+                double variance = 0;
+                for (double s : scores) {
+                    variance += (s - mean) * (s - mean);
+                }
+                final double error = scores.length < 2 ? 0 : 3.29 * Math.sqrt(variance / (scores.length - 1)) / Math.sqrt(scores.length);
+                results.setProperty(name, String.format("%.3f", mean));
+                String compare = "";
+                final String base = baseline.getProperty(name);
+                if (base != null) {
+                    final double b = Double.parseDouble(base);
+                    compare = String.format("%+.1f%%", (mean - b) * 100 / b);
+                    if (mean + error < b * (1 - tolerance)) { //加上误差后仍低于基线才算回退
+                        compare += " !";
+                        regressions.add(name + " " + compare);
+                    }
+                }
+                System.out.println(String.format("%-32s %8d %16.3f %14.3f %10s", name, threads, mean, error, compare));
+            }
+        } finally {
+            for (AutoCloseable closeable : closeables) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                }
+            }
+        }
+        final String saveFile = System.getProperty("bench.save");
+        if (saveFile != null) {
+            try (OutputStream out = new FileOutputStream(saveFile)) {
+                results.store(out, "redkale benchmark, java " + System.getProperty("java.version"));
+            }
+        }
+        if (!regressions.isEmpty()) System.out.println("performance regressions (tolerance " + tolerance + "): " + regressions);
+        return regressions.isEmpty();
+    }
+
+    //一轮测量, 返回每秒操作数
+    private double measure(final Task task, final int threads) throws Exception {
+        if (threads <= 1) return loop(task, System.nanoTime() + nanos);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final CountDownLatch ready = new CountDownLatch(threads);
+            final CountDownLatch start = new CountDownLatch(1);
+            final long[] deadline = new long[1];
+            final List<Future<Double>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    ready.countDown();
+                    start.await();
+                    return loop(task, deadline[0]);
+                }));
+            }
+            ready.await();
+            deadline[0] = System.nanoTime() + nanos;
+            start.countDown();
+            double total = 0;
+            for (Future<Double> future : futures) {
+                total += future.get();
+            }
+            return total;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private double loop(final Task task, final long deadline) throws Exception {
+        long ops = 0;
+        final long start = System.nanoTime();
+        long now;
+        try {
+            do {
+                for (int i = 0; i < 16; i++) {
+                    if (task.run() == this) sink = task;
+                }
+                ops += 16;
+            } while ((now = System.nanoTime()) < deadline);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+        return ops * 1000_000_000.0 / (now - start);
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.test.bench;
+
+import java.util.logging.*;
+import org.redkale.net.http.HttpBenchmark;
+import org.redkale.source.SourceBenchmark;
+
+/**
+ * 运行全部基准测试, 有性能回退时以状态码1退出, 用法见Benchmark
+ *
+ * @author zhangjx
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Throwable {
+        Logger.getLogger("").setLevel(Level.WARNING); //避免Server启动日志混入结果
+        Benchmark bench = new Benchmark();
+        ConvertBenchmark.register(bench);
+        HttpBenchmark.register(bench);
+        PoolBenchmark.register(bench);
+        SourceBenchmark.register(bench);
+        SncpBenchmark.register(bench);
+        System.exit(bench.run() ? 0 : 1);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.test.bench;
+
+import org.redkale.convert.bson.BsonConvert;
+import org.redkale.convert.json.JsonConvert;
+import org.redkale.test.convert.*;
+
+/**
+ * JsonConvert、BsonConvert的序列化和反序列化
+ *
+ * @author zhangjx
+ */
+public class ConvertBenchmark {
+
+    public static void main(String[] args) throws Throwable {
+        Benchmark bench = new Benchmark();
+        register(bench);
+        System.exit(bench.run() ? 0 : 1);
+    }
+
+    public static void register(Benchmark bench) throws Throwable {
+        final JsonConvert json = JsonConvert.root();
+        final BsonConvert bson = BsonConvert.root();
+        final SimpleEntity simple = SimpleEntity.create();
+        final String simpleJson = json.convertTo(simple);
+        final byte[] simpleBson = bson.convertTo(simple);
+        final SimpleChildEntity child = SimpleChildEntity.create();
+        final String childJson = json.convertTo(child);
+        final byte[] childBson = bson.convertTo(child);
+
+        bench.add("json.encode.simple", () -> json.convertTo(simple));
+        bench.add("json.decode.simple", () -> json.convertFrom(SimpleEntity.class, simpleJson));
+        bench.add("json.encode.child", () -> json.convertTo(child));
+        bench.add("json.decode.child", () -> json.convertFrom(SimpleChildEntity.class, childJson));
+        bench.add("bson.encode.simple", () -> bson.convertTo(simple));
+        bench.add("bson.decode.simple", () -> bson.convertFrom(SimpleEntity.class, simpleBson));
+        bench.add("bson.encode.child", () -> bson.convertTo(child));
+        bench.add("bson.decode.child", () -> bson.convertFrom(SimpleChildEntity.class, childBson));
+    }
+}
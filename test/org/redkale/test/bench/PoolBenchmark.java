@@ -0,0 +1,46 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.test.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import org.redkale.util.*;
+
+/**
+ * ObjectPool单线程和多线程争用下的借出归还, 以及ByteBufferAllocator的分配释放
+ *
+ * @author zhangjx
+ */
+public class PoolBenchmark {
+
+    public static void main(String[] args) throws Throwable {
+        Benchmark bench = new Benchmark();
+        register(bench);
+        System.exit(bench.run() ? 0 : 1);
+    }
+
+    public static void register(Benchmark bench) throws Throwable {
+        final int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        final ObjectPool<ByteBuffer> pool = ByteBufferAllocator.root().createPool("bench", new AtomicLong(), new AtomicLong(), threads * 2, 8192);
+        final Benchmark.Task poolTask = () -> {
+            ByteBuffer buffer = pool.get();
+            pool.accept(buffer);
+            return buffer;
+        };
+        bench.add("pool.get+accept", poolTask);
+        bench.add("pool.get+accept", threads, poolTask);
+
+        final ByteBufferAllocator allocator = new ByteBufferAllocator(1024 * 1024);
+        final ByteBufferAllocator.Usage usage = allocator.usage("bench");
+        final Benchmark.Task allocTask = () -> {
+            ByteBuffer buffer = allocator.allocate(16 * 1024, usage);
+            allocator.free(buffer);
+            return buffer;
+        };
+        bench.add("allocator.allocate+free", allocTask);
+        bench.add("allocator.allocate+free", threads, allocTask);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.test.bench;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.Executors;
+import org.redkale.convert.bson.*;
+import org.redkale.net.TransportFactory;
+import org.redkale.net.sncp.*;
+import org.redkale.test.sncp.*;
+import org.redkale.util.*;
+
+/**
+ * 同一进程内的SNCP远程调用, 包括客户端编码、网络往返、服务端分发和解码
+ *
+ * @author zhangjx
+ */
+public class SncpBenchmark {
+
+    public static void main(String[] args) throws Throwable {
+        Benchmark bench = new Benchmark();
+        register(bench);
+        System.exit(bench.run() ? 0 : 1);
+    }
+
+    public static void register(Benchmark bench) throws Throwable {
+        ResourceFactory.root().register("", BsonConvert.class, BsonFactory.root().getConvert());
+        final InetSocketAddress addr = new InetSocketAddress("127.0.0.1", Integer.getInteger("bench.sncp.port", 4350));
+
+        final SncpServer server = new SncpServer();
+        final TransportFactory serverFactory = TransportFactory.create(Executors.newSingleThreadExecutor(), SncpTest.newBufferPool(), SncpTest.newChannelGroup());
+        SncpTestIService local = Sncp.createSimpleLocalService(SncpTestServiceImpl.class, serverFactory, addr); //不属于任何组, @RpcMultiRun不会再远程调用其他节点
+        ResourceFactory.root().inject(local);
+        server.addSncpServlet(local);
+        server.init(AnyValue.create().addValue("host", addr.getHostString()).addValue("port", "" + addr.getPort()));
+        server.start();
+        bench.close(() -> server.shutdown());
+
+        final TransportFactory clientFactory = TransportFactory.create(Executors.newSingleThreadExecutor(), SncpTest.newBufferPool(), SncpTest.newChannelGroup());
+        clientFactory.addGroupInfo("client", new LinkedHashSet<>(Arrays.asList(addr)));
+        final InetSocketAddress clientAddr = new InetSocketAddress("127.0.0.1", addr.getPort() + 1); //Transport会排除自身地址
+        final SncpTestIService remote = Sncp.createSimpleRemoteService(SncpTestIService.class, clientFactory, clientAddr, "client");
+        ResourceFactory.root().inject(remote);
+
+        final SncpTestBean bean = new SncpTestBean();
+        bean.setId(1);
+        bean.setContent("hello sncp");
+        bench.add("sncp.call.long", () -> remote.queryLongResult("a", 1, 2L));
+        bench.add("sncp.call.long", 16, () -> remote.queryLongResult("a", 1, 2L));
+        bench.add("sncp.call.bean", () -> {
+            remote.insert(bean); //服务端修改的id通过RpcCall回写
+            return bean;
+        });
+    }
+}
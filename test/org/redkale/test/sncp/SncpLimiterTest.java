@@ -0,0 +1,92 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.test.sncp;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.*;
+import org.redkale.convert.bson.*;
+import org.redkale.convert.json.*;
+import org.redkale.net.*;
+import org.redkale.net.sncp.*;
+import org.redkale.util.*;
+
+/**
+ * 服务端限流只允许一个并发请求, 检查被拒绝的SNCP请求立即失败且连接被归还
+ *
+ * @author zhangjx
+ */
+public class SncpLimiterTest {
+
+    private static final int port = 4340;
+
+    public static void main(String[] args) throws Throwable {
+        ResourceFactory.root().register("", BsonConvert.class, BsonFactory.root().getConvert());
+        ResourceFactory.root().register("", JsonConvert.class, JsonFactory.root().getConvert());
+        final InetSocketAddress addr = new InetSocketAddress("127.0.0.1", port);
+        final SncpServer server = new SncpServer();
+        final TransportFactory serverFactory = TransportFactory.create(Executors.newSingleThreadExecutor(), SncpTest.newBufferPool(), SncpTest.newChannelGroup());
+        server.addSncpServlet(Sncp.createSimpleLocalService(SncpTestServiceImpl.class, serverFactory, addr, "server"));
+        AnyValue.DefaultAnyValue conf = new AnyValue.DefaultAnyValue();
+        conf.addValue("host", "127.0.0.1");
+        conf.addValue("port", "" + port);
+        AnyValue.DefaultAnyValue limiter = new AnyValue.DefaultAnyValue();
+        limiter.addValue("type", "aimd");
+        limiter.addValue("min", "1");
+        limiter.addValue("max", "1");
+        limiter.addValue("initial", "1");
+        conf.addValue("limiter", limiter);
+        server.init(conf);
+        server.start();
+
+        final TransportFactory clientFactory = TransportFactory.create(Executors.newSingleThreadExecutor(), SncpTest.newBufferPool(), SncpTest.newChannelGroup());
+        clientFactory.addGroupInfo("client", new LinkedHashSet<>(Arrays.asList(addr)));
+        final SncpTestIService service = Sncp.createSimpleRemoteService(SncpTestIService.class, clientFactory, new InetSocketAddress("127.0.0.1", port + 1), "client");
+        ResourceFactory.root().inject(service);
+        final Transport transport = Sncp.getSncpClient(service).getRemoteGroupTransport();
+        check(service.queryLongResult("a", 1, 10L) == 11L, "queryLongResult should succeed");
+
+        //queryResultAsync在服务端耗时1秒, 期间占满唯一的许可
+        SncpTestBean bean = new SncpTestBean();
+        bean.setId(1);
+        bean.setContent("limiter");
+        final CompletableFuture<String> slow = service.queryResultAsync(bean);
+        Thread.sleep(200);
+        final Transport.TransportAddress taddr0 = transport.getTransportAddresses()[0];
+        final double latency = taddr0.getLatencyMillis();
+        long s = System.currentTimeMillis();
+        Throwable rejected = null;
+        try {
+            service.queryLongResult("b", 2, 20L);
+        } catch (Throwable t) {
+            rejected = t;
+        }
+        long e = System.currentTimeMillis() - s;
+        System.out.println("rejected in " + e + "ms: " + rejected);
+        check(rejected != null, "queryLongResult should be rejected by the limiter");
+        boolean overload = false;
+        for (Throwable t = rejected; t != null; t = t.getCause()) {
+            if (String.valueOf(t.getMessage()).contains("retcode=" + SncpResponse.RETCODE_OVERLOAD)) overload = true;
+        }
+        check(overload, "rejected error should carry the overload retcode");
+        check(e < 500, "rejected call should fail immediately");
+        check(taddr0.getLatencyMillis() == latency, "rejected call should not be sampled as a healthy latency");
+
+        System.out.println("slow result: " + slow.get(5, TimeUnit.SECONDS));
+        check(service.queryLongResult("c", 3, 30L) == 31L, "queryLongResult should succeed after the slow call");
+        for (Transport.TransportAddress taddr : transport.getTransportAddresses()) {
+            System.out.println(taddr);
+            check(taddr.getInflightCount() == 0, "inflight should return to 0");
+        }
+        server.shutdown();
+        System.out.println("SncpLimiterTest ok");
+        System.exit(0);
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) throw new RuntimeException(message);
+    }
+}
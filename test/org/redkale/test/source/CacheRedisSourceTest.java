@@ -0,0 +1,302 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.redkale.test.source;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import org.redkale.source.*;
+import org.redkale.util.AnyValue.DefaultAnyValue;
+
+/**
+ * 使用进程内的简易RESP服务测试CacheRedisSource
+ *
+ * @author zhangjx
+ */
+public class CacheRedisSourceTest {
+
+    public static void main(String[] args) throws Throwable {
+        final ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        final MiniRedis redis = new MiniRedis();
+        Thread acceptor = new Thread(() -> {
+            while (true) {
+                try {
+                    final Socket socket = server.accept();
+                    new Thread(() -> redis.serve(socket)).start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        DefaultAnyValue prop = new DefaultAnyValue();
+        prop.addValue("port", String.valueOf(server.getLocalPort()));
+        prop.addValue("password", "redkale");
+        prop.addValue("db", "2");
+        DefaultAnyValue conf = new DefaultAnyValue();
+        conf.addValue("properties", prop);
+        CacheRedisSource<String> source = new CacheRedisSource<>();
+        source.initValueType(String.class);
+        source.init(conf);
+
+        source.set("key1", "value1");
+        System.out.println("key1 = " + source.get("key1"));
+        source.setString("key2", "value2");
+        System.out.println("key2 = " + source.getString("key2"));
+        source.setLong("keylong1", 333L);
+        System.out.println("keylong1 incr = " + source.incr("keylong1", 10) + ", getLong = " + source.getLong("keylong1", 0L));
+        source.appendStringListItem("list1", "a");
+        source.appendStringListItem("list1", "b");
+        source.appendLongSetItem("set1", 1L);
+        source.appendLongSetItem("set1", 2L);
+        System.out.println("list1 = " + source.getStringCollection("list1") + ", set1 = " + source.getLongCollection("set1") + ", size = " + source.getCollectionSize("set1"));
+        Map<String, String> map = new HashMap<>();
+        map.put("m1", "v1");
+        map.put("m2", "v2");
+        source.setMany(map);
+        System.out.println("getMany = " + source.getMany("m1", "m2", "m3"));
+        source.removeMany("m1", "m2");
+        System.out.println("exists m1 = " + source.exists("m1") + ", keys = " + source.queryKeys());
+
+        //并发请求共用连接, 自动合并写出
+        final int count = 10000;
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        long s = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            futures.add(source.incrAsync("counter"));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()])).join();
+        long e = System.currentTimeMillis() - s;
+        System.out.println(count + " incrAsync: counter = " + source.getLong("counter", 0L) + ", cost " + e + " ms, server reads " + redis.reads + " times for " + redis.commands + " commands");
+        Map<String, Long> nums = new HashMap<>();
+        nums.put("num1", null);
+        check("incrMany(null)", source.incrMany(nums).get("num1"), 1L);
+        List<CacheSource.CacheEntry<Object>> entrys = source.queryList();
+        System.out.println("queryList = " + entrys);
+        check("queryList.size", entrys.size(), source.getKeySize());
+        check("queryKeys.size", source.queryKeys().size(), source.getKeySize());
+        source.destroy(null);
+
+        //未配置value-type时按JSON的自然类型读取
+        CacheRedisSource<Object> anySource = new CacheRedisSource<>();
+        anySource.init(conf);
+        anySource.set("any1", "abc");
+        check("any1", anySource.get("any1"), "abc");
+        anySource.set("any2", 123);
+        check("any2", anySource.get("any2"), 123L);
+        Map<String, Object> bean = new LinkedHashMap<>();
+        bean.put("name", "a\"b");
+        bean.put("scores", Arrays.asList(1L, 2.5));
+        bean.put("vip", true);
+        anySource.set("any3", bean);
+        check("any3", anySource.get("any3"), bean);
+        anySource.destroy(null);
+
+        //密码错误时请求立即失败, 而不是等到超时
+        prop.setValue("password", "wrong");
+        CacheRedisSource<String> badSource = new CacheRedisSource<>();
+        badSource.init(conf);
+        s = System.currentTimeMillis();
+        try {
+            badSource.get("key1");
+            throw new RuntimeException("wrong password but get succeed");
+        } catch (CompletionException ex) {
+            System.out.println("wrong password: " + ex.getCause().getMessage() + ", cost " + (System.currentTimeMillis() - s) + " ms");
+        }
+        badSource.destroy(null);
+        server.close();
+    }
+
+    private static void check(String name, Object value, Object expect) {
+        System.out.println(name + " = " + value);
+        if (!Objects.equals(value, expect)) throw new RuntimeException(name + " expect " + expect + " but " + value);
+    }
+
+    //仅支持测试用到的命令
+    private static class MiniRedis {
+
+        private final Map<String, Object> data = new ConcurrentHashMap<>();
+
+        public volatile long reads;
+
+        public volatile long commands;
+
+        public void serve(Socket socket) {
+            try {
+                final InputStream in = new BufferedInputStream(socket.getInputStream()) {
+                    @Override
+                    public synchronized int read() throws IOException {
+                        if (pos >= count) reads++;
+                        return super.read();
+                    }
+                };
+                final OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                while (true) {
+                    List<String> cmd = readCommand(in);
+                    if (cmd == null) break;
+                    commands++;
+                    synchronized (data) {
+                        execute(cmd, out);
+                    }
+                    if (in.available() == 0) out.flush();
+                }
+                socket.close();
+            } catch (IOException e) {
+            }
+        }
+
+        private String readLine(InputStream in) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\r') {
+                if (b < 0) return null;
+                sb.append((char) b);
+            }
+            in.read();
+            return sb.toString();
+        }
+
+        private List<String> readCommand(InputStream in) throws IOException {
+            String line = readLine(in);
+            if (line == null) return null;
+            int size = Integer.parseInt(line.substring(1));
+            List<String> cmd = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                int len = Integer.parseInt(readLine(in).substring(1));
+                byte[] bs = new byte[len];
+                for (int j = 0; j < len; j++) {
+                    bs[j] = (byte) in.read();
+                }
+                in.read();
+                in.read();
+                cmd.add(new String(bs, StandardCharsets.UTF_8));
+            }
+            return cmd;
+        }
+
+        private void execute(List<String> cmd, OutputStream out) throws IOException {
+            String key = cmd.size() > 1 ? cmd.get(1) : null;
+            Object val = key == null ? null : data.get(key);
+            switch (cmd.get(0).toUpperCase()) {
+                case "AUTH":
+                    if ("redkale".equals(key)) {
+                        simple(out, "OK");
+                    } else {
+                        out.write("-ERR invalid password\r\n".getBytes());
+                    }
+                    break;
+                case "SELECT":
+                case "EXPIRE":
+                    simple(out, "OK");
+                    break;
+                case "SET":
+                    data.put(key, cmd.get(2));
+                    simple(out, "OK");
+                    break;
+                case "SETEX":
+                    data.put(key, cmd.get(3));
+                    simple(out, "OK");
+                    break;
+                case "MSET":
+                    for (int i = 1; i < cmd.size(); i += 2) {
+                        data.put(cmd.get(i), cmd.get(i + 1));
+                    }
+                    simple(out, "OK");
+                    break;
+                case "GET":
+                    bulk(out, val instanceof String ? (String) val : null);
+                    break;
+                case "MGET":
+                    out.write(("*" + (cmd.size() - 1) + "\r\n").getBytes());
+                    for (int i = 1; i < cmd.size(); i++) {
+                        Object v = data.get(cmd.get(i));
+                        bulk(out, v instanceof String ? (String) v : null);
+                    }
+                    break;
+                case "DEL":
+                    int removed = 0;
+                    for (int i = 1; i < cmd.size(); i++) {
+                        if (data.remove(cmd.get(i)) != null) removed++;
+                    }
+                    integer(out, removed);
+                    break;
+                case "EXISTS":
+                    integer(out, val == null ? 0 : 1);
+                    break;
+                case "INCRBY":
+                    long num = (val == null ? 0 : Long.parseLong((String) val)) + Long.parseLong(cmd.get(2));
+                    data.put(key, String.valueOf(num));
+                    integer(out, num);
+                    break;
+                case "TYPE":
+                    simple(out, val == null ? "none" : (val instanceof List ? "list" : (val instanceof Set ? "set" : "string")));
+                    break;
+                case "RPUSH":
+                    if (val == null) data.put(key, val = new ArrayList<>());
+                    ((List) val).add(cmd.get(2));
+                    integer(out, ((List) val).size());
+                    break;
+                case "SADD":
+                    if (val == null) data.put(key, val = new LinkedHashSet<>());
+                    integer(out, ((Set) val).add(cmd.get(2)) ? 1 : 0);
+                    break;
+                case "LRANGE":
+                case "SMEMBERS":
+                    Collection<String> items = (Collection) val;
+                    out.write(("*" + (items == null ? 0 : items.size()) + "\r\n").getBytes());
+                    if (items != null) {
+                        for (String item : items) {
+                            bulk(out, item);
+                        }
+                    }
+                    break;
+                case "LLEN":
+                case "SCARD":
+                    integer(out, val == null ? 0 : ((Collection) val).size());
+                    break;
+                case "DBSIZE":
+                    integer(out, data.size());
+                    break;
+                case "TTL":
+                    integer(out, val == null ? -2 : -1);
+                    break;
+                case "SCAN": //一次返回全部key, 不支持KEYS以确认不会阻塞式遍历
+                    out.write(("*2\r\n").getBytes());
+                    bulk(out, "0");
+                    out.write(("*" + data.size() + "\r\n").getBytes());
+                    for (String k : data.keySet()) {
+                        bulk(out, k);
+                    }
+                    break;
+                default:
+                    out.write(("-ERR unknown command '" + cmd.get(0) + "'\r\n").getBytes());
+            }
+        }
+
+        private void simple(OutputStream out, String value) throws IOException {
+            out.write(("+" + value + "\r\n").getBytes());
+        }
+
+        private void integer(OutputStream out, long value) throws IOException {
+            out.write((":" + value + "\r\n").getBytes());
+        }
+
+        private void bulk(OutputStream out, String value) throws IOException {
+            if (value == null) {
+                out.write("$-1\r\n".getBytes());
+                return;
+            }
+            byte[] bs = value.getBytes(StandardCharsets.UTF_8);
+            out.write(("$" + bs.length + "\r\n").getBytes());
+            out.write(bs);
+            out.write("\r\n".getBytes());
+        }
+    }
+}
@@ -6,6 +6,7 @@
 package org.redkale.test.source;
 
 import java.io.Serializable;
+import java.util.*;
 import javax.persistence.*;
 import org.redkale.source.*;
 
@@ -122,6 +123,22 @@ public class LoginRecord extends BaseEntity {
             return getTable(table, 0, (time == null ? 0L : (time instanceof Range ? ((Range.LongRange) time).getMin() : (Long) time)));
         }
 
+        //跨天查询时调用本方法, createtime范围内的每天对应一张表
+        @Override
+        public String[] getTables(String table, FilterNode node) {
+            Serializable time = node.findValue("#createtime");
+            if (!(time instanceof Range.LongRange)) return new String[]{getTable(table, node)};
+            final long oneday = 24 * 60 * 60 * 1000L;
+            long min = ((Range.LongRange) time).getMin();
+            long max = ((Range.LongRange) time).getMax();
+            List<String> tables = new ArrayList<>();
+            for (long t = min; t <= max + oneday - 1 && tables.size() < 366; t += oneday) {
+                String rs = getTable(table, 0, Math.min(t, max));
+                if (!tables.contains(rs)) tables.add(rs);
+            }
+            return tables.toArray(new String[tables.size()]);
+        }
+
         //创建或单个查询时调用本方法
         @Override
         public String getTable(String table, LoginRecord bean) {